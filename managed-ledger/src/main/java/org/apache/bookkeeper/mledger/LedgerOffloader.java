@@ -112,5 +112,11 @@ public interface LedgerOffloader {
      */
     CompletableFuture<Void> deleteOffloaded(long ledgerId, UUID uid,
                                             Map<String, String> offloadDriverMetadata);
+
+    /**
+     * Release the resources of the offloader, once no ledger is offloaded or read through it anymore.
+     */
+    default void close() {
+    }
 }
 
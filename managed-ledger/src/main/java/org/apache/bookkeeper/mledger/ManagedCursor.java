@@ -438,6 +438,27 @@ public interface ManagedCursor {
     void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition,
             FindEntryCallback callback, Object ctx);
 
+    /**
+     * Find the newest entry that matches the given predicate, where the predicate selects the entries with a timestamp
+     * lower than or equal to the given one.
+     *
+     * <p/>If the managed ledger keeps a time index, it is used to restrict the search to the few entries around the
+     * timestamp.
+     *
+     * @param constraint
+     *            search only active entries or all entries
+     * @param condition
+     *            predicate that reads an entry an applies a condition
+     * @param timestamp
+     *            the timestamp matched by the condition
+     * @param callback
+     *            callback object returning the resultant position
+     * @param ctx
+     *            opaque context
+     */
+    void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition, long timestamp,
+            FindEntryCallback callback, Object ctx);
+
     /**
      * reset the cursor to specified position to enable replay of messages.
      *
@@ -545,6 +566,21 @@ public interface ManagedCursor {
      */
     void setAlwaysInactive();
 
+    /**
+     * Mark the reads done through this cursor as scan reads. Scan reads (eg: compaction, SQL queries or the replay of a
+     * whole backlog) are not expected to be repeated, so they are not considered by the entry cache eviction policy
+     * when deciding which data is worth keeping in cache.
+     *
+     * @param scanReads
+     *            whether the reads of this cursor are scan reads
+     */
+    void setScanReads(boolean scanReads);
+
+    /**
+     * Tells whether the reads done through this cursor are scan reads.
+     */
+    boolean isScanReads();
+
     /**
      * Checks if cursor is active or not.
      *
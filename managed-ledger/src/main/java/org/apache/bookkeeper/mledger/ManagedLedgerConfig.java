@@ -40,10 +40,17 @@ public class ManagedLedgerConfig {
     private boolean createIfMissing = true;
     private int maxUnackedRangesToPersist = 10000;
     private int maxUnackedRangesToPersistInZk = 1000;
+    private boolean unackedRangesBitmapEnabled = false;
+    private int unackedRangesBitmapChunkSize = 1024 * 1024;
+    private boolean unackedRangesDeltaEnabled = false;
+    private int unackedRangesSnapshotInterval = 100;
     private int maxEntriesPerLedger = 50000;
     private int maxSizePerLedgerMb = 100;
     private int minimumRolloverTimeMs = 0;
     private long maximumRolloverTimeMs = TimeUnit.HOURS.toMillis(4);
+    private boolean standbyLedgerEnabled = false;
+    private EntryTimestampExtractor entryTimestampExtractor = null;
+    private long timeIndexIntervalMs = 1000;
     private int ensembleSize = 3;
     private int writeQuorumSize = 2;
     private int ackQuorumSize = 2;
@@ -160,6 +167,65 @@ public class ManagedLedgerConfig {
                 "Maximum rollover time needs to be greater than minimum rollover time");
     }
 
+    /**
+     * @return whether the next ledger is created ahead of time, before the current ledger is full
+     */
+    public boolean isStandbyLedgerEnabled() {
+        return standbyLedgerEnabled;
+    }
+
+    /**
+     * Create the next ledger in background when the current ledger is half full, so that the rollover doesn't have to
+     * wait for the ledger creation and for the update of the ledgers list before resuming the writes.
+     *
+     * @param standbyLedgerEnabled
+     *            whether to create the standby ledger
+     */
+    public ManagedLedgerConfig setStandbyLedgerEnabled(boolean standbyLedgerEnabled) {
+        this.standbyLedgerEnabled = standbyLedgerEnabled;
+        return this;
+    }
+
+    /**
+     * @return the extractor used to build the time index of the ledgers, or null if the time index is disabled
+     */
+    public EntryTimestampExtractor getEntryTimestampExtractor() {
+        return entryTimestampExtractor;
+    }
+
+    /**
+     * Set the extractor used to get the timestamp of the entries.
+     *
+     * <p/>When set, a sparse index of the entry timestamps is kept for each ledger, and it is used to narrow the range
+     * of entries to read when searching entries by time.
+     *
+     * @param entryTimestampExtractor
+     *            the timestamp extractor, or null to disable the time index
+     */
+    public ManagedLedgerConfig setEntryTimestampExtractor(EntryTimestampExtractor entryTimestampExtractor) {
+        this.entryTimestampExtractor = entryTimestampExtractor;
+        return this;
+    }
+
+    /**
+     * @return the minimum interval between two samples of the time index
+     */
+    public long getTimeIndexIntervalMs() {
+        return timeIndexIntervalMs;
+    }
+
+    /**
+     * Set the minimum interval between two samples of the time index. The interval is increased for ledgers that are
+     * open for a long time, to bound the size of the index.
+     *
+     * @param timeIndexIntervalMs
+     *            the interval in milliseconds
+     */
+    public ManagedLedgerConfig setTimeIndexIntervalMs(long timeIndexIntervalMs) {
+        this.timeIndexIntervalMs = timeIndexIntervalMs;
+        return this;
+    }
+
     /**
      * @return the ensembleSize
      */
@@ -480,6 +546,81 @@ public class ManagedLedgerConfig {
         return this;
     }
 
+    /**
+     * @return whether the individually deleted messages are persisted in the cursor ledger as compressed bitmaps
+     */
+    public boolean isUnackedRangesBitmapEnabled() {
+        return unackedRangesBitmapEnabled;
+    }
+
+    /**
+     * Persist the individually deleted messages in the cursor ledger as compressed bitmaps, instead of a list of
+     * ranges. With bitmaps, the whole ack state of the cursor is persisted, regardless of
+     * {@link #getMaxUnackedRangesToPersist()}.
+     *
+     * @param unackedRangesBitmapEnabled
+     *            whether to persist the unacked ranges as bitmaps
+     */
+    public ManagedLedgerConfig setUnackedRangesBitmapEnabled(boolean unackedRangesBitmapEnabled) {
+        this.unackedRangesBitmapEnabled = unackedRangesBitmapEnabled;
+        return this;
+    }
+
+    /**
+     * @return the max size of the ack bitmaps written in a single entry of the cursor ledger
+     */
+    public int getUnackedRangesBitmapChunkSize() {
+        return unackedRangesBitmapChunkSize;
+    }
+
+    /**
+     * @param unackedRangesBitmapChunkSize
+     *            the max size of the ack bitmaps written in a single entry of the cursor ledger. Bigger bitmaps are
+     *            split across multiple entries.
+     */
+    public ManagedLedgerConfig setUnackedRangesBitmapChunkSize(int unackedRangesBitmapChunkSize) {
+        this.unackedRangesBitmapChunkSize = unackedRangesBitmapChunkSize;
+        return this;
+    }
+
+    /**
+     * @return whether only the changes to the individually deleted messages are appended to the cursor ledger
+     */
+    public boolean isUnackedRangesDeltaEnabled() {
+        return unackedRangesDeltaEnabled;
+    }
+
+    /**
+     * Append to the cursor ledger only the ranges of messages individually deleted since the previous entry, instead
+     * of the full set of ranges on every mark-delete. A full snapshot is written every
+     * {@link #getUnackedRangesSnapshotInterval()} entries and whenever the cursor switches to a new ledger.
+     *
+     * @param unackedRangesDeltaEnabled
+     *            whether to persist the unacked ranges incrementally
+     */
+    public ManagedLedgerConfig setUnackedRangesDeltaEnabled(boolean unackedRangesDeltaEnabled) {
+        this.unackedRangesDeltaEnabled = unackedRangesDeltaEnabled;
+        return this;
+    }
+
+    /**
+     * @return the max number of incremental entries written in the cursor ledger between two full snapshots of the
+     *         individually deleted messages
+     */
+    public int getUnackedRangesSnapshotInterval() {
+        return unackedRangesSnapshotInterval;
+    }
+
+    /**
+     * @param unackedRangesSnapshotInterval
+     *            the max number of incremental entries written in the cursor ledger between two full snapshots of the
+     *            individually deleted messages
+     */
+    public ManagedLedgerConfig setUnackedRangesSnapshotInterval(int unackedRangesSnapshotInterval) {
+        this.unackedRangesSnapshotInterval = unackedRangesSnapshotInterval;
+        return this;
+    }
+
     /**
      * @return max unacked message ranges up to which it can store in Zookeeper
      *
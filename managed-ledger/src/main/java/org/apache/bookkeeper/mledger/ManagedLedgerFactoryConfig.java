@@ -42,6 +42,12 @@ public class ManagedLedgerFactoryConfig {
      */
     private double cacheEvictionFrequency = 100;
 
+    /**
+     * Number of threads evicting the caches of the managed ledgers in parallel. Each thread handles the managed
+     * ledgers whose name hash falls in its shard.
+     */
+    private int cacheEvictionThreads = 1;
+
     /**
      * All entries that have stayed in cache for more than the configured time, will be evicted
      */
@@ -56,4 +62,86 @@ public class ManagedLedgerFactoryConfig {
      * Whether we should make a copy of the entry payloads when inserting in cache
      */
     private boolean copyEntriesInCache = false;
+
+    /**
+     * Whether to store cached entries in append-only off-heap segments, instead of keeping one buffer per entry.
+     * Segments are evicted as a whole.
+     */
+    private boolean cacheSegmentsEnabled = false;
+
+    /**
+     * Size of each segment of the entry cache, when segments are enabled
+     */
+    private int cacheSegmentSize = (int) MB;
+
+    /**
+     * Max memory used by the read-ahead buffers of the cursors that are catching up with the backlog. 0 disables the
+     * read-ahead.
+     */
+    private long readAheadMaxSize = 0;
+
+    /**
+     * Max number of entries that are prefetched ahead of a single cursor
+     */
+    private int readAheadMaxEntries = 1000;
+
+    /**
+     * Size assumed for the entries prefetched ahead of a cursor, until the size of the entries it reads is known. It
+     * should be the max size of the entries written to the managed ledgers
+     */
+    private long readAheadMaxEntrySize = 5 * MB;
+
+    /**
+     * Class name of the {@link org.apache.bookkeeper.mledger.impl.EntryCacheEvictionPolicy} used to decide which
+     * entries are admitted in the cache and which caches are drained on eviction
+     */
+    private String cacheEvictionPolicyClassName = "org.apache.bookkeeper.mledger.impl.EntryCacheDefaultEvictionPolicy";
+
+    /**
+     * Max memory used by the caches of the managed ledgers of a single namespace. 0 means no limit other than the
+     * overall cache size.
+     */
+    private long maxCacheSizePerNamespace = 0;
+
+    /**
+     * Max size of the second tier of the entry cache, stored on local disk. 0 disables the disk cache.
+     */
+    private long diskCacheMaxSize = 0;
+
+    /**
+     * Directory where the segment files of the disk cache are stored
+     */
+    private String diskCacheDirectory = "data/ml-disk-cache";
+
+    /**
+     * Size of each segment file of the disk cache
+     */
+    private int diskCacheSegmentSize = (int) (64 * MB);
+
+    /**
+     * Max time the updates of the cursors and managed ledgers metadata are held, to be sent to ZooKeeper in a single
+     * multi() with the updates issued in the meantime. 0 disables the batching.
+     */
+    private long metadataBatchingMaxDelayMillis = 0;
+
+    /**
+     * Max number of metadata updates sent in a single batch
+     */
+    private int metadataBatchingMaxOperations = 100;
+
+    /**
+     * Max size of the metadata updates sent in a single batch. It must stay below the ZooKeeper jute.maxbuffer.
+     */
+    private int metadataBatchingMaxSizeInBytes = 128 * 1024;
+
+    /**
+     * Store the managed ledgers info in the compact encoding, with the ledgers list delta encoded and compressed.
+     * Brokers of older versions can't read the managed ledgers once it is enabled.
+     */
+    private boolean managedLedgerInfoCompactEncodingEnabled = false;
+
+    /**
+     * Compression of the managed ledgers info stored in the compact encoding: NONE, LZ4, ZLIB, ZSTD or SNAPPY
+     */
+    private String managedLedgerInfoCompressionType = "NONE";
 }
@@ -61,4 +61,94 @@ public interface ManagedLedgerFactoryMXBean {
      * Get the number of cache evictions during the last minute.
      */
     long getNumberOfCacheEvictions();
+
+    /**
+     * Get the number of entries per second that were served by sharing a BookKeeper read already in progress.
+     */
+    double getDeduplicatedReadsRate();
+
+    /**
+     * Get the amount of data in byte/s that was not read again from bookkeeper because the read was shared.
+     */
+    double getDeduplicatedReadsThroughput();
+
+    /**
+     * Get the size in byte used by the read-ahead buffers of the cursors.
+     */
+    long getReadAheadUsedSize();
+
+    /**
+     * Get the number of entries per second served from the read-ahead buffers.
+     */
+    double getReadAheadHitsRate();
+
+    /**
+     * Get the amount of data in byte/s served from the read-ahead buffers.
+     */
+    double getReadAheadHitsThroughput();
+
+    /**
+     * Get the name of the eviction policy used by the entry cache.
+     */
+    String getCacheEvictionPolicy();
+
+    /**
+     * Get the number of entries per second that the eviction policy did not admit in the cache.
+     */
+    double getCacheAdmissionRejectedRate();
+
+    /**
+     * Get the number of reads per second that were marked as scan reads, and not reported to the eviction policy.
+     */
+    double getCacheScanReadsRate();
+
+    /**
+     * Get the size in byte used by the entries stored in the disk cache.
+     */
+    long getDiskCacheUsedSize();
+
+    /**
+     * Get the number of entries per second served from the disk cache.
+     */
+    double getDiskCacheHitsRate();
+
+    /**
+     * Get the amount of data in byte/s served from the disk cache.
+     */
+    double getDiskCacheHitsThroughput();
+
+    /**
+     * Get the number of entries per second that were not inserted in the cache because it was full.
+     */
+    double getCacheInsertsRejectedRate();
+
+    /**
+     * Get the distribution of the time taken by the cache eviction cycles, in microseconds.
+     */
+    long[] getCacheEvictionTimeBuckets();
+
+    /**
+     * Get the average time taken by the cache eviction cycles, in microseconds.
+     */
+    double getCacheEvictionTimeAverageUsec();
+
+    /**
+     * Get the max amount of memory, in byte, by which the cache exceeded its configured size during the last period.
+     */
+    long getCacheMaxOvershootSize();
+
+    /**
+     * Get the number of metadata batches sent to ZooKeeper per second.
+     */
+    double getMetadataBatchesRate();
+
+    /**
+     * Get the number of ZooKeeper operations per second saved by batching the metadata updates.
+     */
+    double getMetadataOpsSavedRate();
+
+    /**
+     * Get the distribution of the number of updates in the metadata batches.
+     */
+    long[] getMetadataBatchSizeBuckets();
 }
@@ -41,6 +41,11 @@ public interface ManagedLedgerMXBean {
      */
     long getNumberOfMessagesInBacklog();
 
+    /**
+     * @return the estimated size of the messages not yet consumed by the slowest consumer
+     */
+    long getBacklogSize();
+
     /**
      * @return the msg/s rate of messages added
      */
@@ -102,9 +107,39 @@ public interface ManagedLedgerMXBean {
 
     double getLedgerSwitchLatencyAverageUsec();
 
+    long[] getLedgerRolloverStallBuckets();
+
+    double getLedgerRolloverStallAverageUsec();
+
+    // Latency of the stages of the add and read operations
+
+    long[] getAddEntryQueueLatencyBuckets();
+
+    long[] getAddEntryBookieLatencyBuckets();
+
+    long[] getAddEntryCallbackLatencyBuckets();
+
+    long[] getReadEntriesQueueLatencyBuckets();
+
+    long[] getReadEntriesStorageLatencyBuckets();
+
+    long[] getReadEntriesCallbackLatencyBuckets();
+
     StatsBuckets getInternalAddEntryLatencyBuckets();
 
     StatsBuckets getInternalEntrySizeBuckets();
 
+    StatsBuckets getInternalAddEntryQueueLatencyBuckets();
+
+    StatsBuckets getInternalAddEntryBookieLatencyBuckets();
+
+    StatsBuckets getInternalAddEntryCallbackLatencyBuckets();
+
+    StatsBuckets getInternalReadEntriesQueueLatencyBuckets();
+
+    StatsBuckets getInternalReadEntriesStorageLatencyBuckets();
+
+    StatsBuckets getInternalReadEntriesCallbackLatencyBuckets();
+
     PendingBookieOpsStats getPendingBookieOpsStats();
 }
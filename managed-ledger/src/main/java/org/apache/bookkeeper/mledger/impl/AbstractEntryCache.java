@@ -0,0 +1,321 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.createManagedLedgerException;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.bookkeeper.client.api.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base of the entry caches of a managed ledger: the read path, falling back to the disk cache and to bookkeeper, and
+ * the accounting of the cache usage. Subclasses provide the storage of the cached entries.
+ */
+public abstract class AbstractEntryCache implements EntryCache {
+
+    protected final EntryCacheManager manager;
+    protected final ManagedLedgerImpl ml;
+    private final PendingReadsManager pendingReadsManager;
+    private final EntryCacheManager.NamespaceCacheUsage namespaceUsage;
+    protected final DiskEntryCache diskCache;
+
+    protected static final double MB = 1024 * 1024;
+
+    protected AbstractEntryCache(EntryCacheManager manager, ManagedLedgerImpl ml) {
+        this.manager = manager;
+        this.ml = ml;
+        this.pendingReadsManager = new PendingReadsManager(manager.mlFactoryMBean);
+        this.namespaceUsage = manager.getNamespaceUsage(ml.getName());
+        this.diskCache = manager.getDiskCache();
+    }
+
+    @Override
+    public String getName() {
+        return ml.getName();
+    }
+
+    /**
+     * Check the namespace quota and the admission policy before inserting an entry.
+     */
+    protected boolean canInsert(EntryImpl entry) {
+        if (!manager.hasSpaceInNamespace(namespaceUsage)) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Skipping cache while namespace is over quota: {} - size: {}", ml.getName(),
+                        entry.getPosition(), entry.getLength());
+            }
+            return false;
+        }
+
+        if (!manager.shouldAdmit(this, entry)) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Entry not admitted in cache by the eviction policy: {} - size: {}", ml.getName(),
+                        entry.getPosition(), entry.getLength());
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    protected void onEntriesAdded(long size) {
+        manager.entryAdded(size);
+        namespaceUsage.entryAdded(size);
+    }
+
+    protected void onEntriesRemoved(long size) {
+        manager.entriesRemoved(size);
+        namespaceUsage.entriesRemoved(size);
+    }
+
+    /**
+     * Get the position from which the entries dropped from memory should be written to the disk cache, because some
+     * cursor still has to read them.
+     *
+     * @return the position, or null if nothing has to be written to disk
+     */
+    protected PositionImpl getSpillPosition() {
+        return diskCache != null ? ml.getSlowestReaderPosition() : null;
+    }
+
+    @Override
+    public void asyncReadEntry(ReadHandle lh, PositionImpl position, final ReadEntryCallback callback,
+            final Object ctx) {
+        try {
+            asyncReadEntry0(lh, position, callback, ctx);
+        } catch (Throwable t) {
+            log.warn("failed to read entries for {}-{}", lh.getId(), position, t);
+            // invalidate all entries related to ledger from the cache (it might happen if entry gets corrupt
+            // (entry.data is already deallocate due to any race-condition) so, invalidate cache and next time read from
+            // the bookie)
+            invalidateAllEntries(lh.getId());
+            callback.readEntryFailed(createManagedLedgerException(t), ctx);
+        }
+    }
+
+    private void asyncReadEntry0(ReadHandle lh, PositionImpl position, final ReadEntryCallback callback,
+            final Object ctx) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Reading entry ledger {}: {}", ml.getName(), lh.getId(), position.getEntryId());
+        }
+        EntryImpl entry = getCachedEntry(position);
+        if (entry != null) {
+            EntryImpl cachedEntry = EntryImpl.create(entry);
+            entry.release();
+            manager.mlFactoryMBean.recordCacheHit(cachedEntry.getLength());
+            callback.readEntryComplete(cachedEntry, ctx);
+        } else {
+            EntryImpl diskEntry = diskCache != null
+                    ? diskCache.get(position.getLedgerId(), position.getEntryId())
+                    : null;
+            if (diskEntry != null) {
+                manager.mlFactoryMBean.recordDiskCacheHits(1, diskEntry.getLength());
+                callback.readEntryComplete(diskEntry, ctx);
+                return;
+            }
+
+            lh.readAsync(position.getEntryId(), position.getEntryId()).whenCompleteAsync(
+                    (ledgerEntries, exception) -> {
+                        if (exception != null) {
+                            ml.invalidateLedgerHandle(lh, exception);
+                            callback.readEntryFailed(createManagedLedgerException(exception), ctx);
+                            return;
+                        }
+
+                        try {
+                            Iterator<LedgerEntry> iterator = ledgerEntries.iterator();
+                            if (iterator.hasNext()) {
+                                LedgerEntry ledgerEntry = iterator.next();
+                                EntryImpl returnEntry = EntryImpl.create(ledgerEntry);
+
+                                manager.mlFactoryMBean.recordCacheMiss(1, returnEntry.getLength());
+                                ml.mbean.addReadEntriesSample(1, returnEntry.getLength());
+                                callback.readEntryComplete(returnEntry, ctx);
+                            } else {
+                                // got an empty sequence
+                                callback.readEntryFailed(new ManagedLedgerException("Could not read given position"),
+                                                         ctx);
+                            }
+                        } finally {
+                            ledgerEntries.close();
+                        }
+                    }, ml.getExecutor().chooseThread(ml.getName())).exceptionally(exception->{
+                    	  ml.invalidateLedgerHandle(lh, exception);
+                          callback.readEntryFailed(createManagedLedgerException(exception), ctx);
+                          return null;
+                    }
+                    );
+        }
+    }
+
+    @Override
+    public void asyncReadEntry(ReadHandle lh, long firstEntry, long lastEntry, boolean isSlowestReader,
+            final ReadEntriesCallback callback, Object ctx) {
+        try {
+            asyncReadEntry0(lh, firstEntry, lastEntry, isSlowestReader, callback, ctx);
+        } catch (Throwable t) {
+            log.warn("failed to read entries for {}--{}-{}", lh.getId(), firstEntry, lastEntry, t);
+            // invalidate all entries related to ledger from the cache (it might happen if entry gets corrupt
+            // (entry.data is already deallocate due to any race-condition) so, invalidate cache and next time read from
+            // the bookie)
+            invalidateAllEntries(lh.getId());
+            callback.readEntriesFailed(createManagedLedgerException(t), ctx);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void asyncReadEntry0(ReadHandle lh, long firstEntry, long lastEntry, boolean isSlowestReader,
+            final ReadEntriesCallback callback, Object ctx) {
+        final long ledgerId = lh.getId();
+        final int entriesToRead = (int) (lastEntry - firstEntry) + 1;
+        final PositionImpl firstPosition = PositionImpl.get(lh.getId(), firstEntry);
+        final PositionImpl lastPosition = PositionImpl.get(lh.getId(), lastEntry);
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Reading entries range ledger {}: {} to {}", ml.getName(), ledgerId, firstEntry, lastEntry);
+        }
+
+        Collection<EntryImpl> cachedEntries = getCachedEntries(firstPosition, lastPosition);
+
+        if (cachedEntries.size() == entriesToRead) {
+            long totalCachedSize = 0;
+            final List<EntryImpl> entriesToReturn = Lists.newArrayListWithExpectedSize(entriesToRead);
+
+            // All entries found in cache
+            for (EntryImpl entry : cachedEntries) {
+                entriesToReturn.add(EntryImpl.create(entry));
+                totalCachedSize += entry.getLength();
+                entry.release();
+            }
+
+            manager.mlFactoryMBean.recordCacheHits(entriesToReturn.size(), totalCachedSize);
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Ledger {} -- Found in cache entries: {}-{}", ml.getName(), ledgerId, firstEntry,
+                        lastEntry);
+            }
+
+            callback.readEntriesComplete((List) entriesToReturn, ctx);
+
+        } else {
+            if (!cachedEntries.isEmpty()) {
+                cachedEntries.forEach(entry -> entry.release());
+            }
+
+            // Check the disk cache before going to bookkeeper
+            List<EntryImpl> diskEntries = diskCache != null
+                    ? diskCache.getRange(ledgerId, firstEntry, lastEntry)
+                    : null;
+            if (diskEntries != null) {
+                long totalSize = 0;
+                for (EntryImpl entry : diskEntries) {
+                    totalSize += entry.getLength();
+                }
+
+                manager.mlFactoryMBean.recordDiskCacheHits(diskEntries.size(), totalSize);
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Ledger {} -- Found in disk cache entries: {}-{}", ml.getName(), ledgerId,
+                            firstEntry, lastEntry);
+                }
+
+                callback.readEntriesComplete((List) diskEntries, ctx);
+                return;
+            }
+
+            // Read all the entries from bookkeeper, sharing the read with other cursors reading the same range
+            pendingReadsManager.readEntries(lh, firstEntry, lastEntry).whenCompleteAsync(
+                    (entriesToReturn, exception) -> {
+                        if (exception != null) {
+                            if (exception instanceof BKException
+                                && ((BKException)exception).getCode() == BKException.Code.TooManyRequestsException) {
+                                callback.readEntriesFailed(createManagedLedgerException(exception), ctx);
+                            } else {
+                                ml.invalidateLedgerHandle(lh, exception);
+                                ManagedLedgerException mlException = createManagedLedgerException(exception);
+                                callback.readEntriesFailed(mlException, ctx);
+                            }
+                            return;
+                        }
+
+                        checkNotNull(ml.getName());
+                        checkNotNull(ml.getExecutor());
+
+                        long totalSize = 0;
+                        for (EntryImpl entry : entriesToReturn) {
+                            totalSize += entry.getLength();
+                        }
+
+                        manager.mlFactoryMBean.recordCacheMiss(entriesToReturn.size(), totalSize);
+                        ml.getMBean().addReadEntriesSample(entriesToReturn.size(), totalSize);
+
+                        callback.readEntriesComplete((List<Entry>) (List<?>) entriesToReturn, ctx);
+                    }, ml.getExecutor().chooseThread(ml.getName())).exceptionally(exception -> {
+                    	  if (exception instanceof BKException
+                                  && ((BKException)exception).getCode() == BKException.Code.TooManyRequestsException) {
+                                  callback.readEntriesFailed(createManagedLedgerException(exception), ctx);
+                              } else {
+                                  ml.invalidateLedgerHandle(lh, exception);
+                                  ManagedLedgerException mlException = createManagedLedgerException(exception);
+                                  callback.readEntriesFailed(mlException, ctx);
+                              }
+                    	return null;
+                    });
+        }
+    }
+
+    /**
+     * Lookup a single entry in the cache storage.
+     *
+     * @param position
+     *            the position of the entry
+     * @return the cached entry, retained for the caller, or null if not present
+     */
+    protected abstract EntryImpl getCachedEntry(PositionImpl position);
+
+    /**
+     * Lookup a range of entries in the cache storage.
+     *
+     * @param firstPosition
+     *            the first position of the range (inclusive)
+     * @param lastPosition
+     *            the last position of the range (inclusive)
+     * @return the entries found in cache, each one retained for the caller
+     */
+    protected abstract Collection<EntryImpl> getCachedEntries(PositionImpl firstPosition, PositionImpl lastPosition);
+
+    @Override
+    public int compareTo(EntryCache other) {
+        return Longs.compare(getSize(), other.getSize());
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(AbstractEntryCache.class);
+}
@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.common.collect.Lists;
+import com.google.protobuf.CodedOutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.AckBitmap;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.AckBitmapContainer;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet;
+
+/**
+ * Encodes the individually acknowledged entries of a cursor as compressed bitmaps.
+ *
+ * <p/>Entry ids of each ledger are split in containers of 65536 entries, similarly to a roaring bitmap. Each container
+ * is stored either as the words of a plain bitmap, which is compact when acks are dense and fragmented, or as a list
+ * of delta-encoded runs, which is compact when acks are clustered. The representation is chosen per container.
+ *
+ * <p/>The bitmaps can be split in multiple chunks, each one bounded in size, so that an arbitrary large ack state can
+ * be stored across multiple entries of the cursor ledger.
+ */
+class AckBitmapCodec {
+
+    static final int CONTAINER_BITS = 16;
+    static final int CONTAINER_SIZE = 1 << CONTAINER_BITS;
+
+    private final long maxChunkSize;
+    private final List<List<AckBitmap>> chunks = Lists.newArrayList();
+    private List<AckBitmap> currentChunk = Lists.newArrayList();
+    private long currentChunkSize = 0;
+
+    private AckBitmap.Builder currentBitmap = null;
+    private long ledgerId = -1;
+    private long containerKey = -1;
+
+    // Runs of the current container, as offsets within the container (both inclusive)
+    private int[] runStarts = new int[16];
+    private int[] runEnds = new int[16];
+    private int runsCount = 0;
+
+    /**
+     * @param maxChunkSize
+     *            the approximate max serialized size of the bitmaps in a single chunk
+     */
+    AckBitmapCodec(long maxChunkSize) {
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    /**
+     * Add a range of acknowledged entries. Ranges must be added in increasing order.
+     *
+     * @param ledgerId
+     *            the ledger id
+     * @param firstEntryId
+     *            the first acknowledged entry (inclusive)
+     * @param lastEntryId
+     *            the last acknowledged entry (inclusive)
+     */
+    void add(long ledgerId, long firstEntryId, long lastEntryId) {
+        long entryId = firstEntryId;
+        while (entryId <= lastEntryId) {
+            long key = entryId >>> CONTAINER_BITS;
+            if (ledgerId != this.ledgerId || key != containerKey) {
+                flushContainer();
+                if (ledgerId != this.ledgerId) {
+                    flushBitmap();
+                    this.ledgerId = ledgerId;
+                }
+                containerKey = key;
+            }
+
+            long end = Math.min(lastEntryId, (key << CONTAINER_BITS) + CONTAINER_SIZE - 1);
+            addRun((int) (entryId & (CONTAINER_SIZE - 1)), (int) (end & (CONTAINER_SIZE - 1)));
+            entryId = end + 1;
+        }
+    }
+
+    /**
+     * @return the encoded bitmaps, split in chunks
+     */
+    List<List<AckBitmap>> finish() {
+        flushContainer();
+        flushBitmap();
+        if (!currentChunk.isEmpty()) {
+            chunks.add(currentChunk);
+            currentChunk = Lists.newArrayList();
+        }
+        return chunks;
+    }
+
+    private void addRun(int start, int end) {
+        if (runsCount > 0 && runEnds[runsCount - 1] + 1 >= start) {
+            // Adjacent to the previous run
+            runEnds[runsCount - 1] = Math.max(runEnds[runsCount - 1], end);
+            return;
+        }
+
+        if (runsCount == runStarts.length) {
+            runStarts = Arrays.copyOf(runStarts, runsCount * 2);
+            runEnds = Arrays.copyOf(runEnds, runsCount * 2);
+        }
+        runStarts[runsCount] = start;
+        runEnds[runsCount] = end;
+        ++runsCount;
+    }
+
+    private void flushContainer() {
+        if (runsCount == 0) {
+            return;
+        }
+
+        AckBitmapContainer container = encodeContainer();
+        runsCount = 0;
+
+        int size = container.getSerializedSize();
+        if (currentChunkSize > 0 && currentChunkSize + size > maxChunkSize) {
+            // Close the current chunk and continue the bitmap of the same ledger in the next one
+            flushBitmap();
+            chunks.add(currentChunk);
+            currentChunk = Lists.newArrayList();
+            currentChunkSize = 0;
+        }
+
+        if (currentBitmap == null) {
+            currentBitmap = AckBitmap.newBuilder().setLedgerId(ledgerId);
+        }
+        currentBitmap.addContainers(container);
+        currentChunkSize += size;
+    }
+
+    private AckBitmapContainer encodeContainer() {
+        AckBitmapContainer.Builder builder = AckBitmapContainer.newBuilder().setKey(containerKey);
+
+        int runsSize = 0;
+        int previousEnd = -1;
+        for (int i = 0; i < runsCount; i++) {
+            runsSize += CodedOutputStream.computeUInt32SizeNoTag(runStarts[i] - previousEnd - 1);
+            runsSize += CodedOutputStream.computeUInt32SizeNoTag(runEnds[i] - runStarts[i]);
+            previousEnd = runEnds[i];
+        }
+
+        int words = (runEnds[runsCount - 1] >> 6) + 1;
+        if (runsSize <= words * Long.BYTES) {
+            previousEnd = -1;
+            for (int i = 0; i < runsCount; i++) {
+                builder.addRuns(runStarts[i] - previousEnd - 1);
+                builder.addRuns(runEnds[i] - runStarts[i]);
+                previousEnd = runEnds[i];
+            }
+        } else {
+            BitSet bitSet = new BitSet(words * Long.SIZE);
+            for (int i = 0; i < runsCount; i++) {
+                bitSet.set(runStarts[i], runEnds[i] + 1);
+            }
+            for (long word : bitSet.toLongArray()) {
+                builder.addBitmap(word);
+            }
+        }
+
+        return builder.build();
+    }
+
+    private void flushBitmap() {
+        if (currentBitmap != null) {
+            currentChunk.add(currentBitmap.build());
+            currentBitmap = null;
+        }
+    }
+
+    /**
+     * Add all the entries of a list of bitmaps into a range set.
+     */
+    static void decode(List<AckBitmap> bitmaps, LongPairRangeSet<PositionImpl> rangeSet) {
+        for (AckBitmap bitmap : bitmaps) {
+            long ledgerId = bitmap.getLedgerId();
+            for (AckBitmapContainer container : bitmap.getContainersList()) {
+                long base = container.getKey() << CONTAINER_BITS;
+
+                if (container.getBitmapCount() > 0) {
+                    long[] words = new long[container.getBitmapCount()];
+                    for (int i = 0; i < words.length; i++) {
+                        words[i] = container.getBitmap(i);
+                    }
+
+                    BitSet bitSet = BitSet.valueOf(words);
+                    int start = bitSet.nextSetBit(0);
+                    while (start >= 0) {
+                        int end = bitSet.nextClearBit(start);
+                        rangeSet.addOpenClosed(ledgerId, base + start - 1, ledgerId, base + end - 1);
+                        start = bitSet.nextSetBit(end);
+                    }
+                } else {
+                    long previousEnd = base - 1;
+                    for (int i = 0; i + 1 < container.getRunsCount(); i += 2) {
+                        long start = previousEnd + 1 + container.getRuns(i);
+                        long end = start + container.getRuns(i + 1);
+                        rangeSet.addOpenClosed(ledgerId, start - 1, ledgerId, end);
+                        previousEnd = end;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-ahead buffer for a cursor that is catching up with the backlog.
+ *
+ * <p/>Once a cursor has issued a few reads that are sequential within the same ledger, the entries following the last
+ * read are prefetched in background, so that the next read from the dispatcher can be served directly from memory
+ * instead of waiting for the bookies.
+ *
+ * <p/>The number of entries prefetched is adjusted based on the rate at which the cursor consumes entries and on the
+ * observed latency of the prefetch reads, so that the buffer covers the time needed to fetch the next window. The
+ * memory used by all the read-ahead buffers in the broker is bounded by the limit configured in the
+ * {@link EntryCacheManager}.
+ *
+ * <p/>The buffer is discarded whenever the cursor reads out of sequence (eg: after a seek or a rewind).
+ */
+class CursorReadAhead {
+
+    // Number of sequential reads after which the cursor is considered to be catching up
+    private static final int SEQUENTIAL_READS_THRESHOLD = 2;
+
+    private final ManagedLedgerImpl ml;
+    private final EntryCacheManager manager;
+    private final int maxEntries;
+    private final long maxEntrySize;
+
+    // Entries prefetched, in order, for ledger "ledgerId"
+    private final ArrayDeque<EntryImpl> buffer = new ArrayDeque<>();
+    private long bufferSize = 0;
+    private long ledgerId = -1;
+
+    // The entry expected to be read next, if the cursor keeps reading sequentially
+    private long nextEntryId = -1;
+    // The next entry to prefetch
+    private long nextPrefetchEntryId = -1;
+    private int sequentialReads = 0;
+
+    private boolean prefetchInProgress = false;
+    private boolean closed = false;
+    // Incremented every time the buffer is discarded, to ignore the results of prefetch reads no longer relevant
+    private long generation = 0;
+
+    // Consume rate tracking
+    private long lastReadTimestamp = 0;
+    private double consumeRate = 0;
+    private double prefetchLatencySeconds = 0;
+    private double avgEntrySize = 0;
+
+    CursorReadAhead(ManagedLedgerImpl ml, EntryCacheManager manager, int maxEntries, long maxEntrySize) {
+        this.ml = ml;
+        this.manager = manager;
+        this.maxEntries = maxEntries;
+        this.maxEntrySize = Math.max(1, maxEntrySize);
+    }
+
+    /**
+     * Try to serve a read from the read-ahead buffer, and schedule the next prefetch.
+     *
+     * @param lh
+     *            the ledger handle
+     * @param firstEntry
+     *            the first entry to read (inclusive)
+     * @param lastEntry
+     *            the last entry to read (inclusive)
+     * @param lastEntryInLedger
+     *            the last entry that can be read in the ledger
+     * @param callback
+     *            the callback to complete when the entries are served from the buffer
+     * @param ctx
+     *            the context object
+     * @return true if the read was completed from the buffer, false if the caller needs to perform the read
+     */
+    boolean read(ReadHandle lh, long firstEntry, long lastEntry, long lastEntryInLedger,
+            ReadEntriesCallback callback, Object ctx) {
+        List<Entry> entries = null;
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+
+            long now = System.nanoTime();
+            int entriesToRead = (int) (lastEntry - firstEntry + 1);
+
+            if (lh.getId() == ledgerId && firstEntry == nextEntryId) {
+                ++sequentialReads;
+                updateConsumeRate(now, entriesToRead);
+            } else {
+                discard();
+                ledgerId = lh.getId();
+                sequentialReads = 0;
+                nextPrefetchEntryId = lastEntry + 1;
+            }
+            lastReadTimestamp = now;
+            nextEntryId = lastEntry + 1;
+
+            // Drop entries that were already read by the cursor while they were being prefetched
+            while (!buffer.isEmpty() && buffer.peekFirst().getEntryId() < firstEntry) {
+                removeFirst().release();
+            }
+
+            if (!buffer.isEmpty() && buffer.peekFirst().getEntryId() == firstEntry
+                    && buffer.peekLast().getEntryId() >= lastEntry) {
+                entries = Lists.newArrayListWithExpectedSize(entriesToRead);
+                long size = 0;
+                for (int i = 0; i < entriesToRead; i++) {
+                    EntryImpl entry = removeFirst();
+                    size += entry.getLength();
+                    entries.add(entry);
+                }
+                manager.mlFactoryMBean.recordReadAheadHits(entries.size(), size);
+            } else if (!buffer.isEmpty()) {
+                // Partially available, go to the cache for the entire read and restart prefetching after it
+                discard();
+                nextPrefetchEntryId = lastEntry + 1;
+            } else if (!prefetchInProgress) {
+                nextPrefetchEntryId = Math.max(nextPrefetchEntryId, lastEntry + 1);
+            }
+
+            if (sequentialReads >= SEQUENTIAL_READS_THRESHOLD) {
+                maybePrefetch(lh, entriesToRead, lastEntryInLedger);
+            }
+        }
+
+        if (entries != null) {
+            callback.readEntriesComplete(entries, ctx);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private void updateConsumeRate(long now, int entriesRead) {
+        double elapsedSeconds = (now - lastReadTimestamp) / (double) TimeUnit.SECONDS.toNanos(1);
+        if (elapsedSeconds <= 0) {
+            return;
+        }
+
+        double rate = entriesRead / elapsedSeconds;
+        consumeRate = consumeRate == 0 ? rate : 0.7 * consumeRate + 0.3 * rate;
+    }
+
+    /**
+     * Compute the number of entries to keep ahead of the cursor: enough to cover the consumption during a prefetch
+     * round trip, with a margin, bounded by the configured max.
+     */
+    private int windowSize(int entriesPerRead) {
+        long window = (long) Math.ceil(consumeRate * prefetchLatencySeconds * 2);
+        return (int) Math.min(maxEntries, Math.max(entriesPerRead * 2L, window));
+    }
+
+    private void maybePrefetch(ReadHandle lh, int entriesPerRead, long lastEntryInLedger) {
+        if (prefetchInProgress || nextPrefetchEntryId > lastEntryInLedger) {
+            return;
+        }
+
+        int window = windowSize(entriesPerRead);
+        int entriesToPrefetch = window - buffer.size();
+        if (entriesToPrefetch < entriesPerRead) {
+            // Still enough entries in the buffer
+            return;
+        }
+
+        double entrySize = avgEntrySize;
+        if (entrySize == 0) {
+            // The size of the entries is not known until the first prefetch completes: assume they have the max size
+            // and only prefetch as many as fit in the space left
+            entrySize = maxEntrySize;
+            entriesToPrefetch = (int) Math.min(entriesToPrefetch, manager.getReadAheadAvailableSpace() / maxEntrySize);
+            if (entriesToPrefetch == 0) {
+                return;
+            }
+        }
+
+        long firstEntry = nextPrefetchEntryId;
+        long lastEntry = Math.min(firstEntry + entriesToPrefetch - 1, lastEntryInLedger);
+        long estimatedSize = (long) (entrySize * (lastEntry - firstEntry + 1));
+        if (!manager.hasSpaceForReadAhead(estimatedSize)) {
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Prefetching entries of ledger {}: {} to {} - window: {}", ml.getName(), lh.getId(),
+                    firstEntry, lastEntry, window);
+        }
+
+        prefetchInProgress = true;
+        nextPrefetchEntryId = lastEntry + 1;
+        final long prefetchGeneration = generation;
+        final long startTime = System.nanoTime();
+
+        ml.entryCache.asyncReadEntry(lh, firstEntry, lastEntry, false, new ReadEntriesCallback() {
+            @Override
+            public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                prefetchComplete(prefetchGeneration, startTime, entries);
+            }
+
+            @Override
+            public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+                log.warn("[{}] Failed to prefetch entries of ledger {}: {}", ml.getName(), lh.getId(),
+                        exception.getMessage());
+                prefetchComplete(prefetchGeneration, startTime, null);
+            }
+        }, null);
+    }
+
+    private synchronized void prefetchComplete(long prefetchGeneration, long startTime, List<Entry> entries) {
+        prefetchInProgress = false;
+        prefetchLatencySeconds = (System.nanoTime() - startTime) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        if (entries == null) {
+            if (prefetchGeneration == generation) {
+                // Restart from the last buffered entry
+                nextPrefetchEntryId = buffer.isEmpty() ? nextEntryId : buffer.peekLast().getEntryId() + 1;
+            }
+            return;
+        }
+
+        if (prefetchGeneration != generation || closed) {
+            entries.forEach(Entry::release);
+            return;
+        }
+
+        long size = 0;
+        for (Entry entry : entries) {
+            buffer.addLast((EntryImpl) entry);
+            size += entry.getLength();
+        }
+        bufferSize += size;
+        manager.readAheadAdded(size);
+
+        if (!entries.isEmpty()) {
+            double entrySize = size / (double) entries.size();
+            avgEntrySize = avgEntrySize == 0 ? entrySize : 0.7 * avgEntrySize + 0.3 * entrySize;
+        }
+    }
+
+    private EntryImpl removeFirst() {
+        EntryImpl entry = buffer.pollFirst();
+        bufferSize -= entry.getLength();
+        manager.readAheadRemoved(entry.getLength());
+        return entry;
+    }
+
+    private void discard() {
+        ++generation;
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        buffer.forEach(EntryImpl::release);
+        buffer.clear();
+        manager.readAheadRemoved(bufferSize);
+        bufferSize = 0;
+    }
+
+    /**
+     * Release all the prefetched entries and stop prefetching.
+     */
+    synchronized void clear() {
+        closed = true;
+        discard();
+        ledgerId = -1;
+        nextEntryId = -1;
+        sequentialReads = 0;
+    }
+
+    /**
+     * @return the number of entries currently buffered (only for tests)
+     */
+    synchronized int getBufferedEntries() {
+        return buffer.size();
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(CursorReadAhead.class);
+}
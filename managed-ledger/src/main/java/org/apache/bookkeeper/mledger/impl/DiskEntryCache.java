@@ -0,0 +1,307 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.mledger.util.SafeRun.safeRun;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Second tier of the entry cache, that keeps on local disk the entries that were dropped from memory while some
+ * cursor still has to read them.
+ *
+ * <p/>Entries are appended to a ring of fixed size segment files, mapped in memory. When the last segment is full, the
+ * oldest segment is recycled, dropping all the entries it contains (FIFO eviction). A single primitive hash map indexes
+ * all the entries by (ledgerId, entryId), pointing to the segment sequence number and the offset and length in the
+ * segment. Ledger ids are unique across the cluster, so the cache can be shared by all the managed ledgers.
+ *
+ * <p/>Writes are done asynchronously by a single thread, so that the threads evicting entries from memory never block
+ * on the disk. Reads copy the entry out of the mapped segment, so the returned entries stay valid after the segment is
+ * recycled.
+ *
+ * <p/>The index only lives in memory: the content of the segment files is discarded when the cache is created.
+ */
+public class DiskEntryCache {
+
+    private final File directory;
+    private final int segmentSize;
+    private final Segment[] segments;
+    private final ConcurrentLongLongPairHashMap index;
+    private final AtomicLong size = new AtomicLong(0);
+
+    private final ExecutorService writer;
+    private final AtomicLong pendingWritesSize = new AtomicLong(0);
+    private final long maxPendingWritesSize;
+
+    // Current segment and next sequence number, only accessed by the writer thread
+    private int currentSegment = 0;
+    private long nextSequence = 1;
+
+    public DiskEntryCache(File directory, long maxSize, int segmentSize) throws IOException {
+        checkArgument(segmentSize > 0);
+        checkArgument(maxSize >= 2L * segmentSize, "The disk cache must hold at least 2 segments");
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segments = new Segment[(int) (maxSize / segmentSize)];
+        this.index = new ConcurrentLongLongPairHashMap();
+        this.maxPendingWritesSize = segmentSize;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create disk cache directory " + directory);
+        }
+
+        try {
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = new Segment(new File(directory, String.format("segment-%d.data", i)), segmentSize);
+            }
+        } catch (IOException e) {
+            deleteSegmentFiles();
+            throw e;
+        }
+
+        segments[0].reset(nextSequence++);
+        this.writer = Executors.newSingleThreadExecutor(new DefaultThreadFactory("bookkeeper-ml-disk-cache"));
+
+        log.info("Initialized managed-ledger disk cache of {} Mb in {} -- Segments: {}", maxSize / EntryCacheManager.MB,
+                directory, segments.length);
+    }
+
+    /**
+     * Schedule the write of an entry to the disk cache. The write is skipped if the entry is already cached, if it
+     * doesn't fit in a segment or if too many writes are already pending.
+     *
+     * @param ledgerId
+     *            the ledger id
+     * @param entryId
+     *            the entry id
+     * @param data
+     *            the entry payload, its reader index is not modified
+     * @return whether the write was scheduled
+     */
+    public boolean put(long ledgerId, long entryId, ByteBuf data) {
+        int length = data.readableBytes();
+        if (length == 0 || length > segmentSize || index.containsKey(ledgerId, entryId)) {
+            return false;
+        }
+
+        if (pendingWritesSize.addAndGet(length) > maxPendingWritesSize) {
+            pendingWritesSize.addAndGet(-length);
+            return false;
+        }
+
+        ByteBuf buffer = data.retainedDuplicate();
+        writer.execute(safeRun(() -> {
+            try {
+                write(ledgerId, entryId, buffer);
+            } finally {
+                buffer.release();
+                pendingWritesSize.addAndGet(-length);
+            }
+        }));
+        return true;
+    }
+
+    private void write(long ledgerId, long entryId, ByteBuf data) {
+        if (index.containsKey(ledgerId, entryId)) {
+            return;
+        }
+
+        int length = data.readableBytes();
+        Segment segment = segments[currentSegment];
+        if (segment.writeOffset + length > segmentSize) {
+            currentSegment = (currentSegment + 1) % segments.length;
+            segment = segments[currentSegment];
+            recycle(segment);
+        }
+
+        int offset = segment.writeOffset;
+        ByteBuffer dst = segment.buffer.duplicate();
+        dst.position(offset);
+        dst.limit(offset + length);
+        data.getBytes(data.readerIndex(), dst);
+
+        segment.writeOffset += length;
+        segment.addKey(ledgerId, entryId);
+        size.addAndGet(length);
+
+        // Publish the entry to the readers
+        index.put(ledgerId, entryId, segment.sequence, ((long) offset << 32) | length);
+    }
+
+    /**
+     * Drop all the entries of a segment and prepare it for new writes.
+     */
+    private void recycle(Segment segment) {
+        segment.lock.writeLock().lock();
+        try {
+            for (int i = 0; i < segment.keysCount; i++) {
+                index.remove(segment.keys[2 * i], segment.keys[2 * i + 1]);
+            }
+            size.addAndGet(-segment.writeOffset);
+            segment.reset(nextSequence++);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Read an entry from the disk cache.
+     *
+     * @return the entry, or null if it's not cached
+     */
+    public EntryImpl get(long ledgerId, long entryId) {
+        LongPair location = index.get(ledgerId, entryId);
+        if (location == null) {
+            return null;
+        }
+
+        Segment segment = segments[(int) ((location.first - 1) % segments.length)];
+        int offset = (int) (location.second >>> 32);
+        int length = (int) location.second;
+
+        segment.lock.readLock().lock();
+        try {
+            if (segment.sequence != location.first) {
+                // Segment was recycled after the lookup
+                return null;
+            }
+
+            ByteBuf data = EntryCacheImpl.ALLOCATOR.directBuffer(length, length);
+            ByteBuffer src = segment.buffer.duplicate();
+            src.position(offset);
+            src.limit(offset + length);
+            data.writeBytes(src);
+
+            EntryImpl entry = EntryImpl.create(ledgerId, entryId, data);
+            data.release();
+            return entry;
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read a range of entries from the disk cache.
+     *
+     * @return the entries, or null if any entry of the range is not cached
+     */
+    public List<EntryImpl> getRange(long ledgerId, long firstEntry, long lastEntry) {
+        if (!index.containsKey(ledgerId, firstEntry) || !index.containsKey(ledgerId, lastEntry)) {
+            // Quick check before copying any data
+            return null;
+        }
+
+        List<EntryImpl> entries = Lists.newArrayListWithExpectedSize((int) (lastEntry - firstEntry + 1));
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            EntryImpl entry = get(ledgerId, entryId);
+            if (entry == null) {
+                entries.forEach(EntryImpl::release);
+                return null;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+    public void close() {
+        writer.shutdownNow();
+        index.clear();
+        deleteSegmentFiles();
+    }
+
+    private void deleteSegmentFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-") && name.endsWith(".data"));
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    log.warn("Failed to delete disk cache segment {}", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Just for testing.
+     */
+    long getNumberOfEntries() {
+        return index.size();
+    }
+
+    private static class Segment {
+        private final MappedByteBuffer buffer;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // Only updated by the writer thread, while holding the write lock when recycling
+        private volatile long sequence;
+        private int writeOffset;
+
+        // (ledgerId, entryId) pairs of the entries stored in the segment
+        private long[] keys = new long[256];
+        private int keysCount;
+
+        Segment(File file, int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(size);
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        void addKey(long ledgerId, long entryId) {
+            if (2 * keysCount + 2 > keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+            keys[2 * keysCount] = ledgerId;
+            keys[2 * keysCount + 1] = entryId;
+            keysCount++;
+        }
+
+        void reset(long sequence) {
+            this.sequence = sequence;
+            this.writeOffset = 0;
+            this.keysCount = 0;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(DiskEntryCache.class);
+}
@@ -23,8 +23,35 @@ import java.util.List;
 /**
  * Cache eviction policy abstraction interface.
  *
+ * <p/>Implementations are configured by class name in the {@link org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig}
+ * and must provide a public no-arguments constructor. A single instance is shared by all the caches of a factory, so
+ * all the methods can be called concurrently.
  */
 public interface EntryCacheEvictionPolicy {
+
+    /**
+     * Decide whether an entry that was just added to a managed ledger should be stored in its cache.
+     *
+     * @param cache
+     *            the cache where the entry would be inserted
+     * @param entry
+     *            the entry to insert
+     * @return true if the entry can be inserted in the cache
+     */
+    default boolean shouldAdmit(EntryCache cache, EntryImpl entry) {
+        return true;
+    }
+
+    /**
+     * Record that a cursor has read from the managed ledger of the given cache. Reads that were marked as scan reads
+     * are not reported.
+     *
+     * @param cache
+     *            the cache of the managed ledger being read
+     */
+    default void recordAccess(EntryCache cache) {
+    }
+
     /**
      * Perform the cache eviction of at least sizeToFree bytes on the supplied list of caches.
      *
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Frequency based eviction policy, in the style of TinyLFU.
+ *
+ * <p/>The read frequency of each managed ledger is estimated with a small count-min sketch, whose counters are halved
+ * periodically so that the estimation follows the recent access pattern. Scan reads are not counted.
+ *
+ * <p/>On eviction, the caches of the least frequently read managed ledgers are drained first, regardless of their
+ * size. The frequency of the last cache that had to give up entries becomes the admission threshold: until it decays,
+ * new entries are only admitted in caches that are read at least as often. This prevents ledgers that nobody is
+ * reading, or that are only replayed once, from pushing out the data of the ledgers with active tailing readers.
+ */
+public class EntryCacheFrequencyEvictionPolicy implements EntryCacheEvictionPolicy {
+
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1024;
+    private static final int SAMPLE_SIZE = 10 * WIDTH;
+    private static final int[] SEEDS = { 0x97cb3127, 0xb3d4e3e9, 0xc2b2ae35, 0x27d4eb2f };
+
+    private final AtomicIntegerArray table = new AtomicIntegerArray(DEPTH * WIDTH);
+    private final AtomicLong additions = new AtomicLong();
+    private volatile int admissionThreshold = 0;
+
+    @Override
+    public boolean shouldAdmit(EntryCache cache, EntryImpl entry) {
+        int threshold = admissionThreshold;
+        return threshold == 0 || frequency(cache.getName()) >= threshold;
+    }
+
+    @Override
+    public void recordAccess(EntryCache cache) {
+        int hash = spread(cache.getName().hashCode());
+        for (int i = 0; i < DEPTH; i++) {
+            table.incrementAndGet(indexOf(hash, i));
+        }
+
+        if (additions.incrementAndGet() % SAMPLE_SIZE == 0) {
+            reset();
+        }
+    }
+
+    @Override
+    public void doEviction(List<EntryCache> caches, long sizeToFree) {
+        checkArgument(sizeToFree > 0);
+        checkArgument(!caches.isEmpty());
+
+        // Least frequently read first. Between caches read with the same frequency, prefer evicting the bigger ones
+        caches.sort((c1, c2) -> {
+            int res = Integer.compare(frequency(c1.getName()), frequency(c2.getName()));
+            return res != 0 ? res : c2.compareTo(c1);
+        });
+
+        int evictedEntries = 0;
+        long evictedSize = 0;
+        int lastVictimFrequency = 0;
+
+        for (EntryCache entryCache : caches) {
+            if (evictedSize >= sizeToFree) {
+                break;
+            }
+
+            long singleCacheSizeToFree = Math.min(sizeToFree - evictedSize, entryCache.getSize());
+            if (singleCacheSizeToFree <= 0) {
+                continue;
+            }
+
+            Pair<Integer, Long> evicted = entryCache.evictEntries(singleCacheSizeToFree);
+            evictedEntries += evicted.getLeft();
+            evictedSize += evicted.getRight();
+            lastVictimFrequency = frequency(entryCache.getName());
+        }
+
+        admissionThreshold = lastVictimFrequency;
+
+        log.info("Completed cache eviction. Removed {} entries ({} Mb). Admission frequency threshold: {}",
+                evictedEntries, evictedSize / EntryCacheManager.MB, lastVictimFrequency);
+    }
+
+    /**
+     * Estimate the number of reads of a managed ledger since the sketch was last aged.
+     */
+    int frequency(String name) {
+        int hash = spread(name.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, table.get(indexOf(hash, i)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Halve all the counters and the admission threshold, so that the old accesses count less than the recent ones.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            table.getAndUpdate(i, value -> value >>> 1);
+        }
+        admissionThreshold = admissionThreshold >>> 1;
+    }
+
+    private static int indexOf(int hash, int row) {
+        int h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 16;
+        return row * WIDTH + (h & (WIDTH - 1));
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(EntryCacheFrequencyEvictionPolicy.class);
+}
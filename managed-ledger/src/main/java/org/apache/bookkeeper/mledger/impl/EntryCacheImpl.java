@@ -19,25 +19,12 @@
 package org.apache.bookkeeper.mledger.impl;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.base.Preconditions.checkNotNull;
-import static org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.createManagedLedgerException;
-
-import com.google.common.collect.Lists;
-import com.google.common.primitives.Longs;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
 
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
-
-import org.apache.bookkeeper.client.api.BKException;
-import org.apache.bookkeeper.client.api.LedgerEntry;
-import org.apache.bookkeeper.client.api.ReadHandle;
-import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
-import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
-import org.apache.bookkeeper.mledger.ManagedLedgerException;
+
 import org.apache.bookkeeper.mledger.util.RangeCache;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -46,18 +33,13 @@ import org.slf4j.LoggerFactory;
 /**
  * Cache data payload for entries of all ledgers.
  */
-public class EntryCacheImpl implements EntryCache {
+public class EntryCacheImpl extends AbstractEntryCache {
 
-    private final EntryCacheManager manager;
-    private final ManagedLedgerImpl ml;
     private final RangeCache<PositionImpl, EntryImpl> entries;
     private final boolean copyEntries;
 
-    private static final double MB = 1024 * 1024;
-
     public EntryCacheImpl(EntryCacheManager manager, ManagedLedgerImpl ml, boolean copyEntries) {
-        this.manager = manager;
-        this.ml = ml;
+        super(manager, ml);
         this.entries = new RangeCache<>(EntryImpl::getLength, EntryImpl::getTimestamp);
         this.copyEntries = copyEntries;
 
@@ -66,11 +48,6 @@ public class EntryCacheImpl implements EntryCache {
         }
     }
 
-    @Override
-    public String getName() {
-        return ml.getName();
-    }
-
     public final static PooledByteBufAllocator ALLOCATOR = new PooledByteBufAllocator(true, // preferDirect
             0, // nHeapArenas,
             PooledByteBufAllocator.defaultNumDirectArena(), // nDirectArena
@@ -84,7 +61,7 @@ public class EntryCacheImpl implements EntryCache {
 
     @Override
     public boolean insert(EntryImpl entry) {
-        if (!manager.hasSpaceInCache()) {
+        if (!manager.hasSpaceInCache(entry.getLength())) {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Skipping cache while doing eviction: {} - size: {}", ml.getName(), entry.getPosition(),
                         entry.getLength());
@@ -92,6 +69,10 @@ public class EntryCacheImpl implements EntryCache {
             return false;
         }
 
+        if (!canInsert(entry)) {
+            return false;
+        }
+
         if (log.isDebugEnabled()) {
             log.debug("[{}] Adding entry to cache: {} - size: {}", ml.getName(), entry.getPosition(),
                     entry.getLength());
@@ -112,7 +93,7 @@ public class EntryCacheImpl implements EntryCache {
         EntryImpl cacheEntry = EntryImpl.create(position, cachedData);
         cachedData.release();
         if (entries.put(position, cacheEntry)) {
-            manager.entryAdded(entry.getLength());
+            onEntriesAdded(entry.getLength());
             return true;
         } else {
             // entry was not inserted into cache, we need to discard it
@@ -121,6 +102,19 @@ public class EntryCacheImpl implements EntryCache {
         }
     }
 
+    private RangeCache.RemovalListener<PositionImpl, EntryImpl> spillListener() {
+        final PositionImpl spillPosition = getSpillPosition();
+        if (spillPosition == null) {
+            return null;
+        }
+
+        return (position, entry) -> {
+            if (position.compareTo(spillPosition) >= 0) {
+                diskCache.put(position.getLedgerId(), position.getEntryId(), entry.getDataBuffer());
+            }
+        };
+    }
+
     private ByteBuf copyEntry(EntryImpl entry) {
         // Copy the entry into a buffer owned by the cache. The reason is that the incoming entry is retaining a buffer
         // from netty, usually allocated in 64Kb chunks. So if we just retain the entry without copying it, we might
@@ -154,7 +148,7 @@ public class EntryCacheImpl implements EntryCache {
             return;
         }
 
-        Pair<Integer, Long> removed = entries.removeRange(firstPosition, lastPosition, false);
+        Pair<Integer, Long> removed = entries.removeRange(firstPosition, lastPosition, false, spillListener());
         int entriesRemoved = removed.getLeft();
         long sizeRemoved = removed.getRight();
         if (log.isDebugEnabled()) {
@@ -162,7 +156,7 @@ public class EntryCacheImpl implements EntryCache {
                     lastPosition, entriesRemoved, sizeRemoved);
         }
 
-        manager.entriesRemoved(sizeRemoved);
+        onEntriesRemoved(sizeRemoved);
     }
 
     @Override
@@ -178,178 +172,23 @@ public class EntryCacheImpl implements EntryCache {
                     ml.getName(), ledgerId, entriesRemoved, sizeRemoved);
         }
 
-        manager.entriesRemoved(sizeRemoved);
+        onEntriesRemoved(sizeRemoved);
     }
 
     @Override
-    public void asyncReadEntry(ReadHandle lh, PositionImpl position, final ReadEntryCallback callback,
-            final Object ctx) {
-        try {
-            asyncReadEntry0(lh, position, callback, ctx);
-        } catch (Throwable t) {
-            log.warn("failed to read entries for {}-{}", lh.getId(), position, t);
-            // invalidate all entries related to ledger from the cache (it might happen if entry gets corrupt
-            // (entry.data is already deallocate due to any race-condition) so, invalidate cache and next time read from
-            // the bookie)
-            invalidateAllEntries(lh.getId());
-            callback.readEntryFailed(createManagedLedgerException(t), ctx);
-        }
-    }
-
-    private void asyncReadEntry0(ReadHandle lh, PositionImpl position, final ReadEntryCallback callback,
-            final Object ctx) {
-        if (log.isDebugEnabled()) {
-            log.debug("[{}] Reading entry ledger {}: {}", ml.getName(), lh.getId(), position.getEntryId());
-        }
-        EntryImpl entry = entries.get(position);
-        if (entry != null) {
-            EntryImpl cachedEntry = EntryImpl.create(entry);
-            entry.release();
-            manager.mlFactoryMBean.recordCacheHit(cachedEntry.getLength());
-            callback.readEntryComplete(cachedEntry, ctx);
-        } else {
-            lh.readAsync(position.getEntryId(), position.getEntryId()).whenCompleteAsync(
-                    (ledgerEntries, exception) -> {
-                        if (exception != null) {
-                            ml.invalidateLedgerHandle(lh, exception);
-                            callback.readEntryFailed(createManagedLedgerException(exception), ctx);
-                            return;
-                        }
-
-                        try {
-                            Iterator<LedgerEntry> iterator = ledgerEntries.iterator();
-                            if (iterator.hasNext()) {
-                                LedgerEntry ledgerEntry = iterator.next();
-                                EntryImpl returnEntry = EntryImpl.create(ledgerEntry);
-
-                                manager.mlFactoryMBean.recordCacheMiss(1, returnEntry.getLength());
-                                ml.mbean.addReadEntriesSample(1, returnEntry.getLength());
-                                callback.readEntryComplete(returnEntry, ctx);
-                            } else {
-                                // got an empty sequence
-                                callback.readEntryFailed(new ManagedLedgerException("Could not read given position"),
-                                                         ctx);
-                            }
-                        } finally {
-                            ledgerEntries.close();
-                        }
-                    }, ml.getExecutor().chooseThread(ml.getName())).exceptionally(exception->{
-                    	  ml.invalidateLedgerHandle(lh, exception);
-                          callback.readEntryFailed(createManagedLedgerException(exception), ctx);
-                          return null;
-                    }
-                    );
-        }
+    protected EntryImpl getCachedEntry(PositionImpl position) {
+        return entries.get(position);
     }
 
     @Override
-    public void asyncReadEntry(ReadHandle lh, long firstEntry, long lastEntry, boolean isSlowestReader,
-            final ReadEntriesCallback callback, Object ctx) {
-        try {
-            asyncReadEntry0(lh, firstEntry, lastEntry, isSlowestReader, callback, ctx);
-        } catch (Throwable t) {
-            log.warn("failed to read entries for {}--{}-{}", lh.getId(), firstEntry, lastEntry, t);
-            // invalidate all entries related to ledger from the cache (it might happen if entry gets corrupt
-            // (entry.data is already deallocate due to any race-condition) so, invalidate cache and next time read from
-            // the bookie)
-            invalidateAllEntries(lh.getId());
-            callback.readEntriesFailed(createManagedLedgerException(t), ctx);
-        }
-    }
-
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    private void asyncReadEntry0(ReadHandle lh, long firstEntry, long lastEntry, boolean isSlowestReader,
-            final ReadEntriesCallback callback, Object ctx) {
-        final long ledgerId = lh.getId();
-        final int entriesToRead = (int) (lastEntry - firstEntry) + 1;
-        final PositionImpl firstPosition = PositionImpl.get(lh.getId(), firstEntry);
-        final PositionImpl lastPosition = PositionImpl.get(lh.getId(), lastEntry);
-
-        if (log.isDebugEnabled()) {
-            log.debug("[{}] Reading entries range ledger {}: {} to {}", ml.getName(), ledgerId, firstEntry, lastEntry);
-        }
-
-        Collection<EntryImpl> cachedEntries = entries.getRange(firstPosition, lastPosition);
-
-        if (cachedEntries.size() == entriesToRead) {
-            long totalCachedSize = 0;
-            final List<EntryImpl> entriesToReturn = Lists.newArrayListWithExpectedSize(entriesToRead);
-
-            // All entries found in cache
-            for (EntryImpl entry : cachedEntries) {
-                entriesToReturn.add(EntryImpl.create(entry));
-                totalCachedSize += entry.getLength();
-                entry.release();
-            }
-
-            manager.mlFactoryMBean.recordCacheHits(entriesToReturn.size(), totalCachedSize);
-            if (log.isDebugEnabled()) {
-                log.debug("[{}] Ledger {} -- Found in cache entries: {}-{}", ml.getName(), ledgerId, firstEntry,
-                        lastEntry);
-            }
-
-            callback.readEntriesComplete((List) entriesToReturn, ctx);
-
-        } else {
-            if (!cachedEntries.isEmpty()) {
-                cachedEntries.forEach(entry -> entry.release());
-            }
-
-            // Read all the entries from bookkeeper
-            lh.readAsync(firstEntry, lastEntry).whenCompleteAsync(
-                    (ledgerEntries, exception) -> {
-                        if (exception != null) {
-                            if (exception instanceof BKException
-                                && ((BKException)exception).getCode() == BKException.Code.TooManyRequestsException) {
-                                callback.readEntriesFailed(createManagedLedgerException(exception), ctx);
-                            } else {
-                                ml.invalidateLedgerHandle(lh, exception);
-                                ManagedLedgerException mlException = createManagedLedgerException(exception);
-                                callback.readEntriesFailed(mlException, ctx);
-                            }
-                            return;
-                        }
-
-                        checkNotNull(ml.getName());
-                        checkNotNull(ml.getExecutor());
-
-                        try {
-                            // We got the entries, we need to transform them to a List<> type
-                            long totalSize = 0;
-                            final List<EntryImpl> entriesToReturn
-                                = Lists.newArrayListWithExpectedSize(entriesToRead);
-                            for (LedgerEntry e : ledgerEntries) {
-                                EntryImpl entry = EntryImpl.create(e);
-
-                                entriesToReturn.add(entry);
-                                totalSize += entry.getLength();
-                            }
-
-                            manager.mlFactoryMBean.recordCacheMiss(entriesToReturn.size(), totalSize);
-                            ml.getMBean().addReadEntriesSample(entriesToReturn.size(), totalSize);
-
-                            callback.readEntriesComplete((List) entriesToReturn, ctx);
-                        } finally {
-                            ledgerEntries.close();
-                        }
-                    }, ml.getExecutor().chooseThread(ml.getName())).exceptionally(exception->{
-                    	  if (exception instanceof BKException
-                                  && ((BKException)exception).getCode() == BKException.Code.TooManyRequestsException) {
-                                  callback.readEntriesFailed(createManagedLedgerException(exception), ctx);
-                              } else {
-                                  ml.invalidateLedgerHandle(lh, exception);
-                                  ManagedLedgerException mlException = createManagedLedgerException(exception);
-                                  callback.readEntriesFailed(mlException, ctx);
-                              }
-                    	return null;
-                    });
-        }
+    protected Collection<EntryImpl> getCachedEntries(PositionImpl firstPosition, PositionImpl lastPosition) {
+        return entries.getRange(firstPosition, lastPosition);
     }
 
     @Override
     public void clear() {
         long removedSize = entries.clear();
-        manager.entriesRemoved(removedSize);
+        onEntriesRemoved(removedSize);
     }
 
     @Override
@@ -357,15 +196,10 @@ public class EntryCacheImpl implements EntryCache {
         return entries.getSize();
     }
 
-    @Override
-    public int compareTo(EntryCache other) {
-        return Longs.compare(getSize(), other.getSize());
-    }
-
     @Override
     public Pair<Integer, Long> evictEntries(long sizeToFree) {
         checkArgument(sizeToFree > 0);
-        Pair<Integer, Long> evicted = entries.evictLeastAccessedEntries(sizeToFree);
+        Pair<Integer, Long> evicted = entries.evictLeastAccessedEntries(sizeToFree, spillListener());
         int evictedEntries = evicted.getLeft();
         long evictedSize = evicted.getRight();
         if (log.isDebugEnabled()) {
@@ -374,14 +208,14 @@ public class EntryCacheImpl implements EntryCache {
                             + " -- Current Size: {} Mb",
                     ml.getName(), sizeToFree / MB, evictedEntries, evictedSize / MB, entries.getSize() / MB);
         }
-        manager.entriesRemoved(evictedSize);
+        onEntriesRemoved(evictedSize);
         return evicted;
     }
 
     @Override
     public void invalidateEntriesBeforeTimestamp(long timestamp) {
-        long evictedSize = entries.evictLEntriesBeforeTimestamp(timestamp);
-        manager.entriesRemoved(evictedSize);
+        long evictedSize = entries.evictLEntriesBeforeTimestamp(timestamp, spillListener());
+        onEntriesRemoved(evictedSize);
     }
 
     private static final Logger log = LoggerFactory.getLogger(EntryCacheImpl.class);
@@ -25,6 +25,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.primitives.Longs;
 import io.netty.buffer.ByteBuf;
+import java.io.File;
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
@@ -40,6 +42,7 @@ import org.apache.bookkeeper.mledger.AsyncCallbacks;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.Entry;
 import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,9 +53,15 @@ public class EntryCacheManager {
     private final long maxSize;
     private final long evictionTriggerThreshold;
     private final double cacheEvictionWatermak;
+    private final long cacheEvictionWatermarkSize;
     private final AtomicLong currentSize = new AtomicLong(0);
+    private final long readAheadMaxSize;
+    private final AtomicLong readAheadSize = new AtomicLong(0);
     private final ConcurrentMap<String, EntryCache> caches = Maps.newConcurrentMap();
     private final EntryCacheEvictionPolicy evictionPolicy;
+    private final long maxSizePerNamespace;
+    private final ConcurrentMap<String, NamespaceCacheUsage> namespaces = Maps.newConcurrentMap();
+    private final DiskEntryCache diskCache;
 
     private final AtomicBoolean evictionInProgress = new AtomicBoolean(false);
 
@@ -70,11 +79,42 @@ public class EntryCacheManager {
         this.maxSize = factory.getConfig().getMaxCacheSize();
         this.evictionTriggerThreshold = (long) (maxSize * evictionTriggerThresholdPercent);
         this.cacheEvictionWatermak = factory.getConfig().getCacheEvictionWatermark();
-        this.evictionPolicy = new EntryCacheDefaultEvictionPolicy();
+        this.cacheEvictionWatermarkSize = (long) (maxSize * cacheEvictionWatermak);
+        this.evictionPolicy = createEvictionPolicy(factory.getConfig().getCacheEvictionPolicyClassName());
+        this.maxSizePerNamespace = factory.getConfig().getMaxCacheSizePerNamespace();
+        this.diskCache = maxSize > 0 ? createDiskCache(factory.getConfig()) : null;
+        this.readAheadMaxSize = factory.getConfig().getReadAheadMaxSize();
         this.mlFactory = factory;
         this.mlFactoryMBean = factory.mbean;
 
-        log.info("Initialized managed-ledger entry cache of {} Mb", maxSize / MB);
+        log.info("Initialized managed-ledger entry cache of {} Mb -- Eviction policy: {}", maxSize / MB,
+                evictionPolicy.getClass().getSimpleName());
+    }
+
+    private static DiskEntryCache createDiskCache(ManagedLedgerFactoryConfig config) {
+        if (config.getDiskCacheMaxSize() <= 0) {
+            return null;
+        }
+
+        try {
+            return new DiskEntryCache(new File(config.getDiskCacheDirectory()), config.getDiskCacheMaxSize(),
+                    config.getDiskCacheSegmentSize());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to initialize disk cache in " + config.getDiskCacheDirectory(),
+                    e);
+        }
+    }
+
+    private static EntryCacheEvictionPolicy createEvictionPolicy(String className) {
+        if (className == null || className.isEmpty()) {
+            return new EntryCacheDefaultEvictionPolicy();
+        }
+
+        try {
+            return (EntryCacheEvictionPolicy) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid entry cache eviction policy: " + className, e);
+        }
     }
 
     public EntryCache getEntryCache(ManagedLedgerImpl ml) {
@@ -83,7 +123,13 @@ public class EntryCacheManager {
             return new EntryCacheDisabled(ml);
         }
 
-        EntryCache newEntryCache = new EntryCacheImpl(this, ml, mlFactory.getConfig().isCopyEntriesInCache());
+        ManagedLedgerFactoryConfig config = mlFactory.getConfig();
+        EntryCache newEntryCache;
+        if (config.isCacheSegmentsEnabled()) {
+            newEntryCache = new SegmentedEntryCacheImpl(this, ml, config.getCacheSegmentSize());
+        } else {
+            newEntryCache = new EntryCacheImpl(this, ml, config.isCopyEntriesInCache());
+        }
         EntryCache currentEntryCache = caches.putIfAbsent(ml.getName(), newEntryCache);
         if (currentEntryCache != null) {
             return currentEntryCache;
@@ -106,7 +152,13 @@ public class EntryCacheManager {
         }
     }
 
-    boolean hasSpaceInCache() {
+    /**
+     * Check whether there is space in the cache for an entry of the given size.
+     *
+     * <p/>The cache size is a hard limit: entries that would make the cache exceed it are not inserted, until the
+     * eviction frees enough space.
+     */
+    boolean hasSpaceInCache(long entrySize) {
         long currentSize = this.currentSize.get();
 
         // Trigger a single eviction in background. While the eviction is running we stop inserting entries in the cache
@@ -134,11 +186,138 @@ public class EntryCacheManager {
             }));
         }
 
-        return currentSize < maxSize;
+        if (currentSize + entrySize <= maxSize) {
+            return true;
+        }
+
+        mlFactoryMBean.recordCacheInsertRejected(entrySize);
+        return false;
+    }
+
+    /**
+     * Check whether the caches of a namespace are within the configured quota.
+     *
+     * <p/>When the quota is exceeded, a single eviction of the caches of the namespace is triggered in background and
+     * new entries for the namespace are not inserted until it's completed.
+     */
+    boolean hasSpaceInNamespace(NamespaceCacheUsage usage) {
+        if (maxSizePerNamespace <= 0) {
+            return true;
+        }
+
+        long currentSize = usage.size.get();
+        long threshold = (long) (maxSizePerNamespace * evictionTriggerThresholdPercent);
+        if (currentSize > threshold && usage.evictionInProgress.compareAndSet(false, true)) {
+            mlFactory.scheduledExecutor.execute(safeRun(() -> {
+                long sizeToEvict = currentSize - (long) (maxSizePerNamespace * cacheEvictionWatermak);
+                log.info("[{}] Triggering namespace cache eviction. size: {} Mb -- Need to discard: {} Mb",
+                        usage.namespace, currentSize / MB, sizeToEvict / MB);
+
+                try {
+                    List<EntryCache> namespaceCaches = Lists.newArrayList();
+                    caches.values().forEach(cache -> {
+                        if (getNamespaceName(cache.getName()).equals(usage.namespace)) {
+                            namespaceCaches.add(cache);
+                        }
+                    });
+
+                    if (!namespaceCaches.isEmpty() && sizeToEvict > 0) {
+                        evictionPolicy.doEviction(namespaceCaches, sizeToEvict);
+                    }
+                } finally {
+                    mlFactoryMBean.recordCacheEviction();
+                    usage.evictionInProgress.set(false);
+                }
+            }));
+        }
+
+        return currentSize < maxSizePerNamespace;
+    }
+
+    boolean shouldAdmit(EntryCache cache, EntryImpl entry) {
+        if (evictionPolicy.shouldAdmit(cache, entry)) {
+            return true;
+        }
+
+        mlFactoryMBean.recordCacheAdmissionRejected(entry.getLength());
+        return false;
+    }
+
+    /**
+     * Record a read from a managed ledger, to be used by the eviction policy.
+     *
+     * @param name
+     *            the managed ledger name
+     * @param isScan
+     *            whether the read is part of a scan (eg: compaction or a full replay), that is not expected to be
+     *            repeated
+     */
+    void recordAccess(String name, boolean isScan) {
+        if (isScan) {
+            mlFactoryMBean.recordCacheScanRead();
+            return;
+        }
+
+        EntryCache cache = caches.get(name);
+        if (cache != null) {
+            evictionPolicy.recordAccess(cache);
+        }
+    }
+
+    EntryCacheEvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    NamespaceCacheUsage getNamespaceUsage(String managedLedgerName) {
+        return namespaces.computeIfAbsent(getNamespaceName(managedLedgerName), NamespaceCacheUsage::new);
+    }
+
+    /**
+     * Get the namespace part of a managed ledger name, which is everything before the topic domain (eg:
+     * "tenant/ns/persistent/topic" belongs to "tenant/ns"). Names that don't follow this format are considered as
+     * their own namespace.
+     */
+    static String getNamespaceName(String managedLedgerName) {
+        int idx = managedLedgerName.indexOf("/persistent/");
+        return idx > 0 ? managedLedgerName.substring(0, idx) : managedLedgerName;
+    }
+
+    /**
+     * Memory used by the caches of all the managed ledgers of a namespace.
+     */
+    static class NamespaceCacheUsage {
+        private final String namespace;
+        private final AtomicLong size = new AtomicLong(0);
+        private final AtomicBoolean evictionInProgress = new AtomicBoolean(false);
+
+        NamespaceCacheUsage(String namespace) {
+            this.namespace = namespace;
+        }
+
+        void entryAdded(long size) {
+            this.size.addAndGet(size);
+        }
+
+        void entriesRemoved(long size) {
+            this.size.addAndGet(-size);
+        }
+
+        long getSize() {
+            return size.get();
+        }
     }
 
     void entryAdded(long size) {
-        currentSize.addAndGet(size);
+        long newSize = currentSize.addAndGet(size);
+
+        if (newSize > cacheEvictionWatermarkSize && newSize - size <= cacheEvictionWatermarkSize) {
+            // The cache just went above the watermark: don't wait for the next eviction cycle
+            mlFactory.triggerCacheEviction();
+        }
+
+        if (newSize > maxSize) {
+            mlFactoryMBean.recordCacheOvershoot(newSize - maxSize);
+        }
     }
 
     void entriesRemoved(long size) {
@@ -149,14 +328,67 @@ public class EntryCacheManager {
         return currentSize.get();
     }
 
+    boolean isReadAheadEnabled() {
+        return readAheadMaxSize > 0;
+    }
+
+    /**
+     * Check whether the read-ahead buffers of all the cursors have space for an additional prefetch.
+     *
+     * @param size
+     *            the estimated size of the entries to prefetch
+     */
+    boolean hasSpaceForReadAhead(long size) {
+        return readAheadSize.get() + size < readAheadMaxSize;
+    }
+
+    /**
+     * @return the space left for the read-ahead buffers of all the cursors
+     */
+    long getReadAheadAvailableSpace() {
+        return Math.max(0, readAheadMaxSize - readAheadSize.get());
+    }
+
+    void readAheadAdded(long size) {
+        readAheadSize.addAndGet(size);
+    }
+
+    void readAheadRemoved(long size) {
+        readAheadSize.addAndGet(-size);
+    }
+
+    public long getReadAheadSize() {
+        return readAheadSize.get();
+    }
+
     public long getMaxSize() {
         return maxSize;
     }
 
+    /**
+     * Get the second tier of the cache, on local disk.
+     *
+     * @return the disk cache or null if it's disabled
+     */
+    DiskEntryCache getDiskCache() {
+        return diskCache;
+    }
+
+    public long getDiskCacheSize() {
+        return diskCache != null ? diskCache.getSize() : 0;
+    }
+
     public void clear() {
         caches.values().forEach(cache -> cache.clear());
     }
 
+    public void close() {
+        clear();
+        if (diskCache != null) {
+            diskCache.close();
+        }
+    }
+
     protected class EntryCacheDisabled implements EntryCache {
         private final ManagedLedgerImpl ml;
 
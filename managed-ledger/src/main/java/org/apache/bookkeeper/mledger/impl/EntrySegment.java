@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import io.netty.buffer.ByteBuf;
+import java.util.Arrays;
+
+/**
+ * Append-only off-heap segment holding the payload of consecutive entries of a single ledger.
+ *
+ * <p/>The segment owns one direct buffer of fixed capacity. Entries are copied back to back into the buffer and a
+ * primitive index keeps, for each entry id, the offset where the entry ends. The start of an entry is the end of the
+ * previous slot, so entries skipped while appending are simply recorded as zero-length slots.
+ *
+ * <p/>A single thread is expected to append, while any number of threads can read concurrently. Readers only look at
+ * the slots published through the volatile {@code count} field.
+ */
+class EntrySegment {
+
+    private static final int INITIAL_INDEX_SIZE = 64;
+
+    private final long ledgerId;
+    private final long firstEntryId;
+    private final ByteBuf buffer;
+
+    private volatile int[] endOffsets;
+    private volatile int count;
+    private volatile long lastInsertTimestamp;
+
+    private int writeOffset;
+    private int entriesCount;
+
+    EntrySegment(long ledgerId, long firstEntryId, ByteBuf buffer) {
+        this.ledgerId = ledgerId;
+        this.firstEntryId = firstEntryId;
+        this.buffer = buffer;
+        this.endOffsets = new int[INITIAL_INDEX_SIZE];
+        this.count = 0;
+        this.writeOffset = 0;
+        this.entriesCount = 0;
+        this.lastInsertTimestamp = System.nanoTime();
+    }
+
+    long getLedgerId() {
+        return ledgerId;
+    }
+
+    long getFirstEntryId() {
+        return firstEntryId;
+    }
+
+    /**
+     * @return the id of the last entry slot in the segment, or {@code firstEntryId - 1} if empty
+     */
+    long getLastEntryId() {
+        return firstEntryId + count - 1;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getEntriesCount() {
+        return entriesCount;
+    }
+
+    long getLastInsertTimestamp() {
+        return lastInsertTimestamp;
+    }
+
+    /**
+     * Check whether an entry can be appended at the end of this segment.
+     */
+    boolean canAppend(long ledgerId, long entryId, int size) {
+        return this.ledgerId == ledgerId && entryId > getLastEntryId()
+                && (entryId - firstEntryId) < Integer.MAX_VALUE
+                && size <= buffer.capacity() - writeOffset;
+    }
+
+    /**
+     * Append the content of an entry to the segment. The caller must have checked {@link #canAppend}.
+     *
+     * @param entryId
+     *            the id of the entry
+     * @param data
+     *            the entry payload, its reader index is not modified
+     */
+    void append(long entryId, ByteBuf data) {
+        int size = data.readableBytes();
+        int slot = (int) (entryId - firstEntryId);
+
+        int[] index = endOffsets;
+        if (slot >= index.length) {
+            index = Arrays.copyOf(index, Math.max(index.length * 2, slot + 1));
+            endOffsets = index;
+        }
+
+        // Slots for entries that were skipped are filled as empty
+        for (int i = count; i < slot; i++) {
+            index[i] = writeOffset;
+        }
+
+        buffer.setBytes(writeOffset, data, data.readerIndex(), size);
+        writeOffset += size;
+        index[slot] = writeOffset;
+        entriesCount++;
+        lastInsertTimestamp = System.nanoTime();
+
+        // Publish the new slot to readers
+        count = slot + 1;
+    }
+
+    /**
+     * Get a retained slice of the segment buffer with the content of the entry.
+     *
+     * @return the entry payload or null if the entry is not stored in the segment or if the segment was released
+     */
+    ByteBuf get(long entryId) {
+        long slot = entryId - firstEntryId;
+        int published = count;
+        if (slot < 0 || slot >= published) {
+            return null;
+        }
+
+        int[] index = endOffsets;
+        int end = index[(int) slot];
+        int start = slot == 0 ? 0 : index[(int) slot - 1];
+        if (end == start) {
+            // Empty slot for an entry that was never inserted
+            return null;
+        }
+
+        try {
+            return buffer.retainedSlice(start, end - start);
+        } catch (Throwable t) {
+            // Segment was already released between lookup and retain
+            return null;
+        }
+    }
+
+    /**
+     * Release the memory of the segment. Slices that were handed out keep the memory alive until they get released.
+     */
+    void release() {
+        buffer.release();
+    }
+}
@@ -0,0 +1,897 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
+
+/**
+ * The ledgers of a managed ledger, indexed by ledger id, which also keeps the running totals of their sizes and
+ * entries.
+ *
+ * <p/>The ledgers are kept in sorted primitive arrays rather than in a tree of {@link LedgerInfo} objects. The
+ * LedgerInfo of a ledger is built when it's accessed, from its id, entries, size and timestamp. Only the ledgers with
+ * other fields, such as an offload context or a time index, keep their LedgerInfo object. The ledgers are still all
+ * parsed from the metadata store when the managed ledger is opened; only the parsed list is not kept afterwards.
+ *
+ * <p/>For each ledger, the total size and entries of the ledgers preceding it are kept, so the size and entries of
+ * any range of ledgers are the difference of two totals, found in O(log ledgers).
+ *
+ * <p/>The arrays are copied on each update, which is O(ledgers). Updates only happen when ledgers are created,
+ * closed, offloaded or trimmed, and several ledgers can be added or removed at once with {@link #addAll(Collection)}
+ * and {@link #removeAll(Collection)}. Reads are not blocked by the updates. Views and iterators are weakly consistent:
+ * the views read the current ledgers on each call, and the iterators the ledgers at the time they were created.
+ *
+ * <p/>The methods changing the map other than {@link #put(Long, LedgerInfo)}, {@link #remove(Object)},
+ * {@link #clear()} and the removals through the views are not supported.
+ */
+class LedgerInfoMap extends AbstractMap<Long, LedgerInfo> implements NavigableMap<Long, LedgerInfo> {
+
+    private static final byte HAS_ENTRIES = 1;
+    private static final byte HAS_SIZE = 2;
+    private static final byte HAS_TIMESTAMP = 4;
+
+    /**
+     * Immutable snapshot of the ledgers.
+     */
+    private static final class Ledgers {
+        static final Ledgers EMPTY = new Builder(0).build();
+
+        final int count;
+        final long[] ids;
+        final long[] entries;
+        final long[] sizes;
+        final long[] timestamps;
+        final byte[] fields;
+        // The LedgerInfo of the ledgers that can't be built back from the arrays, null for the others
+        final LedgerInfo[] infos;
+        // Total size and entries of the ledgers before each index, with one more item for the total of all
+        final long[] sizesBefore;
+        final long[] entriesBefore;
+
+        Ledgers(Builder builder) {
+            this.count = builder.count;
+            this.ids = builder.ids;
+            this.entries = builder.entries;
+            this.sizes = builder.sizes;
+            this.timestamps = builder.timestamps;
+            this.fields = builder.fields;
+            this.infos = builder.infos;
+            this.sizesBefore = builder.sizesBefore;
+            this.entriesBefore = builder.entriesBefore;
+        }
+
+        /**
+         * @return the index of the first ledger whose id is greater than or equal to the given one
+         */
+        int ceilingIndex(long ledgerId) {
+            int index = Arrays.binarySearch(ids, 0, count, ledgerId);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        /**
+         * @return the index of the first ledger whose id is greater than the given one
+         */
+        int higherIndex(long ledgerId) {
+            int index = Arrays.binarySearch(ids, 0, count, ledgerId);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        int indexOf(long ledgerId) {
+            return Arrays.binarySearch(ids, 0, count, ledgerId);
+        }
+
+        LedgerInfo get(int index) {
+            if (infos[index] != null) {
+                return infos[index];
+            }
+            return build(ids[index], entries[index], sizes[index], timestamps[index], fields[index]);
+        }
+
+        Map.Entry<Long, LedgerInfo> entry(int index) {
+            return new SimpleImmutableEntry<>(ids[index], get(index));
+        }
+    }
+
+    private static final class Builder {
+        int count = 0;
+        final long[] ids;
+        final long[] entries;
+        final long[] sizes;
+        final long[] timestamps;
+        final byte[] fields;
+        final LedgerInfo[] infos;
+        final long[] sizesBefore;
+        final long[] entriesBefore;
+
+        Builder(int capacity) {
+            ids = new long[capacity];
+            entries = new long[capacity];
+            sizes = new long[capacity];
+            timestamps = new long[capacity];
+            fields = new byte[capacity];
+            infos = new LedgerInfo[capacity];
+            sizesBefore = new long[capacity + 1];
+            entriesBefore = new long[capacity + 1];
+        }
+
+        void add(Ledgers ledgers, int index) {
+            add(ledgers.ids[index], ledgers.entries[index], ledgers.sizes[index], ledgers.timestamps[index],
+                    ledgers.fields[index], ledgers.infos[index]);
+        }
+
+        void add(Ledgers ledgers, int from, int to) {
+            for (int i = from; i < to; i++) {
+                add(ledgers, i);
+            }
+        }
+
+        void add(LedgerInfo info) {
+            byte infoFields = (byte) ((info.hasEntries() ? HAS_ENTRIES : 0) | (info.hasSize() ? HAS_SIZE : 0)
+                    | (info.hasTimestamp() ? HAS_TIMESTAMP : 0));
+            LedgerInfo built = LedgerInfoMap.build(info.getLedgerId(), info.getEntries(), info.getSize(),
+                    info.getTimestamp(), infoFields);
+            add(info.getLedgerId(), info.getEntries(), info.getSize(), info.getTimestamp(), infoFields,
+                    built.equals(info) ? null : info);
+        }
+
+        private void add(long id, long ledgerEntries, long size, long timestamp, byte ledgerFields,
+                         LedgerInfo info) {
+            ids[count] = id;
+            entries[count] = ledgerEntries;
+            sizes[count] = size;
+            timestamps[count] = timestamp;
+            fields[count] = ledgerFields;
+            infos[count] = info;
+            sizesBefore[count + 1] = sizesBefore[count] + size;
+            entriesBefore[count + 1] = entriesBefore[count] + ledgerEntries;
+            count++;
+        }
+
+        Ledgers build() {
+            return new Ledgers(this);
+        }
+    }
+
+    private static LedgerInfo build(long ledgerId, long entries, long size, long timestamp, byte fields) {
+        LedgerInfo.Builder builder = LedgerInfo.newBuilder().setLedgerId(ledgerId);
+        if ((fields & HAS_ENTRIES) != 0) {
+            builder.setEntries(entries);
+        }
+        if ((fields & HAS_SIZE) != 0) {
+            builder.setSize(size);
+        }
+        if ((fields & HAS_TIMESTAMP) != 0) {
+            builder.setTimestamp(timestamp);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Current ledgers, shared by the map and its views.
+     */
+    private static final class State {
+        volatile Ledgers ledgers = Ledgers.EMPTY;
+    }
+
+    private final State state;
+
+    // Bounds of the view in the order of the ledger ids, null when unbounded
+    private final Long lo;
+    private final boolean loInclusive;
+    private final Long hi;
+    private final boolean hiInclusive;
+    private final boolean descending;
+
+    LedgerInfoMap() {
+        this(new State(), null, false, null, false, false);
+    }
+
+    private LedgerInfoMap(State state, Long lo, boolean loInclusive, Long hi, boolean hiInclusive,
+                          boolean descending) {
+        this.state = state;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.descending = descending;
+    }
+
+    // Updates, applied to the whole map
+
+    @Override
+    public LedgerInfo put(Long ledgerId, LedgerInfo info) {
+        if (!inRange(ledgerId)) {
+            throw new IllegalArgumentException("Ledger " + ledgerId + " is out of the range of the view");
+        }
+        if (ledgerId != info.getLedgerId()) {
+            throw new IllegalArgumentException("Ledger " + ledgerId + " put with the info of " + info.getLedgerId());
+        }
+        synchronized (state) {
+            Ledgers ledgers = state.ledgers;
+            int index = ledgers.indexOf(ledgerId);
+            Builder builder = new Builder(index >= 0 ? ledgers.count : ledgers.count + 1);
+            int insertion = index >= 0 ? index : -index - 1;
+            builder.add(ledgers, 0, insertion);
+            builder.add(info);
+            builder.add(ledgers, index >= 0 ? index + 1 : insertion, ledgers.count);
+            state.ledgers = builder.build();
+            return index >= 0 ? ledgers.get(index) : null;
+        }
+    }
+
+    /**
+     * Add or replace several ledgers at once.
+     */
+    void addAll(Collection<LedgerInfo> ledgerInfos) {
+        TreeMap<Long, LedgerInfo> added = new TreeMap<>();
+        for (LedgerInfo info : ledgerInfos) {
+            if (!inRange(info.getLedgerId())) {
+                throw new IllegalArgumentException("Ledger " + info.getLedgerId() + " is out of the range of the view");
+            }
+            added.put(info.getLedgerId(), info);
+        }
+
+        synchronized (state) {
+            Ledgers ledgers = state.ledgers;
+            int replaced = 0;
+            for (Long ledgerId : added.keySet()) {
+                if (ledgers.indexOf(ledgerId) >= 0) {
+                    replaced++;
+                }
+            }
+
+            // Merge the sorted ledgers, the added ones replacing the existing ones
+            Builder builder = new Builder(ledgers.count + added.size() - replaced);
+            int index = 0;
+            for (LedgerInfo info : added.values()) {
+                int insertion = ledgers.ceilingIndex(info.getLedgerId());
+                builder.add(ledgers, index, insertion);
+                builder.add(info);
+                index = insertion < ledgers.count && ledgers.ids[insertion] == info.getLedgerId()
+                        ? insertion + 1 : insertion;
+            }
+            builder.add(ledgers, index, ledgers.count);
+            state.ledgers = builder.build();
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends Long, ? extends LedgerInfo> map) {
+        map.forEach((ledgerId, info) -> {
+            if (!ledgerId.equals(info.getLedgerId())) {
+                throw new IllegalArgumentException("Ledger " + ledgerId + " put with the info of "
+                        + info.getLedgerId());
+            }
+        });
+        addAll(Collections.unmodifiableCollection(map.values()));
+    }
+
+    @Override
+    public LedgerInfo remove(Object key) {
+        if (!(key instanceof Long) || !inRange((Long) key)) {
+            return null;
+        }
+        synchronized (state) {
+            Ledgers ledgers = state.ledgers;
+            int index = ledgers.indexOf((Long) key);
+            if (index < 0) {
+                return null;
+            }
+            Builder builder = new Builder(ledgers.count - 1);
+            builder.add(ledgers, 0, index);
+            builder.add(ledgers, index + 1, ledgers.count);
+            state.ledgers = builder.build();
+            return ledgers.get(index);
+        }
+    }
+
+    /**
+     * Remove several ledgers at once.
+     */
+    void removeAll(Collection<Long> ledgerIds) {
+        synchronized (state) {
+            Ledgers ledgers = state.ledgers;
+            boolean[] removed = new boolean[ledgers.count];
+            int removedCount = 0;
+            for (Long ledgerId : ledgerIds) {
+                int index = inRange(ledgerId) ? ledgers.indexOf(ledgerId) : -1;
+                if (index >= 0 && !removed[index]) {
+                    removed[index] = true;
+                    removedCount++;
+                }
+            }
+            if (removedCount == 0) {
+                return;
+            }
+
+            Builder builder = new Builder(ledgers.count - removedCount);
+            for (int i = 0; i < ledgers.count; i++) {
+                if (!removed[i]) {
+                    builder.add(ledgers, i);
+                }
+            }
+            state.ledgers = builder.build();
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (state) {
+            Ledgers ledgers = state.ledgers;
+            int from = fromIndex(ledgers);
+            int to = toIndex(ledgers);
+            if (from >= to) {
+                return;
+            }
+            Builder builder = new Builder(ledgers.count - (to - from));
+            builder.add(ledgers, 0, from);
+            builder.add(ledgers, to, ledgers.count);
+            state.ledgers = builder.build();
+        }
+    }
+
+    // Running totals, over the whole map
+
+    /**
+     * @return the total size of the ledgers whose id is lower than <tt>ledgerId</tt>
+     */
+    long getSizeBefore(long ledgerId) {
+        Ledgers ledgers = state.ledgers;
+        return ledgers.sizesBefore[ledgers.ceilingIndex(ledgerId)];
+    }
+
+    /**
+     * @return the total number of entries of the ledgers whose id is between the two ids, both excluded
+     */
+    long getEntriesBetween(long fromLedgerId, long toLedgerId) {
+        if (toLedgerId <= fromLedgerId + 1) {
+            return 0;
+        }
+        Ledgers ledgers = state.ledgers;
+        return ledgers.entriesBefore[ledgers.ceilingIndex(toLedgerId)]
+                - ledgers.entriesBefore[ledgers.higherIndex(fromLedgerId)];
+    }
+
+    // Reads, within the bounds of the view
+
+    private boolean tooLow(long ledgerId) {
+        return lo != null && (loInclusive ? ledgerId < lo : ledgerId <= lo);
+    }
+
+    private boolean tooHigh(long ledgerId) {
+        return hi != null && (hiInclusive ? ledgerId > hi : ledgerId >= hi);
+    }
+
+    private boolean inRange(long ledgerId) {
+        return !tooLow(ledgerId) && !tooHigh(ledgerId);
+    }
+
+    private int fromIndex(Ledgers ledgers) {
+        if (lo == null) {
+            return 0;
+        }
+        return loInclusive ? ledgers.ceilingIndex(lo) : ledgers.higherIndex(lo);
+    }
+
+    private int toIndex(Ledgers ledgers) {
+        int to = ledgers.count;
+        if (hi != null) {
+            to = hiInclusive ? ledgers.higherIndex(hi) : ledgers.ceilingIndex(hi);
+        }
+        return Math.max(to, fromIndex(ledgers));
+    }
+
+    @Override
+    public LedgerInfo get(Object key) {
+        if (!(key instanceof Long) || !inRange((Long) key)) {
+            return null;
+        }
+        Ledgers ledgers = state.ledgers;
+        int index = ledgers.indexOf((Long) key);
+        return index >= 0 ? ledgers.get(index) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Long && inRange((Long) key) && state.ledgers.indexOf((Long) key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        Ledgers ledgers = state.ledgers;
+        return toIndex(ledgers) - fromIndex(ledgers);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Navigation in the order of the ledger ids, which the navigation methods map according to the view order
+
+    private Map.Entry<Long, LedgerInfo> ascendingCeiling(long ledgerId, boolean inclusive) {
+        Ledgers ledgers = state.ledgers;
+        int index = Math.max(inclusive ? ledgers.ceilingIndex(ledgerId) : ledgers.higherIndex(ledgerId),
+                fromIndex(ledgers));
+        return index < toIndex(ledgers) ? ledgers.entry(index) : null;
+    }
+
+    private Map.Entry<Long, LedgerInfo> ascendingFloor(long ledgerId, boolean inclusive) {
+        Ledgers ledgers = state.ledgers;
+        int index = Math.min(inclusive ? ledgers.higherIndex(ledgerId) : ledgers.ceilingIndex(ledgerId),
+                toIndex(ledgers)) - 1;
+        return index >= fromIndex(ledgers) ? ledgers.entry(index) : null;
+    }
+
+    private Map.Entry<Long, LedgerInfo> ascendingFirst() {
+        Ledgers ledgers = state.ledgers;
+        int from = fromIndex(ledgers);
+        return from < toIndex(ledgers) ? ledgers.entry(from) : null;
+    }
+
+    private Map.Entry<Long, LedgerInfo> ascendingLast() {
+        Ledgers ledgers = state.ledgers;
+        int to = toIndex(ledgers);
+        return to > fromIndex(ledgers) ? ledgers.entry(to - 1) : null;
+    }
+
+    private static Long key(Map.Entry<Long, LedgerInfo> entry) {
+        return entry != null ? entry.getKey() : null;
+    }
+
+    private static Long existingKey(Map.Entry<Long, LedgerInfo> entry) {
+        if (entry == null) {
+            throw new NoSuchElementException();
+        }
+        return entry.getKey();
+    }
+
+    @Override
+    public Map.Entry<Long, LedgerInfo> lowerEntry(Long key) {
+        return descending ? ascendingCeiling(key, false) : ascendingFloor(key, false);
+    }
+
+    @Override
+    public Long lowerKey(Long key) {
+        return key(lowerEntry(key));
+    }
+
+    @Override
+    public Map.Entry<Long, LedgerInfo> floorEntry(Long key) {
+        return descending ? ascendingCeiling(key, true) : ascendingFloor(key, true);
+    }
+
+    @Override
+    public Long floorKey(Long key) {
+        return key(floorEntry(key));
+    }
+
+    @Override
+    public Map.Entry<Long, LedgerInfo> ceilingEntry(Long key) {
+        return descending ? ascendingFloor(key, true) : ascendingCeiling(key, true);
+    }
+
+    @Override
+    public Long ceilingKey(Long key) {
+        return key(ceilingEntry(key));
+    }
+
+    @Override
+    public Map.Entry<Long, LedgerInfo> higherEntry(Long key) {
+        return descending ? ascendingFloor(key, false) : ascendingCeiling(key, false);
+    }
+
+    @Override
+    public Long higherKey(Long key) {
+        return key(higherEntry(key));
+    }
+
+    @Override
+    public Map.Entry<Long, LedgerInfo> firstEntry() {
+        return descending ? ascendingLast() : ascendingFirst();
+    }
+
+    @Override
+    public Map.Entry<Long, LedgerInfo> lastEntry() {
+        return descending ? ascendingFirst() : ascendingLast();
+    }
+
+    @Override
+    public Long firstKey() {
+        return existingKey(firstEntry());
+    }
+
+    @Override
+    public Long lastKey() {
+        return existingKey(lastEntry());
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return descending ? Comparator.reverseOrder() : null;
+    }
+
+    // Views
+
+    /**
+     * @return a view restricted to the given bounds, in the order of the ledger ids, and to the bounds of this view
+     */
+    private LedgerInfoMap view(Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive,
+                               boolean descendingView) {
+        Long newLo = lo;
+        boolean newLoInclusive = loInclusive;
+        if (fromKey != null && (newLo == null || fromKey > newLo || (fromKey.equals(newLo) && !fromInclusive))) {
+            newLo = fromKey;
+            newLoInclusive = fromInclusive;
+        }
+        Long newHi = hi;
+        boolean newHiInclusive = hiInclusive;
+        if (toKey != null && (newHi == null || toKey < newHi || (toKey.equals(newHi) && !toInclusive))) {
+            newHi = toKey;
+            newHiInclusive = toInclusive;
+        }
+        return new LedgerInfoMap(state, newLo, newLoInclusive, newHi, newHiInclusive, descendingView);
+    }
+
+    @Override
+    public NavigableMap<Long, LedgerInfo> descendingMap() {
+        return new LedgerInfoMap(state, lo, loInclusive, hi, hiInclusive, !descending);
+    }
+
+    @Override
+    public NavigableMap<Long, LedgerInfo> subMap(Long fromKey, boolean fromInclusive, Long toKey,
+                                                  boolean toInclusive) {
+        return descending
+                ? view(toKey, toInclusive, fromKey, fromInclusive, true)
+                : view(fromKey, fromInclusive, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<Long, LedgerInfo> headMap(Long toKey, boolean inclusive) {
+        return descending ? view(toKey, inclusive, null, false, true) : view(null, false, toKey, inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<Long, LedgerInfo> tailMap(Long fromKey, boolean inclusive) {
+        return descending ? view(null, false, fromKey, inclusive, true) : view(fromKey, inclusive, null, false, false);
+    }
+
+    @Override
+    public SortedMap<Long, LedgerInfo> subMap(Long fromKey, Long toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<Long, LedgerInfo> headMap(Long toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<Long, LedgerInfo> tailMap(Long fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /**
+     * Iterator over the ledgers of the view at the time it is created.
+     */
+    private abstract class LedgersIterator<T> implements Iterator<T> {
+        private final Ledgers ledgers = state.ledgers;
+        private final int from = fromIndex(ledgers);
+        private final int to = toIndex(ledgers);
+        private int next = descending ? to - 1 : from;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return descending ? next >= from : next < to;
+        }
+
+        int nextIndex() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next += descending ? -1 : 1;
+            return last;
+        }
+
+        Ledgers ledgers() {
+            return ledgers;
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            LedgerInfoMap.this.remove(ledgers.ids[last]);
+            last = -1;
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<Long, LedgerInfo>> entrySet() {
+        return new AbstractSet<Map.Entry<Long, LedgerInfo>>() {
+            @Override
+            public Iterator<Map.Entry<Long, LedgerInfo>> iterator() {
+                return new LedgersIterator<Map.Entry<Long, LedgerInfo>>() {
+                    @Override
+                    public Map.Entry<Long, LedgerInfo> next() {
+                        return ledgers().entry(nextIndex());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return LedgerInfoMap.this.size();
+            }
+
+            @Override
+            public void clear() {
+                LedgerInfoMap.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Collection<LedgerInfo> values() {
+        return new AbstractCollection<LedgerInfo>() {
+            @Override
+            public Iterator<LedgerInfo> iterator() {
+                return new LedgersIterator<LedgerInfo>() {
+                    @Override
+                    public LedgerInfo next() {
+                        return ledgers().get(nextIndex());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return LedgerInfoMap.this.size();
+            }
+
+            @Override
+            public void clear() {
+                LedgerInfoMap.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public NavigableSet<Long> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<Long> navigableKeySet() {
+        return new KeySet(this);
+    }
+
+    @Override
+    public NavigableSet<Long> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    /**
+     * Keys of a view of the ledgers.
+     */
+    private static final class KeySet extends AbstractSet<Long> implements NavigableSet<Long> {
+        private final LedgerInfoMap map;
+
+        KeySet(LedgerInfoMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            return map.new LedgersIterator<Long>() {
+                @Override
+                public Long next() {
+                    return ledgers().ids[nextIndex()];
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return map.remove(o) != null;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public Long lower(Long key) {
+            return map.lowerKey(key);
+        }
+
+        @Override
+        public Long floor(Long key) {
+            return map.floorKey(key);
+        }
+
+        @Override
+        public Long ceiling(Long key) {
+            return map.ceilingKey(key);
+        }
+
+        @Override
+        public Long higher(Long key) {
+            return map.higherKey(key);
+        }
+
+        @Override
+        public Long pollFirst() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Long pollLast() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public NavigableSet<Long> descendingSet() {
+            return map.descendingKeySet();
+        }
+
+        @Override
+        public Iterator<Long> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<Long> subSet(Long fromElement, boolean fromInclusive, Long toElement,
+                                         boolean toInclusive) {
+            return map.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<Long> headSet(Long toElement, boolean inclusive) {
+            return map.headMap(toElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<Long> tailSet(Long fromElement, boolean inclusive) {
+            return map.tailMap(fromElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public SortedSet<Long> subSet(Long fromElement, Long toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<Long> headSet(Long toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<Long> tailSet(Long fromElement) {
+            return tailSet(fromElement, true);
+        }
+
+        @Override
+        public Comparator<? super Long> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public Long first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public Long last() {
+            return map.lastKey();
+        }
+    }
+
+    // Unsupported updates
+
+    @Override
+    public LedgerInfo putIfAbsent(Long key, LedgerInfo value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean replace(Long key, LedgerInfo oldValue, LedgerInfo newValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LedgerInfo replace(Long key, LedgerInfo value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super Long, ? super LedgerInfo, ? extends LedgerInfo> function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LedgerInfo computeIfAbsent(Long key, Function<? super Long, ? extends LedgerInfo> mappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LedgerInfo computeIfPresent(Long key,
+            BiFunction<? super Long, ? super LedgerInfo, ? extends LedgerInfo> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LedgerInfo compute(Long key,
+            BiFunction<? super Long, ? super LedgerInfo, ? extends LedgerInfo> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LedgerInfo merge(Long key, LedgerInfo value,
+            BiFunction<? super LedgerInfo, ? super LedgerInfo, ? extends LedgerInfo> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map.Entry<Long, LedgerInfo> pollFirstEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map.Entry<Long, LedgerInfo> pollLastEntry() {
+        throw new UnsupportedOperationException();
+    }
+}
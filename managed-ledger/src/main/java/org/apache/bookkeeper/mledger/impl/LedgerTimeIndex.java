@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.common.collect.Range;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.TimeIndex;
+
+/**
+ * Sparse index of the timestamps of the entries in a ledger.
+ *
+ * <p/>The timestamp of an entry is sampled at most once per interval. When the max number of samples is reached, every
+ * other sample is dropped and the interval is doubled, so that the size of the index stays bounded for ledgers that are
+ * open for a long time.
+ *
+ * <p/>Timestamps are assumed to be increasing with the entry ids, as for the publish time of the messages. The index is
+ * only used to narrow the range of entries to read when searching by time.
+ *
+ * <p/>The index of a closed ledger is stored in its LedgerInfo, in the ManagedLedgerInfo of the topic. Only a few
+ * evenly spaced samples are stored, so that the metadata of topics with many ledgers stays small.
+ */
+class LedgerTimeIndex {
+
+    static final int MAX_SAMPLES = 64;
+    static final int MAX_PERSISTED_SAMPLES = 8;
+
+    private final long ledgerId;
+    private long intervalMs;
+    private long lastSampleTime = 0;
+
+    private final long[] timestamps;
+    private final long[] entryIds;
+    private int size = 0;
+
+    LedgerTimeIndex(long ledgerId, long intervalMs) {
+        this.ledgerId = ledgerId;
+        this.intervalMs = intervalMs;
+        this.timestamps = new long[MAX_SAMPLES];
+        this.entryIds = new long[MAX_SAMPLES];
+    }
+
+    long getLedgerId() {
+        return ledgerId;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param now
+     *            the current time
+     * @return whether the next entry needs to be sampled
+     */
+    synchronized boolean shouldSample(long now) {
+        return size == 0 || now - lastSampleTime >= intervalMs;
+    }
+
+    synchronized void add(long now, long entryId, long timestamp) {
+        if (size == MAX_SAMPLES) {
+            // Keep every other sample, starting from the first entry of the ledger
+            for (int i = 0; i < MAX_SAMPLES / 2; i++) {
+                timestamps[i] = timestamps[i * 2];
+                entryIds[i] = entryIds[i * 2];
+            }
+            size = MAX_SAMPLES / 2;
+            intervalMs = Math.max(intervalMs * 2, 1);
+        }
+
+        timestamps[size] = timestamp;
+        entryIds[size] = entryId;
+        ++size;
+        lastSampleTime = now;
+    }
+
+    /**
+     * @return the index to store in the ledger metadata, with at most {@link #MAX_PERSISTED_SAMPLES} samples including
+     *         the first and the last ones
+     */
+    synchronized TimeIndex toProto() {
+        TimeIndex.Builder builder = TimeIndex.newBuilder();
+        int count = Math.min(size, MAX_PERSISTED_SAMPLES);
+        long previousTimestamp = 0;
+        long previousEntryId = 0;
+        for (int i = 0; i < count; i++) {
+            int sample = count > 1 ? i * (size - 1) / (count - 1) : 0;
+            builder.addTimestampDeltas(timestamps[sample] - previousTimestamp);
+            builder.addEntryIdDeltas(entryIds[sample] - previousEntryId);
+            previousTimestamp = timestamps[sample];
+            previousEntryId = entryIds[sample];
+        }
+        return builder.build();
+    }
+
+    static LedgerTimeIndex fromProto(long ledgerId, TimeIndex timeIndex) {
+        LedgerTimeIndex index = new LedgerTimeIndex(ledgerId, 0);
+        int count = Math.min(MAX_SAMPLES, Math.min(timeIndex.getTimestampDeltasCount(),
+                timeIndex.getEntryIdDeltasCount()));
+        long timestamp = 0;
+        long entryId = 0;
+        for (int i = 0; i < count; i++) {
+            timestamp += timeIndex.getTimestampDeltas(i);
+            entryId += timeIndex.getEntryIdDeltas(i);
+            index.timestamps[i] = timestamp;
+            index.entryIds[i] = entryId;
+        }
+        index.size = count;
+        return index;
+    }
+
+    /**
+     * Find the range of entries where the newest entry with a timestamp lower than or equal to the given one is
+     * located.
+     *
+     * @param indexes
+     *            the indexes of the ledgers, in order
+     * @param timestamp
+     *            the timestamp to search for
+     * @return the range of positions to search. The lower bound, when present, is an entry older than the timestamp
+     *         and the upper bound, when present, is an entry newer than the timestamp.
+     */
+    static Range<PositionImpl> search(List<LedgerTimeIndex> indexes, long timestamp) {
+        PositionImpl lower = null;
+        for (LedgerTimeIndex index : indexes) {
+            synchronized (index) {
+                for (int i = 0; i < index.size; i++) {
+                    if (index.timestamps[i] < timestamp) {
+                        lower = PositionImpl.get(index.ledgerId, index.entryIds[i]);
+                    } else if (index.timestamps[i] > timestamp) {
+                        PositionImpl upper = PositionImpl.get(index.ledgerId, index.entryIds[i]);
+                        return lower != null ? Range.closedOpen(lower, upper) : Range.lessThan(upper);
+                    }
+                }
+            }
+        }
+
+        return lower != null ? Range.atLeast(lower) : Range.all();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("LedgerTimeIndex(ledgerId=%d, timestamps=%s, entryIds=%s)", ledgerId,
+                Arrays.toString(Arrays.copyOf(timestamps, size)), Arrays.toString(Arrays.copyOf(entryIds, size)));
+    }
+}
@@ -85,9 +85,11 @@ import org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.PositionBound;
 import org.apache.bookkeeper.mledger.impl.MetaStore.MetaStoreCallback;
 import org.apache.bookkeeper.mledger.impl.MetaStore.Stat;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.AckBitmap;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.LongProperty;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.MessageRange;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.NestedPositionInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.common.util.collections.ConcurrentOpenLongPairRangeSet;
@@ -150,9 +152,19 @@ public class ManagedCursorImpl implements ManagedCursor {
     private final LongPairRangeSet<PositionImpl> individualDeletedMessages;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
+    // Ranges individually deleted since the last entry appended to the cursor ledger, when the unacked ranges are
+    // persisted incrementally. Guarded by "lock"
+    private final LongPairRangeSet<PositionImpl> individualDeletedMessagesDelta;
+    // Cursor ledger where the last full snapshot of the unacked ranges was written, and number of incremental entries
+    // appended after it. Guarded by "cursorLedgerWriteLock"
+    private volatile long ackSnapshotLedgerId = -1;
+    private int ackDeltaSequence = 0;
+    private final Object cursorLedgerWriteLock = new Object();
+
     private RateLimiter markDeleteLimiter;
 
     private boolean alwaysInactive = false;
+    private volatile boolean scanReads = false;
 
     /** used temporary variables to {@link #getNumIndividualDeletedEntriesToSkip(long)} **/
     private static final FastThreadLocal<Long> tempTotalEntriesToSkip = new FastThreadLocal<>();
@@ -191,6 +203,9 @@ public class ManagedCursorImpl implements ManagedCursor {
     // The last active time (Unix time, milliseconds) of the cursor
     private long lastActive;
 
+    // Prefetch buffer used while catching up with the backlog, created on first read when read-ahead is enabled
+    private volatile CursorReadAhead readAhead = null;
+
     enum State {
         Uninitialized, // Cursor is being initialized
         NoLedger, // There is no metadata ledger open for writing
@@ -219,6 +234,9 @@ public class ManagedCursorImpl implements ManagedCursor {
         this.individualDeletedMessages = config.isUnackedRangesOpenCacheSetEnabled()
                 ? new ConcurrentOpenLongPairRangeSet<PositionImpl>(4096, positionRangeConverter)
                 : new LongPairRangeSet.DefaultRangeSet<>(positionRangeConverter);
+        this.individualDeletedMessagesDelta = config.isUnackedRangesDeltaEnabled()
+                ? new LongPairRangeSet.DefaultRangeSet<>(positionRangeConverter)
+                : null;
         this.digestType = BookKeeper.DigestType.fromApiDigestType(config.getDigestType());
         STATE_UPDATER.set(this, State.Uninitialized);
         PENDING_MARK_DELETED_SUBMITTED_COUNT_UPDATER.set(this, 0);
@@ -352,27 +370,178 @@ public class ManagedCursorImpl implements ManagedCursor {
                     return;
                 }
 
-                Map<String, Long> recoveredProperties = Collections.emptyMap();
-                if (positionInfo.getPropertiesCount() > 0) {
-                    // Recover properties map
-                    recoveredProperties = Maps.newHashMap();
-                    for (int i = 0; i < positionInfo.getPropertiesCount(); i++) {
-                        LongProperty property = positionInfo.getProperties(i);
-                        recoveredProperties.put(property.getName(), property.getValue());
-                    }
+                if (positionInfo.getAckDeltaSequence() > 0) {
+                    recoverAckDeltas(lh, lastEntryInLedger, positionInfo, callback);
+                } else {
+                    recoverAckSnapshot(lh, lastEntryInLedger, positionInfo, Collections.emptyList(), callback);
                 }
+            }, null);
+        }, null);
+    }
 
-                PositionImpl position = new PositionImpl(positionInfo);
-                if (positionInfo.getIndividualDeletedMessagesCount() > 0) {
-                    recoverIndividualDeletedMessages(positionInfo.getIndividualDeletedMessagesList());
+    /**
+     * Read the entries between the last full snapshot of the ack state and the last entry in the cursor ledger, which
+     * only carry the ranges acknowledged since the previous entry.
+     */
+    private void recoverAckDeltas(LedgerHandle lh, long lastEntryInLedger, PositionInfo positionInfo,
+            VoidCallback callback) {
+        long snapshotEntry = lastEntryInLedger - positionInfo.getAckDeltaSequence();
+        if (snapshotEntry < 0) {
+            log.warn("[{}] Missing ack snapshot in metadata ledger {} for consumer {}: expected at entry {}",
+                    ledger.getName(), lh.getId(), name, snapshotEntry);
+            recoveredFromPositionInfo(positionInfo, Collections.emptyList(), Collections.emptyList(), lh, callback);
+            return;
+        }
+
+        lh.asyncReadEntries(snapshotEntry, lastEntryInLedger - 1, (rc, lh1, seq, ctx) -> {
+            if (isBkErrorNotRecoverable(rc)) {
+                // Only the ack state is lost, those messages will be redelivered
+                log.error("[{}] Error reading ack snapshot from metadata ledger {} for consumer {}: {}",
+                        ledger.getName(), lh.getId(), name, BKException.getMessage(rc));
+                recoveredFromPositionInfo(positionInfo, Collections.emptyList(), Collections.emptyList(), lh,
+                        callback);
+                return;
+            } else if (rc != BKException.Code.OK) {
+                log.warn("[{}] Error reading ack snapshot from metadata ledger {} for consumer {}: {}",
+                        ledger.getName(), lh.getId(), name, BKException.getMessage(rc));
+                callback.operationFailed(createManagedLedgerException(rc));
+                return;
+            }
+
+            List<PositionInfo> entries = Lists.newArrayList();
+            try {
+                while (seq.hasMoreElements()) {
+                    entries.add(PositionInfo.parseFrom(seq.nextElement().getEntry()));
                 }
-                recoveredCursor(position, recoveredProperties, lh);
-                callback.operationComplete();
-            }, null);
+            } catch (InvalidProtocolBufferException e) {
+                callback.operationFailed(new ManagedLedgerException(e));
+                return;
+            }
+
+            PositionInfo snapshot = entries.get(0);
+            if (snapshot.getAckDeltaSequence() != 0) {
+                log.warn("[{}] Invalid ack snapshot at entry {} of metadata ledger {} for consumer {}",
+                        ledger.getName(), snapshotEntry, lh.getId(), name);
+                recoveredFromPositionInfo(positionInfo, Collections.emptyList(), Collections.emptyList(), lh,
+                        callback);
+                return;
+            }
+
+            List<PositionInfo> deltas = Lists.newArrayList(entries.subList(1, entries.size()));
+            deltas.add(positionInfo);
+            recoverAckSnapshot(lh, snapshotEntry, snapshot, deltas, callback);
         }, null);
     }
 
+    private void recoverAckSnapshot(LedgerHandle lh, long snapshotEntry, PositionInfo snapshot,
+            List<PositionInfo> deltas, VoidCallback callback) {
+        if (snapshot.getAckBitmapChunks() > 0) {
+            recoverAckBitmapChunks(lh, snapshotEntry, snapshot, deltas, callback);
+        } else {
+            recoveredFromPositionInfo(snapshot, snapshot.getAckBitmapsList(), deltas, lh, callback);
+        }
+    }
+
+    /**
+     * Read the entries preceding the last position info in the cursor ledger, that carry the rest of the ack bitmaps.
+     */
+    private void recoverAckBitmapChunks(LedgerHandle lh, long snapshotEntry, PositionInfo positionInfo,
+            List<PositionInfo> deltas, VoidCallback callback) {
+        long firstChunkEntry = snapshotEntry - positionInfo.getAckBitmapChunks();
+        if (firstChunkEntry < 0) {
+            log.warn("[{}] Missing ack bitmaps in metadata ledger {} for consumer {}: expected {} chunks",
+                    ledger.getName(), lh.getId(), name, positionInfo.getAckBitmapChunks());
+            recoveredFromPositionInfo(positionInfo, positionInfo.getAckBitmapsList(), deltas, lh, callback);
+            return;
+        }
+
+        lh.asyncReadEntries(firstChunkEntry, snapshotEntry - 1, (rc, lh1, seq, ctx) -> {
+            if (isBkErrorNotRecoverable(rc)) {
+                // Only the ack state in the chunks is lost, those messages will be redelivered
+                log.error("[{}] Error reading ack bitmaps from metadata ledger {} for consumer {}: {}",
+                        ledger.getName(), lh.getId(), name, BKException.getMessage(rc));
+                recoveredFromPositionInfo(positionInfo, positionInfo.getAckBitmapsList(), deltas, lh, callback);
+                return;
+            } else if (rc != BKException.Code.OK) {
+                log.warn("[{}] Error reading ack bitmaps from metadata ledger {} for consumer {}: {}",
+                        ledger.getName(), lh.getId(), name, BKException.getMessage(rc));
+                callback.operationFailed(createManagedLedgerException(rc));
+                return;
+            }
+
+            List<AckBitmap> ackBitmaps = Lists.newArrayList();
+            while (seq.hasMoreElements()) {
+                PositionInfo chunk;
+                try {
+                    chunk = PositionInfo.parseFrom(seq.nextElement().getEntry());
+                } catch (InvalidProtocolBufferException e) {
+                    callback.operationFailed(new ManagedLedgerException(e));
+                    return;
+                }
+
+                if (chunk.getLedgerId() != positionInfo.getLedgerId()
+                        || chunk.getEntryId() != positionInfo.getEntryId()) {
+                    log.warn("[{}] Ignoring ack bitmaps of consumer {} for a different position {}:{} in metadata"
+                            + " ledger {}", ledger.getName(), name, chunk.getLedgerId(), chunk.getEntryId(),
+                            lh.getId());
+                    continue;
+                }
+                ackBitmaps.addAll(chunk.getAckBitmapsList());
+            }
+            ackBitmaps.addAll(positionInfo.getAckBitmapsList());
+
+            recoveredFromPositionInfo(positionInfo, ackBitmaps, deltas, lh, callback);
+        }, null);
+    }
+
+    /**
+     * Restore the cursor from the last snapshot of the ack state, and replay the incremental entries written after it.
+     */
+    private void recoveredFromPositionInfo(PositionInfo snapshot, List<AckBitmap> ackBitmaps,
+            List<PositionInfo> deltas, LedgerHandle lh, VoidCallback callback) {
+        // The position and properties are taken from the last entry in the cursor ledger
+        PositionInfo positionInfo = deltas.isEmpty() ? snapshot : deltas.get(deltas.size() - 1);
+        Map<String, Long> recoveredProperties = Collections.emptyMap();
+        if (positionInfo.getPropertiesCount() > 0) {
+            // Recover properties map
+            recoveredProperties = Maps.newHashMap();
+            for (int i = 0; i < positionInfo.getPropertiesCount(); i++) {
+                LongProperty property = positionInfo.getProperties(i);
+                recoveredProperties.put(property.getName(), property.getValue());
+            }
+        }
+
+        PositionImpl position = new PositionImpl(positionInfo);
+        if (snapshot.getIndividualDeletedMessagesCount() > 0 || !ackBitmaps.isEmpty() || !deltas.isEmpty()) {
+            recoverIndividualDeletedMessages(snapshot.getIndividualDeletedMessagesList(), ackBitmaps);
+            replayIndividualDeletedMessagesDeltas(deltas);
+        }
+        recoveredCursor(position, recoveredProperties, lh);
+        callback.operationComplete();
+    }
+
+    private void replayIndividualDeletedMessagesDeltas(List<PositionInfo> deltas) {
+        lock.writeLock().lock();
+        try {
+            for (PositionInfo delta : deltas) {
+                delta.getIndividualDeletedMessagesList().forEach(messageRange -> individualDeletedMessages
+                        .addOpenClosed(messageRange.getLowerEndpoint().getLedgerId(),
+                                messageRange.getLowerEndpoint().getEntryId(),
+                                messageRange.getUpperEndpoint().getLedgerId(),
+                                messageRange.getUpperEndpoint().getEntryId()));
+                individualDeletedMessages.removeAtMost(delta.getLedgerId(), delta.getEntryId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     private void recoverIndividualDeletedMessages(List<MLDataFormats.MessageRange> individualDeletedMessagesList) {
+        recoverIndividualDeletedMessages(individualDeletedMessagesList, Collections.emptyList());
+    }
+
+    private void recoverIndividualDeletedMessages(List<MLDataFormats.MessageRange> individualDeletedMessagesList,
+            List<AckBitmap> ackBitmaps) {
         lock.writeLock().lock();
         try {
             individualDeletedMessages.clear();
@@ -380,6 +549,7 @@ public class ManagedCursorImpl implements ManagedCursor {
                     .addOpenClosed(messageRange.getLowerEndpoint().getLedgerId(),
                             messageRange.getLowerEndpoint().getEntryId(), messageRange.getUpperEndpoint().getLedgerId(),
                             messageRange.getUpperEndpoint().getEntryId()));
+            AckBitmapCodec.decode(ackBitmaps, individualDeletedMessages);
         } finally {
             lock.writeLock().unlock();
         }
@@ -793,6 +963,17 @@ public class ManagedCursorImpl implements ManagedCursor {
     @Override
     public void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition,
             FindEntryCallback callback, Object ctx) {
+        internalFindNewestMatching(constraint, condition, null, callback, ctx);
+    }
+
+    @Override
+    public void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition, long timestamp,
+            FindEntryCallback callback, Object ctx) {
+        internalFindNewestMatching(constraint, condition, ledger.getTimeIndexRange(timestamp), callback, ctx);
+    }
+
+    private void internalFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition,
+            Range<PositionImpl> searchRange, FindEntryCallback callback, Object ctx) {
         OpFindNewest op;
         PositionImpl startPosition = null;
         long max = 0;
@@ -814,6 +995,18 @@ public class ManagedCursorImpl implements ManagedCursor {
                     Optional.empty(), ctx);
             return;
         }
+
+        if (searchRange != null) {
+            // Only search between the closest indexed entries
+            if (searchRange.hasLowerBound() && searchRange.lowerEndpoint().compareTo(startPosition) > 0) {
+                max -= ledger.getNumberOfEntries(Range.closedOpen(startPosition, searchRange.lowerEndpoint()));
+                startPosition = searchRange.lowerEndpoint();
+            }
+            if (searchRange.hasUpperBound() && searchRange.upperEndpoint().compareTo(startPosition) > 0) {
+                max = Math.min(max,
+                        ledger.getNumberOfEntries(Range.closedOpen(startPosition, searchRange.upperEndpoint())) - 1);
+            }
+        }
         op = new OpFindNewest(this, startPosition, condition, max, callback, ctx);
         op.find();
     }
@@ -841,6 +1034,16 @@ public class ManagedCursorImpl implements ManagedCursor {
         this.alwaysInactive = true;
     }
 
+    @Override
+    public void setScanReads(boolean scanReads) {
+        this.scanReads = scanReads;
+    }
+
+    @Override
+    public boolean isScanReads() {
+        return scanReads;
+    }
+
     @Override
     public Position getFirstPosition() {
         Long firstLedgerId = ledger.getLedgersInfo().firstKey();
@@ -890,6 +1093,11 @@ public class ManagedCursorImpl implements ManagedCursor {
                     lastMarkDeleteEntry = new MarkDeleteEntry(newMarkDeletePosition, Collections.emptyMap(),
                             null, null);
                     individualDeletedMessages.clear();
+                    if (individualDeletedMessagesDelta != null) {
+                        // Acks recorded in the previous snapshot are no longer valid
+                        individualDeletedMessagesDelta.clear();
+                        ackSnapshotLedgerId = -1;
+                    }
 
                     PositionImpl oldReadPosition = readPosition;
                     if (oldReadPosition.compareTo(newPosition) >= 0) {
@@ -1702,6 +1910,10 @@ public class ManagedCursorImpl implements ManagedCursor {
                 PositionImpl previousPosition = ledger.getPreviousPosition(position);
                 individualDeletedMessages.addOpenClosed(previousPosition.getLedgerId(), previousPosition.getEntryId(),
                         position.getLedgerId(), position.getEntryId());
+                if (individualDeletedMessagesDelta != null) {
+                    individualDeletedMessagesDelta.addOpenClosed(previousPosition.getLedgerId(),
+                            previousPosition.getEntryId(), position.getLedgerId(), position.getEntryId());
+                }
                 ++messagesConsumedCounter;
 
                 if (log.isDebugEnabled()) {
@@ -2048,10 +2260,35 @@ public class ManagedCursorImpl implements ManagedCursor {
             callback.closeComplete(ctx);
             return;
         }
+        releaseReadAhead();
         persistPositionWhenClosing(lastMarkDeleteEntry.newPosition, lastMarkDeleteEntry.properties, callback, ctx);
         STATE_UPDATER.set(this, State.Closed);
     }
 
+    CursorReadAhead getReadAhead() {
+        CursorReadAhead readAhead = this.readAhead;
+        if (readAhead == null && ledger.factory != null && ledger.factory.getEntryCacheManager().isReadAheadEnabled()
+                && !isClosed()) {
+            synchronized (this) {
+                readAhead = this.readAhead;
+                if (readAhead == null) {
+                    readAhead = new CursorReadAhead(ledger, ledger.factory.getEntryCacheManager(),
+                            ledger.factory.getConfig().getReadAheadMaxEntries(),
+                            ledger.factory.getConfig().getReadAheadMaxEntrySize());
+                    this.readAhead = readAhead;
+                }
+            }
+        }
+        return readAhead;
+    }
+
+    void releaseReadAhead() {
+        CursorReadAhead readAhead = this.readAhead;
+        if (readAhead != null) {
+            readAhead.clear();
+        }
+    }
+
     /**
      * Internal version of seek that doesn't do the validation check.
      *
@@ -2239,20 +2476,138 @@ public class ManagedCursorImpl implements ManagedCursor {
         }
     }
 
+    /**
+     * Build the ack state as compressed bitmaps. Ranges spanning multiple ledgers are added to the position info as
+     * regular ranges, together with the last chunk of bitmaps.
+     *
+     * @return the position infos carrying the preceding chunks of bitmaps, to be written before the main one
+     */
+    private List<PositionInfo> buildIndividualDeletedMessageBitmaps(PositionInfo.Builder piBuilder) {
+        AckBitmapCodec codec = new AckBitmapCodec(config.getUnackedRangesBitmapChunkSize());
+        List<MessageRange> crossLedgerRanges = Lists.newArrayList();
+
+        lock.readLock().lock();
+        try {
+            individualDeletedMessages.forEach((positionRange) -> {
+                PositionImpl lower = positionRange.lowerEndpoint();
+                PositionImpl upper = positionRange.upperEndpoint();
+                if (lower.getLedgerId() == upper.getLedgerId()) {
+                    codec.add(lower.getLedgerId(), lower.getEntryId() + 1, upper.getEntryId());
+                } else {
+                    crossLedgerRanges.add(MessageRange.newBuilder()
+                            .setLowerEndpoint(NestedPositionInfo.newBuilder().setLedgerId(lower.getLedgerId())
+                                    .setEntryId(lower.getEntryId()))
+                            .setUpperEndpoint(NestedPositionInfo.newBuilder().setLedgerId(upper.getLedgerId())
+                                    .setEntryId(upper.getEntryId()))
+                            .build());
+                }
+                return true;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<List<AckBitmap>> chunks = codec.finish();
+        piBuilder.addAllIndividualDeletedMessages(crossLedgerRanges);
+        if (chunks.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        piBuilder.addAllAckBitmaps(chunks.get(chunks.size() - 1));
+        List<PositionInfo> precedingChunks = Lists.newArrayListWithExpectedSize(chunks.size() - 1);
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            precedingChunks.add(PositionInfo.newBuilder().setLedgerId(piBuilder.getLedgerId())
+                    .setEntryId(piBuilder.getEntryId()).addAllAckBitmaps(chunks.get(i)).build());
+        }
+        if (!precedingChunks.isEmpty()) {
+            piBuilder.setAckBitmapChunks(precedingChunks.size());
+        }
+        return precedingChunks;
+    }
+
+    /**
+     * Add to the position info only the ranges individually deleted since the previous entry in the cursor ledger.
+     * Must be called while holding the read lock.
+     */
+    private void buildIndividualDeletedMessagesDelta(PositionInfo.Builder piBuilder, PositionImpl position) {
+        MessageRange.Builder messageRangeBuilder = MessageRange.newBuilder();
+        individualDeletedMessagesDelta.forEach((positionRange) -> {
+            PositionImpl lower = positionRange.lowerEndpoint();
+            PositionImpl upper = positionRange.upperEndpoint();
+            if (upper.compareTo(position) > 0) {
+                // Ranges before the mark-delete position are implicitly removed when replaying
+                piBuilder.addIndividualDeletedMessages(messageRangeBuilder
+                        .setLowerEndpoint(NestedPositionInfo.newBuilder().setLedgerId(lower.getLedgerId())
+                                .setEntryId(lower.getEntryId()))
+                        .setUpperEndpoint(NestedPositionInfo.newBuilder().setLedgerId(upper.getLedgerId())
+                                .setEntryId(upper.getEntryId()))
+                        .build());
+            }
+            return true;
+        });
+        individualDeletedMessagesDelta.clear();
+    }
+
     void persistPositionToLedger(final LedgerHandle lh, MarkDeleteEntry mdEntry, final VoidCallback callback) {
         PositionImpl position = mdEntry.newPosition;
-        PositionInfo pi = PositionInfo.newBuilder().setLedgerId(position.getLedgerId())
-                .setEntryId(position.getEntryId())
-                .addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges())
-                .addAllProperties(buildPropertiesMap(mdEntry.properties)).build();
+        checkNotNull(lh);
 
+        // Chunks of bitmaps and incremental entries are interpreted based on their order in the cursor ledger, so the
+        // entries of a mark-delete are built and appended without interleaving with other mark-delete operations
+        synchronized (cursorLedgerWriteLock) {
+            PositionInfo.Builder piBuilder = PositionInfo.newBuilder().setLedgerId(position.getLedgerId())
+                    .setEntryId(position.getEntryId())
+                    .addAllProperties(buildPropertiesMap(mdEntry.properties));
+
+            List<PositionInfo> ackBitmapChunks = Collections.emptyList();
+            lock.readLock().lock();
+            try {
+                if (individualDeletedMessagesDelta != null && ackSnapshotLedgerId == lh.getId()
+                        && ackDeltaSequence < config.getUnackedRangesSnapshotInterval()) {
+                    buildIndividualDeletedMessagesDelta(piBuilder, position);
+                    piBuilder.setAckDeltaSequence(++ackDeltaSequence);
+                } else {
+                    if (individualDeletedMessagesDelta != null) {
+                        // A new cursor ledger always starts with a full snapshot
+                        individualDeletedMessagesDelta.clear();
+                        ackSnapshotLedgerId = lh.getId();
+                        ackDeltaSequence = 0;
+                    }
 
-        if (log.isDebugEnabled()) {
-            log.debug("[{}] Cursor {} Appending to ledger={} position={}", ledger.getName(), name, lh.getId(),
-                    position);
+                    if (config.isUnackedRangesBitmapEnabled()) {
+                        ackBitmapChunks = buildIndividualDeletedMessageBitmaps(piBuilder);
+                    } else {
+                        piBuilder.addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges());
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            PositionInfo pi = piBuilder.build();
+
+
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Cursor {} Appending to ledger={} position={}", ledger.getName(), name, lh.getId(),
+                        position);
+            }
+
+            // The chunks must be the entries immediately preceding the position info in the cursor ledger
+            for (PositionInfo chunk : ackBitmapChunks) {
+                lh.asyncAddEntry(chunk.toByteArray(), (rc, lh1, entryId, ctx) -> {
+                    // If a chunk fails, the ledger is errored out and the position info write will fail as well
+                    if (rc != BKException.Code.OK) {
+                        log.warn("[{}] Error writing ack bitmaps of cursor {} in meta-ledger {}: {}",
+                                ledger.getName(), name, lh1.getId(), BKException.getMessage(rc));
+                    }
+                }, null);
+            }
+            addPositionInfoToLedger(lh, pi, mdEntry, callback);
         }
+    }
 
-        checkNotNull(lh);
+    private void addPositionInfoToLedger(final LedgerHandle lh, PositionInfo pi, MarkDeleteEntry mdEntry,
+            final VoidCallback callback) {
+        PositionImpl position = mdEntry.newPosition;
         lh.asyncAddEntry(pi.toByteArray(), (rc, lh1, entryId, ctx) -> {
             if (rc == BKException.Code.OK) {
                 if (log.isDebugEnabled()) {
@@ -2274,6 +2629,8 @@ public class ManagedCursorImpl implements ManagedCursor {
                 // If we've had a write error, the ledger will be automatically closed, we need to create a new one,
                 // in the meantime the mark-delete will be queued.
                 STATE_UPDATER.compareAndSet(ManagedCursorImpl.this, State.Open, State.NoLedger);
+                // Incremental entries can only follow a snapshot that was successfully written
+                ackSnapshotLedgerId = -1;
 
                 // Before giving up, try to persist the position in the metadata store
                 persistPositionMetaStore(-1, position, mdEntry.properties, new MetaStoreCallback<Void>() {
@@ -2450,6 +2807,7 @@ public class ManagedCursorImpl implements ManagedCursor {
 
     private void asyncDeleteCursorLedger(int retry) {
         STATE_UPDATER.set(this, State.Closed);
+        releaseReadAhead();
 
         if (cursorLedger == null || retry <= 0) {
             if (cursorLedger != null) {
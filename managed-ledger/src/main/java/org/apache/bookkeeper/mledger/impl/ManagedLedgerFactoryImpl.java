@@ -39,6 +39,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.bookkeeper.client.BKException;
@@ -75,6 +76,7 @@ import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.MessageRange;
 import org.apache.bookkeeper.mledger.util.Futures;
 import org.apache.bookkeeper.zookeeper.ZooKeeperClient;
+import org.apache.pulsar.client.api.CompressionType;
 import org.apache.pulsar.common.util.DateFormatter;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.ZooKeeper;
@@ -91,6 +93,10 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
     private final OrderedExecutor orderedExecutor;
 
     private final ExecutorService cacheEvictionExecutor;
+    // Threads evicting the caches of the managed ledgers in parallel, null when the eviction is done by a single thread
+    private final ExecutorService cacheEvictionWorkers;
+    private final int cacheEvictionShards;
+    private final Semaphore cacheEvictionSignal = new Semaphore(0);
 
     protected final ManagedLedgerFactoryMBeanImpl mbean;
 
@@ -156,13 +162,22 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
                 .build();
         cacheEvictionExecutor = Executors
                 .newSingleThreadExecutor(new DefaultThreadFactory("bookkeeper-ml-cache-eviction"));
+        cacheEvictionShards = Math.max(config.getCacheEvictionThreads(), 1);
+        cacheEvictionWorkers = cacheEvictionShards > 1
+                ? Executors.newFixedThreadPool(cacheEvictionShards,
+                        new DefaultThreadFactory("bookkeeper-ml-cache-eviction-worker"))
+                : null;
 
         this.bookkeeperFactory = bookKeeperGroupFactory;
         this.isBookkeeperManaged = isBookkeeperManaged;
         this.zookeeper = isBookkeeperManaged ? zooKeeper : null;
-        this.store = new MetaStoreImplZookeeper(zooKeeper, orderedExecutor);
         this.config = config;
         this.mbean = new ManagedLedgerFactoryMBeanImpl(this);
+        this.store = new MetaStoreImplZookeeper(zooKeeper, orderedExecutor, scheduledExecutor,
+                config.getMetadataBatchingMaxDelayMillis(), config.getMetadataBatchingMaxOperations(),
+                config.getMetadataBatchingMaxSizeInBytes(), mbean,
+                config.isManagedLedgerInfoCompactEncodingEnabled()
+                        ? CompressionType.valueOf(config.getManagedLedgerInfoCompressionType()) : null);
         this.entryCacheManager = new EntryCacheManager(this);
         this.statsTask = scheduledExecutor.scheduleAtFixedRate(() -> refreshStats(), 0, StatsPeriodSeconds, TimeUnit.SECONDS);
 
@@ -214,11 +229,20 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
         double evictionFrequency = Math.max(Math.min(config.getCacheEvictionFrequency(), 1000.0), 0.001);
         long waitTimeMillis = (long) (1000 / evictionFrequency);
 
+        long nextCycleMillis = System.currentTimeMillis();
+
         while (true) {
             try {
                 doCacheEviction();
 
-                Thread.sleep(waitTimeMillis);
+                // Wait for the next cycle, unless the cache goes above the eviction watermark in the meantime. A
+                // triggered cycle doesn't shift the regular schedule.
+                long now = System.currentTimeMillis();
+                if (nextCycleMillis <= now) {
+                    nextCycleMillis = now + waitTimeMillis;
+                }
+                cacheEvictionSignal.tryAcquire(nextCycleMillis - now, TimeUnit.MILLISECONDS);
+                cacheEvictionSignal.drainPermits();
             } catch (InterruptedException e) {
                 // Factory is shutting down
                 return;
@@ -228,10 +252,48 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
         }
     }
 
-    private synchronized void doCacheEviction() {
-        long maxTimestamp = System.nanoTime() - cacheEvictionTimeThresholdNanos;
+    /**
+     * Start a cache eviction cycle right away, without waiting for the configured eviction interval.
+     */
+    void triggerCacheEviction() {
+        if (cacheEvictionSignal.availablePermits() == 0) {
+            cacheEvictionSignal.release();
+        }
+    }
+
+    private synchronized void doCacheEviction() throws InterruptedException {
+        long startTime = System.nanoTime();
+        long maxTimestamp = startTime - cacheEvictionTimeThresholdNanos;
+
+        if (cacheEvictionWorkers == null) {
+            doCacheEviction(maxTimestamp, 0);
+        } else {
+            // Each worker evicts the caches of the ledgers whose name hash falls in its shard
+            CountDownLatch latch = new CountDownLatch(cacheEvictionShards);
+            for (int i = 0; i < cacheEvictionShards; i++) {
+                final int shard = i;
+                cacheEvictionWorkers.execute(() -> {
+                    try {
+                        doCacheEviction(maxTimestamp, shard);
+                    } catch (Throwable t) {
+                        log.warn("Exception while performing cache eviction: {}", t.getMessage(), t);
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await();
+        }
+
+        mbean.recordCacheEvictionCycle(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+    }
+
+    private void doCacheEviction(long maxTimestamp, int shard) {
+        ledgers.forEach((name, mlfuture) -> {
+            if (cacheEvictionShards > 1 && signSafeMod(name.hashCode(), cacheEvictionShards) != shard) {
+                return;
+            }
 
-        ledgers.values().forEach(mlfuture -> {
             if (mlfuture.isDone() && !mlfuture.isCompletedExceptionally()) {
                 ManagedLedgerImpl ml = mlfuture.getNow(null);
                 if (ml != null) {
@@ -241,6 +303,11 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
         });
     }
 
+    private static int signSafeMod(int n, int modulo) {
+        int mod = n % modulo;
+        return mod < 0 ? mod + modulo : mod;
+    }
+
     /**
      * Helper for getting stats.
      *
@@ -462,8 +529,11 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
         scheduledExecutor.shutdownNow();
         orderedExecutor.shutdownNow();
         cacheEvictionExecutor.shutdownNow();
+        if (cacheEvictionWorkers != null) {
+            cacheEvictionWorkers.shutdownNow();
+        }
 
-        entryCacheManager.clear();
+        entryCacheManager.close();
     }
 
     @Override
@@ -19,17 +19,33 @@
 package org.apache.bookkeeper.mledger.impl;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.bookkeeper.mledger.ManagedLedgerFactoryMXBean;
 import org.apache.bookkeeper.mledger.util.Rate;
+import org.apache.bookkeeper.mledger.util.StatsBuckets;
 
 @SuppressWarnings("checkstyle:javadoctype")
 public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean {
 
+    public static final long[] METADATA_BATCH_SIZE_BUCKETS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000 };
+
     private final ManagedLedgerFactoryImpl factory;
 
     final Rate cacheHits = new Rate();
     final Rate cacheMisses = new Rate();
     final Rate cacheEvictions = new Rate();
+    final Rate deduplicatedReads = new Rate();
+    final Rate readAheadHits = new Rate();
+    final Rate cacheAdmissionRejected = new Rate();
+    final Rate cacheScanReads = new Rate();
+    final Rate diskCacheHits = new Rate();
+    final Rate cacheInsertsRejected = new Rate();
+    private final StatsBuckets cacheEvictionTimeStatsUsec = new StatsBuckets(
+            ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    private final AtomicLong cacheOvershoot = new AtomicLong();
+    private volatile long cacheMaxOvershoot = 0;
+    final Rate metadataBatches = new Rate();
+    private final StatsBuckets metadataBatchSizeStats = new StatsBuckets(METADATA_BATCH_SIZE_BUCKETS);
 
     public ManagedLedgerFactoryMBeanImpl(ManagedLedgerFactoryImpl factory) throws Exception {
         this.factory = factory;
@@ -46,6 +62,16 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
         cacheHits.calculateRate(seconds);
         cacheMisses.calculateRate(seconds);
         cacheEvictions.calculateRate(seconds);
+        deduplicatedReads.calculateRate(seconds);
+        readAheadHits.calculateRate(seconds);
+        cacheAdmissionRejected.calculateRate(seconds);
+        cacheScanReads.calculateRate(seconds);
+        diskCacheHits.calculateRate(seconds);
+        cacheInsertsRejected.calculateRate(seconds);
+        cacheEvictionTimeStatsUsec.refresh();
+        cacheMaxOvershoot = cacheOvershoot.getAndSet(0);
+        metadataBatches.calculateRate(seconds);
+        metadataBatchSizeStats.refresh();
     }
 
     public void recordCacheHit(long size) {
@@ -64,6 +90,43 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
         cacheEvictions.recordEvent();
     }
 
+    public void recordDeduplicatedReads(int count, long totalSize) {
+        deduplicatedReads.recordMultipleEvents(count, totalSize);
+    }
+
+    public void recordReadAheadHits(int count, long totalSize) {
+        readAheadHits.recordMultipleEvents(count, totalSize);
+    }
+
+    public void recordCacheAdmissionRejected(long size) {
+        cacheAdmissionRejected.recordEvent(size);
+    }
+
+    public void recordCacheScanRead() {
+        cacheScanReads.recordEvent();
+    }
+
+    public void recordDiskCacheHits(int count, long totalSize) {
+        diskCacheHits.recordMultipleEvents(count, totalSize);
+    }
+
+    public void recordCacheInsertRejected(long size) {
+        cacheInsertsRejected.recordEvent(size);
+    }
+
+    public void recordCacheEvictionCycle(long duration, TimeUnit unit) {
+        cacheEvictionTimeStatsUsec.addValue(unit.toMicros(duration));
+    }
+
+    public void recordCacheOvershoot(long overshoot) {
+        cacheOvershoot.accumulateAndGet(overshoot, Math::max);
+    }
+
+    public void recordMetadataBatch(int operations) {
+        metadataBatches.recordEvent(operations);
+        metadataBatchSizeStats.addValue(operations);
+    }
+
     // //
 
     @Override
@@ -106,4 +169,95 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
         return cacheEvictions.getCount();
     }
 
+    @Override
+    public double getDeduplicatedReadsRate() {
+        return deduplicatedReads.getRate();
+    }
+
+    @Override
+    public double getDeduplicatedReadsThroughput() {
+        return deduplicatedReads.getValueRate();
+    }
+
+    @Override
+    public long getReadAheadUsedSize() {
+        return factory.getEntryCacheManager().getReadAheadSize();
+    }
+
+    @Override
+    public double getReadAheadHitsRate() {
+        return readAheadHits.getRate();
+    }
+
+    @Override
+    public double getReadAheadHitsThroughput() {
+        return readAheadHits.getValueRate();
+    }
+
+    @Override
+    public String getCacheEvictionPolicy() {
+        return factory.getEntryCacheManager().getEvictionPolicy().getClass().getSimpleName();
+    }
+
+    @Override
+    public double getCacheAdmissionRejectedRate() {
+        return cacheAdmissionRejected.getRate();
+    }
+
+    @Override
+    public double getCacheScanReadsRate() {
+        return cacheScanReads.getRate();
+    }
+
+    @Override
+    public long getDiskCacheUsedSize() {
+        return factory.getEntryCacheManager().getDiskCacheSize();
+    }
+
+    @Override
+    public double getDiskCacheHitsRate() {
+        return diskCacheHits.getRate();
+    }
+
+    @Override
+    public double getDiskCacheHitsThroughput() {
+        return diskCacheHits.getValueRate();
+    }
+
+    @Override
+    public double getCacheInsertsRejectedRate() {
+        return cacheInsertsRejected.getRate();
+    }
+
+    @Override
+    public long[] getCacheEvictionTimeBuckets() {
+        return cacheEvictionTimeStatsUsec.getBuckets();
+    }
+
+    @Override
+    public double getCacheEvictionTimeAverageUsec() {
+        return cacheEvictionTimeStatsUsec.getAvg();
+    }
+
+    @Override
+    public long getCacheMaxOvershootSize() {
+        return cacheMaxOvershoot;
+    }
+
+    @Override
+    public double getMetadataBatchesRate() {
+        return metadataBatches.getRate();
+    }
+
+    @Override
+    public double getMetadataOpsSavedRate() {
+        // A batch of n updates takes a single ZooKeeper operation instead of n
+        return metadataBatches.getValueRate() - metadataBatches.getRate();
+    }
+
+    @Override
+    public long[] getMetadataBatchSizeBuckets() {
+        return metadataBatchSizeStats.getBuckets();
+    }
+
 }
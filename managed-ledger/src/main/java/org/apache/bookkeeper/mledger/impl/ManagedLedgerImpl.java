@@ -52,7 +52,6 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledFuture;
@@ -88,6 +87,7 @@ import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.TerminateCallback;
 import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.EntryTimestampExtractor;
 import org.apache.bookkeeper.mledger.ManagedCursor;
 import org.apache.bookkeeper.mledger.ManagedLedger;
 import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
@@ -135,7 +135,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
     private final ConcurrentLongHashMap<CompletableFuture<ReadHandle>> ledgerCache = new ConcurrentLongHashMap<>(
             16 /* initial capacity */, 1 /* number of sections */);
-    protected final NavigableMap<Long, LedgerInfo> ledgers = new ConcurrentSkipListMap<>();
+    protected final LedgerInfoMap ledgers = new LedgerInfoMap();
     private volatile Stat ledgersStat;
 
     private final ManagedCursorContainer cursors = new ManagedCursorContainer();
@@ -167,6 +167,11 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
     private ScheduledFuture<?> timeoutTask;
 
+    // Trimming scheduled for when the next ledger kept by the retention policy, or the next offloaded ledger still
+    // stored in BookKeeper, can be deleted. Guarded by this
+    private ScheduledFuture<?> scheduledTrimmingTask;
+    private long scheduledTrimmingTimeMillis = Long.MAX_VALUE;
+
     /**
      * This lock is held while the ledgers list is updated asynchronously on the metadata store. Since we use the store
      * version, we cannot have multiple concurrent updates.
@@ -184,6 +189,19 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     private long lastLedgerCreationFailureTimestamp = 0;
     private long lastLedgerCreationInitiationTimestamp = 0;
 
+    // Ledger created ahead of time, to be switched in when the current ledger is rolled over
+    private volatile LedgerHandle standbyLedger = null;
+    // Set once the standby ledger is recorded in the metadata, at which point it can be written into
+    private boolean standbyLedgerReady = false;
+    private boolean standbyLedgerCreating = false;
+    // The rollover is waiting for the standby ledger to become ready
+    private boolean waitingForStandbyLedger = false;
+    // Time at which the first add was queued waiting for the rollover to complete
+    private long rolloverStallStartTimestamp = 0;
+
+    // Time index of the ledger being written, moved into its LedgerInfo when the ledger is closed
+    private volatile LedgerTimeIndex currentTimeIndex = null;
+
     private static final Random random = new Random(System.currentTimeMillis());
     private long maximumRolloverTimeMs;
 
@@ -289,45 +307,26 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                     log.info("[{}] Recovering managed ledger terminated at {}", name, lastConfirmedEntry);
                 }
 
-                for (LedgerInfo ls : mlInfo.getLedgerInfoList()) {
-                    ledgers.put(ls.getLedgerId(), ls);
-                }
+                ledgers.addAll(mlInfo.getLedgerInfoList());
 
                 // Last ledger stat may be zeroed, we must update it
-                if (ledgers.size() > 0) {
-                    final long id = ledgers.lastKey();
-                    OpenCallback opencb = (rc, lh, ctx1) -> {
-                        executor.executeOrdered(name, safeRun(() -> {
-                            mbean.endDataLedgerOpenOp();
-                            if (log.isDebugEnabled()) {
-                                log.debug("[{}] Opened ledger {}: ", name, id, BKException.getMessage(rc));
-                            }
-                            if (rc == BKException.Code.OK) {
-                                LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(id)
-                                        .setEntries(lh.getLastAddConfirmed() + 1).setSize(lh.getLength())
-                                        .setTimestamp(clock.millis()).build();
-                                ledgers.put(id, info);
-                                initializeBookKeeper(callback);
-                            } else if (isNoSuchLedgerExistsException(rc)) {
-                                log.warn("[{}] Ledger not found: {}", name, ledgers.lastKey());
-                                ledgers.remove(ledgers.lastKey());
-                                initializeBookKeeper(callback);
-                            } else {
-                                log.error("[{}] Failed to open ledger {}: {}", name, id, BKException.getMessage(rc));
-                                callback.initializeFailed(createManagedLedgerException(rc));
-                                return;
-                            }
-                        }));
-                    };
-
-                    if (log.isDebugEnabled()) {
-                        log.debug("[{}] Opening ledger {}", name, id);
+                List<Long> ledgersToRecover = Lists.newArrayList();
+                if (mlInfo.hasStandbyLedgerId() && !ledgers.containsKey(mlInfo.getStandbyLedgerId())) {
+                    // The standby ledger might have been switched in before the ledgers list was updated, in which
+                    // case both the standby ledger and the ledger preceding it were written into
+                    long standbyLedgerId = mlInfo.getStandbyLedgerId();
+                    Long previousLedgerId = ledgers.isEmpty() ? null : ledgers.lastKey();
+                    ledgers.put(standbyLedgerId,
+                            LedgerInfo.newBuilder().setLedgerId(standbyLedgerId).setTimestamp(0).build());
+                    ledgersToRecover.add(standbyLedgerId);
+                    if (previousLedgerId != null) {
+                        ledgersToRecover.add(previousLedgerId);
                     }
-                    mbean.startDataLedgerOpenOp();
-                    bookKeeper.asyncOpenLedger(id, digestType, config.getPassword(), opencb, null);
-                } else {
-                    initializeBookKeeper(callback);
+                } else if (ledgers.size() > 0) {
+                    ledgersToRecover.add(ledgers.lastKey());
                 }
+
+                recoverLedgers(ledgersToRecover.iterator(), callback);
             }
 
             @Override
@@ -343,6 +342,45 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         scheduleTimeoutTask();
     }
 
+    private void recoverLedgers(Iterator<Long> ledgersToRecover,
+            final ManagedLedgerInitializeLedgerCallback callback) {
+        if (!ledgersToRecover.hasNext()) {
+            initializeBookKeeper(callback);
+            return;
+        }
+
+        final long id = ledgersToRecover.next();
+        OpenCallback opencb = (rc, lh, ctx1) -> {
+            executor.executeOrdered(name, safeRun(() -> {
+                mbean.endDataLedgerOpenOp();
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Opened ledger {}: ", name, id, BKException.getMessage(rc));
+                }
+                if (rc == BKException.Code.OK) {
+                    LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(id)
+                            .setEntries(lh.getLastAddConfirmed() + 1).setSize(lh.getLength())
+                            .setTimestamp(clock.millis()).build();
+                    ledgers.put(id, info);
+                    recoverLedgers(ledgersToRecover, callback);
+                } else if (isNoSuchLedgerExistsException(rc)) {
+                    log.warn("[{}] Ledger not found: {}", name, id);
+                    ledgers.remove(id);
+                    recoverLedgers(ledgersToRecover, callback);
+                } else {
+                    log.error("[{}] Failed to open ledger {}: {}", name, id, BKException.getMessage(rc));
+                    callback.initializeFailed(createManagedLedgerException(rc));
+                    return;
+                }
+            }));
+        };
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Opening ledger {}", name, id);
+        }
+        mbean.startDataLedgerOpenOp();
+        bookKeeper.asyncOpenLedger(id, digestType, config.getPassword(), opencb, null);
+    }
+
     private synchronized void initializeBookKeeper(final ManagedLedgerInitializeLedgerCallback callback) {
         if (log.isDebugEnabled()) {
             log.debug("[{}] initializing bookkeeper; ledgers {}", name, ledgers);
@@ -559,7 +597,21 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         }));
     }
 
-    private synchronized void internalAsyncAddEntry(OpAddEntry addOperation) {
+    /**
+     * Dispatch an add operation on the current ledger.
+     *
+     * <p/>This method, together with all the other transitions of the ledger rollover (ledger created, ledgers list
+     * updated and ledger closed), is only executed on the thread associated with the managed ledger name in the ordered
+     * executor. That makes it the single writer of the current ledger and of the pending adds queue, so the add path
+     * doesn't need to acquire the managed ledger lock.
+     *
+     * <p/>Close and terminate can be requested from any thread. They change the state right away, but the current
+     * ledger is only closed by a task queued on this same thread. An add that read the ledger as opened is therefore
+     * always initiated before the ledger is closed, while the adds dispatched after see the new state and fail. Fence
+     * only changes the state, and the rollover transitions only move out of {@link State#CreatingLedger} with a
+     * compare-and-set, so they never reopen a ledger that was closed, terminated or fenced in the meantime.
+     */
+    private void internalAsyncAddEntry(OpAddEntry addOperation) {
         final State state = STATE_UPDATER.get(this);
         if (state == State.Fenced) {
             addOperation.failed(new ManagedLedgerFencedException());
@@ -582,15 +634,19 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Queue addEntry request", name);
             }
+            if (rolloverStallStartTimestamp == 0) {
+                rolloverStallStartTimestamp = System.nanoTime();
+            }
         } else if (state == State.ClosedLedger) {
             // No ledger and no pending operations. Create a new ledger
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Creating a new ledger", name);
             }
+            if (rolloverStallStartTimestamp == 0) {
+                rolloverStallStartTimestamp = System.nanoTime();
+            }
             if (STATE_UPDATER.compareAndSet(this, State.ClosedLedger, State.CreatingLedger)) {
-                this.lastLedgerCreationInitiationTimestamp = System.nanoTime();
-                mbean.startDataLedgerCreateOp();
-                asyncCreateLedger(bookKeeper, config, digestType, this, Collections.emptyMap());
+                createNewLedger();
             }
         } else {
             checkArgument(state == State.LedgerOpened, "ledger=%s is not opened", state);
@@ -612,7 +668,9 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                 }
                 // This entry will be the last added to current ledger
                 addOperation.setCloseWhenDone(true);
-                STATE_UPDATER.set(this, State.ClosingLedger);
+                STATE_UPDATER.compareAndSet(this, State.LedgerOpened, State.ClosingLedger);
+            } else if (config.isStandbyLedgerEnabled()) {
+                maybeCreateStandbyLedger();
             }
 
             addOperation.initiate();
@@ -932,8 +990,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             // Subtract size of ledgers that were already fully consumed but not trimmed yet
             synchronized (this) {
                 size = getTotalSize();
-                size -= ledgers.values().stream().filter(li -> li.getLedgerId() < slowestConsumerLedgerId)
-                        .mapToLong(li -> li.getSize()).sum();
+                size -= ledgers.getSizeBefore(slowestConsumerLedgerId);
             }
 
             LedgerInfo ledgerInfo = null;
@@ -968,8 +1025,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             if (ledgerInfo == null) {
                 return getTotalSize(); // position no longer in managed ledger, so return total size
             }
-            long sizeBeforePosLedger = ledgers.values().stream().filter(li -> li.getLedgerId() < pos.getLedgerId())
-                    .mapToLong(li -> li.getSize()).sum();
+            long sizeBeforePosLedger = ledgers.getSizeBefore(pos.getLedgerId());
             long size = getTotalSize() - sizeBeforePosLedger;
 
             if (pos.getLedgerId() == currentLedger.getId()) {
@@ -1004,6 +1060,11 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         log.info("[{}] Terminating managed ledger", name);
         state = State.Terminated;
 
+        // Close the current ledger after the adds already dispatched on the managed ledger thread
+        executor.executeOrdered(name, safeRun(() -> terminateCurrentLedger(callback, ctx)));
+    }
+
+    private void terminateCurrentLedger(TerminateCallback callback, Object ctx) {
         LedgerHandle lh = currentLedger;
         if (log.isDebugEnabled()) {
             log.debug("[{}] Closing current writing ledger {}", name, lh.getId());
@@ -1130,7 +1191,18 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
         factory.close(this);
         STATE_UPDATER.set(this, State.Closed);
+        discardStandbyLedger();
+        cancelScheduledTrimming();
+
+        if (this.timeoutTask != null) {
+            this.timeoutTask.cancel(false);
+        }
 
+        // Close the current ledger after the adds already dispatched on the managed ledger thread
+        executor.executeOrdered(name, safeRun(() -> closeCurrentLedger(callback, ctx)));
+    }
+
+    private void closeCurrentLedger(CloseCallback callback, Object ctx) {
         LedgerHandle lh = currentLedger;
 
         if (lh == null) {
@@ -1156,11 +1228,6 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
             closeAllCursors(callback, ctx);
         }, null);
-
-        if (this.timeoutTask != null) {
-            this.timeoutTask.cancel(false);
-        }
-
     }
 
     private void closeAllCursors(CloseCallback callback, final Object ctx) {
@@ -1184,7 +1251,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     // Callbacks
 
     @Override
-    public synchronized void createComplete(int rc, final LedgerHandle lh, Object ctx) {
+    public void createComplete(int rc, final LedgerHandle lh, Object ctx) {
         if (log.isDebugEnabled()) {
             log.debug("[{}] createComplete rc={} ledger={}", name, rc, lh != null ? lh.getId() : -1);
         }
@@ -1193,6 +1260,11 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             return;
         }
 
+        // Jump to the managed ledger thread, where the pending adds are dispatched
+        executor.executeOrdered(name, safeRun(() -> ledgerCreated(rc, lh)));
+    }
+
+    private synchronized void ledgerCreated(int rc, final LedgerHandle lh) {
         mbean.endDataLedgerCreateOp();
         if (rc != BKException.Code.OK) {
             log.error("[{}] Error creating ledger rc={} {}", name, rc, BKException.getMessage(rc));
@@ -1200,14 +1272,26 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
             // no pending entries means that creating this new ledger is NOT caused by write failure
             if (pendingAddEntries.isEmpty()) {
-                STATE_UPDATER.set(this, State.ClosedLedger);
+                STATE_UPDATER.compareAndSet(this, State.CreatingLedger, State.ClosedLedger);
             } else {
-                STATE_UPDATER.set(this, State.WriteFailed);
+                STATE_UPDATER.compareAndSet(this, State.CreatingLedger, State.WriteFailed);
             }
 
             // Empty the list of pending requests and make all of them fail
             clearPendingAddEntries(status);
             lastLedgerCreationFailureTimestamp = clock.millis();
+        } else if (STATE_UPDATER.get(this) != State.CreatingLedger) {
+            // Closed, terminated or fenced while the ledger was being created
+            State state = STATE_UPDATER.get(this);
+            log.info("[{}] Discarding new ledger {}, managed ledger is {}", name, lh.getId(), state);
+            mbean.startDataLedgerDeleteOp();
+            bookKeeper.asyncDeleteLedger(lh.getId(), (rc1, ctx1) -> {
+                mbean.endDataLedgerDeleteOp();
+                if (rc1 != BKException.Code.OK) {
+                    log.warn("[{}] Failed to delete ledger {}: {}", name, lh.getId(), BKException.getMessage(rc1));
+                }
+            }, null);
+            clearPendingAddEntries(getNotWritableException(state));
         } else {
             log.info("[{}] Created new ledger {}", name, lh.getId());
             ledgers.put(lh.getId(), LedgerInfo.newBuilder().setLedgerId(lh.getId()).setTimestamp(0).build());
@@ -1223,27 +1307,30 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                     }
                     ledgersStat = stat;
                     ledgersListMutex.unlock();
-                    updateLedgersIdsComplete(stat);
-                    synchronized (ManagedLedgerImpl.this) {
-                        mbean.addLedgerSwitchLatencySample(System.nanoTime() - lastLedgerCreationInitiationTimestamp,
-                                TimeUnit.NANOSECONDS);
-                    }
+                    executor.executeOrdered(name, safeRun(() -> {
+                        updateLedgersIdsComplete(stat);
+                        synchronized (ManagedLedgerImpl.this) {
+                            mbean.addLedgerSwitchLatencySample(
+                                    System.nanoTime() - lastLedgerCreationInitiationTimestamp, TimeUnit.NANOSECONDS);
+                        }
+                    }));
                 }
 
                 @Override
                 public void operationFailed(MetaStoreException e) {
                     if (e instanceof BadVersionException) {
-                        synchronized (ManagedLedgerImpl.this) {
-                            log.error(
-                                    "[{}] Failed to update ledger list. z-node version mismatch. Closing managed ledger",
-                                    name);
-                            STATE_UPDATER.set(ManagedLedgerImpl.this, State.Fenced);
-                            // Return ManagedLedgerFencedException to addFailed callback
-                            // to indicate that the ledger is now fenced and topic needs to be closed
-                            clearPendingAddEntries(new ManagedLedgerFencedException(e));
-                            // Do not need to unlock ledgersListMutex here because we are going to close to topic anyways
-                            return;
-                        }
+                        log.error("[{}] Failed to update ledger list. z-node version mismatch. Closing managed ledger",
+                                name);
+                        STATE_UPDATER.set(ManagedLedgerImpl.this, State.Fenced);
+                        // Return ManagedLedgerFencedException to addFailed callback
+                        // to indicate that the ledger is now fenced and topic needs to be closed
+                        executor.executeOrdered(name, safeRun(() -> {
+                            synchronized (ManagedLedgerImpl.this) {
+                                clearPendingAddEntries(new ManagedLedgerFencedException(e));
+                            }
+                        }));
+                        // Do not need to unlock ledgersListMutex here because we are going to close to topic anyways
+                        return;
                     }
 
                     log.warn("[{}] Error updating meta data with the new list of ledgers: {}", name, e.getMessage());
@@ -1261,11 +1348,14 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
                     ledgersListMutex.unlock();
 
-                    synchronized (ManagedLedgerImpl.this) {
-                        lastLedgerCreationFailureTimestamp = clock.millis();
-                        STATE_UPDATER.set(ManagedLedgerImpl.this, State.ClosedLedger);
-                        clearPendingAddEntries(e);
-                    }
+                    executor.executeOrdered(name, safeRun(() -> {
+                        synchronized (ManagedLedgerImpl.this) {
+                            lastLedgerCreationFailureTimestamp = clock.millis();
+                            STATE_UPDATER.compareAndSet(ManagedLedgerImpl.this, State.CreatingLedger,
+                                    State.ClosedLedger);
+                            clearPendingAddEntries(e);
+                        }
+                    }));
                 }
             };
 
@@ -1287,9 +1377,21 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     }
 
     public synchronized void updateLedgersIdsComplete(Stat stat) {
-        STATE_UPDATER.set(this, State.LedgerOpened);
+        if (!STATE_UPDATER.compareAndSet(this, State.CreatingLedger, State.LedgerOpened)) {
+            // Closed, terminated or fenced while the ledgers list was being updated. The new ledger is already the
+            // current one, so it is closed together with the managed ledger.
+            State state = STATE_UPDATER.get(this);
+            log.info("[{}] Not resuming writes on ledger {}, managed ledger is {}", name, currentLedger.getId(), state);
+            clearPendingAddEntries(getNotWritableException(state));
+            return;
+        }
         lastLedgerCreatedTimestamp = clock.millis();
 
+        if (rolloverStallStartTimestamp != 0) {
+            mbean.addLedgerRolloverStallSample(System.nanoTime() - rolloverStallStartTimestamp, TimeUnit.NANOSECONDS);
+            rolloverStallStartTimestamp = 0;
+        }
+
         if (log.isDebugEnabled()) {
             log.debug("[{}] Resending {} pending messages", name, pendingAddEntries.size());
         }
@@ -1305,7 +1407,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             }
 
             if (currentLedgerIsFull()) {
-                STATE_UPDATER.set(this, State.ClosingLedger);
+                STATE_UPDATER.compareAndSet(this, State.LedgerOpened, State.ClosingLedger);
                 op.setCloseWhenDone(true);
                 op.initiate();
                 if (log.isDebugEnabled()) {
@@ -1342,9 +1444,13 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             log.debug("[{}] Ledger has been closed id={} entries={}", name, lh.getId(), entriesInLedger);
         }
         if (entriesInLedger > 0) {
-            LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(lh.getId()).setEntries(entriesInLedger)
-                    .setSize(lh.getLength()).setTimestamp(clock.millis()).build();
-            ledgers.put(lh.getId(), info);
+            LedgerInfo.Builder info = LedgerInfo.newBuilder().setLedgerId(lh.getId()).setEntries(entriesInLedger)
+                    .setSize(lh.getLength()).setTimestamp(clock.millis());
+            LedgerTimeIndex timeIndex = currentTimeIndex;
+            if (timeIndex != null && timeIndex.getLedgerId() == lh.getId()) {
+                info.setTimeIndex(timeIndex.toProto());
+            }
+            ledgers.put(lh.getId(), info.build());
         } else {
             // The last ledger was empty, so we can discard it
             ledgers.remove(lh.getId());
@@ -1364,13 +1470,249 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Creating a new ledger", name);
             }
-            STATE_UPDATER.set(this, State.CreatingLedger);
-            this.lastLedgerCreationInitiationTimestamp = System.nanoTime();
+            if (STATE_UPDATER.compareAndSet(this, State.ClosedLedger, State.CreatingLedger)) {
+                createNewLedger();
+            }
+        }
+    }
+
+    /**
+     * Start the creation of the ledger to write into, after the current one was closed. If a standby ledger was
+     * prepared, it is switched in without waiting for any bookkeeper or metadata operation.
+     */
+    private void createNewLedger() {
+        this.lastLedgerCreationInitiationTimestamp = System.nanoTime();
+        if (standbyLedger != null && standbyLedgerReady) {
+            switchToStandbyLedger();
+        } else if (standbyLedger != null || standbyLedgerCreating) {
+            // Rather than creating another ledger, wait for the standby ledger to be ready
+            waitingForStandbyLedger = true;
+        } else {
             mbean.startDataLedgerCreateOp();
             asyncCreateLedger(bookKeeper, config, digestType, this, Collections.emptyMap());
         }
     }
 
+    private void maybeCreateStandbyLedger() {
+        if (standbyLedger != null || standbyLedgerCreating || !currentLedgerIsHalfFull()) {
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Creating standby ledger", name);
+        }
+        standbyLedgerCreating = true;
+        mbean.startDataLedgerCreateOp();
+        asyncCreateLedger(bookKeeper, config, digestType, (rc, lh, ctx) -> {
+            if (checkAndCompleteLedgerOpTask(rc, lh, ctx)) {
+                return;
+            }
+
+            executor.executeOrdered(name, safeRun(() -> standbyLedgerCreated(rc, lh)));
+        }, Collections.emptyMap());
+    }
+
+    private synchronized void standbyLedgerCreated(int rc, final LedgerHandle lh) {
+        mbean.endDataLedgerCreateOp();
+        standbyLedgerCreating = false;
+        if (rc != BKException.Code.OK) {
+            log.warn("[{}] Error creating standby ledger rc={} {}", name, rc, BKException.getMessage(rc));
+            standbyLedgerFailed();
+            return;
+        }
+
+        final State state = STATE_UPDATER.get(this);
+        if (state == State.Closed || state == State.Fenced || state == State.Terminated) {
+            deleteStandbyLedger(lh);
+            return;
+        }
+
+        log.info("[{}] Created standby ledger {}", name, lh.getId());
+        standbyLedger = lh;
+
+        // The standby ledger needs to be recorded in the metadata before writing into it, so that its entries can be
+        // recovered if the broker crashes before the ledgers list is updated at the rollover
+        updateLedgersListAfterRollover(new MetaStoreCallback<Void>() {
+            @Override
+            public void operationComplete(Void v, Stat stat) {
+                ledgersStat = stat;
+                ledgersListMutex.unlock();
+                executor.executeOrdered(name, safeRun(() -> standbyLedgerReady(lh)));
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                log.warn("[{}] Error recording standby ledger {} in the metadata: {}", name, lh.getId(),
+                        e.getMessage());
+                ledgersListMutex.unlock();
+                executor.executeOrdered(name, safeRun(() -> {
+                    synchronized (ManagedLedgerImpl.this) {
+                        if (standbyLedger == lh) {
+                            standbyLedger = null;
+                            deleteStandbyLedger(lh);
+                        }
+                        standbyLedgerFailed();
+                    }
+                }));
+            }
+        });
+    }
+
+    private synchronized void standbyLedgerReady(LedgerHandle lh) {
+        if (standbyLedger != lh) {
+            // Discarded in the meantime
+            return;
+        }
+
+        standbyLedgerReady = true;
+        if (waitingForStandbyLedger) {
+            waitingForStandbyLedger = false;
+            if (STATE_UPDATER.get(this) == State.CreatingLedger) {
+                switchToStandbyLedger();
+            }
+        }
+    }
+
+    private void standbyLedgerFailed() {
+        if (waitingForStandbyLedger) {
+            // Fallback to create the next ledger at the rollover
+            waitingForStandbyLedger = false;
+            if (STATE_UPDATER.get(this) == State.CreatingLedger) {
+                mbean.startDataLedgerCreateOp();
+                asyncCreateLedger(bookKeeper, config, digestType, this, Collections.emptyMap());
+            }
+        }
+    }
+
+    private synchronized void switchToStandbyLedger() {
+        final LedgerHandle lh = standbyLedger;
+        standbyLedger = null;
+        standbyLedgerReady = false;
+        waitingForStandbyLedger = false;
+
+        log.info("[{}] Switching to standby ledger {}", name, lh.getId());
+        ledgers.put(lh.getId(), LedgerInfo.newBuilder().setLedgerId(lh.getId()).setTimestamp(0).build());
+        currentLedger = lh;
+        currentLedgerEntries = 0;
+        currentLedgerSize = 0;
+
+        // The ledger is already known from the metadata, so the writes can be resumed right away, while the ledgers
+        // list is updated in background
+        updateLedgersIdsComplete(ledgersStat);
+        mbean.addLedgerSwitchLatencySample(System.nanoTime() - lastLedgerCreationInitiationTimestamp,
+                TimeUnit.NANOSECONDS);
+
+        updateLedgersListAfterRollover(new MetaStoreCallback<Void>() {
+            @Override
+            public void operationComplete(Void v, Stat stat) {
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Updating of ledgers list after standby switch. version={}", name, stat);
+                }
+                ledgersStat = stat;
+                ledgersListMutex.unlock();
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                if (e instanceof BadVersionException) {
+                    log.error("[{}] Failed to update ledger list. z-node version mismatch. Closing managed ledger",
+                            name);
+                    STATE_UPDATER.set(ManagedLedgerImpl.this, State.Fenced);
+                    executor.executeOrdered(name, safeRun(() -> {
+                        synchronized (ManagedLedgerImpl.this) {
+                            clearPendingAddEntries(new ManagedLedgerFencedException(e));
+                        }
+                    }));
+                    return;
+                }
+
+                // The ledger can still be recovered from the standby ledger id in the metadata. The ledgers list will
+                // be updated again at the next change.
+                log.warn("[{}] Error updating meta data with the new list of ledgers: {}", name, e.getMessage());
+                ledgersListMutex.unlock();
+            }
+        });
+    }
+
+    private void discardStandbyLedger() {
+        LedgerHandle lh = standbyLedger;
+        if (lh != null) {
+            standbyLedger = null;
+            standbyLedgerReady = false;
+            deleteStandbyLedger(lh);
+        }
+    }
+
+    private void deleteStandbyLedger(LedgerHandle lh) {
+        mbean.startDataLedgerDeleteOp();
+        bookKeeper.asyncDeleteLedger(lh.getId(), (rc, ctx) -> {
+            mbean.endDataLedgerDeleteOp();
+            log.info("[{}] Delete complete for standby ledger {}. rc={}", name, lh.getId(), rc);
+        }, null);
+    }
+
+    /**
+     * Sample the timestamp of an entry into the time index of its ledger. Called on the managed ledger thread once the
+     * entry is persisted.
+     */
+    void updateTimeIndex(long ledgerId, long entryId, ByteBuf data) {
+        EntryTimestampExtractor extractor = config.getEntryTimestampExtractor();
+        if (extractor == null) {
+            return;
+        }
+
+        LedgerTimeIndex timeIndex = currentTimeIndex;
+        if (timeIndex == null || timeIndex.getLedgerId() != ledgerId) {
+            timeIndex = new LedgerTimeIndex(ledgerId, config.getTimeIndexIntervalMs());
+            currentTimeIndex = timeIndex;
+        }
+
+        long now = clock.millis();
+        if (timeIndex.shouldSample(now)) {
+            try {
+                long timestamp = extractor.getTimestamp(data.duplicate());
+                if (timestamp >= 0) {
+                    timeIndex.add(now, entryId, timestamp);
+                }
+            } catch (Exception e) {
+                log.warn("[{}] Failed to get the timestamp of entry {}:{}: {}", name, ledgerId, entryId,
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Use the time index to narrow the range of entries where the newest entry with a timestamp lower than or equal to
+     * the given one is located.
+     *
+     * @param timestamp
+     *            the timestamp to search for
+     * @return the range of positions to search, unbounded if the ledgers are not indexed
+     */
+    Range<PositionImpl> getTimeIndexRange(long timestamp) {
+        LedgerTimeIndex currentTimeIndex = this.currentTimeIndex;
+        List<LedgerTimeIndex> indexes = Lists.newArrayList();
+        for (LedgerInfo li : ledgers.values()) {
+            if (li.hasTimeIndex()) {
+                indexes.add(LedgerTimeIndex.fromProto(li.getLedgerId(), li.getTimeIndex()));
+            } else if (currentTimeIndex != null && currentTimeIndex.getLedgerId() == li.getLedgerId()) {
+                indexes.add(currentTimeIndex);
+            }
+        }
+
+        return LedgerTimeIndex.search(indexes, timestamp);
+    }
+
+    private static ManagedLedgerException getNotWritableException(State state) {
+        if (state == State.Fenced) {
+            return new ManagedLedgerFencedException();
+        } else if (state == State.Terminated) {
+            return new ManagedLedgerTerminatedException("Managed ledger was already terminated");
+        } else {
+            return new ManagedLedgerAlreadyClosedException("Managed ledger was already closed");
+        }
+    }
+
     void clearPendingAddEntries(ManagedLedgerException e) {
         while (!pendingAddEntries.isEmpty()) {
             OpAddEntry op = pendingAddEntries.poll();
@@ -1379,6 +1721,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     }
 
     void asyncReadEntries(OpReadEntry opReadEntry) {
+        opReadEntry.readStarted();
         final State state = STATE_UPDATER.get(this);
         if (state == State.Fenced || state == State.Closed) {
             opReadEntry.readEntriesFailed(new ManagedLedgerFencedException(), opReadEntry.ctx);
@@ -1542,6 +1885,19 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             log.debug("[{}] Reading entries from ledger {} - first={} last={}", name, ledger.getId(), firstEntry,
                     lastEntry);
         }
+
+        if (cursor != null) {
+            factory.getEntryCacheManager().recordAccess(name, cursor.isScanReads());
+        }
+
+        opReadEntry.readSubmitted();
+        CursorReadAhead readAhead = cursor != null ? cursor.getReadAhead() : null;
+        if (readAhead != null
+                && readAhead.read(ledger, firstEntry, lastEntry, lastEntryInLedger, opReadEntry, opReadEntry.ctx)) {
+            // Entries were already prefetched
+            return;
+        }
+
         asyncReadEntry(ledger, firstEntry, lastEntry, false, opReadEntry, opReadEntry.ctx);
     }
 
@@ -1743,6 +2099,15 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         }
     }
 
+    /**
+     * Get the read position of the slowest cursor, active or not.
+     *
+     * @return the position or null if there are no cursors
+     */
+    PositionImpl getSlowestReaderPosition() {
+        return cursors.getSlowestReaderPosition();
+    }
+
     void doCacheEviction(long maxTimestamp) {
         // Always remove all entries already read by active cursors
         PositionImpl slowestReaderPos = getEarlierReadPositionForActiveCursors();
@@ -1831,6 +2196,44 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         scheduledExecutor.schedule(safeRun(() -> trimConsumedLedgersInBackground(promise)), 100, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Schedule a trimming for when a ledger becomes eligible for deletion only because time has passed.
+     *
+     * <p/>The other conditions allowing to delete a ledger, i.e. the cursors moving past it, the ledger rolling over
+     * or the managed ledger growing over the retention size, already trigger a trimming when they change. Only the
+     * earliest of these timed trimmings is kept scheduled, and it is recomputed by each trimming, so an idle managed
+     * ledger releases its storage on time without being polled.
+     */
+    private synchronized void scheduleTrimmingAt(long timeMillis) {
+        State state = STATE_UPDATER.get(this);
+        if (timeMillis >= scheduledTrimmingTimeMillis || state == State.Closed || state == State.Fenced) {
+            return;
+        }
+
+        if (scheduledTrimmingTask != null) {
+            scheduledTrimmingTask.cancel(false);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Scheduling trimming in {} ms", name, timeMillis - clock.millis());
+        }
+        scheduledTrimmingTimeMillis = timeMillis;
+        scheduledTrimmingTask = scheduledExecutor.schedule(safeRun(() -> {
+            synchronized (this) {
+                scheduledTrimmingTask = null;
+                scheduledTrimmingTimeMillis = Long.MAX_VALUE;
+            }
+            trimConsumedLedgersInBackground();
+        }), Math.max(timeMillis - clock.millis(), 0), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancelScheduledTrimming() {
+        if (scheduledTrimmingTask != null) {
+            scheduledTrimmingTask.cancel(false);
+            scheduledTrimmingTask = null;
+        }
+        scheduledTrimmingTimeMillis = Long.MAX_VALUE;
+    }
+
     private void maybeOffloadInBackground(CompletableFuture<PositionImpl> promise) {
         if (config.getOffloadAutoTriggerSizeThresholdBytes() >= 0) {
             executor.executeOrdered(name, safeRun(() -> maybeOffload(promise)));
@@ -1924,6 +2327,8 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
         List<LedgerInfo> ledgersToDelete = Lists.newArrayList();
         List<LedgerInfo> offloadedLedgersToDelete = Lists.newArrayList();
+        // Earliest time a ledger kept now can be deleted
+        long nextTrimmingTimeMillis = Long.MAX_VALUE;
         synchronized (this) {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Start TrimConsumedLedgers. ledgers={} totalSize={}", name, ledgers.keySet(),
@@ -1981,17 +2386,31 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                     ledgersToDelete.add(ls);
                 } else {
                     log.debug("[{}] Ledger {} not deleted. Neither expired nor over-quota", name, ls.getLedgerId());
+                    if (config.getRetentionTimeMillis() >= 0) {
+                        nextTrimmingTimeMillis = ls.getTimestamp() + config.getRetentionTimeMillis() + 1;
+                    }
                     break;
                 }
             }
             for (LedgerInfo ls : ledgers.values()) {
-                if (isOffloadedNeedsDelete(ls.getOffloadContext()) && !ledgersToDelete.contains(ls)) {
+                OffloadContext offload = ls.getOffloadContext();
+                if (ledgersToDelete.contains(ls)) {
+                    continue;
+                }
+                if (isOffloadedNeedsDelete(offload)) {
                     log.debug("[{}] Ledger {} has been offloaded, bookkeeper ledger needs to be deleted", name,
                             ls.getLedgerId());
                     offloadedLedgersToDelete.add(ls);
+                } else if (offload.getComplete() && !offload.getBookkeeperDeleted()) {
+                    nextTrimmingTimeMillis = Math.min(nextTrimmingTimeMillis,
+                            offload.getTimestamp() + config.getOffloadLedgerDeletionLagMillis() + 1);
                 }
             }
 
+            if (nextTrimmingTimeMillis != Long.MAX_VALUE) {
+                scheduleTrimmingAt(nextTrimmingTimeMillis);
+            }
+
             if (ledgersToDelete.isEmpty() && offloadedLedgersToDelete.isEmpty()) {
                 trimmerMutex.unlock();
                 promise.complete(null);
@@ -2006,15 +2425,17 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             }
 
             // Update metadata
+            List<Long> ledgerIdsToDelete = Lists.newArrayListWithCapacity(ledgersToDelete.size());
             for (LedgerInfo ls : ledgersToDelete) {
                 ledgerCache.remove(ls.getLedgerId());
 
-                ledgers.remove(ls.getLedgerId());
+                ledgerIdsToDelete.add(ls.getLedgerId());
                 NUMBER_OF_ENTRIES_UPDATER.addAndGet(this, -ls.getEntries());
                 TOTAL_SIZE_UPDATER.addAndGet(this, -ls.getSize());
 
                 entryCache.invalidateAllEntries(ls.getLedgerId());
             }
+            ledgers.removeAll(ledgerIdsToDelete);
             for (LedgerInfo ls : offloadedLedgersToDelete) {
                 LedgerInfo.Builder newInfoBuilder = ls.toBuilder();
                 newInfoBuilder.getOffloadContextBuilder().setBookkeeperDeleted(true);
@@ -2102,6 +2523,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         // Delete the managed ledger without closing, since we are not interested in gracefully closing cursors and
         // ledgers
         STATE_UPDATER.set(this, State.Fenced);
+        cancelScheduledTrimming();
 
         List<ManagedCursor> cursors = Lists.newArrayList(this.cursors);
         if (cursors.isEmpty()) {
@@ -2183,6 +2605,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
     @SuppressWarnings("checkstyle:fallthrough")
     private void deleteAllLedgers(DeleteLedgerCallback callback, Object ctx) {
+        discardStandbyLedger();
         List<LedgerInfo> ledgers = Lists.newArrayList(ManagedLedgerImpl.this.ledgers.values());
         AtomicInteger ledgersToDelete = new AtomicInteger(ledgers.size());
         if (ledgers.isEmpty()) {
@@ -2611,10 +3034,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             }
 
             // 3. Add the whole ledgers entries in between
-            for (LedgerInfo ls : ledgers.subMap(fromPosition.getLedgerId(), false, toPosition.getLedgerId(), false)
-                    .values()) {
-                count += ls.getEntries();
-            }
+            count += ledgers.getEntriesBetween(fromPosition.getLedgerId(), toPosition.getLedgerId());
 
             return count;
         }
@@ -2762,7 +3182,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     }
 
     public boolean ledgerExists(long ledgerId) {
-        return ledgers.get(ledgerId) != null;
+        return ledgers.containsKey(ledgerId);
     }
 
     public Long getNextValidLedger(long ledgerId) {
@@ -2869,6 +3289,12 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         return cursor.isDurable() && activeCursors.get(cursor.getName()) != null;
     }
 
+    private boolean currentLedgerIsHalfFull() {
+        return currentLedgerEntries >= config.getMaxEntriesPerLedger() / 2
+                || currentLedgerSize >= config.getMaxSizePerLedgerMb() * MegaByte / 2
+                || clock.millis() - lastLedgerCreatedTimestamp >= maximumRolloverTimeMs / 2;
+    }
+
     private boolean currentLedgerIsFull() {
         boolean spaceQuotaReached = (currentLedgerEntries >= config.getMaxEntriesPerLedger()
                 || currentLedgerSize >= (config.getMaxSizePerLedgerMb() * MegaByte));
@@ -2901,6 +3327,13 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         return ledgers;
     }
 
+    /**
+     * @return the standby ledger, if it was already recorded in the metadata
+     */
+    synchronized LedgerHandle getStandbyLedger() {
+        return standbyLedgerReady ? standbyLedger : null;
+    }
+
     OrderedScheduler getScheduledExecutor() {
         return scheduledExecutor;
     }
@@ -2911,6 +3344,10 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
     private ManagedLedgerInfo getManagedLedgerInfo() {
         ManagedLedgerInfo.Builder mlInfo = ManagedLedgerInfo.newBuilder().addAllLedgerInfo(ledgers.values());
+        LedgerHandle standbyLedger = this.standbyLedger;
+        if (standbyLedger != null) {
+            mlInfo.setStandbyLedgerId(standbyLedger.getId());
+        }
         if (state == State.Terminated) {
             mlInfo.setTerminatedPosition(NestedPositionInfo.newBuilder().setLedgerId(lastConfirmedEntry.getLedgerId())
                     .setEntryId(lastConfirmedEntry.getEntryId()));
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.protobuf.CodedInputStream;
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfoMetadata;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.common.allocator.PulsarByteBufAllocator;
+import org.apache.pulsar.common.compression.CompressionCodec;
+import org.apache.pulsar.common.compression.CompressionCodecProvider;
+
+/**
+ * Compact encoding of the {@link ManagedLedgerInfo} stored in the meta-store.
+ *
+ * <p/>The ledgers list is delta encoded: the id and timestamp of each ledger are stored as the difference with the
+ * previous one, which takes a couple of bytes instead of the full values. The differences are zigzag encoded, so that
+ * negative ones are small too. A zero timestamp, as the one of the ledger currently open, is kept as zero and is not a
+ * base for the following differences. The result is then optionally compressed.
+ * The serialized form is:
+ *
+ * <pre>
+ * [MAGIC_NUMBER] [METADATA_SIZE] [METADATA] [PAYLOAD]
+ *
+ *   MAGIC_NUMBER   =&gt; 2 bytes, 0x4778, which can't start a ManagedLedgerInfo in binary or text format
+ *   METADATA_SIZE  =&gt; 4 bytes, size of the ManagedLedgerInfoMetadata
+ *   METADATA       =&gt; ManagedLedgerInfoMetadata, compression type and uncompressed size of the payload
+ *   PAYLOAD        =&gt; the delta encoded ManagedLedgerInfo, compressed
+ * </pre>
+ */
+class ManagedLedgerInfoCodec {
+
+    static final short MAGIC_NUMBER = 0x4778;
+    private static final int HEADER_SIZE = 2 + 4;
+
+    static boolean isCompactEncoded(byte[] data) {
+        return data.length >= HEADER_SIZE && ByteBuffer.wrap(data).getShort() == MAGIC_NUMBER;
+    }
+
+    static byte[] encode(ManagedLedgerInfo info, CompressionType compressionType) {
+        byte[] payload = deltaEncode(info).toByteArray();
+        ManagedLedgerInfoMetadata metadata = ManagedLedgerInfoMetadata.newBuilder()
+                .setCompressionType(MLDataFormats.CompressionType.valueOf(compressionType.name()))
+                .setUncompressedSize(payload.length)
+                .setDeltaEncoded(true)
+                .build();
+        byte[] serializedMetadata = metadata.toByteArray();
+
+        CompressionCodec codec = CompressionCodecProvider.getCompressionCodec(compressionType);
+        // Some codecs only work on direct buffers
+        ByteBuf raw = PulsarByteBufAllocator.DEFAULT.directBuffer(payload.length, payload.length);
+        raw.writeBytes(payload);
+        ByteBuf compressed = codec.encode(raw);
+        try {
+            byte[] data = new byte[HEADER_SIZE + serializedMetadata.length + compressed.readableBytes()];
+            ByteBuffer.wrap(data)
+                    .putShort(MAGIC_NUMBER)
+                    .putInt(serializedMetadata.length)
+                    .put(serializedMetadata);
+            compressed.getBytes(compressed.readerIndex(), data, HEADER_SIZE + serializedMetadata.length,
+                    compressed.readableBytes());
+            return data;
+        } finally {
+            raw.release();
+            compressed.release();
+        }
+    }
+
+    static ManagedLedgerInfo decode(byte[] data) throws IOException {
+        int metadataSize = ByteBuffer.wrap(data, 2, 4).getInt();
+        if (metadataSize < 0 || HEADER_SIZE + metadataSize > data.length) {
+            throw new IOException("Invalid ManagedLedgerInfo metadata size " + metadataSize);
+        }
+        ManagedLedgerInfoMetadata metadata = ManagedLedgerInfoMetadata
+                .parseFrom(CodedInputStream.newInstance(data, HEADER_SIZE, metadataSize));
+
+        CompressionCodec codec = CompressionCodecProvider
+                .getCompressionCodec(CompressionType.valueOf(metadata.getCompressionType().name()));
+        int payloadOffset = HEADER_SIZE + metadataSize;
+        int payloadSize = data.length - payloadOffset;
+        ByteBuf compressed = PulsarByteBufAllocator.DEFAULT.directBuffer(payloadSize, payloadSize);
+        compressed.writeBytes(data, payloadOffset, payloadSize);
+        ByteBuf uncompressed = null;
+        try {
+            uncompressed = codec.decode(compressed, metadata.getUncompressedSize());
+            byte[] payload = new byte[uncompressed.readableBytes()];
+            uncompressed.getBytes(uncompressed.readerIndex(), payload);
+
+            ManagedLedgerInfo info = ManagedLedgerInfo.parseFrom(payload);
+            return metadata.getDeltaEncoded() ? deltaDecode(info) : info;
+        } finally {
+            compressed.release();
+            if (uncompressed != null) {
+                uncompressed.release();
+            }
+        }
+    }
+
+    private static ManagedLedgerInfo deltaEncode(ManagedLedgerInfo info) {
+        ManagedLedgerInfo.Builder builder = info.toBuilder();
+        long previousLedgerId = 0;
+        long previousTimestamp = 0;
+        for (int i = 0; i < builder.getLedgerInfoCount(); i++) {
+            LedgerInfo ledgerInfo = builder.getLedgerInfo(i);
+            LedgerInfo.Builder ledgerInfoBuilder = ledgerInfo.toBuilder()
+                    .setLedgerId(zigzagEncode(ledgerInfo.getLedgerId() - previousLedgerId));
+            previousLedgerId = ledgerInfo.getLedgerId();
+            if (ledgerInfo.hasTimestamp() && ledgerInfo.getTimestamp() != 0) {
+                // Shifted by one, to tell a zero difference from a zero timestamp
+                ledgerInfoBuilder.setTimestamp(zigzagEncode(ledgerInfo.getTimestamp() - previousTimestamp) + 1);
+                previousTimestamp = ledgerInfo.getTimestamp();
+            }
+            builder.setLedgerInfo(i, ledgerInfoBuilder);
+        }
+        return builder.build();
+    }
+
+    private static ManagedLedgerInfo deltaDecode(ManagedLedgerInfo info) {
+        ManagedLedgerInfo.Builder builder = info.toBuilder();
+        long ledgerId = 0;
+        long timestamp = 0;
+        for (int i = 0; i < builder.getLedgerInfoCount(); i++) {
+            LedgerInfo ledgerInfo = builder.getLedgerInfo(i);
+            ledgerId += zigzagDecode(ledgerInfo.getLedgerId());
+            LedgerInfo.Builder ledgerInfoBuilder = ledgerInfo.toBuilder().setLedgerId(ledgerId);
+            if (ledgerInfo.hasTimestamp() && ledgerInfo.getTimestamp() != 0) {
+                timestamp += zigzagDecode(ledgerInfo.getTimestamp() - 1);
+                ledgerInfoBuilder.setTimestamp(timestamp);
+            }
+            builder.setLedgerInfo(i, ledgerInfoBuilder);
+        }
+        return builder.build();
+    }
+
+    private static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
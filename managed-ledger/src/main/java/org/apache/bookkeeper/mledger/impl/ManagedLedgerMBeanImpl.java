@@ -51,8 +51,17 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
 
     private final StatsBuckets addEntryLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
     private final StatsBuckets ledgerSwitchLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
+    private final StatsBuckets ledgerRolloverStallStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
     private final StatsBuckets entryStats = new StatsBuckets(ENTRY_SIZE_BUCKETS_BYTES);
 
+    // Stages of the add and read operations, the sum of the add stages being the add entry latency
+    private final StatsBuckets addEntryQueueLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
+    private final StatsBuckets addEntryBookieLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
+    private final StatsBuckets addEntryCallbackLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
+    private final StatsBuckets readEntriesQueueLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
+    private final StatsBuckets readEntriesStorageLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
+    private final StatsBuckets readEntriesCallbackLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
+
     public ManagedLedgerMBeanImpl(ManagedLedgerImpl managedLedger) {
         this.managedLedger = managedLedger;
     }
@@ -67,7 +76,14 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
 
         addEntryLatencyStatsUsec.refresh();
         ledgerSwitchLatencyStatsUsec.refresh();
+        ledgerRolloverStallStatsUsec.refresh();
         entryStats.refresh();
+        addEntryQueueLatencyStatsUsec.refresh();
+        addEntryBookieLatencyStatsUsec.refresh();
+        addEntryCallbackLatencyStatsUsec.refresh();
+        readEntriesQueueLatencyStatsUsec.refresh();
+        readEntriesStorageLatencyStatsUsec.refresh();
+        readEntriesCallbackLatencyStatsUsec.refresh();
     }
 
     public void addAddEntrySample(long size) {
@@ -95,6 +111,53 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         ledgerSwitchLatencyStatsUsec.addValue(unit.toMicros(latency));
     }
 
+    public void addLedgerRolloverStallSample(long latency, TimeUnit unit) {
+        ledgerRolloverStallStatsUsec.addValue(unit.toMicros(latency));
+    }
+
+    /**
+     * Time between the creation of an add operation and its submission to BookKeeper, spent waiting for a ledger.
+     */
+    public void addAddEntryQueueLatencySample(long latency, TimeUnit unit) {
+        addEntryQueueLatencyStatsUsec.addValue(unit.toMicros(latency));
+    }
+
+    /**
+     * Time between the submission of an add operation to BookKeeper and its acknowledgement.
+     */
+    public void addAddEntryBookieLatencySample(long latency, TimeUnit unit) {
+        addEntryBookieLatencyStatsUsec.addValue(unit.toMicros(latency));
+    }
+
+    /**
+     * Time between the acknowledgement of an add operation by BookKeeper and its completion in the managed ledger
+     * executor.
+     */
+    public void addAddEntryCallbackLatencySample(long latency, TimeUnit unit) {
+        addEntryCallbackLatencyStatsUsec.addValue(unit.toMicros(latency));
+    }
+
+    /**
+     * Time between a read request and the read of its entries from the cache or BookKeeper, spent opening the ledger.
+     */
+    public void addReadEntriesQueueLatencySample(long latency, TimeUnit unit) {
+        readEntriesQueueLatencyStatsUsec.addValue(unit.toMicros(latency));
+    }
+
+    /**
+     * Time taken to read the entries of a ledger from the cache or BookKeeper.
+     */
+    public void addReadEntriesStorageLatencySample(long latency, TimeUnit unit) {
+        readEntriesStorageLatencyStatsUsec.addValue(unit.toMicros(latency));
+    }
+
+    /**
+     * Time between the completion of a read operation and the call of its callback in the managed ledger executor.
+     */
+    public void addReadEntriesCallbackLatencySample(long latency, TimeUnit unit) {
+        readEntriesCallbackLatencyStatsUsec.addValue(unit.toMicros(latency));
+    }
+
     public void addReadEntriesSample(int count, long totalSize) {
         readEntriesOps.recordMultipleEvents(count, totalSize);
     }
@@ -253,6 +316,76 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         return ledgerSwitchLatencyStatsUsec.getAvg();
     }
 
+    @Override
+    public long[] getLedgerRolloverStallBuckets() {
+        return ledgerRolloverStallStatsUsec.getBuckets();
+    }
+
+    @Override
+    public double getLedgerRolloverStallAverageUsec() {
+        return ledgerRolloverStallStatsUsec.getAvg();
+    }
+
+    @Override
+    public long[] getAddEntryQueueLatencyBuckets() {
+        return addEntryQueueLatencyStatsUsec.getBuckets();
+    }
+
+    @Override
+    public long[] getAddEntryBookieLatencyBuckets() {
+        return addEntryBookieLatencyStatsUsec.getBuckets();
+    }
+
+    @Override
+    public long[] getAddEntryCallbackLatencyBuckets() {
+        return addEntryCallbackLatencyStatsUsec.getBuckets();
+    }
+
+    @Override
+    public long[] getReadEntriesQueueLatencyBuckets() {
+        return readEntriesQueueLatencyStatsUsec.getBuckets();
+    }
+
+    @Override
+    public long[] getReadEntriesStorageLatencyBuckets() {
+        return readEntriesStorageLatencyStatsUsec.getBuckets();
+    }
+
+    @Override
+    public long[] getReadEntriesCallbackLatencyBuckets() {
+        return readEntriesCallbackLatencyStatsUsec.getBuckets();
+    }
+
+    @Override
+    public StatsBuckets getInternalAddEntryQueueLatencyBuckets() {
+        return addEntryQueueLatencyStatsUsec;
+    }
+
+    @Override
+    public StatsBuckets getInternalAddEntryBookieLatencyBuckets() {
+        return addEntryBookieLatencyStatsUsec;
+    }
+
+    @Override
+    public StatsBuckets getInternalAddEntryCallbackLatencyBuckets() {
+        return addEntryCallbackLatencyStatsUsec;
+    }
+
+    @Override
+    public StatsBuckets getInternalReadEntriesQueueLatencyBuckets() {
+        return readEntriesQueueLatencyStatsUsec;
+    }
+
+    @Override
+    public StatsBuckets getInternalReadEntriesStorageLatencyBuckets() {
+        return readEntriesStorageLatencyStatsUsec;
+    }
+
+    @Override
+    public StatsBuckets getInternalReadEntriesCallbackLatencyBuckets() {
+        return readEntriesCallbackLatencyStatsUsec;
+    }
+
     @Override
     public long getStoredMessagesSize() {
         return managedLedger.getTotalSize() * managedLedger.getConfig().getWriteQuorumSize();
@@ -269,6 +402,11 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         return count;
     }
 
+    @Override
+    public long getBacklogSize() {
+        return managedLedger.getEstimatedBacklogSize();
+    }
+
     @Override
     public PendingBookieOpsStats getPendingBookieOpsStats() {
         PendingBookieOpsStats result = new PendingBookieOpsStats();
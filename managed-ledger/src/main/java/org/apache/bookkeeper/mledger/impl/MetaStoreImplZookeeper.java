@@ -26,10 +26,14 @@ import com.google.protobuf.TextFormat;
 import com.google.protobuf.TextFormat.ParseException;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import org.apache.bookkeeper.common.util.OrderedExecutor;
@@ -38,10 +42,14 @@ import org.apache.bookkeeper.mledger.ManagedLedgerException.BadVersionException;
 import org.apache.bookkeeper.mledger.ManagedLedgerException.MetaStoreException;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
 import org.apache.zookeeper.AsyncCallback.StringCallback;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
 import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.data.ACL;
@@ -60,6 +68,35 @@ public class MetaStoreImplZookeeper implements MetaStore {
     private final ZooKeeper zk;
     private final OrderedExecutor executor;
 
+    // Updates of the cursors and managed ledgers nodes are coalesced in multi() batches when a scheduler is set
+    private final ScheduledExecutorService batchingScheduler;
+    private final long batchingMaxDelayMillis;
+    private final int batchingMaxOperations;
+    private final int batchingMaxSizeInBytes;
+    private final ManagedLedgerFactoryMBeanImpl stats;
+
+    // Encoding of the managed ledgers nodes, the plain protobuf is used when null
+    private final CompressionType ledgerInfoCompressionType;
+
+    // Guarded by this
+    private List<PendingSetData> pendingOps = new ArrayList<>();
+    private int pendingOpsSize = 0;
+    private ScheduledFuture<?> flushTask = null;
+
+    private static class PendingSetData {
+        private final String path;
+        private final byte[] content;
+        private final int version;
+        private final StatCallback callback;
+
+        PendingSetData(String path, byte[] content, int version, StatCallback callback) {
+            this.path = path;
+            this.content = content;
+            this.version = version;
+            this.callback = callback;
+        }
+    }
+
     private static class ZKStat implements Stat {
         private final int version;
         private final long creationTimestamp;
@@ -95,8 +132,50 @@ public class MetaStoreImplZookeeper implements MetaStore {
 
     public MetaStoreImplZookeeper(ZooKeeper zk, OrderedExecutor executor)
             throws Exception {
+        this(zk, executor, null, 0, 0, 0, null);
+    }
+
+    /**
+     * Create a meta-store that batches the updates of the cursors and managed ledgers nodes.
+     *
+     * <p/>Updates are held for up to <tt>batchingMaxDelayMillis</tt>, and sent in a single ZooKeeper multi() with the
+     * ones issued in the meantime. A batch is sent earlier once it holds <tt>batchingMaxOperations</tt> updates or
+     * <tt>batchingMaxSizeInBytes</tt> of data. Batches, and the updates in each of them, are sent in the order the
+     * updates were issued, so the updates of a given node are applied in order.
+     *
+     * @param batchingScheduler
+     *            the scheduler sending the pending batch once the delay expires, or null to disable batching
+     * @param stats
+     *            the factory stats where the batches are recorded, or null
+     */
+    public MetaStoreImplZookeeper(ZooKeeper zk, OrderedExecutor executor, ScheduledExecutorService batchingScheduler,
+            long batchingMaxDelayMillis, int batchingMaxOperations, int batchingMaxSizeInBytes,
+            ManagedLedgerFactoryMBeanImpl stats) throws Exception {
+        this(zk, executor, batchingScheduler, batchingMaxDelayMillis, batchingMaxOperations, batchingMaxSizeInBytes,
+                stats, null);
+    }
+
+    /**
+     * Create a meta-store that batches the updates and stores the managed ledgers info in the compact encoding.
+     *
+     * <p/>Nodes are read whatever their encoding, so the encoding can be changed, or disabled again, on a running
+     * cluster as long as all the brokers are able to read the compact encoding.
+     *
+     * @param ledgerInfoCompressionType
+     *            the compression of the managed ledgers info, or null to store them as plain protobuf
+     * @see ManagedLedgerInfoCodec
+     */
+    public MetaStoreImplZookeeper(ZooKeeper zk, OrderedExecutor executor, ScheduledExecutorService batchingScheduler,
+            long batchingMaxDelayMillis, int batchingMaxOperations, int batchingMaxSizeInBytes,
+            ManagedLedgerFactoryMBeanImpl stats, CompressionType ledgerInfoCompressionType) throws Exception {
         this.zk = zk;
         this.executor = executor;
+        this.batchingScheduler = batchingMaxDelayMillis > 0 && batchingMaxOperations > 1 ? batchingScheduler : null;
+        this.batchingMaxDelayMillis = batchingMaxDelayMillis;
+        this.batchingMaxOperations = batchingMaxOperations;
+        this.batchingMaxSizeInBytes = batchingMaxSizeInBytes;
+        this.stats = stats;
+        this.ledgerInfoCompressionType = ledgerInfoCompressionType;
     }
 
     //
@@ -123,6 +202,9 @@ public class MetaStoreImplZookeeper implements MetaStore {
         if (info.hasTerminatedPosition()) {
             mlInfo.setTerminatedPosition(info.getTerminatedPosition());
         }
+        if (info.hasStandbyLedgerId()) {
+            mlInfo.setStandbyLedgerId(info.getStandbyLedgerId());
+        }
         return mlInfo.build();
     }
 
@@ -137,7 +219,7 @@ public class MetaStoreImplZookeeper implements MetaStore {
                             ManagedLedgerInfo info = parseManagedLedgerInfo(readData);
                             info = updateMLInfoTimestamp(info);
                             callback.operationComplete(info, new ZKStat(stat));
-                        } catch (ParseException | InvalidProtocolBufferException e) {
+                        } catch (IOException e) {
                             callback.operationFailed(new MetaStoreException(e));
                         }
                     } else if (rc == Code.NONODE.intValue()) {
@@ -180,9 +262,11 @@ public class MetaStoreImplZookeeper implements MetaStore {
             log.debug("[{}] Updating metadata version={} with content={}", ledgerName, zkStat.version, mlInfo);
         }
 
-        byte[] serializedMlInfo = mlInfo.toByteArray(); // Binary format
+        byte[] serializedMlInfo = ledgerInfoCompressionType != null
+                ? ManagedLedgerInfoCodec.encode(mlInfo, ledgerInfoCompressionType)
+                : mlInfo.toByteArray(); // Binary format
 
-        zk.setData(prefix + ledgerName, serializedMlInfo, zkStat.getVersion(),
+        setData(prefix + ledgerName, serializedMlInfo, zkStat.getVersion(),
                 (rc, path, zkCtx, stat1) -> executor.executeOrdered(ledgerName, safeRun(() -> {
                     if (log.isDebugEnabled()) {
                         log.debug("[{}] UpdateLedgersIdsCallback.processResult rc={} newVersion={}", ledgerName,
@@ -199,7 +283,7 @@ public class MetaStoreImplZookeeper implements MetaStore {
                     } else {
                         callback.operationComplete(null, new ZKStat(stat1));
                     }
-                })), null);
+                })));
     }
 
     @Override
@@ -282,7 +366,7 @@ public class MetaStoreImplZookeeper implements MetaStore {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Updating consumer {} on meta-data store with {}", ledgerName, cursorName, info);
             }
-            zk.setData(path, content, zkStat.getVersion(),
+            setData(path, content, zkStat.getVersion(),
                     (rc, path1, ctx, stat1) -> executor.executeOrdered(ledgerName, safeRun(() -> {
                 if (rc == Code.BADVERSION.intValue()) {
                     callback.operationFailed(new BadVersionException(KeeperException.create(Code.get(rc))));
@@ -291,7 +375,7 @@ public class MetaStoreImplZookeeper implements MetaStore {
                 } else {
                     callback.operationComplete(null, new ZKStat(stat1));
                 }
-            })), null);
+            })));
         }
     }
 
@@ -299,6 +383,7 @@ public class MetaStoreImplZookeeper implements MetaStore {
     public void asyncRemoveCursor(final String ledgerName, final String consumerName,
             final MetaStoreCallback<Void> callback) {
         log.info("[{}] Remove consumer={}", ledgerName, consumerName);
+        flushPendingOps();
         zk.delete(prefix + ledgerName + "/" + consumerName, -1,
                 (rc, path, ctx) -> executor.executeOrdered(ledgerName, safeRun(() -> {
             if (log.isDebugEnabled()) {
@@ -315,6 +400,7 @@ public class MetaStoreImplZookeeper implements MetaStore {
     @Override
     public void removeManagedLedger(String ledgerName, MetaStoreCallback<Void> callback) {
         log.info("[{}] Remove ManagedLedger", ledgerName);
+        flushPendingOps();
         zk.delete(prefix + ledgerName, -1, (rc, path, ctx) -> executor.executeOrdered(ledgerName, safeRun(() -> {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] zk delete done. rc={}", ledgerName, Code.get(rc));
@@ -336,8 +422,76 @@ public class MetaStoreImplZookeeper implements MetaStore {
         }
     }
 
-    private ManagedLedgerInfo parseManagedLedgerInfo(byte[] data)
-            throws ParseException, InvalidProtocolBufferException {
+    private void setData(String path, byte[] content, int version, StatCallback callback) {
+        if (batchingScheduler == null) {
+            zk.setData(path, content, version, callback, null);
+            return;
+        }
+
+        synchronized (this) {
+            pendingOps.add(new PendingSetData(path, content, version, callback));
+            pendingOpsSize += content.length;
+            if (pendingOps.size() >= batchingMaxOperations || pendingOpsSize >= batchingMaxSizeInBytes) {
+                flushPendingOps();
+            } else if (flushTask == null) {
+                flushTask = batchingScheduler.schedule(safeRun(this::flushPendingOps), batchingMaxDelayMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Send the pending updates to ZooKeeper.
+     */
+    synchronized void flushPendingOps() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (pendingOps.isEmpty()) {
+            return;
+        }
+
+        List<PendingSetData> batch = pendingOps;
+        pendingOps = new ArrayList<>();
+        pendingOpsSize = 0;
+        if (stats != null) {
+            stats.recordMetadataBatch(batch.size());
+        }
+
+        // The requests are queued by the ZooKeeper client in the order they're issued, which is why they're sent
+        // while holding the lock
+        if (batch.size() == 1) {
+            PendingSetData op = batch.get(0);
+            zk.setData(op.path, op.content, op.version, op.callback, null);
+            return;
+        }
+
+        List<Op> ops = new ArrayList<>(batch.size());
+        batch.forEach(op -> ops.add(Op.setData(op.path, op.content, op.version)));
+        zk.multi(ops, (rc, path, ctx, results) -> {
+            if (rc == Code.OK.intValue()) {
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingSetData op = batch.get(i);
+                    op.callback.processResult(rc, op.path, null, ((OpResult.SetDataResult) results.get(i)).getStat());
+                }
+            } else if (results != null) {
+                // One of the updates was rejected, and none of them was applied: send them again one by one, so
+                // each of them gets its own outcome
+                log.info("Batch of {} metadata updates failed with {}, sending them individually", batch.size(),
+                        Code.get(rc));
+                batch.forEach(op -> zk.setData(op.path, op.content, op.version, op.callback, null));
+            } else {
+                batch.forEach(op -> op.callback.processResult(rc, op.path, null, null));
+            }
+        }, null);
+    }
+
+    private ManagedLedgerInfo parseManagedLedgerInfo(byte[] data) throws IOException {
+        if (ManagedLedgerInfoCodec.isCompactEncoded(data)) {
+            return ManagedLedgerInfoCodec.decode(data);
+        }
+
         // First try binary format, then fallback to text
         try {
             return ManagedLedgerInfo.parseFrom(data);
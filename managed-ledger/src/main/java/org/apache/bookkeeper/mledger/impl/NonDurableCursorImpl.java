@@ -110,6 +110,7 @@ public class NonDurableCursorImpl extends ManagedCursorImpl {
     @Override
     public void asyncClose(CloseCallback callback, Object ctx) {
         // No-Op
+        releaseReadAhead();
         callback.closeComplete(ctx);
     }
 
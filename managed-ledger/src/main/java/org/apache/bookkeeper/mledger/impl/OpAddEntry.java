@@ -56,6 +56,7 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
     private boolean closeWhenDone;
     private long startTime;
     volatile long lastInitTime;
+    private long completionTime;
     @SuppressWarnings("unused")
     ByteBuf data;
     private int dataLength;
@@ -75,6 +76,7 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
         op.closeWhenDone = false;
         op.entryId = -1;
         op.startTime = System.nanoTime();
+        op.completionTime = -1;
         ml.mbean.addAddEntrySample(op.dataLength);
         if (log.isDebugEnabled()) {
             log.debug("Created new OpAddEntry {}", op);
@@ -130,6 +132,10 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
         if (rc != BKException.Code.OK) {
             handleAddFailure(lh);
         } else {
+            completionTime = System.nanoTime();
+            ml.mbean.addAddEntryQueueLatencySample(lastInitTime - startTime, TimeUnit.NANOSECONDS);
+            ml.mbean.addAddEntryBookieLatencySample(completionTime - lastInitTime, TimeUnit.NANOSECONDS);
+
             // Trigger addComplete callback in a thread hashed on the managed ledger name
             ml.getExecutor().executeOrdered(ml.getName(), this);
         }
@@ -138,6 +144,8 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
     // Called in exector hashed on managed ledger name, once the add operation is complete
     @Override
     public void safeRun() {
+        ml.mbean.addAddEntryCallbackLatencySample(System.nanoTime() - completionTime, TimeUnit.NANOSECONDS);
+
         // Remove this entry from the head of the pending queue
         OpAddEntry firstInQueue = ml.pendingAddEntries.poll();
         checkArgument(this == firstInQueue);
@@ -153,6 +161,8 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
             entry.release();
         }
 
+        ml.updateTimeIndex(ledger.getId(), entryId, data);
+
         // We are done using the byte buffer
         data.release();
 
@@ -185,15 +195,18 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
             log.warn("Error when closing ledger {}. Status={}", lh.getId(), BKException.getMessage(rc));
         }
 
-        ml.ledgerClosed(lh);
-        updateLatency();
+        // Jump back to the managed ledger thread, where the ledger rollover happens
+        ml.getExecutor().executeOrdered(ml.getName(), SafeRun.safeRun(() -> {
+            ml.ledgerClosed(lh);
+            updateLatency();
 
-        AddEntryCallback cb = callbackUpdater.getAndSet(this, null);
-        if (cb != null) {
-            cb.addComplete(PositionImpl.get(lh.getId(), entryId), ctx);
-            ml.notifyCursors();
-            this.recycle();
-        }
+            AddEntryCallback cb = callbackUpdater.getAndSet(this, null);
+            if (cb != null) {
+                cb.addComplete(PositionImpl.get(lh.getId(), entryId), ctx);
+                ml.notifyCursors();
+                this.recycle();
+            }
+        }));
     }
 
     private void updateLatency() {
@@ -262,6 +275,7 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
         entryId = -1;
         startTime = -1;
         lastInitTime = -1;
+        completionTime = -1;
         recyclerHandle.recycle(this);
     }
 
@@ -24,6 +24,7 @@ import com.google.common.collect.Lists;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.Entry;
@@ -42,6 +43,11 @@ class OpReadEntry implements ReadEntriesCallback {
     private ReadEntriesCallback callback;
     Object ctx;
 
+    // Start of the current read from the managed ledger, of its submission to the cache or BookKeeper and completion
+    private long readStartTime;
+    private long readSubmitTime;
+    private long completionTime;
+
     // Results
     private List<Entry> entries;
     private PositionImpl nextReadPosition;
@@ -56,11 +62,32 @@ class OpReadEntry implements ReadEntriesCallback {
         op.entries = Lists.newArrayList();
         op.ctx = ctx;
         op.nextReadPosition = PositionImpl.get(op.readPosition);
+        op.readStartTime = -1;
+        op.readSubmitTime = -1;
+        op.completionTime = -1;
         return op;
     }
 
+    void readStarted() {
+        readStartTime = System.nanoTime();
+        readSubmitTime = -1;
+    }
+
+    void readSubmitted() {
+        readSubmitTime = System.nanoTime();
+        if (readStartTime != -1) {
+            cursor.ledger.mbean.addReadEntriesQueueLatencySample(readSubmitTime - readStartTime,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
     @Override
     public void readEntriesComplete(List<Entry> returnedEntries, Object ctx) {
+        if (readSubmitTime != -1) {
+            cursor.ledger.mbean.addReadEntriesStorageLatencySample(System.nanoTime() - readSubmitTime,
+                    TimeUnit.NANOSECONDS);
+        }
+
         // Filter the returned entries for individual deleted messages
         int entriesSize = returnedEntries.size();
         final PositionImpl lastPosition = (PositionImpl) returnedEntries.get(entriesSize - 1).getPosition();
@@ -142,7 +169,10 @@ class OpReadEntry implements ReadEntriesCallback {
                 cursor.readOperationCompleted();
 
             } finally {
+                completionTime = System.nanoTime();
                 cursor.ledger.getExecutor().executeOrdered(cursor.ledger.getName(), safeRun(() -> {
+                    cursor.ledger.mbean.addReadEntriesCallbackLatencySample(System.nanoTime() - completionTime,
+                            TimeUnit.NANOSECONDS);
                     callback.readEntriesComplete(entries, ctx);
                     recycle();
                 }));
@@ -177,6 +207,9 @@ class OpReadEntry implements ReadEntriesCallback {
         ctx = null;
         entries = null;
         nextReadPosition = null;
+        readStartTime = -1;
+        readSubmitTime = -1;
+        completionTime = -1;
         recyclerHandle.recycle(this);
     }
 
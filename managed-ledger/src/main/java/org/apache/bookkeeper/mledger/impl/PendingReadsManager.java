@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.pulsar.common.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Registry of the BookKeeper reads that are in flight for a managed ledger.
+ *
+ * <p/>When multiple cursors are catching up on the same part of the backlog, they will typically issue reads for the
+ * same entries at about the same time. Instead of sending one read per cursor to the bookies, a read for a range that
+ * is fully contained in a read already in progress is attached to it, and it will be completed with a copy of the
+ * subset of entries it requested.
+ *
+ * <p/>Every reader gets its own {@link EntryImpl} instances, sharing the underlying buffers, so they can be released
+ * independently.
+ */
+class PendingReadsManager {
+
+    private final ManagedLedgerFactoryMBeanImpl mlFactoryMBean;
+
+    // Reads in progress, grouped by ledger id. Each list is guarded by its own monitor
+    private final ConcurrentLongHashMap<List<PendingRead>> pendingReads = new ConcurrentLongHashMap<>(16, 1);
+
+    PendingReadsManager(ManagedLedgerFactoryMBeanImpl mlFactoryMBean) {
+        this.mlFactoryMBean = mlFactoryMBean;
+    }
+
+    /**
+     * Read a range of entries from BookKeeper, or attach to a read in progress that includes the whole range.
+     *
+     * @param lh
+     *            the ledger handle
+     * @param firstEntry
+     *            the first entry to read (inclusive)
+     * @param lastEntry
+     *            the last entry to read (inclusive)
+     * @return a future that is completed with the entries, owned by the caller
+     */
+    CompletableFuture<List<EntryImpl>> readEntries(ReadHandle lh, long firstEntry, long lastEntry) {
+        final long ledgerId = lh.getId();
+        final CompletableFuture<List<EntryImpl>> future = new CompletableFuture<>();
+
+        PendingRead newRead = null;
+        while (true) {
+            List<PendingRead> reads = pendingReads.computeIfAbsent(ledgerId, id -> Lists.newArrayList());
+            synchronized (reads) {
+                if (pendingReads.get(ledgerId) != reads) {
+                    // List was removed after the last pending read on the ledger completed
+                    continue;
+                }
+
+                for (PendingRead read : reads) {
+                    if (read.firstEntry <= firstEntry && read.lastEntry >= lastEntry) {
+                        read.listeners.add(new ReadListener(firstEntry, lastEntry, future));
+                        return future;
+                    }
+                }
+
+                newRead = new PendingRead(ledgerId, firstEntry, lastEntry);
+                newRead.listeners.add(new ReadListener(firstEntry, lastEntry, future));
+                reads.add(newRead);
+                break;
+            }
+        }
+
+        final PendingRead read = newRead;
+        try {
+            lh.readAsync(firstEntry, lastEntry).whenComplete((ledgerEntries, exception) -> {
+                if (exception != null) {
+                    read.complete(null, exception);
+                    return;
+                }
+
+                List<EntryImpl> entries = Lists.newArrayListWithExpectedSize((int) (lastEntry - firstEntry) + 1);
+                try {
+                    for (LedgerEntry e : ledgerEntries) {
+                        entries.add(EntryImpl.create(e));
+                    }
+                } catch (Throwable t) {
+                    entries.forEach(EntryImpl::release);
+                    read.complete(null, t);
+                    return;
+                } finally {
+                    ledgerEntries.close();
+                }
+                read.complete(entries, null);
+            });
+        } catch (Throwable t) {
+            read.complete(null, t);
+        }
+
+        return future;
+    }
+
+    private List<ReadListener> remove(PendingRead read) {
+        List<PendingRead> reads = pendingReads.get(read.ledgerId);
+        synchronized (reads) {
+            reads.remove(read);
+            if (reads.isEmpty()) {
+                pendingReads.remove(read.ledgerId, reads);
+            }
+            return read.listeners;
+        }
+    }
+
+    /**
+     * @return the number of reads currently in flight (only for tests)
+     */
+    int getPendingReadsCount() {
+        int count = 0;
+        for (List<PendingRead> reads : pendingReads.values()) {
+            synchronized (reads) {
+                count += reads.size();
+            }
+        }
+        return count;
+    }
+
+    private class PendingRead {
+        final long ledgerId;
+        final long firstEntry;
+        final long lastEntry;
+        final List<ReadListener> listeners = Lists.newArrayListWithExpectedSize(1);
+
+        PendingRead(long ledgerId, long firstEntry, long lastEntry) {
+            this.ledgerId = ledgerId;
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+        }
+
+        void complete(List<EntryImpl> entries, Throwable exception) {
+            // After removal, no more listeners can be attached to this read
+            List<ReadListener> listeners = remove(this);
+
+            if (exception != null) {
+                listeners.forEach(listener -> listener.future.completeExceptionally(exception));
+                return;
+            }
+
+            // Attached readers get their own copy of the entries in their range, while the reader that triggered the
+            // read takes ownership of the original entries
+            List<List<EntryImpl>> copies = Lists.newArrayListWithExpectedSize(listeners.size() - 1);
+            try {
+                for (int i = 1; i < listeners.size(); i++) {
+                    ReadListener listener = listeners.get(i);
+                    List<EntryImpl> copy = Lists.newArrayListWithExpectedSize(
+                            (int) (listener.lastEntry - listener.firstEntry) + 1);
+                    copies.add(copy);
+                    long copySize = 0;
+                    for (EntryImpl entry : entries) {
+                        long entryId = entry.getEntryId();
+                        if (entryId >= listener.firstEntry && entryId <= listener.lastEntry) {
+                            copy.add(EntryImpl.create(entry));
+                            copySize += entry.getLength();
+                        }
+                    }
+
+                    mlFactoryMBean.recordDeduplicatedReads(copy.size(), copySize);
+                }
+            } catch (Throwable t) {
+                // Fail all the readers, none of them would be completed otherwise
+                copies.forEach(copy -> copy.forEach(EntryImpl::release));
+                entries.forEach(EntryImpl::release);
+                listeners.forEach(listener -> listener.future.completeExceptionally(t));
+                return;
+            }
+
+            listeners.get(0).future.complete(entries);
+            for (int i = 1; i < listeners.size(); i++) {
+                listeners.get(i).future.complete(copies.get(i - 1));
+            }
+        }
+    }
+
+    private static class ReadListener {
+        final long firstEntry;
+        final long lastEntry;
+        final CompletableFuture<List<EntryImpl>> future;
+
+        ReadListener(long firstEntry, long lastEntry, CompletableFuture<List<EntryImpl>> future) {
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+            this.future = future;
+        }
+    }
+}
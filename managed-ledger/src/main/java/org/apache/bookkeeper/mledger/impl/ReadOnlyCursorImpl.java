@@ -49,6 +49,8 @@ public class ReadOnlyCursorImpl extends ManagedCursorImpl implements ReadOnlyCur
         }
 
         this.state = State.NoLedger;
+        // Read-only cursors are used to scan the ledger, eg: from SQL queries
+        setScanReads(true);
     }
 
     @Override
@@ -0,0 +1,380 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry cache that stores the data of a managed ledger in append-only off-heap segments.
+ *
+ * <p/>Each segment is a fixed size direct buffer that holds consecutive entries of a single ledger, with a primitive
+ * index from entry id to offset. Compared to {@link EntryCacheImpl}, there is no per-entry node in the cache map and no
+ * per-entry buffer allocation: entries are copied once in the current segment and cache hits are served as slices of
+ * the segment buffer.
+ *
+ * <p/>Memory is accounted and released with segment granularity: the whole capacity of a segment counts toward the
+ * cache size from the moment it is allocated, and eviction drops whole segments, starting from the oldest. When
+ * invalidating entries up to a position, a segment is only released once all its entries are older than that
+ * position.
+ *
+ * <p/>So that a ledger with little traffic doesn't hold a full segment, the first segment is small and each following
+ * one doubles in size, up to the configured segment size.
+ *
+ * <p/>Entries are expected to be inserted in increasing position order, as it happens when they are added to the
+ * managed ledger. Inserting an entry that is older than the last one cached is rejected.
+ */
+public class SegmentedEntryCacheImpl extends AbstractEntryCache {
+
+    static final int INITIAL_SEGMENT_SIZE = 64 * 1024;
+
+    private final int segmentSize;
+
+    // Segments indexed by the position of their first entry
+    private final ConcurrentNavigableMap<PositionImpl, EntrySegment> segments;
+    private final AtomicLong size;
+
+    // Segment where new entries are appended, guarded by "this"
+    private EntrySegment currentSegment;
+
+    public SegmentedEntryCacheImpl(EntryCacheManager manager, ManagedLedgerImpl ml, int segmentSize) {
+        super(manager, ml);
+        checkArgument(segmentSize > 0);
+        this.segmentSize = segmentSize;
+        this.segments = new ConcurrentSkipListMap<>();
+        this.size = new AtomicLong(0);
+        this.currentSegment = null;
+    }
+
+    @Override
+    public boolean insert(EntryImpl entry) {
+        if (!canInsert(entry)) {
+            return false;
+        }
+
+        final long ledgerId = entry.getLedgerId();
+        final long entryId = entry.getEntryId();
+        final int length = entry.getLength();
+
+        synchronized (this) {
+            // The current segment, when present, is always the most recent one
+            EntrySegment segment = currentSegment;
+            EntrySegment last = segment;
+            if (last == null) {
+                Map.Entry<PositionImpl, EntrySegment> lastEntry = segments.lastEntry();
+                last = lastEntry != null ? lastEntry.getValue() : null;
+            }
+
+            if (last != null && (last.getLedgerId() > ledgerId
+                    || (last.getLedgerId() == ledgerId && entryId <= last.getLastEntryId()))) {
+                // Entry is either already cached or older than the last inserted one
+                return false;
+            }
+
+            if (segment == null || !segment.canAppend(ledgerId, entryId, length)) {
+                int capacity = Math.max(length, nextSegmentSize(segment));
+                // The whole segment is accounted, so check for space for all of it
+                if (!manager.hasSpaceInCache(capacity)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("[{}] Skipping cache while doing eviction: {}:{} - segment size: {}", ml.getName(),
+                                ledgerId, entryId, capacity);
+                    }
+                    return false;
+                }
+
+                segment = newSegment(ledgerId, entryId, capacity);
+                if (segment == null) {
+                    return false;
+                }
+
+                segments.put(PositionImpl.get(ledgerId, entryId), segment);
+                size.addAndGet(segment.getCapacity());
+                onEntriesAdded(segment.getCapacity());
+                currentSegment = segment;
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Adding entry to cache: {}:{} - size: {}", ml.getName(), ledgerId, entryId, length);
+            }
+
+            segment.append(entryId, entry.getDataBuffer());
+            return true;
+        }
+    }
+
+    /**
+     * Get the size of the segment following the given one, doubling it up to the configured segment size.
+     */
+    private int nextSegmentSize(EntrySegment previous) {
+        if (previous == null) {
+            return Math.min(INITIAL_SEGMENT_SIZE, segmentSize);
+        }
+        return (int) Math.min((long) previous.getCapacity() * 2, segmentSize);
+    }
+
+    private EntrySegment newSegment(long ledgerId, long firstEntryId, int capacity) {
+        try {
+            ByteBuf buffer = EntryCacheImpl.ALLOCATOR.directBuffer(capacity, capacity);
+            return new EntrySegment(ledgerId, firstEntryId, buffer);
+        } catch (Throwable t) {
+            log.warn("[{}] Failed to allocate segment for entry cache: {}", ml.getName(), t.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    protected EntryImpl getCachedEntry(PositionImpl position) {
+        PositionImpl key = segments.floorKey(position);
+        if (key == null) {
+            return null;
+        }
+
+        EntrySegment segment = segments.get(key);
+        if (segment == null || segment.getLedgerId() != position.getLedgerId()) {
+            return null;
+        }
+
+        return getFromSegment(segment, position.getEntryId());
+    }
+
+    @Override
+    protected Collection<EntryImpl> getCachedEntries(PositionImpl firstPosition, PositionImpl lastPosition) {
+        PositionImpl fromKey = segments.floorKey(firstPosition);
+        if (fromKey == null) {
+            fromKey = firstPosition;
+        }
+
+        Collection<EntrySegment> candidates = segments.subMap(fromKey, true, lastPosition, true).values();
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final long ledgerId = firstPosition.getLedgerId();
+        List<EntryImpl> values = Lists.newArrayList();
+        for (EntrySegment segment : candidates) {
+            if (segment.getLedgerId() != ledgerId) {
+                continue;
+            }
+
+            long first = Math.max(firstPosition.getEntryId(), segment.getFirstEntryId());
+            long last = Math.min(lastPosition.getEntryId(), segment.getLastEntryId());
+            for (long entryId = first; entryId <= last; entryId++) {
+                EntryImpl entry = getFromSegment(segment, entryId);
+                if (entry != null) {
+                    values.add(entry);
+                }
+            }
+        }
+
+        return values;
+    }
+
+    private static EntryImpl getFromSegment(EntrySegment segment, long entryId) {
+        ByteBuf data = segment.get(entryId);
+        if (data == null) {
+            return null;
+        }
+
+        EntryImpl entry = EntryImpl.create(segment.getLedgerId(), entryId, data);
+        data.release();
+        return entry;
+    }
+
+    @Override
+    public void invalidateEntries(final PositionImpl lastPosition) {
+        int entriesRemoved = 0;
+        long sizeRemoved = 0;
+        PositionImpl spillPosition = getSpillPosition();
+
+        synchronized (this) {
+            for (EntrySegment segment : segments.headMap(lastPosition).values()) {
+                boolean allEntriesBefore = segment.getLedgerId() < lastPosition.getLedgerId()
+                        || segment.getLastEntryId() < lastPosition.getEntryId();
+                if (!allEntriesBefore) {
+                    break;
+                }
+
+                entriesRemoved += segment.getEntriesCount();
+                spillToDisk(segment, spillPosition);
+                sizeRemoved += removeSegment(segment);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Invalidated entries up to {} - Entries removed: {} - Size removed: {}", ml.getName(),
+                    lastPosition, entriesRemoved, sizeRemoved);
+        }
+
+        onEntriesRemoved(sizeRemoved);
+    }
+
+    @Override
+    public void invalidateAllEntries(long ledgerId) {
+        final PositionImpl firstPosition = PositionImpl.get(ledgerId, 0);
+        final PositionImpl lastPosition = PositionImpl.get(ledgerId + 1, 0);
+
+        int entriesRemoved = 0;
+        long sizeRemoved = 0;
+
+        synchronized (this) {
+            for (EntrySegment segment : segments.subMap(firstPosition, lastPosition).values()) {
+                entriesRemoved += segment.getEntriesCount();
+                sizeRemoved += removeSegment(segment);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Invalidated all entries on ledger {} - Entries removed: {} - Size removed: {}",
+                    ml.getName(), ledgerId, entriesRemoved, sizeRemoved);
+        }
+
+        onEntriesRemoved(sizeRemoved);
+    }
+
+    @Override
+    public void invalidateEntriesBeforeTimestamp(long timestamp) {
+        long sizeRemoved = 0;
+        PositionImpl spillPosition = getSpillPosition();
+
+        synchronized (this) {
+            while (true) {
+                Map.Entry<PositionImpl, EntrySegment> first = segments.firstEntry();
+                if (first == null || first.getValue().getLastInsertTimestamp() > timestamp) {
+                    break;
+                }
+
+                spillToDisk(first.getValue(), spillPosition);
+                sizeRemoved += removeSegment(first.getValue());
+            }
+        }
+
+        onEntriesRemoved(sizeRemoved);
+    }
+
+    @Override
+    public Pair<Integer, Long> evictEntries(long sizeToFree) {
+        checkArgument(sizeToFree > 0);
+
+        int evictedEntries = 0;
+        long evictedSize = 0;
+        PositionImpl spillPosition = getSpillPosition();
+
+        synchronized (this) {
+            while (evictedSize < sizeToFree) {
+                Map.Entry<PositionImpl, EntrySegment> first = segments.firstEntry();
+                if (first == null) {
+                    break;
+                }
+
+                evictedEntries += first.getValue().getEntriesCount();
+                spillToDisk(first.getValue(), spillPosition);
+                evictedSize += removeSegment(first.getValue());
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(
+                    "[{}] Doing cache eviction of at least {} Mb -- Deleted {} entries - Total size deleted: {} Mb "
+                            + " -- Current Size: {} Mb",
+                    ml.getName(), sizeToFree / MB, evictedEntries, evictedSize / MB, size.get() / MB);
+        }
+        onEntriesRemoved(evictedSize);
+        return Pair.of(evictedEntries, evictedSize);
+    }
+
+    @Override
+    public void clear() {
+        long removedSize = 0;
+
+        synchronized (this) {
+            for (EntrySegment segment : segments.values()) {
+                removedSize += removeSegment(segment);
+            }
+        }
+
+        onEntriesRemoved(removedSize);
+    }
+
+    /**
+     * Write to the disk cache the entries of a segment that some cursor still has to read.
+     */
+    private void spillToDisk(EntrySegment segment, PositionImpl spillPosition) {
+        if (spillPosition == null || segment.getLedgerId() < spillPosition.getLedgerId()) {
+            return;
+        }
+
+        long firstEntryId = segment.getLedgerId() == spillPosition.getLedgerId()
+                ? Math.max(segment.getFirstEntryId(), spillPosition.getEntryId())
+                : segment.getFirstEntryId();
+        for (long entryId = firstEntryId; entryId <= segment.getLastEntryId(); entryId++) {
+            ByteBuf data = segment.get(entryId);
+            if (data != null) {
+                diskCache.put(segment.getLedgerId(), entryId, data);
+                data.release();
+            }
+        }
+    }
+
+    /**
+     * Remove a segment from the map and release its memory. Must be called while holding the lock on "this".
+     *
+     * @return the memory size released, or 0 if the segment was already removed
+     */
+    private long removeSegment(EntrySegment segment) {
+        PositionImpl key = PositionImpl.get(segment.getLedgerId(), segment.getFirstEntryId());
+        if (!segments.remove(key, segment)) {
+            return 0;
+        }
+
+        if (segment == currentSegment) {
+            currentSegment = null;
+        }
+
+        long capacity = segment.getCapacity();
+        size.addAndGet(-capacity);
+        segment.release();
+        return capacity;
+    }
+
+    @Override
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Just for testing.
+     */
+    int getNumberOfSegments() {
+        return segments.size();
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentedEntryCacheImpl.class);
+}
@@ -129,6 +129,20 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
      * @return an pair of ints, containing the number of removed entries and the total size
      */
     public Pair<Integer, Long> removeRange(Key first, Key last, boolean lastInclusive) {
+        return removeRange(first, last, lastInclusive, null);
+    }
+
+    /**
+     *
+     * @param first
+     * @param last
+     * @param lastInclusive
+     * @param removalListener
+     *            listener notified of each value before it gets released, can be null
+     * @return an pair of ints, containing the number of removed entries and the total size
+     */
+    public Pair<Integer, Long> removeRange(Key first, Key last, boolean lastInclusive,
+            RemovalListener<Key, Value> removalListener) {
         Map<Key, Value> subMap = entries.subMap(first, true, last, lastInclusive);
 
         int removedEntries = 0;
@@ -141,6 +155,9 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
             }
 
             removedSize += weighter.getSize(value);
+            if (removalListener != null) {
+                removalListener.removed(key, value);
+            }
             value.release();
             ++removedEntries;
         }
@@ -156,6 +173,17 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
      * @return a pair containing the number of entries evicted and their total size
      */
     public Pair<Integer, Long> evictLeastAccessedEntries(long minSize) {
+        return evictLeastAccessedEntries(minSize, null);
+    }
+
+    /**
+     *
+     * @param minSize
+     * @param removalListener
+     *            listener notified of each value before it gets released, can be null
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    public Pair<Integer, Long> evictLeastAccessedEntries(long minSize, RemovalListener<Key, Value> removalListener) {
         checkArgument(minSize > 0);
 
         long removedSize = 0;
@@ -170,6 +198,9 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
             Value value = entry.getValue();
             ++removedEntries;
             removedSize += weighter.getSize(value);
+            if (removalListener != null) {
+                removalListener.removed(entry.getKey(), value);
+            }
             value.release();
         }
 
@@ -183,6 +214,16 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
     * @return the tota
     */
    public long evictLEntriesBeforeTimestamp(long maxTimestamp) {
+       return evictLEntriesBeforeTimestamp(maxTimestamp, null);
+   }
+
+   /**
+    *
+    * @param maxTimestamp the max timestamp of the entries to be evicted
+    * @param removalListener listener notified of each value before it gets released, can be null
+    * @return the total size of the evicted entries
+    */
+   public long evictLEntriesBeforeTimestamp(long maxTimestamp, RemovalListener<Key, Value> removalListener) {
        long removedSize = 0;
 
        while (true) {
@@ -198,6 +239,9 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
 
            Value value = entry.getValue();
            removedSize += weighter.getSize(value);
+           if (removalListener != null) {
+               removalListener.removed(entry.getKey(), value);
+           }
            value.release();
        }
 
@@ -256,6 +300,16 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
         long getTimestamp(ValueT value);
     }
 
+    /**
+     * Interface of a object that is notified of the values removed from the cache, before they get released.
+     *
+     * @param <KeyT>
+     * @param <ValueT>
+     */
+    public interface RemovalListener<KeyT, ValueT> {
+        void removed(KeyT key, ValueT value);
+    }
+
     /**
      * Default cache weighter, every value is assumed the same cost.
      *
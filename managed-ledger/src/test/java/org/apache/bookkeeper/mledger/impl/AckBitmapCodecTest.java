@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.AckBitmap;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.AckBitmapContainer;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet.DefaultRangeSet;
+import org.testng.annotations.Test;
+
+@Test
+public class AckBitmapCodecTest {
+
+    private static LongPairRangeSet<PositionImpl> newRangeSet() {
+        return new DefaultRangeSet<>((key, value) -> new PositionImpl(key, value));
+    }
+
+    private static List<List<AckBitmap>> encode(LongPairRangeSet<PositionImpl> rangeSet, long maxChunkSize) {
+        AckBitmapCodec codec = new AckBitmapCodec(maxChunkSize);
+        rangeSet.forEach(range -> {
+            codec.add(range.lowerEndpoint().getLedgerId(), range.lowerEndpoint().getEntryId() + 1,
+                    range.upperEndpoint().getEntryId());
+            return true;
+        });
+        return codec.finish();
+    }
+
+    private static LongPairRangeSet<PositionImpl> decode(List<List<AckBitmap>> chunks) {
+        LongPairRangeSet<PositionImpl> rangeSet = newRangeSet();
+        chunks.forEach(chunk -> AckBitmapCodec.decode(chunk, rangeSet));
+        return rangeSet;
+    }
+
+    @Test
+    void sparseAcksAreStoredAsBitmap() {
+        LongPairRangeSet<PositionImpl> acks = newRangeSet();
+        // Every other entry acknowledged
+        for (long entryId = 0; entryId < 10000; entryId += 2) {
+            acks.addOpenClosed(3, entryId - 1, 3, entryId);
+        }
+
+        List<List<AckBitmap>> chunks = encode(acks, 1024 * 1024);
+        assertEquals(chunks.size(), 1);
+        AckBitmapContainer container = chunks.get(0).get(0).getContainers(0);
+        assertTrue(container.getBitmapCount() > 0);
+        assertEquals(container.getRunsCount(), 0);
+        // 1 bit per entry
+        assertTrue(container.getSerializedSize() < 10000 / 8 + 32);
+
+        LongPairRangeSet<PositionImpl> decoded = decode(chunks);
+        assertEquals(decoded.size(), 5000);
+        assertEquals(decoded.toString(), acks.toString());
+    }
+
+    @Test
+    void clusteredAcksAreStoredAsRuns() {
+        LongPairRangeSet<PositionImpl> acks = newRangeSet();
+        acks.addOpenClosed(1, 10, 1, 5000);
+        acks.addOpenClosed(1, 6000, 1, 7000);
+        // Crossing a container boundary
+        acks.addOpenClosed(2, 65000, 2, 70000);
+        acks.addOpenClosed(2, 200000, 2, 200001);
+
+        List<List<AckBitmap>> chunks = encode(acks, 1024 * 1024);
+        assertEquals(chunks.size(), 1);
+        assertEquals(chunks.get(0).size(), 2);
+        assertEquals(chunks.get(0).get(1).getContainersCount(), 3);
+        chunks.get(0).forEach(bitmap -> bitmap.getContainersList()
+                .forEach(container -> assertEquals(container.getBitmapCount(), 0)));
+
+        assertEquals(decode(chunks).toString(), acks.toString());
+    }
+
+    @Test
+    void bitmapsAreSplitInChunks() {
+        LongPairRangeSet<PositionImpl> acks = newRangeSet();
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (long entryId = 0; entryId < 300000; entryId += 3) {
+                acks.addOpenClosed(ledgerId, entryId - 1, ledgerId, entryId);
+            }
+        }
+
+        List<List<AckBitmap>> chunks = encode(acks, 20 * 1024);
+        assertTrue(chunks.size() > 1);
+        chunks.forEach(chunk -> {
+            long chunkSize = chunk.stream().mapToLong(AckBitmap::getSerializedSize).sum();
+            assertTrue(chunkSize < 2 * 20 * 1024);
+        });
+
+        LongPairRangeSet<PositionImpl> decoded = decode(chunks);
+        assertEquals(decoded.size(), 300000);
+        assertEquals(decoded.toString(), acks.toString());
+    }
+}
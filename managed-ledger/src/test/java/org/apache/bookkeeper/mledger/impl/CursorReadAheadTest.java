@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.apache.bookkeeper.mledger.impl.ManagedLedgerTest.retryStrategically;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.testng.annotations.Test;
+
+@Test
+public class CursorReadAheadTest extends MockedBookKeeperTestCase {
+
+    private static final int ENTRIES = 100;
+
+    private ManagedCursorImpl openCursor(String name, long readAheadMaxSize) throws Exception {
+        return openCursor(name, readAheadMaxSize, 1024);
+    }
+
+    private ManagedCursorImpl openCursor(String name, long readAheadMaxSize, long readAheadMaxEntrySize)
+            throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        // Disable the cache so that reads have to go to the bookies or to the read-ahead buffer
+        config.setMaxCacheSize(0);
+        config.setReadAheadMaxSize(readAheadMaxSize);
+        config.setReadAheadMaxEntrySize(readAheadMaxEntrySize);
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+        ManagedLedgerImpl ml = (ManagedLedgerImpl) factory.open(name);
+        ManagedCursorImpl cursor = (ManagedCursorImpl) ml.openCursor("c1");
+        for (int i = 0; i < ENTRIES; i++) {
+            ml.addEntry(("entry-" + i).getBytes());
+        }
+        return cursor;
+    }
+
+    private static void readAndVerify(ManagedCursorImpl cursor, int count, int firstIndex) throws Exception {
+        List<Entry> entries = cursor.readEntries(count);
+        assertEquals(entries.size(), count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(new String(entries.get(i).getData()), "entry-" + (firstIndex + i));
+        }
+        entries.forEach(Entry::release);
+    }
+
+    @Test(timeOut = 20000)
+    void sequentialReadsArePrefetched() throws Exception {
+        ManagedCursorImpl cursor = openCursor("sequential-reads", 1024 * 1024);
+
+        // Read-ahead starts after a couple of sequential reads
+        readAndVerify(cursor, 10, 0);
+        readAndVerify(cursor, 10, 10);
+        readAndVerify(cursor, 10, 20);
+
+        CursorReadAhead readAhead = cursor.getReadAhead();
+        retryStrategically(test -> readAhead.getBufferedEntries() > 0, 10, 100);
+        assertTrue(readAhead.getBufferedEntries() > 0);
+        assertTrue(factory.getEntryCacheManager().getReadAheadSize() > 0);
+
+        for (int i = 30; i < ENTRIES; i += 10) {
+            retryStrategically(test -> readAhead.getBufferedEntries() >= 10, 10, 100);
+            readAndVerify(cursor, 10, i);
+        }
+
+        factory.mbean.refreshStats(1, TimeUnit.SECONDS);
+        assertTrue(factory.mbean.getReadAheadHitsRate() > 0);
+
+        cursor.close();
+        assertEquals(factory.getEntryCacheManager().getReadAheadSize(), 0);
+    }
+
+    @Test(timeOut = 20000)
+    void firstPrefetchAssumesMaxEntrySize() throws Exception {
+        // Only 10 entries of the max size fit in the read-ahead buffers
+        ManagedCursorImpl cursor = openCursor("first-prefetch", 1024 * 1024, 100 * 1024);
+
+        readAndVerify(cursor, 10, 0);
+        readAndVerify(cursor, 10, 10);
+        readAndVerify(cursor, 10, 20);
+
+        CursorReadAhead readAhead = cursor.getReadAhead();
+        retryStrategically(test -> readAhead.getBufferedEntries() > 0, 10, 100);
+        assertTrue(readAhead.getBufferedEntries() > 0);
+        assertTrue(readAhead.getBufferedEntries() <= 10);
+
+        // Once the size of the entries is known, the whole window is prefetched
+        readAndVerify(cursor, 10, 30);
+        retryStrategically(test -> readAhead.getBufferedEntries() >= 20, 10, 100);
+        assertTrue(readAhead.getBufferedEntries() >= 20);
+
+        cursor.close();
+        assertEquals(factory.getEntryCacheManager().getReadAheadSize(), 0);
+    }
+
+    @Test(timeOut = 20000)
+    void bufferIsDiscardedOnSeek() throws Exception {
+        ManagedCursorImpl cursor = openCursor("seek-reads", 1024 * 1024);
+
+        readAndVerify(cursor, 10, 0);
+        readAndVerify(cursor, 10, 10);
+        readAndVerify(cursor, 10, 20);
+
+        CursorReadAhead readAhead = cursor.getReadAhead();
+        retryStrategically(test -> readAhead.getBufferedEntries() > 0, 10, 100);
+
+        // Going back in the backlog, the cursor has to read from the bookies again
+        cursor.rewind();
+        readAndVerify(cursor, 10, 0);
+        assertEquals(readAhead.getBufferedEntries(), 0);
+        assertEquals(factory.getEntryCacheManager().getReadAheadSize(), 0);
+
+        cursor.getManagedLedger().close();
+        assertEquals(factory.getEntryCacheManager().getReadAheadSize(), 0);
+    }
+
+    @Test(timeOut = 20000)
+    void disabledByDefault() throws Exception {
+        ManagedCursorImpl cursor = openCursor("no-read-ahead", 0);
+
+        for (int i = 0; i < ENTRIES; i += 10) {
+            readAndVerify(cursor, 10, i);
+        }
+        assertNull(cursor.getReadAhead());
+    }
+}
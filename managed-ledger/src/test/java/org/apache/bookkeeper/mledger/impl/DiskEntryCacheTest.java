@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class DiskEntryCacheTest extends MockedBookKeeperTestCase {
+
+    private File directory;
+
+    @BeforeMethod
+    void createDirectory() throws Exception {
+        directory = Files.createTempDirectory("ml-disk-cache").toFile();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    void fifoEviction() throws Exception {
+        DiskEntryCache cache = new DiskEntryCache(directory, 200, 100);
+
+        // Each segment fits 2 entries
+        for (int i = 0; i < 4; i++) {
+            byte[] data = new byte[40];
+            data[0] = (byte) i;
+            assertTrue(cache.put(1, i, Unpooled.wrappedBuffer(data)));
+            final long expected = i + 1;
+            ManagedLedgerTest.retryStrategically(test -> cache.getNumberOfEntries() == expected, 10, 100);
+        }
+        assertEquals(cache.getSize(), 160);
+
+        EntryImpl entry = cache.get(1, 3);
+        assertNotNull(entry);
+        assertEquals(entry.getLength(), 40);
+        assertEquals(entry.getData()[0], 3);
+        entry.release();
+
+        List<EntryImpl> entries = cache.getRange(1, 0, 3);
+        assertEquals(entries.size(), 4);
+        entries.forEach(EntryImpl::release);
+        assertNull(cache.getRange(1, 0, 4));
+
+        // Writing in a 3rd segment recycles the oldest one
+        cache.put(1, 4, Unpooled.wrappedBuffer(new byte[40]));
+        ManagedLedgerTest.retryStrategically(test -> cache.get(1, 0) == null, 10, 100);
+        assertNull(cache.get(1, 0));
+        assertNull(cache.get(1, 1));
+        assertEquals(cache.getNumberOfEntries(), 3);
+        assertEquals(cache.getSize(), 120);
+
+        // Entries bigger than a segment are never cached
+        assertEquals(cache.put(2, 0, Unpooled.wrappedBuffer(new byte[101])), false);
+
+        cache.close();
+        assertEquals(directory.list().length, 0);
+    }
+
+    @Test
+    void readMissesAreServedFromDisk() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(100);
+        config.setDiskCacheMaxSize(2000);
+        config.setDiskCacheSegmentSize(1000);
+        config.setDiskCacheDirectory(directory.getAbsolutePath());
+
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+
+        ManagedLedgerImpl ml = mock(ManagedLedgerImpl.class);
+        when(ml.getName()).thenReturn("cache1");
+        when(ml.getExecutor()).thenReturn(executor);
+        when(ml.getMBean()).thenReturn(new ManagedLedgerMBeanImpl(ml));
+        // A cursor still has to read from entry 2
+        when(ml.getSlowestReaderPosition()).thenReturn(PositionImpl.get(1, 2));
+
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+        EntryCache cache = cacheManager.getEntryCache(ml);
+        for (int i = 0; i < 10; i++) {
+            cache.insert(EntryImpl.create(1, i, new byte[10]));
+        }
+
+        cache.evictEntries(100);
+        assertEquals(cache.getSize(), 0);
+        ManagedLedgerTest.retryStrategically(test -> cacheManager.getDiskCacheSize() == 80, 10, 100);
+        assertEquals(cacheManager.getDiskCacheSize(), 80);
+
+        ReadHandle lh = mock(ReadHandle.class);
+        when(lh.getId()).thenReturn(1L);
+        CompletableFuture<List<Entry>> future = new CompletableFuture<>();
+        cache.asyncReadEntry(lh, 2, 9, false, new ReadEntriesCallback() {
+            @Override
+            public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                future.complete(entries);
+            }
+
+            @Override
+            public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null);
+
+        List<Entry> entries = future.get();
+        assertEquals(entries.size(), 8);
+        entries.forEach(Entry::release);
+        verify(lh, never()).readAsync(anyLong(), anyLong());
+
+        cacheManager.mlFactoryMBean.refreshStats(1, TimeUnit.SECONDS);
+        assertEquals(cacheManager.mlFactoryMBean.getDiskCacheHitsRate(), 8.0);
+    }
+}
@@ -26,10 +26,12 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import com.google.common.collect.Lists;
 import java.lang.reflect.Method;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
 
 import org.apache.bookkeeper.client.api.ReadHandle;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
@@ -320,6 +322,86 @@ public class EntryCacheManagerTest extends MockedBookKeeperTestCase {
         factory.shutdown();
     }
 
+    @Test
+    void parallelTimeBasedEviction() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(1000);
+        config.setCacheEvictionFrequency(100);
+        config.setCacheEvictionTimeThresholdMillis(100);
+        config.setCacheEvictionThreads(4);
+
+        ManagedLedgerFactoryImpl factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+
+        List<ManagedLedgerImpl> ledgers = Lists.newArrayList();
+        for (int i = 0; i < 8; i++) {
+            ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("test-" + i);
+            ledger.openCursor("c1").setActive();
+            ledger.addEntry(new byte[4]);
+            ledger.addEntry(new byte[3]);
+            ledgers.add(ledger);
+        }
+
+        // All the shards should clean the entries older that 100ms
+        Thread.sleep(1000);
+
+        for (ManagedLedgerImpl ledger : ledgers) {
+            assertEquals(cacheManager.getEntryCache(ledger).getSize(), 0);
+        }
+        assertEquals(cacheManager.getSize(), 0);
+
+        factory.mbean.refreshStats(1, TimeUnit.SECONDS);
+        assertTrue(LongStream.of(factory.mbean.getCacheEvictionTimeBuckets()).sum() > 0);
+
+        factory.shutdown();
+    }
+
+    @Test
+    void evictionTriggeredByWatermark() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(100);
+        config.setCacheEvictionWatermark(0.5);
+        // Periodic eviction only every 100 seconds
+        config.setCacheEvictionFrequency(0.01);
+        config.setCacheEvictionTimeThresholdMillis(0);
+
+        ManagedLedgerFactoryImpl factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("test");
+        ledger.openCursor("c1").setActive();
+
+        ledger.addEntry(new byte[30]);
+        Thread.sleep(100);
+        assertEquals(cacheManager.getSize(), 30);
+
+        // Going above the watermark starts an eviction cycle
+        ledger.addEntry(new byte[30]);
+        ManagedLedgerTest.retryStrategically(test -> cacheManager.getSize() == 0, 10, 100);
+        assertEquals(cacheManager.getSize(), 0);
+
+        factory.shutdown();
+    }
+
+    @Test
+    void insertsAboveHardLimitAreRejected() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(10);
+
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+        EntryCache cache1 = cacheManager.getEntryCache(ml1);
+
+        assertTrue(cache1.insert(EntryImpl.create(1, 0, new byte[8])));
+        assertFalse(cache1.insert(EntryImpl.create(1, 1, new byte[3])));
+        assertEquals(cacheManager.getSize(), 8);
+
+        cacheManager.mlFactoryMBean.refreshStats(1, TimeUnit.SECONDS);
+        assertEquals(cacheManager.mlFactoryMBean.getCacheInsertsRejectedRate(), 1.0);
+        assertEquals(cacheManager.mlFactoryMBean.getCacheMaxOvershootSize(), 0);
+    }
+
     @Test(timeOut = 5000)
     void entryCacheDisabledAsyncReadEntry() throws Exception {
         ReadHandle lh = EntryCacheTest.getLedgerHandle();
@@ -348,4 +430,102 @@ public class EntryCacheManagerTest extends MockedBookKeeperTestCase {
         verify(lh).readAsync(anyLong(), anyLong());
     }
 
+    @Test
+    void frequencyEvictionPolicy() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(10);
+        config.setCacheEvictionWatermark(0.8);
+        config.setCacheEvictionPolicyClassName(EntryCacheFrequencyEvictionPolicy.class.getName());
+
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+        EntryCache cache1 = cacheManager.getEntryCache(ml1);
+        EntryCache cache2 = cacheManager.getEntryCache(ml2);
+        EntryCache cache3 = cacheManager.getEntryCache(mockManagedLedger("cache3"));
+
+        for (int i = 0; i < 10; i++) {
+            cacheManager.recordAccess("cache1", false);
+        }
+
+        cache1.insert(EntryImpl.create(1, 0, new byte[4]));
+        cache1.insert(EntryImpl.create(1, 1, new byte[3]));
+        cache2.insert(EntryImpl.create(2, 0, new byte[1]));
+        cache2.insert(EntryImpl.create(2, 1, new byte[1]));
+        cache2.insert(EntryImpl.create(2, 2, new byte[1]));
+        assertEquals(cacheManager.getSize(), 10);
+
+        // The eviction should only drain the cache that is never read, even if it's the smallest
+        cache2.insert(EntryImpl.create(2, 3, new byte[1]));
+        Thread.sleep(100);
+        assertEquals(cache1.getSize(), 7);
+        assertEquals(cache2.getSize(), 1);
+
+        // Entries of ledgers not being read are still admitted, since the last victim was never read
+        assertTrue(cache3.insert(EntryImpl.create(3, 0, new byte[1])));
+        cache3.invalidateAllEntries(3);
+
+        for (int i = 0; i < 3; i++) {
+            cacheManager.recordAccess("cache2", false);
+        }
+        cache2.insert(EntryImpl.create(2, 4, new byte[1]));
+        cache2.insert(EntryImpl.create(2, 5, new byte[1]));
+        cache2.insert(EntryImpl.create(2, 6, new byte[1]));
+        Thread.sleep(100);
+        assertEquals(cache1.getSize(), 7);
+        assertEquals(cache2.getSize(), 1);
+
+        // Now the ledgers need to be read at least as often as cache2 to be admitted. Scan reads are not considered
+        cacheManager.recordAccess("cache3", true);
+        assertFalse(cache3.insert(EntryImpl.create(3, 1, new byte[1])));
+        for (int i = 0; i < 3; i++) {
+            cacheManager.recordAccess("cache3", false);
+        }
+        assertTrue(cache3.insert(EntryImpl.create(3, 2, new byte[1])));
+
+        cacheManager.mlFactoryMBean.refreshStats(1, TimeUnit.SECONDS);
+        assertEquals(cacheManager.mlFactoryMBean.getCacheEvictionPolicy(), "EntryCacheFrequencyEvictionPolicy");
+        assertEquals(cacheManager.mlFactoryMBean.getCacheAdmissionRejectedRate(), 1.0);
+        assertEquals(cacheManager.mlFactoryMBean.getCacheScanReadsRate(), 1.0);
+    }
+
+    @Test
+    void namespaceQuota() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(100);
+        config.setCacheEvictionWatermark(0.8);
+        config.setMaxCacheSizePerNamespace(10);
+
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+        EntryCache cache1 = cacheManager.getEntryCache(mockManagedLedger("tenant/ns1/persistent/topic1"));
+        EntryCache cache2 = cacheManager.getEntryCache(mockManagedLedger("tenant/ns1/persistent/topic2"));
+        EntryCache cache3 = cacheManager.getEntryCache(mockManagedLedger("tenant/ns2/persistent/topic3"));
+
+        assertTrue(cache1.insert(EntryImpl.create(1, 0, new byte[6])));
+        assertTrue(cache2.insert(EntryImpl.create(2, 0, new byte[4])));
+
+        // Namespace is full, the insert triggers the eviction of its caches
+        assertFalse(cache2.insert(EntryImpl.create(2, 1, new byte[1])));
+        assertTrue(cache3.insert(EntryImpl.create(3, 0, new byte[10])));
+
+        Thread.sleep(100);
+        assertEquals(cacheManager.getNamespaceUsage("tenant/ns1/persistent/topic1").getSize(), 4);
+        assertEquals(cache1.getSize(), 0);
+        assertEquals(cache2.getSize(), 4);
+        assertEquals(cache3.getSize(), 10);
+        assertEquals(cacheManager.getSize(), 14);
+
+        assertEquals(EntryCacheManager.getNamespaceName("tenant/ns1/persistent/topic1"), "tenant/ns1");
+        assertEquals(EntryCacheManager.getNamespaceName("prop/cluster/ns/persistent/topic"), "prop/cluster/ns");
+        assertEquals(EntryCacheManager.getNamespaceName("my-ledger"), "my-ledger");
+    }
+
+    private ManagedLedgerImpl mockManagedLedger(String name) {
+        ManagedLedgerImpl ml = mock(ManagedLedgerImpl.class);
+        when(ml.getName()).thenReturn(name);
+        when(ml.getExecutor()).thenReturn(super.executor);
+        return ml;
+    }
 }
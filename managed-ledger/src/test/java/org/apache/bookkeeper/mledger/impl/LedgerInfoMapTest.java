@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.OffloadContext;
+import org.testng.annotations.Test;
+
+public class LedgerInfoMapTest {
+
+    private static LedgerInfo ledger(long ledgerId, long entries, long size) {
+        return LedgerInfo.newBuilder().setLedgerId(ledgerId).setEntries(entries).setSize(size).build();
+    }
+
+    private static void assertTotals(LedgerInfoMap ledgers) {
+        for (long ledgerId = 0; ledgerId <= 102; ledgerId++) {
+            final long id = ledgerId;
+            assertEquals(ledgers.getSizeBefore(ledgerId),
+                    ledgers.values().stream().filter(li -> li.getLedgerId() < id).mapToLong(LedgerInfo::getSize).sum());
+            for (long toLedgerId = ledgerId; toLedgerId <= 102; toLedgerId += 7) {
+                assertEquals(ledgers.getEntriesBetween(ledgerId, toLedgerId),
+                        ledgers.subMap(ledgerId, false, toLedgerId, false).values().stream()
+                                .mapToLong(LedgerInfo::getEntries).sum());
+            }
+        }
+    }
+
+    @Test
+    public void testTotals() {
+        LedgerInfoMap ledgers = new LedgerInfoMap();
+        assertEquals(ledgers.getSizeBefore(10), 0);
+        assertEquals(ledgers.getEntriesBetween(0, 10), 0);
+
+        // Usual lifecycle, ledgers are created empty, closed and trimmed from the head
+        for (long ledgerId = 1; ledgerId <= 10; ledgerId++) {
+            ledgers.put(ledgerId, ledger(ledgerId, 0, 0));
+            ledgers.put(ledgerId, ledger(ledgerId, ledgerId, ledgerId * 100));
+        }
+        assertEquals(ledgers.getSizeBefore(5), 1000);
+        assertEquals(ledgers.getEntriesBetween(2, 5), 7);
+        assertTotals(ledgers);
+
+        ledgers.remove(1L);
+        ledgers.remove(2L);
+        assertEquals(ledgers.getSizeBefore(5), 700);
+        assertTotals(ledgers);
+
+        // Removals through views
+        ledgers.headMap(5L).clear();
+        Iterator<LedgerInfo> iterator = ledgers.values().iterator();
+        iterator.next();
+        iterator.remove();
+        assertTotals(ledgers);
+
+        ledgers.clear();
+        assertEquals(ledgers.getSizeBefore(5), 0);
+        ledgers.put(20L, ledger(20, 5, 50));
+        assertEquals(ledgers.getSizeBefore(21), 50);
+    }
+
+    @Test
+    public void testRandomUpdates() {
+        LedgerInfoMap ledgers = new LedgerInfoMap();
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++) {
+            long ledgerId = random.nextInt(100) + 1;
+            if (random.nextInt(3) == 0) {
+                ledgers.remove(ledgerId);
+            } else {
+                ledgers.put(ledgerId, ledger(ledgerId, random.nextInt(1000), random.nextInt(100000)));
+            }
+            if (i % 100 == 0) {
+                assertTotals(ledgers);
+            }
+        }
+        assertTotals(ledgers);
+    }
+
+    private static void assertSameNavigation(NavigableMap<Long, LedgerInfo> actual,
+                                             NavigableMap<Long, LedgerInfo> expected) {
+        assertEquals(actual, expected);
+        assertEquals(actual.size(), expected.size());
+        assertEquals(new ArrayList<>(actual.keySet()), new ArrayList<>(expected.keySet()));
+        assertEquals(new ArrayList<>(actual.descendingKeySet()), new ArrayList<>(expected.descendingKeySet()));
+        if (!expected.isEmpty()) {
+            assertEquals(actual.firstKey(), expected.firstKey());
+            assertEquals(actual.lastKey(), expected.lastKey());
+        }
+        for (long key = -1; key <= 102; key++) {
+            assertEquals(actual.get(key), expected.get(key));
+            assertEquals(actual.containsKey(key), expected.containsKey(key));
+            assertEquals(actual.ceilingKey(key), expected.ceilingKey(key));
+            assertEquals(actual.floorKey(key), expected.floorKey(key));
+            assertEquals(actual.higherKey(key), expected.higherKey(key));
+            assertEquals(actual.lowerKey(key), expected.lowerKey(key));
+        }
+    }
+
+    @Test
+    public void testNavigationMatchesTreeMap() {
+        LedgerInfoMap ledgers = new LedgerInfoMap();
+        TreeMap<Long, LedgerInfo> expected = new TreeMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 300; i++) {
+            long ledgerId = random.nextInt(100) + 1;
+            if (random.nextInt(4) == 0) {
+                assertEquals(ledgers.remove(ledgerId), expected.remove(ledgerId));
+            } else {
+                LedgerInfo info = ledger(ledgerId, random.nextInt(1000), random.nextInt(100000));
+                assertEquals(ledgers.put(ledgerId, info), expected.put(ledgerId, info));
+            }
+        }
+
+        assertSameNavigation(ledgers, expected);
+        assertSameNavigation(ledgers.descendingMap(), expected.descendingMap());
+        for (long from = 0; from <= 101; from += 13) {
+            for (long to = from; to <= 101; to += 17) {
+                assertSameNavigation(ledgers.subMap(from, true, to, false), expected.subMap(from, true, to, false));
+                assertSameNavigation(ledgers.subMap(from, false, to, true).descendingMap(),
+                        expected.subMap(from, false, to, true).descendingMap());
+            }
+            assertSameNavigation(ledgers.headMap(from, true), expected.headMap(from, true));
+            assertSameNavigation(ledgers.tailMap(from, false), expected.tailMap(from, false));
+            assertSameNavigation(ledgers.descendingMap().headMap(from, false),
+                    expected.descendingMap().headMap(from, false));
+        }
+
+        // Views are live
+        NavigableMap<Long, LedgerInfo> tail = ledgers.tailMap(50L, true);
+        ledgers.put(200L, ledger(200, 1, 1));
+        assertTrue(tail.containsKey(200L));
+        tail.clear();
+        expected.tailMap(50L, true).clear();
+        assertSameNavigation(ledgers, expected);
+    }
+
+    @Test
+    public void testFieldsArePreserved() {
+        LedgerInfoMap ledgers = new LedgerInfoMap();
+        LedgerInfo onlyId = LedgerInfo.newBuilder().setLedgerId(1).build();
+        LedgerInfo withTimestamp = LedgerInfo.newBuilder().setLedgerId(2).setTimestamp(0).build();
+        LedgerInfo offloaded = LedgerInfo.newBuilder().setLedgerId(3).setEntries(10).setSize(100).setTimestamp(1000)
+                .setOffloadContext(OffloadContext.newBuilder().setUidMsb(1).setUidLsb(2).setComplete(true))
+                .build();
+        ledgers.addAll(Lists.newArrayList(onlyId, withTimestamp, offloaded));
+
+        // The optional fields which weren't set stay unset
+        LedgerInfo info = ledgers.get(1L);
+        assertEquals(info, onlyId);
+        assertFalse(info.hasEntries());
+        assertFalse(info.hasSize());
+        assertFalse(info.hasTimestamp());
+        assertTrue(ledgers.get(2L).hasTimestamp());
+        assertEquals(ledgers.get(3L), offloaded);
+        assertTrue(ledgers.get(3L).getOffloadContext().getComplete());
+        assertEquals(ledgers.getSizeBefore(4), 100);
+    }
+
+    @Test
+    public void testBulkUpdates() {
+        LedgerInfoMap ledgers = new LedgerInfoMap();
+        TreeMap<Long, LedgerInfo> expected = new TreeMap<>();
+        Random random = new Random(2);
+        for (int i = 0; i < 50; i++) {
+            List<LedgerInfo> added = new ArrayList<>();
+            for (int j = random.nextInt(10); j > 0; j--) {
+                long ledgerId = random.nextInt(100) + 1;
+                LedgerInfo info = ledger(ledgerId, random.nextInt(1000), random.nextInt(100000));
+                added.add(info);
+                expected.put(ledgerId, info);
+            }
+            ledgers.addAll(added);
+
+            List<Long> removed = new ArrayList<>();
+            for (int j = random.nextInt(5); j > 0; j--) {
+                long ledgerId = random.nextInt(100) + 1;
+                removed.add(ledgerId);
+                expected.remove(ledgerId);
+            }
+            ledgers.removeAll(removed);
+
+            assertEquals(ledgers, expected);
+            assertTotals(ledgers);
+        }
+        assertSameNavigation(ledgers, expected);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.TimeIndex;
+
+import org.testng.annotations.Test;
+
+@Test
+public class LedgerTimeIndexTest {
+
+    @Test
+    void samplesAreThinnedOut() {
+        LedgerTimeIndex index = new LedgerTimeIndex(1, 10);
+        long now = 0;
+        for (long entryId = 0; entryId < 1000; entryId++, now += 5) {
+            if (index.shouldSample(now)) {
+                index.add(now, entryId, 1000 + entryId);
+            }
+        }
+
+        assertTrue(index.size() <= LedgerTimeIndex.MAX_SAMPLES);
+        assertTrue(index.size() >= LedgerTimeIndex.MAX_SAMPLES / 2);
+        // Interval was doubled
+        assertFalse(index.shouldSample(now - 5 + 20));
+
+        // First entry is always kept
+        Range<PositionImpl> range = LedgerTimeIndex.search(Lists.newArrayList(index), 1000);
+        assertFalse(range.hasLowerBound());
+        assertTrue(range.upperEndpoint().getEntryId() > 0);
+    }
+
+    @Test
+    void persistedSamplesAreCapped() {
+        LedgerTimeIndex index = new LedgerTimeIndex(1, 0);
+        for (long entryId = 0; entryId < LedgerTimeIndex.MAX_SAMPLES; entryId++) {
+            index.add(0, entryId * 100, 1000 + entryId * 100);
+        }
+        assertEquals(index.size(), LedgerTimeIndex.MAX_SAMPLES);
+
+        TimeIndex proto = index.toProto();
+        assertEquals(proto.getTimestampDeltasCount(), LedgerTimeIndex.MAX_PERSISTED_SAMPLES);
+        assertTrue(proto.getSerializedSize() < 64);
+
+        // The first and last samples are kept, and the ranges found are wider but still hold the target
+        LedgerTimeIndex decoded = LedgerTimeIndex.fromProto(1, proto);
+        for (long timestamp = 900; timestamp < 1000 + LedgerTimeIndex.MAX_SAMPLES * 100; timestamp += 50) {
+            Range<PositionImpl> range = LedgerTimeIndex.search(Lists.newArrayList(index), timestamp);
+            Range<PositionImpl> persistedRange = LedgerTimeIndex.search(Lists.newArrayList(decoded), timestamp);
+            assertTrue(persistedRange.encloses(range), timestamp + ": " + persistedRange + " " + range);
+        }
+        assertFalse(LedgerTimeIndex.search(Lists.newArrayList(decoded), 1000).hasLowerBound());
+        assertEquals(LedgerTimeIndex.search(Lists.newArrayList(decoded), 100000),
+                Range.atLeast(PositionImpl.get(1, (LedgerTimeIndex.MAX_SAMPLES - 1) * 100)));
+
+        // Small indexes are stored as they are
+        LedgerTimeIndex small = new LedgerTimeIndex(2, 0);
+        small.add(0, 0, 100);
+        small.add(0, 10, 200);
+        assertEquals(LedgerTimeIndex.fromProto(2, small.toProto()).toString(), small.toString());
+    }
+
+    @Test
+    void searchAcrossLedgers() {
+        LedgerTimeIndex index1 = new LedgerTimeIndex(1, 0);
+        index1.add(0, 0, 100);
+        index1.add(0, 10, 200);
+        LedgerTimeIndex index2 = new LedgerTimeIndex(2, 0);
+        index2.add(0, 0, 300);
+        index2.add(0, 10, 400);
+
+        assertEquals(LedgerTimeIndex.search(Lists.newArrayList(index1, index2), 50),
+                Range.lessThan(PositionImpl.get(1, 0)));
+        assertEquals(LedgerTimeIndex.search(Lists.newArrayList(index1, index2), 250),
+                Range.closedOpen(PositionImpl.get(1, 10), PositionImpl.get(2, 0)));
+        // Exact match of a sample
+        assertEquals(LedgerTimeIndex.search(Lists.newArrayList(index1, index2), 300),
+                Range.closedOpen(PositionImpl.get(1, 10), PositionImpl.get(2, 10)));
+        assertEquals(LedgerTimeIndex.search(Lists.newArrayList(index1, index2), 500),
+                Range.atLeast(PositionImpl.get(2, 10)));
+        assertEquals(LedgerTimeIndex.search(Lists.newArrayList(), 500), Range.all());
+    }
+}
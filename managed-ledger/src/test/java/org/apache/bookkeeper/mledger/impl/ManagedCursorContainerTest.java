@@ -213,6 +213,11 @@ public class ManagedCursorContainerTest {
                 AsyncCallbacks.FindEntryCallback callback, Object ctx) {
         }
 
+        @Override
+        public void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition,
+                long timestamp, AsyncCallbacks.FindEntryCallback callback, Object ctx) {
+        }
+
         @Override
         public void asyncResetCursor(final Position position, AsyncCallbacks.ResetCursorCallback callback) {
 
@@ -232,6 +237,15 @@ public class ManagedCursorContainerTest {
         public void setAlwaysInactive() {
         }
 
+        @Override
+        public void setScanReads(boolean scanReads) {
+        }
+
+        @Override
+        public boolean isScanReads() {
+            return false;
+        }
+
         @Override
         public List<Entry> replayEntries(Set<? extends Position> positions)
                 throws InterruptedException, ManagedLedgerException {
@@ -43,6 +43,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
@@ -55,11 +56,14 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookKeeper;
 import org.apache.bookkeeper.client.BookKeeper.DigestType;
 import org.apache.bookkeeper.client.LedgerEntry;
+import org.apache.bookkeeper.client.LedgerHandle;
 import org.apache.bookkeeper.mledger.AsyncCallbacks;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.AddEntryCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.DeleteCallback;
@@ -1979,6 +1983,49 @@ public class ManagedCursorTest extends MockedBookKeeperTestCase {
                 lastPosition);
     }
 
+    @Test(timeOut = 20000)
+    void testFindNewestMatchingWithTimeIndex() throws Exception {
+        // Each entry contains its own timestamp
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(50)
+                .setEntryTimestampExtractor(ByteBuf::readLong).setTimeIndexIntervalMs(0);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testFindNewestMatchingWithTimeIndex", config);
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        List<Position> positions = Lists.newArrayList();
+        for (long timestamp = 0; timestamp < 1020; timestamp++) {
+            positions.add(ledger.addEntry(Unpooled.buffer(8).writeLong(timestamp).array()));
+        }
+        assertEquals(ledger.getLedgersInfoAsList().size(), 21);
+
+        AtomicInteger entriesRead = new AtomicInteger();
+        // Search in closed ledgers, across a ledger boundary and in the ledger being written
+        for (long timestamp : new long[] { 0, 555, 950, 1010, 1019 }) {
+            CompletableFuture<Position> result = new CompletableFuture<>();
+            entriesRead.set(0);
+            c1.asyncFindNewestMatching(ManagedCursor.FindPositionConstraint.SearchAllAvailableEntries, entry -> {
+                entriesRead.incrementAndGet();
+                long entryTimestamp = entry.getDataBuffer().getLong(0);
+                entry.release();
+                return entryTimestamp <= timestamp;
+            }, timestamp, new AsyncCallbacks.FindEntryCallback() {
+                @Override
+                public void findEntryComplete(Position position, Object ctx) {
+                    result.complete(position);
+                }
+
+                @Override
+                public void findEntryFailed(ManagedLedgerException exception, Optional<Position> failedReadPosition,
+                        Object ctx) {
+                    result.completeExceptionally(exception);
+                }
+            }, null);
+
+            assertEquals(result.get(), positions.get((int) timestamp));
+            // Only the entries between the samples around the timestamp are read
+            assertEquals(entriesRead.get(), 2);
+        }
+    }
+
     @Test(timeOut = 20000, dataProvider = "useOpenRangeSet")
     void testIndividuallyDeletedMessages(boolean useOpenRangeSet) throws Exception {
         ManagedLedger ledger = factory.open("testIndividuallyDeletedMessages",
@@ -2724,6 +2771,123 @@ public class ManagedCursorTest extends MockedBookKeeperTestCase {
         assertEquals(entries.size(), totalAddEntries / 2);
     }
 
+    /**
+     * Unacked ranges persisted as bitmaps: the whole ack state is recovered, even when it exceeds
+     * MaxUnackedRangesToPersist and it's split in multiple entries of the cursor-ledger
+     *
+     * @throws Exception
+     */
+    @Test(timeOut = 20000)
+    public void testOutOfOrderDeletePersistenceAsBitmapIntoLedger() throws Exception {
+        final int totalAddEntries = 1000;
+        String ledgerName = "my_test_ledger_bitmap";
+        String cursorName = "c1";
+        ManagedLedgerConfig managedLedgerConfig = new ManagedLedgerConfig();
+        managedLedgerConfig.setMaxUnackedRangesToPersistInZk(10);
+        managedLedgerConfig.setMaxUnackedRangesToPersist(100);
+        managedLedgerConfig.setMaxEntriesPerLedger(300);
+        managedLedgerConfig.setUnackedRangesBitmapEnabled(true);
+        managedLedgerConfig.setUnackedRangesBitmapChunkSize(16);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open(ledgerName, managedLedgerConfig);
+
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor(cursorName);
+
+        List<Position> addedPositions = new ArrayList<>();
+        for (int i = 0; i < totalAddEntries; i++) {
+            Position p = ledger.addEntry(("dummy-entry-" + i).getBytes(Encoding));
+            addedPositions.add(p);
+        }
+        for (int i = 0; i < totalAddEntries; i += 2) {
+            // Acknowledge alternative message to create totalEntries/2 holes
+            c1.delete(addedPositions.get(i));
+        }
+        // Acknowledge all the remaining messages of the second ledger, to create a range across ledgers
+        for (int i = 301; i < 600; i += 2) {
+            c1.delete(addedPositions.get(i));
+        }
+
+        final long expectedBacklog = c1.getNumberOfEntriesInBacklog();
+        final String expectedUnackedRanges = c1.getIndividuallyDeletedMessages();
+        assertEquals(expectedBacklog, totalAddEntries / 2 - 150);
+
+        // Close ledger to persist individual-deleted positions into cursor-ledger
+        ledger.close();
+
+        // Re-Open
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle());
+        ledger = (ManagedLedgerImpl) factory.open(ledgerName, managedLedgerConfig);
+        c1 = (ManagedCursorImpl) ledger.openCursor(cursorName);
+        // verify cursor has been recovered, beyond MaxUnackedRangesToPersist
+        assertEquals(c1.getNumberOfEntriesInBacklog(), expectedBacklog);
+        assertEquals(c1.getIndividuallyDeletedMessages(), expectedUnackedRanges);
+
+        // try to read entries which should only read non-deleted positions
+        List<Entry> entries = c1.readEntries(totalAddEntries);
+        assertEquals(entries.size(), expectedBacklog);
+        entries.forEach(Entry::release);
+    }
+
+    /**
+     * Unacked ranges persisted incrementally: the ack state is rebuilt from the last snapshot and the deltas appended
+     * after it in the cursor-ledger
+     *
+     * @throws Exception
+     */
+    @Test(timeOut = 20000)
+    public void testOutOfOrderDeletePersistenceWithDeltas() throws Exception {
+        final int totalAddEntries = 100;
+        String ledgerName = "my_test_ledger_delta";
+        ManagedLedgerConfig managedLedgerConfig = new ManagedLedgerConfig();
+        managedLedgerConfig.setUnackedRangesDeltaEnabled(true);
+        managedLedgerConfig.setUnackedRangesSnapshotInterval(4);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open(ledgerName, managedLedgerConfig);
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        List<Position> addedPositions = new ArrayList<>();
+        for (int i = 0; i < totalAddEntries; i++) {
+            addedPositions.add(ledger.addEntry(("dummy-entry-" + i).getBytes(Encoding)));
+        }
+
+        // Leave a hole every 10 entries, then fill them one at a time so that each mark-delete carries some of the
+        // individually deleted messages
+        for (int i = 0; i < totalAddEntries; i++) {
+            if (i % 10 != 5 && i != 97) {
+                c1.delete(addedPositions.get(i));
+            }
+        }
+        for (int i = 5; i < 95; i += 10) {
+            c1.delete(addedPositions.get(i));
+        }
+
+        assertEquals(c1.getMarkDeletedPosition(), addedPositions.get(94));
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 2);
+        final String expectedUnackedRanges = c1.getIndividuallyDeletedMessages();
+
+        // The last entry in the cursor-ledger is incremental
+        LedgerHandle lh = bkc.openLedger(c1.getCursorLedger(), DigestType.CRC32C, "".getBytes());
+        long lastEntry = lh.getLastAddConfirmed();
+        PositionInfo positionInfo = PositionInfo.parseFrom(lh.readEntries(lastEntry, lastEntry).nextElement()
+                .getEntry());
+        assertTrue(positionInfo.getAckDeltaSequence() > 0);
+        assertTrue(positionInfo.getAckDeltaSequence() <= 4);
+
+        // Re-Open without closing the cursor
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle());
+        ledger = (ManagedLedgerImpl) factory2.open(ledgerName, managedLedgerConfig);
+        c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        assertEquals(c1.getMarkDeletedPosition(), addedPositions.get(94));
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 2);
+        assertEquals(c1.getIndividuallyDeletedMessages(), expectedUnackedRanges);
+
+        List<Entry> entries = c1.readEntries(totalAddEntries);
+        assertEquals(entries.size(), 2);
+        assertEquals(entries.get(0).getPosition(), addedPositions.get(95));
+        assertEquals(entries.get(1).getPosition(), addedPositions.get(97));
+        entries.forEach(Entry::release);
+        factory2.shutdown();
+    }
+
     /**
      * Close Cursor without MaxUnackedRangesToPersistInZK: It should store individually unack range into Zk
      *
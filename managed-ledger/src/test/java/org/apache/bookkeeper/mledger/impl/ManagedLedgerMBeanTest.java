@@ -21,6 +21,7 @@ package org.apache.bookkeeper.mledger.impl;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.mledger.Entry;
@@ -133,4 +134,33 @@ public class ManagedLedgerMBeanTest extends MockedBookKeeperTestCase {
         factory.shutdown();
     }
 
+    @Test
+    public void stageLatencies() throws Exception {
+        ManagedLedgerFactoryImpl factory = new ManagedLedgerFactoryImpl(bkc, zkc);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger");
+        ManagedCursor cursor = ledger.openCursor("c1");
+        ManagedLedgerMBeanImpl mbean = ledger.mbean;
+
+        for (int i = 0; i < 3; i++) {
+            ledger.addEntry(new byte[10]);
+        }
+        cursor.readEntries(2).forEach(Entry::release);
+        cursor.readEntries(2).forEach(Entry::release);
+
+        factory.scheduledExecutor.submit(() -> {
+            mbean.refreshStats(1, TimeUnit.SECONDS);
+        }).get();
+
+        // Each add goes through the 3 add stages, each read through the 3 read stages
+        assertEquals(mbean.getInternalAddEntryQueueLatencyBuckets().getCount(), 3);
+        assertEquals(mbean.getInternalAddEntryBookieLatencyBuckets().getCount(), 3);
+        assertEquals(mbean.getInternalAddEntryCallbackLatencyBuckets().getCount(), 3);
+        assertEquals(mbean.getInternalReadEntriesQueueLatencyBuckets().getCount(), 2);
+        assertEquals(mbean.getInternalReadEntriesStorageLatencyBuckets().getCount(), 2);
+        assertEquals(mbean.getInternalReadEntriesCallbackLatencyBuckets().getCount(), 2);
+        assertEquals(Arrays.stream(mbean.getAddEntryBookieLatencyBuckets()).sum(), 3);
+        assertEquals(Arrays.stream(mbean.getReadEntriesStorageLatencyBuckets()).sum(), 2);
+
+        factory.shutdown();
+    }
 }
@@ -45,6 +45,7 @@ import java.lang.reflect.Field;
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -432,6 +433,183 @@ public class ManagedLedgerTest extends MockedBookKeeperTestCase {
         ledger.close();
     }
 
+    /**
+     * Concurrent producers adding entries while the ledger is rolled over frequently.
+     */
+    @Test(timeOut = 60000)
+    public void concurrentAddsWithRollover() throws Exception {
+        final int producers = 8;
+        final int entriesPerProducer = 500;
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(100);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("concurrent_adds_with_rollover", config);
+        ManagedCursor cursor = ledger.openCursor("c1");
+
+        CountDownLatch completed = new CountDownLatch(producers * entriesPerProducer);
+        AtomicReference<ManagedLedgerException> error = new AtomicReference<>();
+        List<List<PositionImpl>> positions = new ArrayList<>();
+        CyclicBarrier barrier = new CyclicBarrier(producers + 1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < producers; i++) {
+            List<PositionImpl> producerPositions = Collections.synchronizedList(new ArrayList<>());
+            positions.add(producerPositions);
+            Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int j = 0; j < entriesPerProducer; j++) {
+                        ledger.asyncAddEntry(("entry-" + j).getBytes(Charsets.UTF_8), new AddEntryCallback() {
+                            @Override
+                            public void addComplete(Position position, Object ctx) {
+                                producerPositions.add((PositionImpl) position);
+                                completed.countDown();
+                            }
+
+                            @Override
+                            public void addFailed(ManagedLedgerException exception, Object ctx) {
+                                error.set(exception);
+                                completed.countDown();
+                            }
+                        }, null);
+                    }
+                } catch (Exception e) {
+                    log.error("Producer failed", e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        barrier.await();
+        completed.await();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(ledger.getNumberOfEntries(), producers * entriesPerProducer);
+        assertEquals(cursor.getNumberOfEntries(), producers * entriesPerProducer);
+        assertTrue(ledger.getLedgersInfoAsList().size() >= producers * entriesPerProducer / 100);
+
+        // Adds from the same producer are persisted in order
+        for (List<PositionImpl> producerPositions : positions) {
+            assertEquals(producerPositions.size(), entriesPerProducer);
+            for (int j = 1; j < entriesPerProducer; j++) {
+                assertTrue(producerPositions.get(j - 1).compareTo(producerPositions.get(j)) < 0);
+            }
+        }
+
+        ledger.close();
+    }
+
+    /**
+     * Close the managed ledger while entries are being added across rollovers. The adds dispatched before the close
+     * complete or fail, the ones dispatched after fail, and no ledger is reopened for writes.
+     */
+    @Test(timeOut = 60000)
+    public void closeWhileAddingWithRollover() throws Exception {
+        final int entries = 2000;
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(10);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("close_while_adding_with_rollover", config);
+
+        CountDownLatch completed = new CountDownLatch(entries);
+        AtomicInteger addedAfterClose = new AtomicInteger();
+        for (int i = 0; i < entries; i++) {
+            final boolean afterClose = i > entries / 2;
+            ledger.asyncAddEntry(("entry-" + i).getBytes(Charsets.UTF_8), new AddEntryCallback() {
+                @Override
+                public void addComplete(Position position, Object ctx) {
+                    if (afterClose) {
+                        addedAfterClose.incrementAndGet();
+                    }
+                    completed.countDown();
+                }
+
+                @Override
+                public void addFailed(ManagedLedgerException exception, Object ctx) {
+                    completed.countDown();
+                }
+            }, null);
+            if (i == entries / 2) {
+                ledger.close();
+            }
+        }
+
+        completed.await();
+        assertEquals(addedAfterClose.get(), 0);
+        assertEquals(ledger.getState(), ManagedLedgerImpl.State.Closed.toString());
+    }
+
+    @Test(timeOut = 20000)
+    public void rolloverWithStandbyLedger() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(10)
+                .setStandbyLedgerEnabled(true);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("standby_ledger", config);
+        ManagedCursor cursor = ledger.openCursor("c1");
+
+        for (int i = 0; i < 5; i++) {
+            ledger.addEntry(("entry-" + i).getBytes(Encoding));
+        }
+        assertNull(ledger.getStandbyLedger());
+
+        // The standby ledger is prepared once the current ledger is half full
+        ledger.addEntry("entry-5".getBytes(Encoding));
+        retryStrategically(test -> ledger.getStandbyLedger() != null, 10, 100);
+        LedgerHandle standbyLedger = ledger.getStandbyLedger();
+        assertNotNull(standbyLedger);
+        assertEquals(ledger.getLedgersInfo().size(), 1);
+
+        for (int i = 6; i < 25; i++) {
+            ledger.addEntry(("entry-" + i).getBytes(Encoding));
+        }
+
+        // The standby ledger was used as second ledger
+        assertEquals(ledger.getLedgersInfoAsList().get(1).getLedgerId(), standbyLedger.getId());
+        assertEquals(ledger.getNumberOfEntries(), 25);
+
+        List<Entry> entries = cursor.readEntries(100);
+        assertEquals(entries.size(), 25);
+        for (int i = 0; i < 25; i++) {
+            assertEquals(new String(entries.get(i).getData(), Encoding), "entry-" + i);
+        }
+        entries.forEach(Entry::release);
+
+        ledger.mbean.refreshStats(1, TimeUnit.SECONDS);
+        assertTrue(Arrays.stream(ledger.mbean.getLedgerRolloverStallBuckets()).sum() > 0);
+        ledger.close();
+    }
+
+    @Test(timeOut = 20000)
+    public void recoverEntriesWrittenInStandbyLedger() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(10)
+                .setStandbyLedgerEnabled(true);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("standby_ledger_recovery", config);
+        ledger.openCursor("c1");
+
+        for (int i = 0; i < 6; i++) {
+            ledger.addEntry(("entry-" + i).getBytes(Encoding));
+        }
+        retryStrategically(test -> ledger.getStandbyLedger() != null, 10, 100);
+        LedgerHandle standbyLedger = ledger.getStandbyLedger();
+        assertNotNull(standbyLedger);
+
+        // Simulate a crash after switching to the standby ledger, but before the ledgers list was updated
+        standbyLedger.addEntry("entry-6".getBytes(Encoding));
+        standbyLedger.addEntry("entry-7".getBytes(Encoding));
+
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(bkc, zkc);
+        ManagedLedgerImpl ledger2 = (ManagedLedgerImpl) factory2.open("standby_ledger_recovery", config);
+        assertEquals(ledger2.getNumberOfEntries(), 8);
+        assertTrue(ledger2.getLedgersInfo().containsKey(standbyLedger.getId()));
+
+        ManagedCursor cursor = ledger2.openCursor("c1");
+        List<Entry> entries = cursor.readEntries(100);
+        assertEquals(entries.size(), 8);
+        assertEquals(new String(entries.get(7).getData(), Encoding), "entry-7");
+        entries.forEach(Entry::release);
+
+        factory2.shutdown();
+    }
+
     @Test(expectedExceptions = IllegalArgumentException.class)
     public void invalidReadEntriesArg1() throws Exception {
         ManagedLedger ledger = factory.open("my_test_ledger");
@@ -1700,6 +1878,30 @@ public class ManagedLedgerTest extends MockedBookKeeperTestCase {
         ml.close();
     }
 
+    @Test(timeOut = 20000)
+    public void testTrimmingScheduledOnRetentionExpiry() throws Exception {
+        ManagedLedgerFactory factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle());
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setRetentionSizeInMB(10);
+        config.setMaxEntriesPerLedger(1);
+        config.setRetentionTime(1, TimeUnit.SECONDS);
+
+        ManagedLedgerImpl ml = (ManagedLedgerImpl) factory.open("trimming_scheduled_on_retention_expiry", config);
+        ManagedCursor c1 = ml.openCursor("c1");
+        ml.addEntry("entry-1".getBytes());
+        ml.addEntry("entry-2".getBytes());
+        c1.skipEntries(2, IndividualDeletedEntries.Exclude);
+        // The consumed ledgers are retained
+        assertTrue(ml.getLedgersInfoAsList().size() > 1);
+
+        // No further activity, the trimming is triggered once the retention time has passed
+        while (ml.getLedgersInfoAsList().size() > 1) {
+            Thread.sleep(100);
+        }
+        assertEquals(ml.getLedgersInfoAsList().get(0).getLedgerId(), ml.lastConfirmedEntry.getLedgerId());
+        ml.close();
+    }
+
     /**
      * Set retention time = 0 and create a empty ledger,
      * first position can't higher than last after trim ledgers.
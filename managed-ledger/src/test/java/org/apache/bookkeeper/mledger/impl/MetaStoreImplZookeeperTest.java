@@ -19,13 +19,20 @@
 package org.apache.bookkeeper.mledger.impl;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.mledger.ManagedLedgerException.BadVersionException;
 import org.apache.bookkeeper.mledger.ManagedLedgerException.MetaStoreException;
 import org.apache.bookkeeper.mledger.impl.MetaStore.MetaStoreCallback;
 import org.apache.bookkeeper.mledger.impl.MetaStore.Stat;
@@ -33,6 +40,7 @@ import org.apache.bookkeeper.mledger.proto.MLDataFormats;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo;
 import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.apache.pulsar.client.api.CompressionType;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.Code;
@@ -269,4 +277,233 @@ public class MetaStoreImplZookeeperTest extends MockedBookKeeperTestCase {
                 });
         promise2.get();
     }
+
+    private static CompletableFuture<Stat> updateCursor(MetaStore store, String cursorName, long cursorsLedgerId,
+            Stat stat) {
+        CompletableFuture<Stat> future = new CompletableFuture<>();
+        ManagedCursorInfo info = ManagedCursorInfo.newBuilder().setCursorsLedgerId(cursorsLedgerId).build();
+        store.asyncUpdateCursorInfo("my_test", cursorName, info, stat, new MetaStoreCallback<Void>() {
+            @Override
+            public void operationComplete(Void result, Stat version) {
+                future.complete(version);
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private List<Stat> createCursors(MetaStore store, int count) throws Exception {
+        zkc.create("/managed-ledgers/my_test", "".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        List<Stat> stats = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            stats.add(updateCursor(store, "c" + i, 0, null).get());
+        }
+        return stats;
+    }
+
+    @Test(timeOut = 20000)
+    void batchedCursorUpdates() throws Exception {
+        ManagedLedgerFactoryMBeanImpl stats = new ManagedLedgerFactoryMBeanImpl(factory);
+        // The batch is only sent once it's full
+        MetaStore store = new MetaStoreImplZookeeper(zkc, executor, executor, TimeUnit.MINUTES.toMillis(1), 10,
+                1024 * 1024, stats);
+        List<Stat> versions = createCursors(store, 10);
+
+        List<CompletableFuture<Stat>> updates = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            updates.add(updateCursor(store, "c" + i, i + 1, versions.get(i)));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(updates.get(i).get().getVersion(), versions.get(i).getVersion() + 1);
+            ManagedCursorInfo info = ManagedCursorInfo
+                    .parseFrom(zkc.getData("/managed-ledgers/my_test/c" + i, false, null));
+            assertEquals(info.getCursorsLedgerId(), i + 1);
+        }
+
+        stats.refreshStats(1, TimeUnit.SECONDS);
+        assertEquals(stats.getMetadataBatchesRate(), 1.0);
+        assertEquals(stats.getMetadataOpsSavedRate(), 9.0);
+    }
+
+    @Test(timeOut = 20000)
+    void batchedUpdatesAreSentAfterDelay() throws Exception {
+        MetaStore store = new MetaStoreImplZookeeper(zkc, executor, executor, 10, 100, 1024 * 1024, null);
+        List<Stat> versions = createCursors(store, 2);
+
+        CompletableFuture<Stat> update1 = updateCursor(store, "c0", 1, versions.get(0));
+        CompletableFuture<Stat> update2 = updateCursor(store, "c1", 1, versions.get(1));
+        assertEquals(update1.get().getVersion(), versions.get(0).getVersion() + 1);
+        assertEquals(update2.get().getVersion(), versions.get(1).getVersion() + 1);
+    }
+
+    @Test(timeOut = 20000)
+    void batchedUpdateWithBadVersion() throws Exception {
+        MetaStore store = new MetaStoreImplZookeeper(zkc, executor, executor, TimeUnit.MINUTES.toMillis(1), 3,
+                1024 * 1024, null);
+        List<Stat> versions = createCursors(store, 3);
+
+        // Another writer updated c1
+        zkc.setData("/managed-ledgers/my_test/c1", new byte[0], -1);
+
+        // The stale update fails on its own, the others of the batch are still applied
+        CompletableFuture<Stat> update1 = updateCursor(store, "c0", 1, versions.get(0));
+        CompletableFuture<Stat> update2 = updateCursor(store, "c1", 1, versions.get(1));
+        CompletableFuture<Stat> update3 = updateCursor(store, "c2", 1, versions.get(2));
+
+        assertEquals(update1.get().getVersion(), versions.get(0).getVersion() + 1);
+        assertEquals(update3.get().getVersion(), versions.get(2).getVersion() + 1);
+        try {
+            update2.get();
+            fail("should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BadVersionException);
+        }
+    }
+
+    @Test(timeOut = 20000)
+    void batchedUpdatesFailOnConnectionLoss() throws Exception {
+        MetaStore store = new MetaStoreImplZookeeper(zkc, executor, executor, TimeUnit.MINUTES.toMillis(1), 2,
+                1024 * 1024, null);
+        List<Stat> versions = createCursors(store, 2);
+
+        zkc.failNow(Code.CONNECTIONLOSS);
+        CompletableFuture<Stat> update1 = updateCursor(store, "c0", 1, versions.get(0));
+        CompletableFuture<Stat> update2 = updateCursor(store, "c1", 1, versions.get(1));
+        for (CompletableFuture<Stat> update : Arrays.asList(update1, update2)) {
+            try {
+                update.get();
+                fail("should have failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof MetaStoreException);
+            }
+        }
+    }
+
+    @Test(timeOut = 20000)
+    void removeCursorSendsPendingUpdates() throws Exception {
+        MetaStore store = new MetaStoreImplZookeeper(zkc, executor, executor, TimeUnit.MINUTES.toMillis(1), 100,
+                1024 * 1024, null);
+        List<Stat> versions = createCursors(store, 2);
+
+        CompletableFuture<Stat> update = updateCursor(store, "c0", 1, versions.get(0));
+        CompletableFuture<Void> remove = new CompletableFuture<>();
+        store.asyncRemoveCursor("my_test", "c1", new MetaStoreCallback<Void>() {
+            @Override
+            public void operationComplete(Void result, Stat version) {
+                remove.complete(null);
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                remove.completeExceptionally(e);
+            }
+        });
+
+        remove.get();
+        assertEquals(update.get().getVersion(), versions.get(0).getVersion() + 1);
+    }
+
+    private static CompletableFuture<ManagedLedgerInfo> getManagedLedgerInfo(MetaStore store) {
+        CompletableFuture<ManagedLedgerInfo> future = new CompletableFuture<>();
+        store.getManagedLedgerInfo("my_test", true, new MetaStoreCallback<ManagedLedgerInfo>() {
+            @Override
+            public void operationComplete(ManagedLedgerInfo result, Stat stat) {
+                future.complete(result);
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private static void updateManagedLedgerInfo(MetaStore store, ManagedLedgerInfo info) throws Exception {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        store.getManagedLedgerInfo("my_test", true, new MetaStoreCallback<ManagedLedgerInfo>() {
+            @Override
+            public void operationComplete(ManagedLedgerInfo result, Stat stat) {
+                store.asyncUpdateLedgerIds("my_test", info, stat, new MetaStoreCallback<Void>() {
+                    @Override
+                    public void operationComplete(Void result, Stat stat) {
+                        future.complete(null);
+                    }
+
+                    @Override
+                    public void operationFailed(MetaStoreException e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.get();
+    }
+
+    private static ManagedLedgerInfo createManagedLedgerInfo(int ledgers) {
+        ManagedLedgerInfo.Builder builder = ManagedLedgerInfo.newBuilder();
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < ledgers; i++) {
+            builder.addLedgerInfo(ManagedLedgerInfo.LedgerInfo.newBuilder()
+                    .setLedgerId(1_000_000 + i * 3)
+                    .setEntries(50_000)
+                    .setSize(64 * 1024 * 1024)
+                    .setTimestamp(timestamp + i * 60_000));
+        }
+        builder.setTerminatedPosition(MLDataFormats.NestedPositionInfo.newBuilder().setLedgerId(1).setEntryId(2));
+        return builder.build();
+    }
+
+    @Test(timeOut = 20000)
+    void compactEncodedLedgerInfo() throws Exception {
+        ManagedLedgerInfo info = createManagedLedgerInfo(1000);
+        MetaStore plainStore = new MetaStoreImplZookeeper(zkc, executor);
+
+        updateManagedLedgerInfo(plainStore, info);
+        int plainSize = zkc.getData("/managed-ledgers/my_test", false, null).length;
+
+        for (CompressionType compressionType : CompressionType.values()) {
+            MetaStore store = new MetaStoreImplZookeeper(zkc, executor, null, 0, 0, 0, null, compressionType);
+            // Nodes in the plain encoding are still readable
+            assertEquals(getManagedLedgerInfo(store).get(), info);
+
+            updateManagedLedgerInfo(store, info);
+            byte[] data = zkc.getData("/managed-ledgers/my_test", false, null);
+            assertTrue(ManagedLedgerInfoCodec.isCompactEncoded(data));
+            assertTrue(data.length < plainSize, compressionType + " encoding " + data.length + " >= " + plainSize);
+            assertEquals(getManagedLedgerInfo(store).get(), info);
+
+            // Switch back to the plain encoding
+            assertEquals(getManagedLedgerInfo(plainStore).get(), info);
+            updateManagedLedgerInfo(plainStore, info);
+            assertFalse(ManagedLedgerInfoCodec.isCompactEncoded(zkc.getData("/managed-ledgers/my_test", false, null)));
+        }
+    }
+
+    @Test
+    void compactEncodedOpenLedger() throws Exception {
+        ManagedLedgerInfo closedLedgers = createManagedLedgerInfo(100);
+        int closedLedgersSize = ManagedLedgerInfoCodec.encode(closedLedgers, CompressionType.NONE).length;
+
+        // The ledger currently open has a zero timestamp, and ledger ids are not always increasing
+        ManagedLedgerInfo info = closedLedgers.toBuilder()
+                .addLedgerInfo(ManagedLedgerInfo.LedgerInfo.newBuilder().setLedgerId(10).setTimestamp(0))
+                .addLedgerInfo(ManagedLedgerInfo.LedgerInfo.newBuilder().setLedgerId(11)
+                        .setTimestamp(closedLedgers.getLedgerInfo(99).getTimestamp()))
+                .build();
+        byte[] data = ManagedLedgerInfoCodec.encode(info, CompressionType.NONE);
+        assertEquals(ManagedLedgerInfoCodec.decode(data), info);
+
+        // Only a few bytes for each additional ledger
+        assertTrue(data.length - closedLedgersSize <= 20, "Encoded in " + (data.length - closedLedgersSize));
+    }
 }
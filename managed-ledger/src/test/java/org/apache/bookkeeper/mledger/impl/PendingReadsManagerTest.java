@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.client.BKException.BKNoSuchLedgerExistsException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.testng.annotations.Test;
+
+@Test
+public class PendingReadsManagerTest extends MockedBookKeeperTestCase {
+
+    @Test
+    void readsAreShared() throws Exception {
+        ManagedLedgerFactoryMBeanImpl mbean = factory.getEntryCacheManager().mlFactoryMBean;
+        PendingReadsManager pendingReads = new PendingReadsManager(mbean);
+
+        CompletableFuture<LedgerEntries> bkRead = new CompletableFuture<>();
+        ReadHandle lh = mock(ReadHandle.class);
+        doReturn(1L).when(lh).getId();
+        doReturn(bkRead).when(lh).readAsync(anyLong(), anyLong());
+
+        CompletableFuture<List<EntryImpl>> read1 = pendingReads.readEntries(lh, 0, 9);
+        CompletableFuture<List<EntryImpl>> read2 = pendingReads.readEntries(lh, 2, 5);
+        // Not contained in the pending read
+        pendingReads.readEntries(lh, 8, 12);
+
+        verify(lh, times(1)).readAsync(0, 9);
+        verify(lh, times(1)).readAsync(8, 12);
+        verify(lh, times(2)).readAsync(anyLong(), anyLong());
+        assertEquals(pendingReads.getPendingReadsCount(), 2);
+
+        bkRead.complete(ledgerEntries(1, 0, 9));
+        assertEquals(pendingReads.getPendingReadsCount(), 0);
+
+        List<EntryImpl> entries1 = read1.get(1, TimeUnit.SECONDS);
+        List<EntryImpl> entries2 = read2.get(1, TimeUnit.SECONDS);
+        assertEquals(entries1.size(), 10);
+        assertEquals(entries2.size(), 4);
+        assertEquals(entries2.get(0).getEntryId(), 2);
+        assertEquals(entries2.get(3).getEntryId(), 5);
+
+        // Each reader owns its entries
+        entries1.forEach(EntryImpl::release);
+        entries2.forEach(entry -> assertEquals(entry.getLength(), 10));
+        entries2.forEach(EntryImpl::release);
+
+        mbean.refreshStats(1, TimeUnit.SECONDS);
+        assertEquals(mbean.getDeduplicatedReadsRate(), 4.0);
+        assertEquals(mbean.getDeduplicatedReadsThroughput(), 40.0);
+    }
+
+    @Test
+    void failuresArePropagated() throws Exception {
+        PendingReadsManager pendingReads = new PendingReadsManager(factory.getEntryCacheManager().mlFactoryMBean);
+
+        CompletableFuture<LedgerEntries> bkRead = new CompletableFuture<>();
+        ReadHandle lh = mock(ReadHandle.class);
+        doReturn(1L).when(lh).getId();
+        doReturn(bkRead).when(lh).readAsync(anyLong(), anyLong());
+
+        CompletableFuture<List<EntryImpl>> read1 = pendingReads.readEntries(lh, 0, 9);
+        CompletableFuture<List<EntryImpl>> read2 = pendingReads.readEntries(lh, 0, 9);
+        bkRead.completeExceptionally(new BKNoSuchLedgerExistsException());
+
+        assertTrue(read1.isCompletedExceptionally());
+        assertTrue(read2.isCompletedExceptionally());
+        assertEquals(pendingReads.getPendingReadsCount(), 0);
+
+        // Next read goes to bookkeeper again
+        doReturn(CompletableFuture.completedFuture(ledgerEntries(1, 0, 9))).when(lh).readAsync(anyLong(), anyLong());
+        CompletableFuture<List<EntryImpl>> read3 = pendingReads.readEntries(lh, 0, 9);
+        assertFalse(read3.isCompletedExceptionally());
+        read3.get().forEach(EntryImpl::release);
+    }
+
+    @Test
+    void conversionFailuresArePropagated() throws Exception {
+        PendingReadsManager pendingReads = new PendingReadsManager(factory.getEntryCacheManager().mlFactoryMBean);
+
+        CompletableFuture<LedgerEntries> bkRead = new CompletableFuture<>();
+        ReadHandle lh = mock(ReadHandle.class);
+        doReturn(1L).when(lh).getId();
+        doReturn(bkRead).when(lh).readAsync(anyLong(), anyLong());
+
+        CompletableFuture<List<EntryImpl>> read1 = pendingReads.readEntries(lh, 0, 9);
+        CompletableFuture<List<EntryImpl>> read2 = pendingReads.readEntries(lh, 2, 5);
+
+        // The buffer of the last entry was already released
+        Vector<LedgerEntry> entries = new Vector<>();
+        ledgerEntries(1, 0, 8).iterator().forEachRemaining(entries::add);
+        LedgerEntry releasedEntry = mock(LedgerEntry.class);
+        doReturn(1L).when(releasedEntry).getLedgerId();
+        doReturn(9L).when(releasedEntry).getEntryId();
+        ByteBuf releasedBuffer = Unpooled.wrappedBuffer(new byte[10]);
+        releasedBuffer.release();
+        doReturn(releasedBuffer).when(releasedEntry).getEntryBuffer();
+        entries.add(releasedEntry);
+        LedgerEntries ledgerEntries = mock(LedgerEntries.class);
+        doAnswer(invocation -> entries.iterator()).when(ledgerEntries).iterator();
+        bkRead.complete(ledgerEntries);
+
+        assertTrue(read1.isCompletedExceptionally());
+        assertTrue(read2.isCompletedExceptionally());
+        assertEquals(pendingReads.getPendingReadsCount(), 0);
+        verify(ledgerEntries, times(1)).close();
+    }
+
+    @Test
+    void entryCacheUsesSharedReads() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+        ManagedLedgerImpl ml = (ManagedLedgerImpl) factory.open("shared-reads");
+        EntryCache entryCache = factory.getEntryCacheManager().getEntryCache(ml);
+
+        CompletableFuture<LedgerEntries> bkRead = new CompletableFuture<>();
+        ReadHandle lh = mock(ReadHandle.class);
+        doReturn(1L).when(lh).getId();
+        doAnswer(invocation -> bkRead).when(lh).readAsync(anyLong(), anyLong());
+
+        CompletableFuture<Integer> result1 = new CompletableFuture<>();
+        CompletableFuture<Integer> result2 = new CompletableFuture<>();
+        entryCache.asyncReadEntry(lh, 0, 4, false, new EntriesCountCallback(result1), null);
+        entryCache.asyncReadEntry(lh, 1, 3, false, new EntriesCountCallback(result2), null);
+        bkRead.complete(ledgerEntries(1, 0, 4));
+
+        assertEquals(result1.get(1, TimeUnit.SECONDS).intValue(), 5);
+        assertEquals(result2.get(1, TimeUnit.SECONDS).intValue(), 3);
+        verify(lh, times(1)).readAsync(anyLong(), anyLong());
+    }
+
+    private static LedgerEntries ledgerEntries(long ledgerId, long firstEntry, long lastEntry) {
+        Vector<LedgerEntry> entries = new Vector<>();
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            LedgerEntry ledgerEntry = mock(LedgerEntry.class);
+            doReturn(ledgerId).when(ledgerEntry).getLedgerId();
+            doReturn(entryId).when(ledgerEntry).getEntryId();
+            doReturn(Unpooled.wrappedBuffer(new byte[10])).when(ledgerEntry).getEntryBuffer();
+            entries.add(ledgerEntry);
+        }
+
+        LedgerEntries ledgerEntries = mock(LedgerEntries.class);
+        doAnswer(invocation -> entries.iterator()).when(ledgerEntries).iterator();
+        return ledgerEntries;
+    }
+
+    private static class EntriesCountCallback implements ReadEntriesCallback {
+        private final CompletableFuture<Integer> result;
+
+        EntriesCountCallback(CompletableFuture<Integer> result) {
+            this.result = result;
+        }
+
+        @Override
+        public void readEntriesComplete(List<Entry> entries, Object ctx) {
+            result.complete(entries.size());
+            entries.forEach(Entry::release);
+        }
+
+        @Override
+        public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+            result.completeExceptionally(exception);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class SegmentedEntryCacheTest extends MockedBookKeeperTestCase {
+
+    private ManagedLedgerImpl ml;
+    private EntryCacheManager cacheManager;
+
+    @BeforeMethod
+    public void setUp(Method method) throws Exception {
+        super.setUp(method);
+        ml = mock(ManagedLedgerImpl.class);
+        when(ml.getName()).thenReturn("name");
+        when(ml.getExecutor()).thenReturn(executor);
+        when(ml.getMBean()).thenReturn(new ManagedLedgerMBeanImpl(ml));
+
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(1024);
+        config.setCacheSegmentsEnabled(true);
+        config.setCacheSegmentSize(100);
+
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+        cacheManager = factory.getEntryCacheManager();
+    }
+
+    @Test
+    void insertAndGet() throws Exception {
+        SegmentedEntryCacheImpl cache = (SegmentedEntryCacheImpl) cacheManager.getEntryCache(ml);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(cache.insert(EntryImpl.create(1, i, new byte[] { (byte) i, (byte) i })));
+        }
+
+        // 20 bytes are stored in a single segment of 100 bytes
+        assertEquals(cache.getNumberOfSegments(), 1);
+        assertEquals(cache.getSize(), 100);
+        assertEquals(cacheManager.getSize(), 100);
+
+        // Duplicated and older entries are rejected
+        assertFalse(cache.insert(EntryImpl.create(1, 5, new byte[2])));
+        assertFalse(cache.insert(EntryImpl.create(0, 20, new byte[2])));
+
+        EntryImpl entry = cache.getCachedEntry(PositionImpl.get(1, 3));
+        assertEquals(entry.getData(), new byte[] { 3, 3 });
+        entry.release();
+
+        assertNull(cache.getCachedEntry(PositionImpl.get(1, 10)));
+        assertNull(cache.getCachedEntry(PositionImpl.get(2, 0)));
+
+        Collection<EntryImpl> entries = cache.getCachedEntries(PositionImpl.get(1, 2), PositionImpl.get(1, 12));
+        assertEquals(entries.size(), 8);
+        entries.forEach(EntryImpl::release);
+    }
+
+    @Test
+    void segmentRollover() throws Exception {
+        SegmentedEntryCacheImpl cache = (SegmentedEntryCacheImpl) cacheManager.getEntryCache(ml);
+
+        for (int i = 0; i < 10; i++) {
+            cache.insert(EntryImpl.create(1, i, new byte[30]));
+        }
+
+        // 3 entries per segment
+        assertEquals(cache.getNumberOfSegments(), 4);
+        assertEquals(cache.getSize(), 400);
+
+        // Gaps in entry ids are allowed within a segment
+        cache.insert(EntryImpl.create(1, 12, new byte[10]));
+        assertEquals(cache.getNumberOfSegments(), 4);
+        assertNull(cache.getCachedEntry(PositionImpl.get(1, 11)));
+
+        // New ledger always starts a new segment
+        cache.insert(EntryImpl.create(2, 0, new byte[10]));
+        assertEquals(cache.getNumberOfSegments(), 5);
+
+        // Entries bigger than a segment get a dedicated one
+        cache.insert(EntryImpl.create(2, 1, new byte[150]));
+        assertEquals(cache.getNumberOfSegments(), 6);
+        assertEquals(cache.getSize(), 650);
+
+        Collection<EntryImpl> entries = cache.getCachedEntries(PositionImpl.get(1, 0), PositionImpl.get(1, 12));
+        assertEquals(entries.size(), 11);
+        entries.forEach(EntryImpl::release);
+    }
+
+    @Test
+    void invalidateAndEvict() throws Exception {
+        SegmentedEntryCacheImpl cache = (SegmentedEntryCacheImpl) cacheManager.getEntryCache(ml);
+
+        for (int i = 0; i < 9; i++) {
+            cache.insert(EntryImpl.create(1, i, new byte[30]));
+        }
+        for (int i = 0; i < 3; i++) {
+            cache.insert(EntryImpl.create(2, i, new byte[30]));
+        }
+        assertEquals(cache.getNumberOfSegments(), 4);
+
+        // Only the segments with all the entries before the position are dropped
+        cache.invalidateEntries(PositionImpl.get(1, 4));
+        assertEquals(cache.getNumberOfSegments(), 3);
+        assertEquals(cacheManager.getSize(), 300);
+        assertNull(cache.getCachedEntry(PositionImpl.get(1, 2)));
+
+        EntryImpl entry = cache.getCachedEntry(PositionImpl.get(1, 3));
+        cache.invalidateAllEntries(1);
+        assertEquals(cache.getNumberOfSegments(), 1);
+        assertEquals(cacheManager.getSize(), 100);
+
+        // Entries handed out are still readable after the segment is released
+        assertEquals(entry.getLength(), 30);
+        entry.release();
+
+        assertEquals(cache.evictEntries(1).getRight().longValue(), 100);
+        assertEquals(cache.getNumberOfSegments(), 0);
+        assertEquals(cacheManager.getSize(), 0);
+
+        // Cache keeps working after the current segment was evicted
+        assertTrue(cache.insert(EntryImpl.create(2, 3, new byte[30])));
+        cache.invalidateEntriesBeforeTimestamp(System.nanoTime());
+        assertEquals(cache.getSize(), 0);
+
+        cache.insert(EntryImpl.create(2, 4, new byte[30]));
+        cacheManager.removeEntryCache(ml.getName());
+        assertEquals(cacheManager.getSize(), 0);
+    }
+
+    @Test
+    void segmentsGrowUpToSegmentSize() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(16 * 1024 * 1024);
+        config.setCacheSegmentsEnabled(true);
+        config.setCacheSegmentSize(256 * 1024);
+        ManagedLedgerFactoryImpl factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+        SegmentedEntryCacheImpl cache = (SegmentedEntryCacheImpl) factory.getEntryCacheManager().getEntryCache(ml);
+
+        // A ledger with a single small entry only holds a small segment
+        cache.insert(EntryImpl.create(1, 0, new byte[100]));
+        assertEquals(cache.getSize(), SegmentedEntryCacheImpl.INITIAL_SEGMENT_SIZE);
+
+        // Segments of 64 KB, 128 KB, then 256 KB
+        byte[] data = new byte[48 * 1024];
+        for (int i = 1; i <= 12; i++) {
+            assertTrue(cache.insert(EntryImpl.create(1, i, data)));
+        }
+        assertEquals(cache.getNumberOfSegments(), 4);
+        assertEquals(cache.getSize(), (64 + 128 + 256 + 256) * 1024);
+        assertEquals(factory.getEntryCacheManager().getSize(), cache.getSize());
+
+        factory.shutdown();
+    }
+
+    @Test
+    void segmentsAccountedInCacheSize() throws Exception {
+        SegmentedEntryCacheImpl cache = (SegmentedEntryCacheImpl) cacheManager.getEntryCache(ml);
+
+        // Each ledger takes a whole segment of 100 bytes, for an entry of 2 bytes
+        for (int i = 0; i < 10; i++) {
+            assertTrue(cache.insert(EntryImpl.create(i, 0, new byte[2])));
+        }
+        assertEquals(cacheManager.getSize(), 1000);
+
+        // There is room for the entry, but not for a new segment
+        assertFalse(cache.insert(EntryImpl.create(10, 0, new byte[2])));
+        assertEquals(cache.getNumberOfSegments(), 10);
+
+        // Appending to the current segment doesn't take more memory
+        assertTrue(cache.insert(EntryImpl.create(9, 1, new byte[2])));
+        assertEquals(cacheManager.getSize(), 1000);
+    }
+}
@@ -26,7 +26,10 @@ import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
@@ -37,6 +40,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.apache.zookeeper.AsyncCallback.Children2Callback;
 import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
 import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.MultiCallback;
 import org.apache.zookeeper.AsyncCallback.StatCallback;
 import org.apache.zookeeper.AsyncCallback.StringCallback;
 import org.apache.zookeeper.AsyncCallback.VoidCallback;
@@ -44,6 +48,7 @@ import org.apache.zookeeper.Watcher.Event.EventType;
 import org.apache.zookeeper.Watcher.Event.KeeperState;
 import org.apache.zookeeper.data.ACL;
 import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.SetDataRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -695,6 +700,94 @@ public class MockZooKeeper extends ZooKeeper {
         });
     }
 
+    /**
+     * Atomically apply a batch of setData operations, other operations are not supported.
+     */
+    @Override
+    public void multi(Iterable<Op> ops, MultiCallback cb, Object ctx) {
+        if (stopped) {
+            cb.processResult(KeeperException.Code.ConnectionLoss, null, ctx, null);
+            return;
+        }
+
+        executor.execute(() -> {
+            final Set<String> toNotify = Sets.newHashSet();
+
+            mutex.lock();
+
+            if (getProgrammedFailStatus()) {
+                mutex.unlock();
+                cb.processResult(failReturnCode.intValue(), null, ctx, null);
+                return;
+            } else if (stopped) {
+                mutex.unlock();
+                cb.processResult(KeeperException.Code.ConnectionLoss, null, ctx, null);
+                return;
+            }
+
+            // Validate all the operations against the versions they would see, before applying any of them
+            Map<String, Integer> versions = new HashMap<>();
+            List<SetDataRequest> requests = new ArrayList<>();
+            int failedIndex = -1;
+            int failedRc = KeeperException.Code.OK.intValue();
+            for (Op op : ops) {
+                requests.add(op instanceof Op.SetData ? (SetDataRequest) op.toRequestRecord() : null);
+                if (failedIndex >= 0) {
+                    continue;
+                }
+
+                SetDataRequest request = requests.get(requests.size() - 1);
+                if (request == null) {
+                    failedRc = KeeperException.Code.UNIMPLEMENTED.intValue();
+                } else if (!versions.containsKey(request.getPath()) && !tree.containsKey(request.getPath())) {
+                    failedRc = KeeperException.Code.NoNode;
+                } else {
+                    int currentVersion = versions.computeIfAbsent(request.getPath(),
+                            path -> tree.get(path).getRight());
+                    if (request.getVersion() != -1 && request.getVersion() != currentVersion) {
+                        failedRc = KeeperException.Code.BadVersion;
+                    } else {
+                        versions.put(request.getPath(), currentVersion + 1);
+                    }
+                }
+                if (failedRc != KeeperException.Code.OK.intValue()) {
+                    failedIndex = requests.size() - 1;
+                }
+            }
+
+            List<OpResult> results = new ArrayList<>();
+            if (failedIndex >= 0) {
+                for (int i = 0; i < requests.size(); i++) {
+                    int rc = i < failedIndex ? KeeperException.Code.OK.intValue()
+                            : i == failedIndex ? failedRc : KeeperException.Code.RUNTIMEINCONSISTENCY.intValue();
+                    results.add(new OpResult.ErrorResult(rc));
+                }
+                mutex.unlock();
+                cb.processResult(failedRc, null, ctx, results);
+                return;
+            }
+
+            for (SetDataRequest request : requests) {
+                int newVersion = tree.get(request.getPath()).getRight() + 1;
+                tree.put(request.getPath(), Pair.of(request.getData(), newVersion));
+                Stat stat = new Stat();
+                stat.setVersion(newVersion);
+                results.add(new OpResult.SetDataResult(stat));
+                toNotify.add(request.getPath());
+            }
+
+            mutex.unlock();
+            cb.processResult(KeeperException.Code.OK.intValue(), null, ctx, results);
+
+            for (String path : toNotify) {
+                Set<Watcher> pathWatchers = watchers.removeAll(path);
+                for (Watcher watcher : pathWatchers) {
+                    watcher.process(new WatchedEvent(EventType.NodeDataChanged, KeeperState.SyncConnected, path));
+                }
+            }
+        });
+    }
+
     @Override
     public void delete(final String path, int version) throws InterruptedException, KeeperException {
         checkProgrammedFail();
@@ -170,6 +170,16 @@ public class ServiceConfiguration implements PulsarConfiguration {
             + " affecting the accuracy of the delivery time compared to the scheduled time. Default is 1 second.")
     private long delayedDeliveryTickTimeMillis = 1000;
 
+    @FieldContext(category = CATEGORY_SERVER, doc = "With the BucketDelayedDeliveryTrackerFactory, the time range"
+            + " of the buckets the delayed message indexes are partitioned into. Only the buckets due in the current"
+            + " or the next time range are kept in memory. Default is 5 minutes.")
+    private long delayedDeliveryBucketTimeStepMillis = TimeUnit.MINUTES.toMillis(5);
+
+    @FieldContext(category = CATEGORY_SERVER, doc = "With the BucketDelayedDeliveryTrackerFactory, the number of"
+            + " indexes of the later buckets that a subscription keeps in memory before persisting them as snapshot"
+            + " segments.")
+    private int delayedDeliveryBucketMaxUnpersistedIndexes = 50000;
+
     @FieldContext(
         category = CATEGORY_WEBSOCKET,
         doc = "Enable the WebSocket API service in broker"
@@ -290,6 +300,13 @@ public class ServiceConfiguration implements PulsarConfiguration {
     )
     private boolean subscriptionKeySharedEnable = true;
 
+    @FieldContext(
+        category = CATEGORY_POLICIES,
+        doc = "On KeyShared subscriptions using the consistent hashing mode, the number of points each consumer"
+            + " takes on the hash ring. More points spread the keys more evenly across consumers"
+    )
+    private int subscriptionKeySharedConsistentHashingReplicaPoints = 100;
+
     @FieldContext(
         category = CATEGORY_POLICIES,
         doc = "Set the default behavior for message deduplication in the broker.\n\n"
@@ -916,6 +933,66 @@ public class ServiceConfiguration implements PulsarConfiguration {
             (int) (PlatformDependent.maxDirectMemory() / 5 / (1024 * 1024)));
     @FieldContext(category = CATEGORY_STORAGE_ML, doc = "Whether we should make a copy of the entry payloads when inserting in cache")
     private boolean managedLedgerCacheCopyEntries = false;
+    @FieldContext(category = CATEGORY_STORAGE_ML, doc = "Whether the managed ledger cache should store entries in"
+            + " append-only off-heap segments, that are evicted as a whole, instead of one buffer per entry")
+    private boolean managedLedgerCacheSegmentsEnabled = false;
+    @FieldContext(
+        minValue = 1,
+        category = CATEGORY_STORAGE_ML,
+        doc = "Size of each segment of the managed ledger cache, when segments are enabled"
+    )
+    private int managedLedgerCacheSegmentSizeKB = 1024;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Amount of memory to use for prefetching entries ahead of the cursors that are catching up with the"
+            + " backlog. The read-ahead is disabled when set to 0"
+    )
+    private int managedLedgerReadAheadMaxSizeMB = 0;
+    @FieldContext(
+        minValue = 1,
+        category = CATEGORY_STORAGE_ML,
+        doc = "Max number of entries to prefetch ahead of a single cursor, when the read-ahead is enabled"
+    )
+    private int managedLedgerReadAheadMaxEntries = 1000;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Class name of the policy that decides which entries are admitted in the managed ledger cache and which"
+            + " ledgers are evicted first. Available policies are"
+            + " org.apache.bookkeeper.mledger.impl.EntryCacheDefaultEvictionPolicy, that evicts proportionally from"
+            + " the biggest caches, and org.apache.bookkeeper.mledger.impl.EntryCacheFrequencyEvictionPolicy, that"
+            + " evicts the least frequently read ledgers first and only admits entries of ledgers read at least as"
+            + " often as the last evicted ones"
+    )
+    private String managedLedgerCacheEvictionPolicy =
+            "org.apache.bookkeeper.mledger.impl.EntryCacheDefaultEvictionPolicy";
+    @FieldContext(
+        minValue = 0,
+        category = CATEGORY_STORAGE_ML,
+        doc = "Max amount of the managed ledger cache that can be used by the topics of a single namespace."
+            + " 0 means no limit other than managedLedgerCacheSizeMB"
+    )
+    private int managedLedgerCacheSizePerNamespaceMB = 0;
+    @FieldContext(
+        minValue = 0,
+        category = CATEGORY_STORAGE_ML,
+        doc = "Size of the second tier of the managed ledger cache, on local disk. Entries dropped from memory while"
+            + " some cursor still has to read them are written there, and read misses check it before going to"
+            + " bookkeeper. 0 disables the disk cache"
+    )
+    private int managedLedgerDiskCacheSizeMB = 0;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Directory where the managed ledger disk cache stores its segment files. The content is discarded"
+            + " when the broker starts"
+    )
+    private String managedLedgerDiskCacheDirectory = "data/ml-disk-cache";
+    @FieldContext(
+        minValue = 1,
+        maxValue = 2047,
+        category = CATEGORY_STORAGE_ML,
+        doc = "Size of each segment file of the managed ledger disk cache, less than 2048 MB"
+    )
+    private int managedLedgerDiskCacheSegmentSizeMB = 64;
     @FieldContext(
         category = CATEGORY_STORAGE_ML,
         doc = "Threshold to which bring down the cache level when eviction is triggered"
@@ -924,6 +1001,13 @@ public class ServiceConfiguration implements PulsarConfiguration {
     @FieldContext(category = CATEGORY_STORAGE_ML,
             doc = "Configure the cache eviction frequency for the managed ledger cache. Default is 100/s")
     private double managedLedgerCacheEvictionFrequency = 100.0;
+    @FieldContext(
+        minValue = 1,
+        category = CATEGORY_STORAGE_ML,
+        doc = "Number of threads evicting the managed ledger caches in parallel. The managed ledgers are sharded"
+            + " across the threads by name hash"
+    )
+    private int managedLedgerCacheEvictionThreads = 1;
     @FieldContext(category = CATEGORY_STORAGE_ML,
             doc = "All entries that have stayed in cache for more than the configured time, will be evicted")
     private long managedLedgerCacheEvictionTimeThresholdMillis = 1000;
@@ -980,6 +1064,18 @@ public class ServiceConfiguration implements PulsarConfiguration {
         doc = "Maximum time before forcing a ledger rollover for a topic"
     )
     private int managedLedgerMaxLedgerRolloverTimeMinutes = 240;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Create the next ledger of a topic in background, before the current one is full.\n\n"
+            + "The standby ledger is switched in at the rollover, so that the publishes don't have to wait for the"
+            + " ledger creation and for the update of the ledgers list in the metadata store.")
+    private boolean managedLedgerStandbyLedgerEnabled = false;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Keep a sparse index of the message publish time for each ledger of a topic.\n\n"
+            + "The index is used by reset-cursor by time and by message expiry to only read the few entries"
+            + " around the searched time, instead of binary searching the whole topic on the bookies.")
+    private boolean managedLedgerPublishTimeIndexEnabled = false;
     @FieldContext(
         category = CATEGORY_STORAGE_OFFLOADING,
         doc = "Delay between a ledger being successfully offloaded to long term storage,"
@@ -1017,6 +1113,27 @@ public class ServiceConfiguration implements PulsarConfiguration {
             + "If number of unack message range is higher than this limit then broker will persist"
             + " unacked ranges into bookkeeper to avoid additional data overhead into zookeeper.")
     private int managedLedgerMaxUnackedRangesToPersistInZooKeeper = 1000;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Persist the `acknowledgment holes` in the cursor ledger as compressed bitmaps.\n\n"
+            + "When enabled, the whole acknowledgment state of a cursor is persisted, regardless of"
+            + " `managedLedgerMaxUnackedRangesToPersist`, so that out of order acknowledgments are not"
+            + " redelivered after a broker restart. Brokers that don't support this format will only"
+            + " recover the mark-delete position.")
+    private boolean managedLedgerUnackedRangesBitmapEnabled = false;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Persist the `acknowledgment holes` in the cursor ledger incrementally.\n\n"
+            + "When enabled, each mark-delete only appends the ranges acknowledged since the previous"
+            + " entry, instead of rewriting all of them. A full snapshot is written every"
+            + " `managedLedgerUnackedRangesSnapshotInterval` entries and is used as starting point when"
+            + " recovering the cursor.")
+    private boolean managedLedgerUnackedRangesDeltaEnabled = false;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Max number of incremental entries appended to the cursor ledger between two full snapshots"
+            + " of the `acknowledgment holes`, when `managedLedgerUnackedRangesDeltaEnabled` is set")
+    private int managedLedgerUnackedRangesSnapshotInterval = 100;
     @FieldContext(
             category = CATEGORY_STORAGE_OFFLOADING,
             doc = "Use Open Range-Set to cache unacked messages (it is memory efficient but it can take more cpu)"
@@ -1034,6 +1151,35 @@ public class ServiceConfiguration implements PulsarConfiguration {
         doc = "operation timeout while updating managed-ledger metadata."
     )
     private long managedLedgerMetadataOperationsTimeoutSeconds = 60;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Max time the updates of the cursors and managed ledgers metadata are held, to be sent to ZooKeeper"
+            + " in a single multi() with the updates issued in the meantime. 0 disables the batching."
+    )
+    private long managedLedgerMetadataBatchingMaxDelayMillis = 0;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Max number of metadata updates sent to ZooKeeper in a single batch"
+    )
+    private int managedLedgerMetadataBatchingMaxOperations = 100;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Max size, in bytes, of the metadata updates sent to ZooKeeper in a single batch. It must stay below"
+            + " the ZooKeeper jute.maxbuffer"
+    )
+    private int managedLedgerMetadataBatchingMaxSizeInBytes = 128 * 1024;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Store the managed ledgers info in ZooKeeper in the compact encoding, with the ledgers list delta"
+            + " encoded and compressed. Brokers of older versions can't read the managed ledgers once enabled"
+    )
+    private boolean managedLedgerInfoCompactEncodingEnabled = false;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Compression of the managed ledgers info stored in the compact encoding: NONE, LZ4, ZLIB, ZSTD"
+            + " or SNAPPY"
+    )
+    private String managedLedgerInfoCompressionType = "NONE";
 
     @FieldContext(
             category = CATEGORY_STORAGE_ML,
@@ -1308,6 +1454,13 @@ public class ServiceConfiguration implements PulsarConfiguration {
         doc = "If true, export consumer level metrics otherwise namespace level"
     )
     private boolean exposeConsumerLevelMetricsInPrometheus = false;
+    @FieldContext(
+        category = CATEGORY_METRICS,
+        doc = "If true, export the managed ledger stage latencies (queue, bookie, callback) for each topic when topic"
+            + " level metrics are enabled. They add 6 histograms per topic, so they are only exported at namespace"
+            + " level by default"
+    )
+    private boolean exposeTopicLevelStageLatencyMetricsInPrometheus = false;
     @FieldContext(
             category = CATEGORY_METRICS,
             doc = "Classname of Pluggable JVM GC metrics logger that can log GC specific metrics")
@@ -18,6 +18,8 @@
  */
 package org.apache.pulsar.broker;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Map;
@@ -54,9 +56,32 @@ public class ManagedLedgerClientFactory implements Closeable {
         managedLedgerFactoryConfig.setNumManagedLedgerWorkerThreads(conf.getManagedLedgerNumWorkerThreads());
         managedLedgerFactoryConfig.setNumManagedLedgerSchedulerThreads(conf.getManagedLedgerNumSchedulerThreads());
         managedLedgerFactoryConfig.setCacheEvictionFrequency(conf.getManagedLedgerCacheEvictionFrequency());
+        managedLedgerFactoryConfig.setCacheEvictionThreads(conf.getManagedLedgerCacheEvictionThreads());
         managedLedgerFactoryConfig.setCacheEvictionTimeThresholdMillis(conf.getManagedLedgerCacheEvictionTimeThresholdMillis());
         managedLedgerFactoryConfig.setThresholdBackloggedCursor(conf.getManagedLedgerCursorBackloggedThreshold());
         managedLedgerFactoryConfig.setCopyEntriesInCache(conf.isManagedLedgerCacheCopyEntries());
+        managedLedgerFactoryConfig.setCacheSegmentsEnabled(conf.isManagedLedgerCacheSegmentsEnabled());
+        managedLedgerFactoryConfig.setCacheSegmentSize(conf.getManagedLedgerCacheSegmentSizeKB() * 1024);
+        managedLedgerFactoryConfig.setReadAheadMaxSize(conf.getManagedLedgerReadAheadMaxSizeMB() * 1024L * 1024L);
+        managedLedgerFactoryConfig.setReadAheadMaxEntries(conf.getManagedLedgerReadAheadMaxEntries());
+        managedLedgerFactoryConfig.setReadAheadMaxEntrySize(conf.getMaxMessageSize());
+        managedLedgerFactoryConfig.setCacheEvictionPolicyClassName(conf.getManagedLedgerCacheEvictionPolicy());
+        managedLedgerFactoryConfig
+                .setMaxCacheSizePerNamespace(conf.getManagedLedgerCacheSizePerNamespaceMB() * 1024L * 1024L);
+        managedLedgerFactoryConfig.setDiskCacheMaxSize(conf.getManagedLedgerDiskCacheSizeMB() * 1024L * 1024L);
+        managedLedgerFactoryConfig.setDiskCacheDirectory(conf.getManagedLedgerDiskCacheDirectory());
+        long diskCacheSegmentSize = conf.getManagedLedgerDiskCacheSegmentSizeMB() * 1024L * 1024L;
+        checkArgument(diskCacheSegmentSize > 0 && diskCacheSegmentSize <= Integer.MAX_VALUE,
+                "managedLedgerDiskCacheSegmentSizeMB must be between 1 and 2047, got %s",
+                conf.getManagedLedgerDiskCacheSegmentSizeMB());
+        managedLedgerFactoryConfig.setDiskCacheSegmentSize((int) diskCacheSegmentSize);
+        managedLedgerFactoryConfig.setMetadataBatchingMaxDelayMillis(conf.getManagedLedgerMetadataBatchingMaxDelayMillis());
+        managedLedgerFactoryConfig.setMetadataBatchingMaxOperations(conf.getManagedLedgerMetadataBatchingMaxOperations());
+        managedLedgerFactoryConfig
+                .setMetadataBatchingMaxSizeInBytes(conf.getManagedLedgerMetadataBatchingMaxSizeInBytes());
+        managedLedgerFactoryConfig
+                .setManagedLedgerInfoCompactEncodingEnabled(conf.isManagedLedgerInfoCompactEncodingEnabled());
+        managedLedgerFactoryConfig.setManagedLedgerInfoCompressionType(conf.getManagedLedgerInfoCompressionType());
 
         this.defaultBkClient = bookkeeperProvider.create(conf, zkClient, Optional.empty(), null);
         
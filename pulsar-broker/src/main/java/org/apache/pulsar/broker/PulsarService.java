@@ -284,6 +284,10 @@ public class PulsarService implements AutoCloseable {
                 compactorExecutor.shutdown();
             }
 
+            if (offloader != null) {
+                offloader.close();
+            }
+
             if (offloaderScheduler != null) {
                 offloaderScheduler.shutdown();
             }
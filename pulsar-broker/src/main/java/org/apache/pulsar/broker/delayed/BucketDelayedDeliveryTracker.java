@@ -0,0 +1,555 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.delayed;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.BucketLocation;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SegmentLocation;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SnapshotMetadata;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SnapshotSegment;
+import org.apache.pulsar.broker.service.persistent.PersistentDispatcherMultipleConsumers;
+import org.apache.pulsar.common.util.FutureUtil;
+import org.apache.pulsar.common.util.collections.TripleLongPriorityQueue;
+
+/**
+ * Delayed delivery tracker that keeps most of the delayed message indexes out of memory.
+ *
+ * The indexes are partitioned into time buckets, by delivery time. Only the buckets due in the current or the next
+ * time step are loaded in memory. The indexes of the later buckets are kept in memory until there are too many of
+ * them, then they are persisted as one snapshot segment per bucket, and loaded back when their bucket becomes due.
+ *
+ * After a restart, the tracker recovers the persisted buckets from the last snapshot metadata. The messages that the
+ * dispatcher reads again and that are already in a persisted bucket are ignored, the others are tracked again.
+ *
+ * All the methods are called, and the callbacks run, while holding the dispatcher lock.
+ */
+@Slf4j
+public class BucketDelayedDeliveryTracker implements DelayedDeliveryTracker, TimerTask {
+
+    private static final long LOAD_RETRY_DELAY_MILLIS = 10_000;
+
+    enum State {
+        Recovering, Ready, Closed
+    }
+
+    private final PersistentDispatcherMultipleConsumers dispatcher;
+
+    // Reference to the shared (per-broker) timer for delayed delivery
+    private final Timer timer;
+
+    // Current timeout or null if not set
+    private Timeout timeout;
+
+    // Timestamp at which the timeout is currently set
+    private long currentTimeoutTarget;
+
+    private final long tickTimeMillis;
+
+    private final Clock clock;
+
+    private final BucketSnapshotStorage storage;
+
+    private final long bucketTimeStepMillis;
+
+    // Number of indexes of buckets not loaded that are kept in memory before being persisted
+    private final int maxUnpersistedIndexes;
+
+    // Indexes of the loaded buckets
+    private final TripleLongPriorityQueue sharedQueue = new TripleLongPriorityQueue();
+
+    // Indexes of the buckets not loaded, that are not persisted yet
+    private final TripleLongPriorityQueue unpersistedQueue = new TripleLongPriorityQueue();
+
+    // Indexes added while recovering, tracked once the persisted buckets are known
+    private final TripleLongPriorityQueue recoveringQueue = new TripleLongPriorityQueue();
+
+    // Segments of the persisted buckets, by bucket start time
+    private final NavigableMap<Long, List<SegmentLocation>> persistedBuckets = new TreeMap<>();
+    private long persistedIndexes = 0;
+    private long persistingIndexes = 0;
+
+    // Highest position whose index was persisted
+    private long lastPersistedLedgerId = -1;
+    private long lastPersistedEntryId = -1;
+
+    // The buckets starting before this time are loaded
+    private long loadedUpTo;
+
+    private State state = State.Recovering;
+
+    // If the snapshots cannot be recovered, the indexes are all kept in memory
+    private boolean persistenceEnabled = true;
+
+    // Whether a bucket is being persisted or loaded. This is done one at a time.
+    private boolean operationInProgress = false;
+
+    BucketDelayedDeliveryTracker(PersistentDispatcherMultipleConsumers dispatcher, Timer timer, long tickTimeMillis,
+            BucketSnapshotStorage storage, long bucketTimeStepMillis, int maxUnpersistedIndexes) {
+        this(dispatcher, timer, tickTimeMillis, Clock.systemUTC(), storage, bucketTimeStepMillis,
+                maxUnpersistedIndexes);
+    }
+
+    BucketDelayedDeliveryTracker(PersistentDispatcherMultipleConsumers dispatcher, Timer timer, long tickTimeMillis,
+            Clock clock, BucketSnapshotStorage storage, long bucketTimeStepMillis, int maxUnpersistedIndexes) {
+        this.dispatcher = dispatcher;
+        this.timer = timer;
+        this.tickTimeMillis = tickTimeMillis;
+        this.clock = clock;
+        this.storage = storage;
+        this.bucketTimeStepMillis = bucketTimeStepMillis;
+        this.maxUnpersistedIndexes = maxUnpersistedIndexes;
+        recover();
+    }
+
+    private void recover() {
+        storage.readLastMetadata().whenComplete((metadata, ex) -> {
+            synchronized (dispatcher) {
+                if (state == State.Closed) {
+                    return;
+                }
+                if (ex != null) {
+                    log.error("[{}] Failed to recover the delayed message snapshots, keeping the indexes in memory",
+                            dispatcher.getName(), ex);
+                    persistenceEnabled = false;
+                } else if (metadata.isPresent()) {
+                    lastPersistedLedgerId = metadata.get().getLastSealedLedgerId();
+                    lastPersistedEntryId = metadata.get().getLastSealedEntryId();
+                    for (BucketLocation bucket : metadata.get().getBucketsList()) {
+                        persistedBuckets.put(bucket.getBucketStart(), new ArrayList<>(bucket.getSegmentsList()));
+                        for (SegmentLocation segment : bucket.getSegmentsList()) {
+                            persistedIndexes += segment.getNumIndexes();
+                        }
+                    }
+                }
+
+                long now = clock.millis();
+                loadedUpTo = persistedBuckets.isEmpty() ? bucketStart(now)
+                        : Math.min(persistedBuckets.firstKey(), bucketStart(now));
+                state = State.Ready;
+                log.info("[{}] Recovered {} delayed message indexes in {} buckets", dispatcher.getName(),
+                        persistedIndexes, persistedBuckets.size());
+
+                while (!recoveringQueue.isEmpty()) {
+                    long deliveryAt = recoveringQueue.peekN1();
+                    long ledgerId = recoveringQueue.peekN2();
+                    long entryId = recoveringQueue.peekN3();
+                    recoveringQueue.pop();
+                    if (!isPersisted(ledgerId, entryId, deliveryAt)) {
+                        addIndex(deliveryAt, ledgerId, entryId);
+                    }
+                }
+
+                loadDueBuckets();
+                persistIfNeeded();
+                updateTimer();
+                if (hasMessageAvailable()) {
+                    dispatcher.readMoreEntries();
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean addMessage(long ledgerId, long entryId, long deliveryAt) {
+        long now = clock.millis();
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Add message {}:{} -- Delivery in {} ms ", dispatcher.getName(), ledgerId, entryId,
+                    deliveryAt - now);
+        }
+        if (deliveryAt < (now + tickTimeMillis)) {
+            // It's already about time to deliver this message
+            return false;
+        }
+
+        if (state == State.Recovering) {
+            recoveringQueue.add(deliveryAt, ledgerId, entryId);
+            return true;
+        }
+        if (isPersisted(ledgerId, entryId, deliveryAt)) {
+            // Read again after a restart or a cursor rewind, it is already tracked
+            return true;
+        }
+
+        addIndex(deliveryAt, ledgerId, entryId);
+        persistIfNeeded();
+        updateTimer();
+        return true;
+    }
+
+    /**
+     * Return true if there's at least a message that is scheduled to be delivered already
+     */
+    @Override
+    public boolean hasMessageAvailable() {
+        loadDueBuckets();
+        return !sharedQueue.isEmpty() && sharedQueue.peekN1() <= clock.millis();
+    }
+
+    /**
+     * Get a set of position of messages that have already reached
+     */
+    @Override
+    public Set<PositionImpl> getScheduledMessages(int maxMessages) {
+        int n = maxMessages;
+        Set<PositionImpl> positions = new TreeSet<>();
+        long now = clock.millis();
+        // Pick all the messages that will be ready within the tick time period.
+        // This is to avoid keeping rescheduling the timer for each message at
+        // very short delay
+        long cutoffTime = now + tickTimeMillis;
+
+        loadDueBuckets();
+        while (n > 0 && !sharedQueue.isEmpty()) {
+            long timestamp = sharedQueue.peekN1();
+            if (timestamp > cutoffTime) {
+                break;
+            }
+
+            long ledgerId = sharedQueue.peekN2();
+            long entryId = sharedQueue.peekN3();
+            positions.add(new PositionImpl(ledgerId, entryId));
+
+            sharedQueue.pop();
+            --n;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Get scheduled messages - found {}", dispatcher.getName(), positions.size());
+        }
+        updateTimer();
+        return positions;
+    }
+
+    @Override
+    public long getNumberOfDelayedMessages() {
+        return sharedQueue.size() + unpersistedQueue.size() + recoveringQueue.size() + persistingIndexes
+                + persistedIndexes;
+    }
+
+    private long bucketStart(long timestamp) {
+        return timestamp - Math.floorMod(timestamp, bucketTimeStepMillis);
+    }
+
+    private boolean isPersisted(long ledgerId, long entryId, long deliveryAt) {
+        boolean persistedPosition = ledgerId < lastPersistedLedgerId
+                || (ledgerId == lastPersistedLedgerId && entryId <= lastPersistedEntryId);
+        return persistedPosition && persistedBuckets.containsKey(bucketStart(deliveryAt));
+    }
+
+    private void addIndex(long deliveryAt, long ledgerId, long entryId) {
+        if (deliveryAt < loadedUpTo) {
+            sharedQueue.add(deliveryAt, ledgerId, entryId);
+        } else {
+            unpersistedQueue.add(deliveryAt, ledgerId, entryId);
+        }
+    }
+
+    /**
+     * @return the start time of the first bucket not loaded, or Long.MAX_VALUE if there is none
+     */
+    private long nextBucketStart() {
+        long next = persistedBuckets.isEmpty() ? Long.MAX_VALUE : persistedBuckets.firstKey();
+        if (!unpersistedQueue.isEmpty()) {
+            next = Math.min(next, bucketStart(unpersistedQueue.peekN1()));
+        }
+        return next;
+    }
+
+    private void moveUnpersistedIndexes(long upTo) {
+        while (!unpersistedQueue.isEmpty() && unpersistedQueue.peekN1() < upTo) {
+            sharedQueue.add(unpersistedQueue.peekN1(), unpersistedQueue.peekN2(), unpersistedQueue.peekN3());
+            unpersistedQueue.pop();
+        }
+    }
+
+    /**
+     * Load the buckets of the current and the next time step.
+     */
+    private void loadDueBuckets() {
+        if (state != State.Ready || operationInProgress) {
+            return;
+        }
+
+        long target = bucketStart(clock.millis()) + 2 * bucketTimeStepMillis;
+        while (loadedUpTo < target) {
+            long next = nextBucketStart();
+            if (next >= target) {
+                loadedUpTo = target;
+                return;
+            }
+            if (persistedBuckets.containsKey(next)) {
+                loadPersistedBucket(next);
+                return;
+            }
+            moveUnpersistedIndexes(next + bucketTimeStepMillis);
+            loadedUpTo = next + bucketTimeStepMillis;
+        }
+    }
+
+    private void loadPersistedBucket(long bucketStart) {
+        operationInProgress = true;
+        List<SegmentLocation> segments = persistedBuckets.get(bucketStart);
+        List<CompletableFuture<SnapshotSegment>> reads = new ArrayList<>(segments.size());
+        for (SegmentLocation segment : segments) {
+            reads.add(storage.readSegment(segment.getLedgerId(), segment.getEntryId()));
+        }
+
+        FutureUtil.waitForAll(reads).whenComplete((ignore, ex) -> {
+            synchronized (dispatcher) {
+                operationInProgress = false;
+                if (state == State.Closed) {
+                    return;
+                }
+                if (ex != null) {
+                    log.error("[{}] Failed to load the delayed message bucket starting at {}, retrying in {} ms",
+                            dispatcher.getName(), bucketStart, LOAD_RETRY_DELAY_MILLIS, ex);
+                    scheduleTimeout(clock.millis() + LOAD_RETRY_DELAY_MILLIS);
+                    return;
+                }
+
+                for (CompletableFuture<SnapshotSegment> read : reads) {
+                    SnapshotSegment segment = read.join();
+                    for (int i = 0; i < segment.getDeliverAtCount(); i++) {
+                        sharedQueue.add(segment.getDeliverAt(i), segment.getLedgerId(i), segment.getEntryId(i));
+                    }
+                }
+                for (SegmentLocation segment : persistedBuckets.remove(bucketStart)) {
+                    persistedIndexes -= segment.getNumIndexes();
+                }
+                moveUnpersistedIndexes(bucketStart + bucketTimeStepMillis);
+                loadedUpTo = bucketStart + bucketTimeStepMillis;
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Loaded the delayed message bucket starting at {}", dispatcher.getName(),
+                            bucketStart);
+                }
+
+                // Drop the segments of the loaded bucket
+                appendMetadata();
+                afterOperation();
+            }
+        });
+    }
+
+    private void persistIfNeeded() {
+        if (state != State.Ready || !persistenceEnabled || operationInProgress
+                || unpersistedQueue.size() < maxUnpersistedIndexes) {
+            return;
+        }
+        operationInProgress = true;
+
+        // Build one segment per bucket
+        Map<Long, SnapshotSegment.Builder> segments = new TreeMap<>();
+        long maxLedgerId = -1;
+        long maxEntryId = -1;
+        int count = unpersistedQueue.size();
+        while (!unpersistedQueue.isEmpty()) {
+            long deliveryAt = unpersistedQueue.peekN1();
+            long ledgerId = unpersistedQueue.peekN2();
+            long entryId = unpersistedQueue.peekN3();
+            unpersistedQueue.pop();
+            segments.computeIfAbsent(bucketStart(deliveryAt), bucket -> SnapshotSegment.newBuilder())
+                    .addDeliverAt(deliveryAt).addLedgerId(ledgerId).addEntryId(entryId);
+            if (ledgerId > maxLedgerId || (ledgerId == maxLedgerId && entryId > maxEntryId)) {
+                maxLedgerId = ledgerId;
+                maxEntryId = entryId;
+            }
+        }
+        persistingIndexes = count;
+
+        Map<Long, CompletableFuture<PositionImpl>> appends = new TreeMap<>();
+        segments.forEach((bucketStart, segment) -> appends.put(bucketStart, storage.appendSegment(segment.build())));
+
+        final long lastLedgerId = maxLedgerId;
+        final long lastEntryId = maxEntryId;
+        FutureUtil.waitForAll(new ArrayList<>(appends.values())).whenComplete((ignore, ex) -> {
+            synchronized (dispatcher) {
+                operationInProgress = false;
+                persistingIndexes = 0;
+                if (state == State.Closed) {
+                    return;
+                }
+                if (ex != null) {
+                    log.error("[{}] Failed to persist {} delayed message indexes, keeping them in memory",
+                            dispatcher.getName(), count, ex);
+                    segments.values().forEach(segment -> {
+                        for (int i = 0; i < segment.getDeliverAtCount(); i++) {
+                            unpersistedQueue.add(segment.getDeliverAt(i), segment.getLedgerId(i),
+                                    segment.getEntryId(i));
+                        }
+                    });
+                    afterOperation();
+                    return;
+                }
+
+                appends.forEach((bucketStart, append) -> {
+                    PositionImpl position = append.join();
+                    int numIndexes = segments.get(bucketStart).getDeliverAtCount();
+                    persistedBuckets.computeIfAbsent(bucketStart, bucket -> new ArrayList<>())
+                            .add(SegmentLocation.newBuilder().setLedgerId(position.getLedgerId())
+                                    .setEntryId(position.getEntryId()).setNumIndexes(numIndexes).build());
+                    persistedIndexes += numIndexes;
+                });
+                if (lastLedgerId > lastPersistedLedgerId
+                        || (lastLedgerId == lastPersistedLedgerId && lastEntryId > lastPersistedEntryId)) {
+                    lastPersistedLedgerId = lastLedgerId;
+                    lastPersistedEntryId = lastEntryId;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Persisted {} delayed message indexes in {} buckets", dispatcher.getName(),
+                            count, segments.size());
+                }
+
+                // Make the new segments live
+                appendMetadata();
+                afterOperation();
+            }
+        });
+    }
+
+    private void appendMetadata() {
+        SnapshotMetadata.Builder metadata = SnapshotMetadata.newBuilder()
+                .setLastSealedLedgerId(lastPersistedLedgerId)
+                .setLastSealedEntryId(lastPersistedEntryId);
+        persistedBuckets.forEach((bucketStart, segments) -> metadata.addBuckets(
+                BucketLocation.newBuilder().setBucketStart(bucketStart).addAllSegments(segments)));
+        storage.appendMetadata(metadata.build()).exceptionally(ex -> {
+            // The indexes not listed in the last metadata are tracked again from the topic after a restart
+            log.warn("[{}] Failed to append the delayed message snapshot metadata", dispatcher.getName(), ex);
+            return null;
+        });
+    }
+
+    private void afterOperation() {
+        loadDueBuckets();
+        persistIfNeeded();
+        updateTimer();
+        if (hasMessageAvailable()) {
+            dispatcher.readMoreEntries();
+        }
+    }
+
+    private void updateTimer() {
+        if (state != State.Ready) {
+            return;
+        }
+
+        long timestamp = sharedQueue.isEmpty() ? Long.MAX_VALUE : sharedQueue.peekN1();
+        long nextBucketStart = nextBucketStart();
+        if (nextBucketStart != Long.MAX_VALUE) {
+            // The bucket gets loaded one time step before it starts
+            timestamp = Math.min(timestamp, nextBucketStart - bucketTimeStepMillis);
+        }
+
+        if (timestamp == Long.MAX_VALUE) {
+            if (timeout != null) {
+                currentTimeoutTarget = -1;
+                timeout.cancel();
+                timeout = null;
+            }
+            return;
+        }
+
+        if (timestamp == currentTimeoutTarget) {
+            // The timer is already set to the correct target time
+            return;
+        }
+
+        if (timestamp - clock.millis() < 0) {
+            // There are messages that are already ready to be delivered, or a bucket being loaded. When the
+            // consumer catches up, or the bucket is loaded, the dispatcher will do the readMoreEntries() and
+            // get these messages
+            return;
+        }
+
+        scheduleTimeout(timestamp);
+    }
+
+    private void scheduleTimeout(long timestamp) {
+        if (timeout != null) {
+            timeout.cancel();
+        }
+
+        long delayMillis = timestamp - clock.millis();
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Start timer in {} millis", dispatcher.getName(), delayMillis);
+        }
+        currentTimeoutTarget = timestamp;
+        timeout = timer.newTimeout(this, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run(Timeout timeout) throws Exception {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Timer triggered", dispatcher.getName());
+        }
+        if (timeout.isCancelled()) {
+            return;
+        }
+
+        synchronized (dispatcher) {
+            if (state == State.Closed) {
+                return;
+            }
+            currentTimeoutTarget = -1;
+            this.timeout = null;
+            loadDueBuckets();
+            updateTimer();
+            dispatcher.readMoreEntries();
+        }
+    }
+
+    @Override
+    public void close() {
+        closeAsync();
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        synchronized (dispatcher) {
+            state = State.Closed;
+            sharedQueue.close();
+            unpersistedQueue.close();
+            recoveringQueue.close();
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+        return storage.close().exceptionally(ex -> {
+            log.warn("[{}] Failed to close the delayed message snapshot storage", dispatcher.getName(), ex);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.delayed;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SnapshotMetadata;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SnapshotSegment;
+
+/**
+ * Append-only storage of the snapshots of a {@link BucketDelayedDeliveryTracker}.
+ *
+ * The snapshot segments and metadata are appended in order. The last metadata appended lists all the segments that
+ * are still live, the others can be dropped.
+ */
+public interface BucketSnapshotStorage {
+
+    /**
+     * @return the last metadata appended, or empty if there is none
+     */
+    CompletableFuture<Optional<SnapshotMetadata>> readLastMetadata();
+
+    /**
+     * Append a snapshot segment.
+     *
+     * @return the position of the segment
+     */
+    CompletableFuture<PositionImpl> appendSegment(SnapshotSegment segment);
+
+    /**
+     * Append a metadata, making the segments it does not list droppable.
+     */
+    CompletableFuture<Void> appendMetadata(SnapshotMetadata metadata);
+
+    CompletableFuture<SnapshotSegment> readSegment(long ledgerId, long entryId);
+
+    CompletableFuture<Void> close();
+}
@@ -21,6 +21,7 @@ package org.apache.pulsar.broker.delayed;
 import com.google.common.annotations.Beta;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
 
@@ -64,4 +65,15 @@ public interface DelayedDeliveryTracker extends AutoCloseable {
      * Close the subscription tracker and release all resources.
      */
     void close();
+
+    /**
+     * Close the subscription tracker and release all resources.
+     *
+     * @return a future completed once the resources are released, including the storage of the persisted state of
+     *         the tracker, if any
+     */
+    default CompletableFuture<Void> closeAsync() {
+        close();
+        return CompletableFuture.completedFuture(null);
+    }
 }
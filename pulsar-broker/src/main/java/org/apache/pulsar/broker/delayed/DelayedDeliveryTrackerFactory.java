@@ -21,9 +21,11 @@ package org.apache.pulsar.broker.delayed;
 import com.google.common.annotations.Beta;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.broker.service.persistent.PersistentDispatcherMultipleConsumers;
+import org.apache.pulsar.broker.service.persistent.PersistentTopic;
 
 /**
  * Factory of InMemoryDelayedDeliveryTracker objects. This is the entry point for implementations.
@@ -48,6 +50,19 @@ public interface DelayedDeliveryTrackerFactory extends AutoCloseable {
      */
     DelayedDeliveryTracker newTracker(PersistentDispatcherMultipleConsumers dispatcher);
 
+    /**
+     * Delete the state persisted by the trackers of a subscription, once the subscription is deleted and its tracker,
+     * if any, is closed.
+     *
+     * @param topic
+     *            the topic of the subscription
+     * @param cursorName
+     *            the name of the cursor of the subscription
+     */
+    default CompletableFuture<Void> deleteTrackerState(PersistentTopic topic, String cursorName) {
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Close the factory and release all the resources
      */
@@ -0,0 +1,294 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.delayed;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.bookkeeper.mledger.AsyncCallbacks.AddEntryCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.CloseCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.DeleteLedgerCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ManagedLedgerInfoCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.MarkDeleteCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.OpenCursorCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.OpenLedgerCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerException.MetadataNotFoundException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactory;
+import org.apache.bookkeeper.mledger.ManagedLedgerInfo;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.BucketLocation;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SegmentLocation;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SnapshotEntry;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SnapshotMetadata;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SnapshotSegment;
+import org.apache.pulsar.common.naming.TopicName;
+
+/**
+ * Stores the snapshots of a {@link BucketDelayedDeliveryTracker} in a managed ledger of their own.
+ *
+ * A cursor on the ledger is kept just before the oldest live segment, so that the ledgers holding only dropped
+ * segments get trimmed.
+ */
+@Slf4j
+public class ManagedLedgerBucketSnapshotStorage implements BucketSnapshotStorage {
+
+    private static final String TRIM_CURSOR_NAME = "trim";
+
+    private final String name;
+
+    // Completed once both the ledger and the trim cursor are open
+    private final CompletableFuture<ManagedLedgerImpl> ledgerFuture = new CompletableFuture<>();
+    private volatile ManagedCursor trimCursor;
+
+    public ManagedLedgerBucketSnapshotStorage(ManagedLedgerFactory factory, String name,
+            CompletableFuture<ManagedLedgerConfig> configFuture) {
+        this.name = name;
+        configFuture.thenAccept(config -> {
+            // Dropped segments are never read again
+            config.setRetentionTime(0, TimeUnit.MILLISECONDS);
+            config.setRetentionSizeInMB(0);
+            factory.asyncOpen(name, config, new OpenLedgerCallback() {
+                @Override
+                public void openLedgerComplete(ManagedLedger ledger, Object ctx) {
+                    ledger.asyncOpenCursor(TRIM_CURSOR_NAME, new OpenCursorCallback() {
+                        @Override
+                        public void openCursorComplete(ManagedCursor cursor, Object ctx) {
+                            trimCursor = cursor;
+                            ledgerFuture.complete((ManagedLedgerImpl) ledger);
+                        }
+
+                        @Override
+                        public void openCursorFailed(ManagedLedgerException exception, Object ctx) {
+                            ledgerFuture.completeExceptionally(exception);
+                        }
+                    }, null);
+                }
+
+                @Override
+                public void openLedgerFailed(ManagedLedgerException exception, Object ctx) {
+                    ledgerFuture.completeExceptionally(exception);
+                }
+            }, null);
+        }).exceptionally(ex -> {
+            ledgerFuture.completeExceptionally(ex);
+            return null;
+        });
+    }
+
+    /**
+     * @return the name of the managed ledger holding the delayed message snapshots of a subscription. It lives out
+     *         of the topic domains, so that it is not listed as a topic.
+     */
+    public static String snapshotLedgerName(TopicName topicName, String encodedSubscriptionName) {
+        return topicName.getNamespace() + "/delayed-index/" + topicName.getEncodedLocalName() + "/"
+                + encodedSubscriptionName;
+    }
+
+    /**
+     * Delete the snapshot ledger with the given name, along with all its snapshots, if it exists.
+     */
+    public static CompletableFuture<Void> delete(ManagedLedgerFactory factory, String name,
+            CompletableFuture<ManagedLedgerConfig> configFuture) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        // Check first that the ledger exists, since opening it would create it
+        factory.asyncGetManagedLedgerInfo(name, new ManagedLedgerInfoCallback() {
+            @Override
+            public void getInfoComplete(ManagedLedgerInfo info, Object ctx) {
+                configFuture.thenAccept(config -> factory.asyncOpen(name, config, new OpenLedgerCallback() {
+                    @Override
+                    public void openLedgerComplete(ManagedLedger ledger, Object ctx) {
+                        ledger.asyncDelete(new DeleteLedgerCallback() {
+                            @Override
+                            public void deleteLedgerComplete(Object ctx) {
+                                log.info("[{}] Deleted delayed message snapshots", name);
+                                future.complete(null);
+                            }
+
+                            @Override
+                            public void deleteLedgerFailed(ManagedLedgerException exception, Object ctx) {
+                                future.completeExceptionally(exception);
+                            }
+                        }, null);
+                    }
+
+                    @Override
+                    public void openLedgerFailed(ManagedLedgerException exception, Object ctx) {
+                        future.completeExceptionally(exception);
+                    }
+                }, null)).exceptionally(ex -> {
+                    future.completeExceptionally(ex);
+                    return null;
+                });
+            }
+
+            @Override
+            public void getInfoFailed(ManagedLedgerException exception, Object ctx) {
+                if (exception instanceof MetadataNotFoundException) {
+                    // No delayed message was ever persisted for the subscription
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(exception);
+                }
+            }
+        }, null);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Optional<SnapshotMetadata>> readLastMetadata() {
+        return ledgerFuture.thenCompose(
+                ledger -> readLastMetadata(ledger, (PositionImpl) ledger.getLastConfirmedEntry()));
+    }
+
+    private CompletableFuture<Optional<SnapshotMetadata>> readLastMetadata(ManagedLedgerImpl ledger,
+            PositionImpl position) {
+        if (position.getEntryId() < 0) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        // Segments appended after the last metadata were never made live, skip them
+        return readEntry(ledger, position).thenCompose(snapshotEntry -> {
+            if (snapshotEntry.hasMetadata()) {
+                return CompletableFuture.completedFuture(Optional.of(snapshotEntry.getMetadata()));
+            }
+            return readLastMetadata(ledger, ledger.getPreviousPosition(position));
+        });
+    }
+
+    @Override
+    public CompletableFuture<PositionImpl> appendSegment(SnapshotSegment segment) {
+        return ledgerFuture.thenCompose(
+                ledger -> append(ledger, SnapshotEntry.newBuilder().setSegment(segment).build()));
+    }
+
+    @Override
+    public CompletableFuture<Void> appendMetadata(SnapshotMetadata metadata) {
+        return ledgerFuture.thenCompose(
+                ledger -> append(ledger, SnapshotEntry.newBuilder().setMetadata(metadata).build())
+                        .thenAccept(position -> trim(ledger, metadata, position)));
+    }
+
+    @Override
+    public CompletableFuture<SnapshotSegment> readSegment(long ledgerId, long entryId) {
+        return ledgerFuture.thenCompose(ledger -> readEntry(ledger, PositionImpl.get(ledgerId, entryId)))
+                .thenApply(SnapshotEntry::getSegment);
+    }
+
+    @Override
+    public CompletableFuture<Void> close() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        ledgerFuture.whenComplete((ledger, ex) -> {
+            if (ex != null) {
+                future.complete(null);
+                return;
+            }
+            ledger.asyncClose(new CloseCallback() {
+                @Override
+                public void closeComplete(Object ctx) {
+                    future.complete(null);
+                }
+
+                @Override
+                public void closeFailed(ManagedLedgerException exception, Object ctx) {
+                    future.completeExceptionally(exception);
+                }
+            }, null);
+        });
+        return future;
+    }
+
+    private void trim(ManagedLedgerImpl ledger, SnapshotMetadata metadata, PositionImpl metadataPosition) {
+        PositionImpl oldestLive = metadataPosition;
+        for (BucketLocation bucket : metadata.getBucketsList()) {
+            for (SegmentLocation segment : bucket.getSegmentsList()) {
+                PositionImpl position = PositionImpl.get(segment.getLedgerId(), segment.getEntryId());
+                if (position.compareTo(oldestLive) < 0) {
+                    oldestLive = position;
+                }
+            }
+        }
+
+        PositionImpl trimPosition = ledger.getPreviousPosition(oldestLive);
+        ManagedCursor cursor = trimCursor;
+        if (trimPosition.getEntryId() < 0 || trimPosition.compareTo(cursor.getMarkDeletedPosition()) <= 0) {
+            return;
+        }
+        cursor.asyncMarkDelete(trimPosition, new MarkDeleteCallback() {
+            @Override
+            public void markDeleteComplete(Object ctx) {
+                // Ledgers before the mark-delete position get trimmed by the managed ledger
+            }
+
+            @Override
+            public void markDeleteFailed(ManagedLedgerException exception, Object ctx) {
+                log.warn("[{}] Failed to trim dropped snapshot segments up to {}", name, trimPosition, exception);
+            }
+        }, null);
+    }
+
+    private CompletableFuture<PositionImpl> append(ManagedLedgerImpl ledger, SnapshotEntry snapshotEntry) {
+        CompletableFuture<PositionImpl> future = new CompletableFuture<>();
+        ledger.asyncAddEntry(snapshotEntry.toByteArray(), new AddEntryCallback() {
+            @Override
+            public void addComplete(Position position, Object ctx) {
+                future.complete((PositionImpl) position);
+            }
+
+            @Override
+            public void addFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null);
+        return future;
+    }
+
+    private CompletableFuture<SnapshotEntry> readEntry(ManagedLedgerImpl ledger, PositionImpl position) {
+        CompletableFuture<SnapshotEntry> future = new CompletableFuture<>();
+        ledger.asyncReadEntry(position, new ReadEntryCallback() {
+            @Override
+            public void readEntryComplete(Entry entry, Object ctx) {
+                try {
+                    future.complete(SnapshotEntry.parseFrom(entry.getData()));
+                } catch (InvalidProtocolBufferException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    entry.release();
+                }
+            }
+
+            @Override
+            public void readEntryFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null);
+        return future;
+    }
+}
@@ -21,8 +21,10 @@ package org.apache.pulsar.broker.service;
 
 import io.netty.buffer.ByteBuf;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -39,6 +41,10 @@ public abstract class AbstractBaseDispatcher implements Dispatcher {
 
     protected final Subscription subscription;
 
+    private volatile MessageFilter messageFilter;
+    private final LongAdder msgOutCounter = new LongAdder();
+    private final LongAdder msgFilteredCounter = new LongAdder();
+
     protected AbstractBaseDispatcher(Subscription subscription) {
         this.subscription = subscription;
     }
@@ -50,6 +56,7 @@ public abstract class AbstractBaseDispatcher implements Dispatcher {
      * <ul>
      * <li>Checksum or metadata corrupted
      * <li>Message is an internal marker
+     * <li>Message does not match the message filter of the subscription
      * <li>Message is not meant to be delivered immediately
      * </ul>
      *
@@ -67,6 +74,8 @@ public abstract class AbstractBaseDispatcher implements Dispatcher {
             SendMessageInfo sendMessageInfo) {
         int totalMessages = 0;
         long totalBytes = 0;
+        MessageFilter filter = this.messageFilter;
+        List<PositionImpl> filteredPositions = null;
 
         for (int i = 0, entriesSize = entries.size(); i < entriesSize; i++) {
             Entry entry = entries.get(i);
@@ -88,6 +97,15 @@ public abstract class AbstractBaseDispatcher implements Dispatcher {
                     subscription.acknowledgeMessage(Collections.singletonList(pos), AckType.Individual,
                             Collections.emptyMap());
                     continue;
+                } else if (filter != null && !filter.matches(msgMetadata)) {
+                    // The message is not wanted by the consumers, acknowledge it with the others at the end
+                    if (filteredPositions == null) {
+                        filteredPositions = new ArrayList<>();
+                    }
+                    filteredPositions.add((PositionImpl) entry.getPosition());
+                    entries.set(i, null);
+                    entry.release();
+                    continue;
                 } else if (msgMetadata.hasDeliverAtTime()
                         && trackDelayedDelivery(entry.getLedgerId(), entry.getEntryId(), msgMetadata)) {
                     // The message is marked for delayed delivery. Ignore for now.
@@ -105,6 +123,12 @@ public abstract class AbstractBaseDispatcher implements Dispatcher {
             }
         }
 
+        if (filteredPositions != null) {
+            msgFilteredCounter.add(filteredPositions.size());
+            subscription.acknowledgeMessage(filteredPositions, AckType.Individual, Collections.emptyMap());
+        }
+
+        msgOutCounter.add(totalMessages);
         sendMessageInfo.setTotalMessages(totalMessages);
         sendMessageInfo.setTotalBytes(totalBytes);
     }
@@ -122,6 +146,26 @@ public abstract class AbstractBaseDispatcher implements Dispatcher {
         }
     }
 
+    @Override
+    public void setMessageFilter(MessageFilter messageFilter) {
+        this.messageFilter = messageFilter;
+    }
+
+    @Override
+    public MessageFilter getMessageFilter() {
+        return messageFilter;
+    }
+
+    @Override
+    public long getMsgOutCounter() {
+        return msgOutCounter.sum();
+    }
+
+    @Override
+    public long getMsgFilteredCounter() {
+        return msgFilteredCounter.sum();
+    }
+
     public void resetCloseFuture() {
         // noop
     }
@@ -31,6 +31,7 @@ import org.apache.pulsar.broker.service.persistent.PersistentStickyKeyDispatcher
 import org.apache.pulsar.common.api.proto.PulsarApi;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.SubType;
 import org.apache.pulsar.common.protocol.Commands;
+import org.apache.pulsar.common.util.Murmur3_32Hash;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -233,6 +234,30 @@ public abstract class AbstractDispatcherMultipleConsumers extends AbstractBaseDi
         return NONE_KEY.getBytes();
     }
 
+    private static final int NONE_KEY_HASH = Murmur3_32Hash.getInstance().makeHash(NONE_KEY.getBytes());
+
+    /**
+     * Same as hashing the key returned by {@link #peekStickyKey(ByteBuf)}, without copying the key when the message
+     * has none.
+     */
+    protected int peekStickyKeyHash(ByteBuf metadataAndPayload) {
+        metadataAndPayload.markReaderIndex();
+        PulsarApi.MessageMetadata metadata = Commands.parseMessageMetadata(metadataAndPayload);
+        metadataAndPayload.resetReaderIndex();
+        try {
+            if (metadata.hasOrderingKey()) {
+                return Murmur3_32Hash.getInstance().makeHash(metadata.getOrderingKey().toByteArray());
+            }
+            String key = metadata.getPartitionKey();
+            if (StringUtils.isNotBlank(key)) {
+                return Murmur3_32Hash.getInstance().makeHash(key.getBytes());
+            }
+            return NONE_KEY_HASH;
+        } finally {
+            metadata.recycle();
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(PersistentStickyKeyDispatcherMultipleConsumers.class);
 
 
@@ -98,6 +98,7 @@ import org.apache.pulsar.broker.service.BrokerServiceException.ServiceUnitNotRea
 import org.apache.pulsar.broker.service.nonpersistent.NonPersistentTopic;
 import org.apache.pulsar.broker.service.persistent.DispatchRateLimiter;
 import org.apache.pulsar.broker.service.persistent.PersistentDispatcherMultipleConsumers;
+import org.apache.pulsar.broker.service.persistent.PersistentMessageFinder;
 import org.apache.pulsar.broker.service.persistent.PersistentTopic;
 import org.apache.pulsar.broker.stats.ClusterReplicationMetrics;
 import org.apache.pulsar.broker.stats.prometheus.metrics.Summary;
@@ -960,11 +961,19 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
 
             managedLedgerConfig.setMaxUnackedRangesToPersist(serviceConfig.getManagedLedgerMaxUnackedRangesToPersist());
             managedLedgerConfig.setMaxUnackedRangesToPersistInZk(serviceConfig.getManagedLedgerMaxUnackedRangesToPersistInZooKeeper());
+            managedLedgerConfig.setUnackedRangesBitmapEnabled(serviceConfig.isManagedLedgerUnackedRangesBitmapEnabled());
+            managedLedgerConfig.setUnackedRangesDeltaEnabled(serviceConfig.isManagedLedgerUnackedRangesDeltaEnabled());
+            managedLedgerConfig.setUnackedRangesSnapshotInterval(
+                    serviceConfig.getManagedLedgerUnackedRangesSnapshotInterval());
             managedLedgerConfig.setMaxEntriesPerLedger(serviceConfig.getManagedLedgerMaxEntriesPerLedger());
             managedLedgerConfig.setMinimumRolloverTime(serviceConfig.getManagedLedgerMinLedgerRolloverTimeMinutes(),
                     TimeUnit.MINUTES);
             managedLedgerConfig.setMaximumRolloverTime(serviceConfig.getManagedLedgerMaxLedgerRolloverTimeMinutes(),
                     TimeUnit.MINUTES);
+            managedLedgerConfig.setStandbyLedgerEnabled(serviceConfig.isManagedLedgerStandbyLedgerEnabled());
+            if (serviceConfig.isManagedLedgerPublishTimeIndexEnabled()) {
+                managedLedgerConfig.setEntryTimestampExtractor(PersistentMessageFinder::getEntryPublishTime);
+            }
             managedLedgerConfig.setMaxSizePerLedgerMb(2048);
 
             managedLedgerConfig.setMetadataOperationsTimeoutSeconds(
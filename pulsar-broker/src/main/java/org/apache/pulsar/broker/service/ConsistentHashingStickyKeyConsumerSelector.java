@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.apache.pulsar.broker.service.BrokerServiceException.ConsumerAssignException;
+import org.apache.pulsar.common.util.Murmur3_32Hash;
+
+/**
+ * This is a consumer selector based on a consistent hashing ring.
+ *
+ * 1.Each consumer is placed on the ring at a number of points (virtual nodes), hashed from its name.
+ * 2.A key is served by the consumer of the first point after the key hash, wrapping around the ring.
+ * 3.Adding or removing a consumer only moves the keys next to its own points, about 1/N of all the keys.
+ *
+ * Since the points only depend on the consumer name, a consumer that reconnects gets back the same keys. Consumers
+ * sharing a name are told apart by a suffix, so that they still get points of their own.
+ *
+ * Select consumer will return the consumer of the ceiling point of the message key hashcode, or the
+ * consumer of the first point if there is none.
+ */
+public class ConsistentHashingStickyKeyConsumerSelector implements StickyKeyConsumerSelector {
+
+    public static final int DEFAULT_NUMBER_OF_POINTS = 100;
+
+    private final int numberOfPoints;
+
+    // Consumers of each point of the ring. Consumers whose points collide share the point, the first one serves it.
+    private final NavigableMap<Integer, List<Consumer>> hashRing;
+    // Name the points of each consumer are hashed from
+    private final Map<Consumer, String> consumerPointNames;
+    // Copy of the ring used to select consumers
+    private volatile HashRangePoints ringPoints = HashRangePoints.EMPTY;
+
+    public ConsistentHashingStickyKeyConsumerSelector() {
+        this(DEFAULT_NUMBER_OF_POINTS);
+    }
+
+    public ConsistentHashingStickyKeyConsumerSelector(int numberOfPoints) {
+        if (numberOfPoints < 1) {
+            throw new IllegalArgumentException("number of points must be greater than 0");
+        }
+        this.numberOfPoints = numberOfPoints;
+        this.hashRing = new TreeMap<>();
+        this.consumerPointNames = new HashMap<>();
+    }
+
+    @Override
+    public synchronized void addConsumer(Consumer consumer) throws ConsumerAssignException {
+        if (consumerPointNames.containsKey(consumer)) {
+            return;
+        }
+        String pointName = String.valueOf(consumer.consumerName());
+        for (int suffix = 1; consumerPointNames.containsValue(pointName); suffix++) {
+            pointName = consumer.consumerName() + "#" + suffix;
+        }
+        consumerPointNames.put(consumer, pointName);
+        for (int i = 0; i < numberOfPoints; i++) {
+            hashRing.computeIfAbsent(pointHash(pointName, i), point -> new ArrayList<>(1)).add(consumer);
+        }
+        updateRingPoints();
+    }
+
+    @Override
+    public synchronized void removeConsumer(Consumer consumer) {
+        String pointName = consumerPointNames.remove(consumer);
+        if (pointName == null) {
+            return;
+        }
+        for (int i = 0; i < numberOfPoints; i++) {
+            int point = pointHash(pointName, i);
+            List<Consumer> consumers = hashRing.get(point);
+            if (consumers != null) {
+                consumers.remove(consumer);
+                if (consumers.isEmpty()) {
+                    hashRing.remove(point);
+                }
+            }
+        }
+        updateRingPoints();
+    }
+
+    @Override
+    public Consumer select(byte[] stickyKey) {
+        return select(Murmur3_32Hash.getInstance().makeHash(stickyKey));
+    }
+
+    @Override
+    public Consumer select(int hash) {
+        HashRangePoints points = ringPoints;
+        if (!points.isEmpty()) {
+            Consumer consumer = points.ceiling(hash);
+            // Wrap around the ring
+            return consumer != null ? consumer : points.ceiling(Integer.MIN_VALUE);
+        } else {
+            return null;
+        }
+    }
+
+    private static int pointHash(String pointName, int index) {
+        return Murmur3_32Hash.getInstance().makeHash((pointName + ":" + index).getBytes());
+    }
+
+    private void updateRingPoints() {
+        NavigableMap<Integer, Consumer> points = new TreeMap<>();
+        for (Map.Entry<Integer, List<Consumer>> entry : hashRing.entrySet()) {
+            points.put(entry.getKey(), entry.getValue().get(0));
+        }
+        ringPoints = HashRangePoints.of(points);
+    }
+
+    Map<Integer, List<Consumer>> getRangeConsumer() {
+        return Collections.unmodifiableMap(hashRing);
+    }
+}
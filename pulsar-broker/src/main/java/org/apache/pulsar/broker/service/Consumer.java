@@ -24,7 +24,7 @@ import com.google.common.base.MoreObjects;
 import com.google.common.collect.Lists;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
@@ -45,6 +45,7 @@ import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.apache.pulsar.broker.authentication.AuthenticationDataSource;
+import org.apache.pulsar.common.allocator.PulsarByteBufAllocator;
 import org.apache.pulsar.common.api.proto.PulsarApi;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandAck;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandAck.AckType;
@@ -161,6 +162,10 @@ public class Consumer {
         return consumerName;
     }
 
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
     void notifyActiveConsumerChange(Consumer activeConsumer) {
         if (!Commands.peerSupportsActiveConsumerListener(cnx.getRemoteEndpointProtocolVersion())) {
             // if the client is older than `v12`, we don't need to send consumer group changes.
@@ -220,57 +225,58 @@ public class Consumer {
         msgOut.recordMultipleEvents(totalMessages, totalBytes);
 
         ctx.channel().eventLoop().execute(() -> {
-            for (int i = 0; i < entries.size(); i++) {
-                Entry entry = entries.get(i);
-                if (entry == null) {
-                    // Entry was filtered out
-                    continue;
-                }
+            // The headers of all the messages are written in a single buffer, and the whole batch is written to the
+            // connection as a single composite buffer
+            ByteBuf headers = PulsarByteBufAllocator.DEFAULT
+                    .directBuffer(entries.size() * Commands.MAX_MESSAGE_HEADERS_SIZE);
+            CompositeByteBuf batch = PulsarByteBufAllocator.DEFAULT.compositeDirectBuffer(entries.size() * 2);
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    Entry entry = entries.get(i);
+                    if (entry == null) {
+                        // Entry was filtered out
+                        continue;
+                    }
 
-                int batchSize = batchSizes.getBatchSize(i);
+                    int batchSize = batchSizes.getBatchSize(i);
 
-                if (batchSize > 1 && !cnx.isBatchMessageCompatibleVersion()) {
-                    log.warn("[{}-{}] Consumer doesn't support batch messages -  consumerId {}, msg id {}-{}",
-                            topicName, subscription,
-                            consumerId, entry.getLedgerId(), entry.getEntryId());
-                    ctx.close();
+                    if (batchSize > 1 && !cnx.isBatchMessageCompatibleVersion()) {
+                        log.warn("[{}-{}] Consumer doesn't support batch messages -  consumerId {}, msg id {}-{}",
+                                topicName, subscription,
+                                consumerId, entry.getLedgerId(), entry.getEntryId());
+                        ctx.close();
+                        entry.release();
+                        continue;
+                    }
+
+                    ByteBuf metadataAndPayload = entry.getDataBuffer();
+                    // skip checksum by incrementing reader-index if consumer-client doesn't support checksum
+                    // verification
+                    if (cnx.getRemoteEndpointProtocolVersion() < ProtocolVersion.v11.getNumber()) {
+                        Commands.skipChecksumIfPresent(metadataAndPayload);
+                    }
+
+                    if (log.isDebugEnabled()) {
+                        log.debug("[{}-{}] Sending message to consumerId {}, msg id {}-{}", topicName, subscription,
+                                consumerId, entry.getLedgerId(), entry.getEntryId());
+                    }
+
+                    int redeliveryCount = redeliveryTracker.incrementRedeliveryCountIfPresent(entry.getLedgerId(),
+                            entry.getEntryId());
+                    int headersIndex = headers.writerIndex();
+                    Commands.serializeMessageHeaders(headers, consumerId, entry.getLedgerId(), entry.getEntryId(),
+                            partitionIdx, redeliveryCount, metadataAndPayload.readableBytes());
+
+                    // the batch takes a reference on the data, so we can call entry.release
+                    batch.addComponent(true, headers.retainedSlice(headersIndex, headers.writerIndex() - headersIndex));
+                    batch.addComponent(true, metadataAndPayload.retain());
                     entry.release();
-                    continue;
-                }
-
-                MessageIdData.Builder messageIdBuilder = MessageIdData.newBuilder();
-                MessageIdData messageId = messageIdBuilder
-                    .setLedgerId(entry.getLedgerId())
-                    .setEntryId(entry.getEntryId())
-                    .setPartition(partitionIdx)
-                    .build();
-
-                ByteBuf metadataAndPayload = entry.getDataBuffer();
-                // increment ref-count of data and release at the end of process: so, we can get chance to call entry.release
-                metadataAndPayload.retain();
-                // skip checksum by incrementing reader-index if consumer-client doesn't support checksum verification
-                if (cnx.getRemoteEndpointProtocolVersion() < ProtocolVersion.v11.getNumber()) {
-                    Commands.skipChecksumIfPresent(metadataAndPayload);
-                }
-
-                if (log.isDebugEnabled()) {
-                    log.debug("[{}-{}] Sending message to consumerId {}, msg id {}-{}", topicName, subscription,
-                            consumerId, entry.getLedgerId(), entry.getEntryId());
-                }
-
-                int redeliveryCount = 0;
-                PositionImpl position = PositionImpl.get(messageId.getLedgerId(), messageId.getEntryId());
-                if (redeliveryTracker.contains(position)) {
-                    redeliveryCount = redeliveryTracker.incrementAndGetRedeliveryCount(position);
                 }
-                ctx.write(Commands.newMessage(consumerId, messageId, redeliveryCount, metadataAndPayload), ctx.voidPromise());
-                messageId.recycle();
-                messageIdBuilder.recycle();
-                entry.release();
+            } finally {
+                headers.release();
             }
 
-            // Use an empty write here so that we can just tie the flush with the write promise for last entry
-            ctx.writeAndFlush(Unpooled.EMPTY_BUFFER, writePromise);
+            ctx.writeAndFlush(batch, writePromise);
             batchSizes.recyle();
         });
 
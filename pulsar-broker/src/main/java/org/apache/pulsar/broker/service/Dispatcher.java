@@ -106,4 +106,30 @@ public interface Dispatcher {
     default void cursorIsReset() {
         //No-op
     }
+
+    /**
+     * Set the filter of the messages dispatched on the subscription, or null to dispatch all of them. The messages not
+     * matching the filter are acknowledged without being sent to the consumers.
+     */
+    default void setMessageFilter(MessageFilter messageFilter) {
+        //No-op
+    }
+
+    default MessageFilter getMessageFilter() {
+        return null;
+    }
+
+    /**
+     * @return the number of messages sent to the consumers
+     */
+    default long getMsgOutCounter() {
+        return 0;
+    }
+
+    /**
+     * @return the number of messages acknowledged without being sent because they did not match the message filter
+     */
+    default long getMsgFilteredCounter() {
+        return 0;
+    }
 }
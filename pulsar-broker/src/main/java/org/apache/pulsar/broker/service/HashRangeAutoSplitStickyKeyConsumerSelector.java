@@ -59,6 +59,8 @@ public class HashRangeAutoSplitStickyKeyConsumerSelector implements StickyKeyCon
 
     private final ConcurrentSkipListMap<Integer, Consumer> rangeMap;
     private final Map<Consumer, Integer> consumerRange;
+    // Copy of the range map used to select consumers
+    private volatile HashRangePoints rangePoints = HashRangePoints.EMPTY;
 
     public HashRangeAutoSplitStickyKeyConsumerSelector() {
         this(DEFAULT_RANGE_SIZE);
@@ -84,6 +86,7 @@ public class HashRangeAutoSplitStickyKeyConsumerSelector implements StickyKeyCon
         } else {
             splitRange(findBiggestRange(), consumer);
         }
+        rangePoints = HashRangePoints.of(rangeMap);
     }
 
     @Override
@@ -98,6 +101,7 @@ public class HashRangeAutoSplitStickyKeyConsumerSelector implements StickyKeyCon
             } else {
                 rangeMap.remove(removeRange);
             }
+            rangePoints = HashRangePoints.of(rangeMap);
         }
     }
 
@@ -107,9 +111,10 @@ public class HashRangeAutoSplitStickyKeyConsumerSelector implements StickyKeyCon
     }
 
     public Consumer select(int hash) {
-        if (rangeMap.size() > 0) {
+        HashRangePoints points = rangePoints;
+        if (!points.isEmpty()) {
             int slot = hash % rangeSize;
-            return rangeMap.ceilingEntry(slot).getValue();
+            return points.ceiling(slot);
         } else {
             return null;
         }
@@ -30,6 +30,8 @@ public class HashRangeExclusiveStickyKeyConsumerSelector implements StickyKeyCon
 
     private final int rangeSize;
     private final ConcurrentSkipListMap<Integer, Consumer> rangeMap;
+    // Copy of the range map used to select consumers
+    private volatile HashRangePoints rangePoints = HashRangePoints.EMPTY;
 
     public HashRangeExclusiveStickyKeyConsumerSelector() {
         this(DEFAULT_RANGE_SIZE);
@@ -45,17 +47,19 @@ public class HashRangeExclusiveStickyKeyConsumerSelector implements StickyKeyCon
     }
 
     @Override
-    public void addConsumer(Consumer consumer) throws BrokerServiceException.ConsumerAssignException {
+    public synchronized void addConsumer(Consumer consumer) throws BrokerServiceException.ConsumerAssignException {
         validateKeySharedMeta(consumer);
         for (PulsarApi.IntRange intRange : consumer.getKeySharedMeta().getHashRangesList()) {
             rangeMap.put(intRange.getStart(), consumer);
             rangeMap.put(intRange.getEnd(), consumer);
         }
+        rangePoints = HashRangePoints.of(rangeMap);
     }
 
     @Override
-    public void removeConsumer(Consumer consumer) {
+    public synchronized void removeConsumer(Consumer consumer) {
         rangeMap.entrySet().removeIf(entry -> entry.getValue().equals(consumer));
+        rangePoints = HashRangePoints.of(rangeMap);
     }
 
     @Override
@@ -64,12 +68,11 @@ public class HashRangeExclusiveStickyKeyConsumerSelector implements StickyKeyCon
     }
 
     public Consumer select(int hash) {
-        if (rangeMap.size() > 0) {
+        HashRangePoints points = rangePoints;
+        if (!points.isEmpty()) {
             int slot = hash % rangeSize;
-            Map.Entry<Integer, Consumer> ceilingEntry = rangeMap.ceilingEntry(slot);
-            Map.Entry<Integer, Consumer> floorEntry = rangeMap.floorEntry(slot);
-            Consumer ceilingConsumer = ceilingEntry != null ? ceilingEntry.getValue() : null;
-            Consumer floorConsumer = floorEntry != null ? floorEntry.getValue() : null;
+            Consumer ceilingConsumer = points.ceiling(slot);
+            Consumer floorConsumer = points.floor(slot);
             if (floorConsumer != null && floorConsumer.equals(ceilingConsumer)) {
                 return ceilingConsumer;
             } else {
@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Immutable copy of the hash range points of a sticky key consumer selector, in sorted arrays.
+ *
+ * <p/>Selecting a consumer for each dispatched entry only needs a binary search in a flat array, instead of walking
+ * a skip list. The points are copied again on every consumer change, which is rare compared to the lookups.
+ */
+class HashRangePoints {
+
+    static final HashRangePoints EMPTY = new HashRangePoints(new int[0], new Consumer[0]);
+
+    private final int[] points;
+    private final Consumer[] consumers;
+
+    private HashRangePoints(int[] points, Consumer[] consumers) {
+        this.points = points;
+        this.consumers = consumers;
+    }
+
+    static HashRangePoints of(NavigableMap<Integer, Consumer> rangeMap) {
+        int[] points = new int[rangeMap.size()];
+        Consumer[] consumers = new Consumer[rangeMap.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Consumer> entry : rangeMap.entrySet()) {
+            points[i] = entry.getKey();
+            consumers[i] = entry.getValue();
+            i++;
+        }
+        return new HashRangePoints(points, consumers);
+    }
+
+    boolean isEmpty() {
+        return points.length == 0;
+    }
+
+    /**
+     * @return the consumer of the lowest point greater than or equal to <tt>slot</tt>, or null if there is none
+     */
+    Consumer ceiling(int slot) {
+        int index = Arrays.binarySearch(points, slot);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < points.length ? consumers[index] : null;
+    }
+
+    /**
+     * @return the consumer of the greatest point lower than or equal to <tt>slot</tt>, or null if there is none
+     */
+    Consumer floor(int slot) {
+        int index = Arrays.binarySearch(points, slot);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index >= 0 ? consumers[index] : null;
+    }
+}
@@ -38,6 +38,17 @@ public class InMemoryRedeliveryTracker implements RedeliveryTracker {
         return newCount;
     }
 
+    @Override
+    public int incrementRedeliveryCountIfPresent(long ledgerId, long entryId) {
+        LongPair count = trackerCache.get(ledgerId, entryId);
+        if (count == null) {
+            return 0;
+        }
+        int newCount = (int) (count.first + 1);
+        trackerCache.put(ledgerId, entryId, newCount, 0L);
+        return newCount;
+    }
+
     @Override
     public int getRedeliveryCount(Position position) {
         PositionImpl positionImpl = (PositionImpl) position;
@@ -0,0 +1,310 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.pulsar.common.api.proto.PulsarApi.KeyValue;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
+
+/**
+ * Filter of the messages dispatched on a subscription, evaluated on the message metadata only.
+ *
+ * <p>The expression compares the message properties and key with string literals:
+ * <pre>
+ * region = 'eu' AND (priority IN ('high', 'urgent') OR NOT EXISTS priority) AND __key__ != 'ignored'
+ * </pre>
+ *
+ * <ul>
+ * <li><tt>name = 'value'</tt> and <tt>name != 'value'</tt> compare a property, a missing property is not equal
+ * to any value
+ * <li><tt>name IN ('a', 'b')</tt> matches a property equal to one of the values
+ * <li><tt>EXISTS name</tt> matches when the property is set
+ * <li><tt>__key__</tt> stands for the message key
+ * <li><tt>AND</tt>, <tt>OR</tt>, <tt>NOT</tt> and parentheses combine the conditions. Keywords are case
+ * insensitive, quotes are escaped by doubling them.
+ * </ul>
+ *
+ * <p>The properties are looked up in the metadata only when a condition needs them. Batched entries carry the
+ * properties of their messages in the payload, so they always match.
+ *
+ * <p>The expression is set by the clients, so its length and its nesting of <tt>NOT</tt> and parentheses are
+ * bounded.
+ */
+public class MessageFilter {
+
+    /**
+     * Consumer property holding the filter expression of the subscription.
+     */
+    public static final String CONSUMER_PROPERTY = "pulsar.subscription.filter";
+
+    static final String KEY_NAME = "__key__";
+
+    static final int MAX_EXPRESSION_LENGTH = 4096;
+    static final int MAX_NESTING_DEPTH = 32;
+
+    private final String expression;
+    private final Predicate<MessageMetadata> predicate;
+
+    private MessageFilter(String expression, Predicate<MessageMetadata> predicate) {
+        this.expression = expression;
+        this.predicate = predicate;
+    }
+
+    /**
+     * @return the filter set in the properties of a consumer, or null if there is none
+     * @throws IllegalArgumentException if the filter expression is invalid
+     */
+    public static MessageFilter fromConsumerProperties(Map<String, String> properties) {
+        String expression = properties.get(CONSUMER_PROPERTY);
+        return expression != null ? compile(expression) : null;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the filter expression is invalid
+     */
+    public static MessageFilter compile(String expression) {
+        if (expression.length() > MAX_EXPRESSION_LENGTH) {
+            throw new IllegalArgumentException("Message filter longer than " + MAX_EXPRESSION_LENGTH
+                    + " characters");
+        }
+        Parser parser = new Parser(expression);
+        Predicate<MessageMetadata> predicate = parser.parseOr();
+        if (parser.peek() != null) {
+            throw parser.error("Unexpected '" + parser.peek() + "'");
+        }
+        return new MessageFilter(expression, predicate);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return whether both filters have the same expression, or are both null
+     */
+    public static boolean isSameFilter(MessageFilter filter1, MessageFilter filter2) {
+        if (filter1 == null || filter2 == null) {
+            return filter1 == filter2;
+        }
+        return filter1.expression.equals(filter2.expression);
+    }
+
+    public boolean matches(MessageMetadata metadata) {
+        return metadata.hasNumMessagesInBatch() || predicate.test(metadata);
+    }
+
+    private static String getValue(MessageMetadata metadata, String name) {
+        if (KEY_NAME.equals(name)) {
+            return metadata.hasPartitionKey() ? metadata.getPartitionKey() : null;
+        }
+        for (int i = 0, count = metadata.getPropertiesCount(); i < count; i++) {
+            KeyValue property = metadata.getProperties(i);
+            if (property.getKey().equals(name)) {
+                return property.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static class Parser {
+        private final String expression;
+        private final List<String> tokens = new ArrayList<>();
+        private final List<Integer> offsets = new ArrayList<>();
+        private int index = 0;
+        private int depth = 0;
+
+        Parser(String expression) {
+            this.expression = expression;
+            tokenize();
+        }
+
+        private void tokenize() {
+            int i = 0;
+            while (i < expression.length()) {
+                char c = expression.charAt(i);
+                int start = i;
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                } else if (c == '\'') {
+                    // Keep the quote to tell literals from names
+                    StringBuilder literal = new StringBuilder("'");
+                    i++;
+                    while (true) {
+                        if (i >= expression.length()) {
+                            throw new IllegalArgumentException("Unterminated string at position " + start
+                                    + " of message filter: " + expression);
+                        }
+                        if (expression.charAt(i) == '\'') {
+                            if (i + 1 < expression.length() && expression.charAt(i + 1) == '\'') {
+                                literal.append('\'');
+                                i += 2;
+                                continue;
+                            }
+                            i++;
+                            break;
+                        }
+                        literal.append(expression.charAt(i++));
+                    }
+                    tokens.add(literal.toString());
+                } else if (c == '!' && i + 1 < expression.length() && expression.charAt(i + 1) == '=') {
+                    tokens.add("!=");
+                    i += 2;
+                } else if (c == '=' || c == '(' || c == ')' || c == ',') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if (isNameChar(c)) {
+                    while (i < expression.length() && isNameChar(expression.charAt(i))) {
+                        i++;
+                    }
+                    tokens.add(expression.substring(start, i));
+                } else {
+                    throw new IllegalArgumentException("Unexpected '" + c + "' at position " + i
+                            + " of message filter: " + expression);
+                }
+                offsets.add(start);
+            }
+        }
+
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-';
+        }
+
+        String peek() {
+            return index < tokens.size() ? tokens.get(index) : null;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            if (keyword.equalsIgnoreCase(peek())) {
+                index++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!token.equals(peek())) {
+                throw error("Expected '" + token + "'");
+            }
+            index++;
+        }
+
+        IllegalArgumentException error(String message) {
+            String position = index < offsets.size() ? "position " + offsets.get(index) : "end";
+            return new IllegalArgumentException(message + " at " + position + " of message filter: " + expression);
+        }
+
+        Predicate<MessageMetadata> parseOr() {
+            Predicate<MessageMetadata> predicate = parseAnd();
+            while (acceptKeyword("OR")) {
+                predicate = predicate.or(parseAnd());
+            }
+            return predicate;
+        }
+
+        private Predicate<MessageMetadata> parseAnd() {
+            Predicate<MessageMetadata> predicate = parseNot();
+            while (acceptKeyword("AND")) {
+                predicate = predicate.and(parseNot());
+            }
+            return predicate;
+        }
+
+        private void enter() {
+            if (++depth > MAX_NESTING_DEPTH) {
+                throw error("Nesting deeper than " + MAX_NESTING_DEPTH);
+            }
+        }
+
+        private Predicate<MessageMetadata> parseNot() {
+            if (acceptKeyword("NOT")) {
+                enter();
+                Predicate<MessageMetadata> predicate = parseNot().negate();
+                depth--;
+                return predicate;
+            }
+            return parsePrimary();
+        }
+
+        private Predicate<MessageMetadata> parsePrimary() {
+            if ("(".equals(peek())) {
+                index++;
+                enter();
+                Predicate<MessageMetadata> predicate = parseOr();
+                expect(")");
+                depth--;
+                return predicate;
+            }
+            if (acceptKeyword("EXISTS")) {
+                String name = parseName();
+                return metadata -> getValue(metadata, name) != null;
+            }
+
+            String name = parseName();
+            if (acceptKeyword("IN")) {
+                expect("(");
+                List<String> values = new ArrayList<>();
+                values.add(parseLiteral());
+                while (",".equals(peek())) {
+                    index++;
+                    values.add(parseLiteral());
+                }
+                expect(")");
+                return metadata -> {
+                    String value = getValue(metadata, name);
+                    return value != null && values.contains(value);
+                };
+            } else if ("=".equals(peek())) {
+                index++;
+                String literal = parseLiteral();
+                return metadata -> literal.equals(getValue(metadata, name));
+            } else if ("!=".equals(peek())) {
+                index++;
+                String literal = parseLiteral();
+                return metadata -> {
+                    String value = getValue(metadata, name);
+                    return value != null && !literal.equals(value);
+                };
+            }
+            throw error("Expected '=', '!=' or 'IN'");
+        }
+
+        private String parseName() {
+            String token = peek();
+            if (token == null || !isNameChar(token.charAt(0))) {
+                throw error("Expected a property name");
+            }
+            index++;
+            return token;
+        }
+
+        private String parseLiteral() {
+            String token = peek();
+            if (token == null || token.charAt(0) != '\'') {
+                throw error("Expected a quoted value");
+            }
+            index++;
+            return token.substring(1);
+        }
+    }
+}
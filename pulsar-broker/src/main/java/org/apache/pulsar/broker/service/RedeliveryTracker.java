@@ -26,6 +26,13 @@ public interface RedeliveryTracker {
 
     int incrementAndGetRedeliveryCount(Position position);
 
+    /**
+     * Increments the redelivery count of a position, only if it is tracked.
+     *
+     * @return the new redelivery count, or 0 if the position is not tracked
+     */
+    int incrementRedeliveryCountIfPresent(long ledgerId, long entryId);
+
     int getRedeliveryCount(Position position);
 
     void remove(Position position);
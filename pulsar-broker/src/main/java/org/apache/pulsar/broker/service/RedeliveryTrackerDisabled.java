@@ -33,6 +33,11 @@ public class RedeliveryTrackerDisabled implements RedeliveryTracker {
         return 0;
     }
 
+    @Override
+    public int incrementRedeliveryCountIfPresent(long ledgerId, long entryId) {
+        return 0;
+    }
+
     @Override
     public int getRedeliveryCount(Position position) {
         return 0;
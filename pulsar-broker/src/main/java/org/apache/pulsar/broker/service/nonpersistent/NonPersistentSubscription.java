@@ -29,13 +29,16 @@ import org.apache.bookkeeper.mledger.Entry;
 import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
 import org.apache.pulsar.broker.service.BrokerServiceException;
+import org.apache.pulsar.broker.service.BrokerServiceException.NotAllowedException;
 import org.apache.pulsar.broker.service.BrokerServiceException.ServerMetadataException;
 import org.apache.pulsar.broker.service.BrokerServiceException.SubscriptionBusyException;
 import org.apache.pulsar.broker.service.BrokerServiceException.SubscriptionFencedException;
 import org.apache.pulsar.broker.service.Consumer;
 import org.apache.pulsar.broker.service.Dispatcher;
+import org.apache.pulsar.broker.service.ConsistentHashingStickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.HashRangeAutoSplitStickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.HashRangeExclusiveStickyKeyConsumerSelector;
+import org.apache.pulsar.broker.service.MessageFilter;
 import org.apache.pulsar.broker.service.Subscription;
 import org.apache.pulsar.broker.service.Topic;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandAck.AckType;
@@ -90,6 +93,13 @@ public class NonPersistentSubscription implements Subscription {
             throw new SubscriptionFencedException("Subscription is fenced");
         }
 
+        MessageFilter messageFilter;
+        try {
+            messageFilter = MessageFilter.fromConsumerProperties(consumer.getMetadata());
+        } catch (IllegalArgumentException e) {
+            throw new NotAllowedException(e.getMessage());
+        }
+
         if (dispatcher == null || !dispatcher.isConsumerConnected()) {
             Dispatcher previousDispatcher = null;
 
@@ -128,6 +138,12 @@ public class NonPersistentSubscription implements Subscription {
                                 dispatcher = new NonPersistentStickyKeyDispatcherMultipleConsumers(topic, this,
                                         new HashRangeExclusiveStickyKeyConsumerSelector());
                                 break;
+                            case CONSISTENT_HASHING:
+                                dispatcher = new NonPersistentStickyKeyDispatcherMultipleConsumers(topic, this,
+                                        new ConsistentHashingStickyKeyConsumerSelector(topic.getBrokerService()
+                                                .pulsar().getConfiguration()
+                                                .getSubscriptionKeySharedConsistentHashingReplicaPoints()));
+                                break;
                             case AUTO_SPLIT:
                                 dispatcher = new NonPersistentStickyKeyDispatcherMultipleConsumers(topic, this,
                                         new HashRangeAutoSplitStickyKeyConsumerSelector());
@@ -155,10 +171,14 @@ public class NonPersistentSubscription implements Subscription {
                     return null;
                 });
             }
+            dispatcher.setMessageFilter(messageFilter);
         } else {
             if (consumer.subType() != dispatcher.getType()) {
                 throw new SubscriptionBusyException("Subscription is of different type");
             }
+            if (!MessageFilter.isSameFilter(messageFilter, dispatcher.getMessageFilter())) {
+                throw new SubscriptionBusyException("Subscription has a different message filter");
+            }
         }
 
         dispatcher.addConsumer(consumer);
@@ -386,6 +406,8 @@ public class NonPersistentSubscription implements Subscription {
                 subStats.msgThroughputOut += consumerStats.msgThroughputOut;
                 subStats.msgRateRedeliver += consumerStats.msgRateRedeliver;
             });
+            subStats.msgOutCounter = dispatcher.getMsgOutCounter();
+            subStats.msgFilteredCounter = dispatcher.getMsgFilteredCounter();
         }
 
         subStats.type = getType();
@@ -47,6 +47,8 @@ public class CompactorSubscription extends PersistentSubscription {
 
         // Avoid compactor cursor to cause entries to be cached
         this.cursor.setAlwaysInactive();
+        // Compaction reads the whole topic once, it should not affect which entries are kept in cache
+        this.cursor.setScanReads(true);
 
         Map<String, Long> properties = cursor.getProperties();
         if (properties.containsKey(Compactor.COMPACTED_TOPIC_LEDGER_PROPERTY)) {
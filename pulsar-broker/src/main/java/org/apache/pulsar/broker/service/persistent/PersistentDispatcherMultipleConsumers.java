@@ -380,15 +380,15 @@ public class PersistentDispatcherMultipleConsumers extends AbstractDispatcherMul
             this.delayedDeliveryTracker = Optional.empty();
         }
 
-        if (delayedDeliveryTracker.isPresent()) {
-            delayedDeliveryTracker.get().close();
-        }
+        // Wait for the tracker to release its storage, which may be deleted or reopened once the dispatcher is closed
+        CompletableFuture<Void> closeTrackerFuture = delayedDeliveryTracker.map(DelayedDeliveryTracker::closeAsync)
+                .orElse(CompletableFuture.completedFuture(null));
 
         if (dispatchRateLimiter.isPresent()) {
             dispatchRateLimiter.get().close();
         }
 
-        return disconnectAllConsumers();
+        return disconnectAllConsumers().thenCombine(closeTrackerFuture, (v1, v2) -> null);
     }
 
     @Override
@@ -704,6 +704,10 @@ public class PersistentDispatcherMultipleConsumers extends AbstractDispatcherMul
         return name;
     }
 
+    public ManagedCursor getCursor() {
+        return cursor;
+    }
+
     @Override
     public RedeliveryTracker getRedeliveryTracker() {
         return redeliveryTracker;
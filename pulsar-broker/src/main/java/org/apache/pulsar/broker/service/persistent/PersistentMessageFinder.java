@@ -18,11 +18,14 @@
  */
 package org.apache.pulsar.broker.service.persistent;
 
+import io.netty.buffer.ByteBuf;
 import org.apache.bookkeeper.mledger.AsyncCallbacks;
 import org.apache.bookkeeper.mledger.ManagedCursor;
 import org.apache.bookkeeper.mledger.ManagedLedgerException;
 import org.apache.bookkeeper.mledger.Position;
 import org.apache.pulsar.client.impl.MessageImpl;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
+import org.apache.pulsar.common.protocol.Commands;
 import org.apache.pulsar.common.util.Codec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +58,18 @@ public class PersistentMessageFinder implements AsyncCallbacks.FindEntryCallback
         this.subName = Codec.decode(cursor.getName());
     }
 
+    /**
+     * Get the publish time of an entry, used to build the time index of the managed ledger.
+     */
+    public static long getEntryPublishTime(ByteBuf data) {
+        MessageMetadata msgMetadata = Commands.parseMessageMetadata(data);
+        try {
+            return msgMetadata.getPublishTime();
+        } finally {
+            msgMetadata.recycle();
+        }
+    }
+
     public void findMessages(final long timestamp, AsyncCallbacks.FindEntryCallback callback) {
         this.timestamp = timestamp;
         if (messageFindInProgressUpdater.compareAndSet(this, FALSE, TRUE)) {
@@ -76,7 +91,7 @@ public class PersistentMessageFinder implements AsyncCallbacks.FindEntryCallback
                     }
                 }
                 return false;
-            }, this, callback);
+            }, timestamp, this, callback);
         } else {
             if (log.isDebugEnabled()) {
                 log.debug("[{}][{}] Ignore message position find scheduled task, last find is still running", topicName,
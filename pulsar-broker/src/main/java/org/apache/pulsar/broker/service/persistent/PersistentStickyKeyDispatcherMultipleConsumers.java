@@ -19,10 +19,9 @@
 package org.apache.pulsar.broker.service.persistent;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -36,7 +35,6 @@ import org.apache.pulsar.broker.service.SendMessageInfo;
 import org.apache.pulsar.broker.service.StickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.Subscription;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.SubType;
-import org.apache.pulsar.common.util.Murmur3_32Hash;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +42,9 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
 
     private final StickyKeyConsumerSelector selector;
 
+    // Consumer selected for each entry being dispatched, reused across reads
+    private Consumer[] entryConsumers = new Consumer[0];
+
     PersistentStickyKeyDispatcherMultipleConsumers(PersistentTopic topic, ManagedCursor cursor,
            Subscription subscription, StickyKeyConsumerSelector selector) {
         super(topic, cursor, subscription);
@@ -71,35 +72,70 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
             readMoreEntries();
             return;
         }
-        final Map<Integer, List<Entry>> groupedEntries = new HashMap<>();
-        for (Entry entry : entries) {
-            int key = Murmur3_32Hash.getInstance().makeHash(peekStickyKey(entry.getDataBuffer()));
-            groupedEntries.putIfAbsent(key, new ArrayList<>());
-            groupedEntries.get(key).add(entry);
+
+        // Select the consumer of each entry, then send the entries of each consumer at once. The consumers are few,
+        // so grouping by scanning the entries once per consumer is cheaper than building a map.
+        final int entriesCount = entries.size();
+        if (entryConsumers.length < entriesCount) {
+            entryConsumers = new Consumer[entriesCount];
         }
-        final Iterator<Map.Entry<Integer, List<Entry>>> iterator = groupedEntries.entrySet().iterator();
-        AtomicInteger keyNumbers = new AtomicInteger(groupedEntries.size());
-        while (iterator.hasNext() && totalAvailablePermits > 0 && isAtleastOneConsumerAvailable()) {
-            final Map.Entry<Integer, List<Entry>> entriesWithSameKey = iterator.next();
+        for (int i = 0; i < entriesCount; i++) {
+            int keyHash = peekStickyKeyHash(entries.get(i).getDataBuffer());
             //TODO: None key policy
-            Consumer consumer = selector.select(entriesWithSameKey.getKey());
+            Consumer consumer = selector.select(keyHash);
             if (consumer == null) {
                 // Do nothing, cursor will be rewind at reconnection
                 log.info("[{}] rewind because no available consumer found for key {} from total {}", name,
-                        entriesWithSameKey.getKey(), consumerList.size());
-                entriesWithSameKey.getValue().forEach(Entry::release);
+                        keyHash, consumerList.size());
+                Arrays.fill(entryConsumers, 0, i, null);
+                entries.forEach(Entry::release);
                 cursor.rewind();
                 return;
             }
+            entryConsumers[i] = consumer;
+        }
 
-            int messagesForC = Math.min(entriesWithSameKey.getValue().size(), consumer.getAvailablePermits());
+        // Read more entries once all of them are sent, the extra count is released after the last send
+        AtomicInteger pendingSends = new AtomicInteger(1);
+        int laterReplay = 0;
+        for (int i = 0; i < entriesCount; i++) {
+            final Consumer consumer = entryConsumers[i];
+            if (consumer == null) {
+                // Already sent with the entries of its consumer
+                continue;
+            }
+
+            int entriesForC = 0;
+            for (int j = i; j < entriesCount; j++) {
+                if (entryConsumers[j] == consumer) {
+                    entriesForC++;
+                }
+            }
+            int messagesForC = totalAvailablePermits > 0 && isAtleastOneConsumerAvailable()
+                    ? Math.min(entriesForC, consumer.getAvailablePermits()) : 0;
             if (log.isDebugEnabled()) {
-                log.debug("[{}] select consumer {} for key {} with messages num {}, read type is {}",
-                        name, consumer.consumerName(), entriesWithSameKey.getKey(), messagesForC, readType);
+                log.debug("[{}] select consumer {} with messages num {}, read type is {}",
+                        name, consumer.consumerName(), messagesForC, readType);
             }
+
+            List<Entry> subList = messagesForC > 0 ? new ArrayList<>(messagesForC) : Collections.emptyList();
+            for (int j = i; j < entriesCount; j++) {
+                if (entryConsumers[j] == consumer) {
+                    entryConsumers[j] = null;
+                    Entry entry = entries.get(j);
+                    if (subList.size() < messagesForC) {
+                        subList.add(entry);
+                    } else {
+                        // No permits left for these entries
+                        messagesToRedeliver.add(entry.getLedgerId(), entry.getEntryId());
+                        entry.release();
+                        laterReplay++;
+                    }
+                }
+            }
+
             if (messagesForC > 0) {
                 // remove positions first from replay list first : sendMessages recycles entries
-                List<Entry> subList = new ArrayList<>(entriesWithSameKey.getValue().subList(0, messagesForC));
                 if (readType == ReadType.Replay) {
                     subList.forEach(entry -> messagesToRedeliver.remove(entry.getLedgerId(), entry.getEntryId()));
                 }
@@ -108,21 +144,17 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
                 EntryBatchSizes batchSizes = EntryBatchSizes.get(subList.size());
                 filterEntriesForConsumer(subList, batchSizes, sendMessageInfo);
 
+                pendingSends.incrementAndGet();
                 consumer.sendMessages(subList, batchSizes, sendMessageInfo.getTotalMessages(),
                         sendMessageInfo.getTotalBytes(), getRedeliveryTracker()).addListener(future -> {
-                            if (future.isSuccess() && keyNumbers.decrementAndGet() == 0) {
+                            if (future.isSuccess() && pendingSends.decrementAndGet() == 0) {
                                 readMoreEntries();
                             }
                 });
-                entriesWithSameKey.getValue().removeAll(subList);
 
                 totalAvailablePermits -= sendMessageInfo.getTotalMessages();
                 totalMessagesSent += sendMessageInfo.getTotalMessages();
                 totalBytesSent += sendMessageInfo.getTotalBytes();
-
-                if (entriesWithSameKey.getValue().size() == 0) {
-                    iterator.remove();
-                }
             }
         }
 
@@ -137,19 +169,13 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
             }
         }
 
-        if (groupedEntries.size() > 0) {
-            int laterReplay = 0;
-            for (List<Entry> entryList : groupedEntries.values()) {
-                laterReplay += entryList.size();
-                entryList.forEach(entry -> {
-                    messagesToRedeliver.add(entry.getLedgerId(), entry.getEntryId());
-                    entry.release();
-                });
-            }
+        if (laterReplay > 0) {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] No consumers found with available permits, storing {} positions for later replay", name,
                         laterReplay);
             }
+        } else if (pendingSends.decrementAndGet() == 0) {
+            readMoreEntries();
         }
     }
 
@@ -49,14 +49,17 @@ import org.apache.bookkeeper.mledger.impl.ManagedCursorImpl;
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.pulsar.broker.service.BrokerServiceException;
+import org.apache.pulsar.broker.service.BrokerServiceException.NotAllowedException;
 import org.apache.pulsar.broker.service.BrokerServiceException.ServerMetadataException;
 import org.apache.pulsar.broker.service.BrokerServiceException.SubscriptionBusyException;
 import org.apache.pulsar.broker.service.BrokerServiceException.SubscriptionFencedException;
 import org.apache.pulsar.broker.service.BrokerServiceException.SubscriptionInvalidCursorPosition;
 import org.apache.pulsar.broker.service.Consumer;
 import org.apache.pulsar.broker.service.Dispatcher;
+import org.apache.pulsar.broker.service.ConsistentHashingStickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.HashRangeAutoSplitStickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.HashRangeExclusiveStickyKeyConsumerSelector;
+import org.apache.pulsar.broker.service.MessageFilter;
 import org.apache.pulsar.broker.service.Subscription;
 import org.apache.pulsar.broker.service.Topic;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandAck.AckType;
@@ -181,6 +184,13 @@ public class PersistentSubscription implements Subscription {
             throw new SubscriptionFencedException("Subscription is fenced");
         }
 
+        MessageFilter messageFilter;
+        try {
+            messageFilter = MessageFilter.fromConsumerProperties(consumer.getMetadata());
+        } catch (IllegalArgumentException e) {
+            throw new NotAllowedException(e.getMessage());
+        }
+
         if (dispatcher == null || !dispatcher.isConsumerConnected()) {
             Dispatcher previousDispatcher = null;
 
@@ -220,6 +230,12 @@ public class PersistentSubscription implements Subscription {
                                 dispatcher = new PersistentStickyKeyDispatcherMultipleConsumers(topic, cursor, this,
                                         new HashRangeExclusiveStickyKeyConsumerSelector());
                                 break;
+                            case CONSISTENT_HASHING:
+                                dispatcher = new PersistentStickyKeyDispatcherMultipleConsumers(topic, cursor, this,
+                                        new ConsistentHashingStickyKeyConsumerSelector(topic.getBrokerService()
+                                                .pulsar().getConfiguration()
+                                                .getSubscriptionKeySharedConsistentHashingReplicaPoints()));
+                                break;
                             case AUTO_SPLIT:
                                 dispatcher = new PersistentStickyKeyDispatcherMultipleConsumers(topic, cursor, this,
                                         new HashRangeAutoSplitStickyKeyConsumerSelector());
@@ -247,10 +263,14 @@ public class PersistentSubscription implements Subscription {
                     return null;
                 });
             }
+            dispatcher.setMessageFilter(messageFilter);
         } else {
             if (consumer.subType() != dispatcher.getType()) {
                 throw new SubscriptionBusyException("Subscription is of different type");
             }
+            if (!MessageFilter.isSameFilter(messageFilter, dispatcher.getMessageFilter())) {
+                throw new SubscriptionBusyException("Subscription has a different message filter");
+            }
         }
 
         dispatcher.addConsumer(consumer);
@@ -854,7 +874,12 @@ public class PersistentSubscription implements Subscription {
         // cursor close handles pending delete (ack) operations
         this.close().thenCompose(v -> topic.unsubscribe(subName)).thenAccept(v -> {
             synchronized (this) {
-                (dispatcher != null ? dispatcher.close() : CompletableFuture.completedFuture(null)).thenRun(() -> {
+                CompletableFuture<Void> closeDispatcherFuture = dispatcher != null ? dispatcher.close()
+                        : CompletableFuture.completedFuture(null);
+                // Delete the indexes persisted by the delayed delivery tracker, so that a new subscription with the
+                // same name doesn't recover them. The dispatcher close waits for the tracker to close their storage.
+                closeDispatcherFuture.thenCompose(v1 -> topic.getBrokerService().getDelayedDeliveryTrackerFactory()
+                        .deleteTrackerState(topic, cursor.getName())).thenRun(() -> {
                     log.info("[{}][{}] Successfully deleted subscription", topicName, subName);
                     deleteFuture.complete(null);
                 }).exceptionally(ex -> {
@@ -945,6 +970,8 @@ public class PersistentSubscription implements Subscription {
                 subStats.msgRateRedeliver += consumerStats.msgRateRedeliver;
                 subStats.unackedMessages += consumerStats.unackedMessages;
             });
+            subStats.msgOutCounter = dispatcher.getMsgOutCounter();
+            subStats.msgFilteredCounter = dispatcher.getMsgFilteredCounter();
         }
 
         subStats.type = getType();
@@ -18,14 +18,19 @@
  */
 package org.apache.pulsar.broker.stats.metrics;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.bookkeeper.mledger.ManagedLedgerFactoryMXBean;
 import org.apache.bookkeeper.mledger.impl.EntryCacheImpl;
+import org.apache.bookkeeper.mledger.impl.ManagedLedgerFactoryMBeanImpl;
 import org.apache.pulsar.broker.PulsarService;
 import org.apache.pulsar.common.stats.Metrics;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import io.netty.buffer.PoolArenaMetric;
 import io.netty.buffer.PoolChunkListMetric;
@@ -34,6 +39,9 @@ import io.netty.buffer.PooledByteBufAllocator;
 
 public class ManagedLedgerCacheMetrics extends AbstractMetrics {
 
+    private static final double[] METADATA_BATCH_SIZE_BUCKETS = Arrays
+            .stream(ManagedLedgerFactoryMBeanImpl.METADATA_BATCH_SIZE_BUCKETS).asDoubleStream().toArray();
+
     private List<Metrics> metrics;
     public ManagedLedgerCacheMetrics(PulsarService pulsar) {
         super(pulsar);
@@ -56,6 +64,29 @@ public class ManagedLedgerCacheMetrics extends AbstractMetrics {
         m.put("brk_ml_cache_misses_rate", mlCacheStats.getCacheMissesRate());
         m.put("brk_ml_cache_hits_throughput", mlCacheStats.getCacheHitsThroughput());
         m.put("brk_ml_cache_misses_throughput", mlCacheStats.getCacheMissesThroughput());
+        m.put("brk_ml_cache_deduplicated_reads_rate", mlCacheStats.getDeduplicatedReadsRate());
+        m.put("brk_ml_cache_deduplicated_reads_throughput", mlCacheStats.getDeduplicatedReadsThroughput());
+        m.put("brk_ml_read_ahead_used_size", mlCacheStats.getReadAheadUsedSize());
+        m.put("brk_ml_read_ahead_hits_rate", mlCacheStats.getReadAheadHitsRate());
+        m.put("brk_ml_read_ahead_hits_throughput", mlCacheStats.getReadAheadHitsThroughput());
+        m.put("brk_ml_disk_cache_used_size", mlCacheStats.getDiskCacheUsedSize());
+        m.put("brk_ml_disk_cache_hits_rate", mlCacheStats.getDiskCacheHitsRate());
+        m.put("brk_ml_disk_cache_hits_throughput", mlCacheStats.getDiskCacheHitsThroughput());
+        m.put("brk_ml_cache_inserts_rejected_rate", mlCacheStats.getCacheInsertsRejectedRate());
+        m.put("brk_ml_cache_max_overshoot_size", mlCacheStats.getCacheMaxOvershootSize());
+        m.put("brk_ml_cache_eviction_time_avg", mlCacheStats.getCacheEvictionTimeAverageUsec() / 1000.0);
+
+        Map<String, Double> evictionTimeBuckets = Maps.newHashMap();
+        populateBucketEntries(evictionTimeBuckets, "brk_ml_cache_eviction_time", ENTRY_LATENCY_BUCKETS_MS,
+                mlCacheStats.getCacheEvictionTimeBuckets());
+        evictionTimeBuckets.forEach(m::put);
+
+        m.put("brk_ml_metadata_batches_rate", mlCacheStats.getMetadataBatchesRate());
+        m.put("brk_ml_metadata_ops_saved_rate", mlCacheStats.getMetadataOpsSavedRate());
+        Map<String, Double> batchSizeBuckets = Maps.newHashMap();
+        populateBucketEntries(batchSizeBuckets, "brk_ml_metadata_batch_size", METADATA_BATCH_SIZE_BUCKETS,
+                mlCacheStats.getMetadataBatchSizeBuckets());
+        batchSizeBuckets.forEach(m::put);
 
         PooledByteBufAllocator allocator = EntryCacheImpl.ALLOCATOR;
         long activeAllocations = 0;
@@ -92,8 +123,18 @@ public class ManagedLedgerCacheMetrics extends AbstractMetrics {
         m.put("brk_ml_cache_pool_active_allocations_normal", activeAllocationsNormal);
         m.put("brk_ml_cache_pool_active_allocations_huge", activeAllocationsHuge);
 
+        // Hit rate of the configured eviction policy, to compare policies across brokers
+        Metrics policyMetrics = createMetrics(
+                Collections.singletonMap("policy", mlCacheStats.getCacheEvictionPolicy()));
+        policyMetrics.put("brk_ml_cache_policy_hits_rate", mlCacheStats.getCacheHitsRate());
+        policyMetrics.put("brk_ml_cache_policy_misses_rate", mlCacheStats.getCacheMissesRate());
+        policyMetrics.put("brk_ml_cache_policy_admission_rejected_rate",
+                mlCacheStats.getCacheAdmissionRejectedRate());
+        policyMetrics.put("brk_ml_cache_policy_scan_reads_rate", mlCacheStats.getCacheScanReadsRate());
+
         metrics.clear();
         metrics.add(m);
+        metrics.add(policyMetrics);
         return metrics;
 
     }
@@ -85,6 +85,8 @@ public class ManagedLedgerMetrics extends AbstractMetrics {
 
                 populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_NumberOfMessagesInBacklog",
                         (double) lStats.getNumberOfMessagesInBacklog());
+                populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_BacklogSize",
+                        (double) lStats.getBacklogSize());
 
                 populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_ReadEntriesBytesRate",
                         lStats.getReadEntriesBytesRate());
@@ -103,6 +105,27 @@ public class ManagedLedgerMetrics extends AbstractMetrics {
                 populateBucketEntries(tempAggregatedMetricsMap, "brk_ml_LedgerSwitchLatencyBuckets",
                         ENTRY_LATENCY_BUCKETS_MS, lStats.getLedgerSwitchLatencyBuckets());
 
+                populateBucketEntries(tempAggregatedMetricsMap, "brk_ml_LedgerRolloverStallBuckets",
+                        ENTRY_LATENCY_BUCKETS_MS, lStats.getLedgerRolloverStallBuckets());
+
+                populateBucketEntries(tempAggregatedMetricsMap, "brk_ml_AddEntryQueueLatencyBuckets",
+                        ENTRY_LATENCY_BUCKETS_MS, lStats.getAddEntryQueueLatencyBuckets());
+
+                populateBucketEntries(tempAggregatedMetricsMap, "brk_ml_AddEntryBookieLatencyBuckets",
+                        ENTRY_LATENCY_BUCKETS_MS, lStats.getAddEntryBookieLatencyBuckets());
+
+                populateBucketEntries(tempAggregatedMetricsMap, "brk_ml_AddEntryCallbackLatencyBuckets",
+                        ENTRY_LATENCY_BUCKETS_MS, lStats.getAddEntryCallbackLatencyBuckets());
+
+                populateBucketEntries(tempAggregatedMetricsMap, "brk_ml_ReadEntriesQueueLatencyBuckets",
+                        ENTRY_LATENCY_BUCKETS_MS, lStats.getReadEntriesQueueLatencyBuckets());
+
+                populateBucketEntries(tempAggregatedMetricsMap, "brk_ml_ReadEntriesStorageLatencyBuckets",
+                        ENTRY_LATENCY_BUCKETS_MS, lStats.getReadEntriesStorageLatencyBuckets());
+
+                populateBucketEntries(tempAggregatedMetricsMap, "brk_ml_ReadEntriesCallbackLatencyBuckets",
+                        ENTRY_LATENCY_BUCKETS_MS, lStats.getReadEntriesCallbackLatencyBuckets());
+
                 populateBucketEntries(tempAggregatedMetricsMap, "brk_ml_EntrySizeBuckets", ENTRY_SIZE_BUCKETS_BYTES,
                         lStats.getEntrySizeBuckets());
                 populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_MarkDeleteRate", lStats.getMarkDeleteRate());
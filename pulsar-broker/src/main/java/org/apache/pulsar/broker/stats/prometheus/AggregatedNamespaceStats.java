@@ -45,6 +45,18 @@ public class AggregatedNamespaceStats {
     public StatsBuckets storageWriteLatencyBuckets = new StatsBuckets(
             ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
     public StatsBuckets entrySizeBuckets = new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_SIZE_BUCKETS_BYTES);
+    public StatsBuckets addEntryQueueLatencyBuckets = new StatsBuckets(
+            ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    public StatsBuckets addEntryBookieLatencyBuckets = new StatsBuckets(
+            ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    public StatsBuckets addEntryCallbackLatencyBuckets = new StatsBuckets(
+            ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    public StatsBuckets readEntriesQueueLatencyBuckets = new StatsBuckets(
+            ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    public StatsBuckets readEntriesStorageLatencyBuckets = new StatsBuckets(
+            ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    public StatsBuckets readEntriesCallbackLatencyBuckets = new StatsBuckets(
+            ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
 
     public double storageWriteRate;
     public double storageReadRate;
@@ -76,6 +88,12 @@ public class AggregatedNamespaceStats {
 
         storageWriteLatencyBuckets.addAll(stats.storageWriteLatencyBuckets);
         entrySizeBuckets.addAll(stats.entrySizeBuckets);
+        addEntryQueueLatencyBuckets.addAll(stats.addEntryQueueLatencyBuckets);
+        addEntryBookieLatencyBuckets.addAll(stats.addEntryBookieLatencyBuckets);
+        addEntryCallbackLatencyBuckets.addAll(stats.addEntryCallbackLatencyBuckets);
+        readEntriesQueueLatencyBuckets.addAll(stats.readEntriesQueueLatencyBuckets);
+        readEntriesStorageLatencyBuckets.addAll(stats.readEntriesStorageLatencyBuckets);
+        readEntriesCallbackLatencyBuckets.addAll(stats.readEntriesCallbackLatencyBuckets);
 
         stats.replicationStats.forEach((n, as) -> {
             AggregatedReplicationStats replStats =
@@ -127,5 +145,11 @@ public class AggregatedNamespaceStats {
 
         storageWriteLatencyBuckets.reset();
         entrySizeBuckets.reset();
+        addEntryQueueLatencyBuckets.reset();
+        addEntryBookieLatencyBuckets.reset();
+        addEntryCallbackLatencyBuckets.reset();
+        readEntriesQueueLatencyBuckets.reset();
+        readEntriesStorageLatencyBuckets.reset();
+        readEntriesCallbackLatencyBuckets.reset();
     }
 }
@@ -24,6 +24,7 @@ import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.bookkeeper.mledger.ManagedLedger;
 import org.apache.bookkeeper.mledger.impl.ManagedLedgerMBeanImpl;
+import org.apache.bookkeeper.mledger.util.StatsBuckets;
 import org.apache.pulsar.broker.PulsarService;
 import org.apache.pulsar.broker.service.Topic;
 import org.apache.pulsar.broker.service.persistent.PersistentTopic;
@@ -48,6 +49,8 @@ public class NamespaceStatsAggregator {
 
     public static void generate(PulsarService pulsar, boolean includeTopicMetrics, boolean includeConsumerMetrics, SimpleTextOutputStream stream) {
         String cluster = pulsar.getConfiguration().getClusterName();
+        boolean includeStageLatencyMetrics = pulsar.getConfiguration()
+                .isExposeTopicLevelStageLatencyMetricsInPrometheus();
         AggregatedNamespaceStats namespaceStats = localNamespaceStats.get();
         TopicStats.resetTypes();
         TopicStats topicStats = localTopicStats.get();
@@ -65,7 +68,8 @@ public class NamespaceStatsAggregator {
 
                     if (includeTopicMetrics) {
                         topicsCount.add(1);
-                        TopicStats.printTopicStats(stream, cluster, namespace, name, topicStats);
+                        TopicStats.printTopicStats(stream, cluster, namespace, name, topicStats,
+                                includeStageLatencyMetrics);
                     } else {
                         namespaceStats.updateStats(topicStats);
                     }
@@ -99,6 +103,18 @@ public class NamespaceStatsAggregator {
             stats.storageWriteLatencyBuckets.refresh();
             stats.entrySizeBuckets.addAll(mlStats.getInternalEntrySizeBuckets());
             stats.entrySizeBuckets.refresh();
+            stats.addEntryQueueLatencyBuckets.addAll(mlStats.getInternalAddEntryQueueLatencyBuckets());
+            stats.addEntryQueueLatencyBuckets.refresh();
+            stats.addEntryBookieLatencyBuckets.addAll(mlStats.getInternalAddEntryBookieLatencyBuckets());
+            stats.addEntryBookieLatencyBuckets.refresh();
+            stats.addEntryCallbackLatencyBuckets.addAll(mlStats.getInternalAddEntryCallbackLatencyBuckets());
+            stats.addEntryCallbackLatencyBuckets.refresh();
+            stats.readEntriesQueueLatencyBuckets.addAll(mlStats.getInternalReadEntriesQueueLatencyBuckets());
+            stats.readEntriesQueueLatencyBuckets.refresh();
+            stats.readEntriesStorageLatencyBuckets.addAll(mlStats.getInternalReadEntriesStorageLatencyBuckets());
+            stats.readEntriesStorageLatencyBuckets.refresh();
+            stats.readEntriesCallbackLatencyBuckets.addAll(mlStats.getInternalReadEntriesCallbackLatencyBuckets());
+            stats.readEntriesCallbackLatencyBuckets.refresh();
 
             stats.storageWriteRate = mlStats.getAddEntryMessagesRate();
             stats.storageReadRate = mlStats.getReadEntriesRate();
@@ -216,22 +232,19 @@ public class NamespaceStatsAggregator {
 
         metricWithRemoteCluster(stream, cluster, namespace, "pulsar_msg_backlog", "local", stats.msgBacklog);
 
-        stats.storageWriteLatencyBuckets.refresh();
-        long[] latencyBuckets = stats.storageWriteLatencyBuckets.getBuckets();
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_le_0_5", latencyBuckets[0]);
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_le_1", latencyBuckets[1]);
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_le_5", latencyBuckets[2]);
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_le_10", latencyBuckets[3]);
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_le_20", latencyBuckets[4]);
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_le_50", latencyBuckets[5]);
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_le_100", latencyBuckets[6]);
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_le_200", latencyBuckets[7]);
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_le_1000", latencyBuckets[8]);
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_overflow", latencyBuckets[9]);
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_count",
-                stats.storageWriteLatencyBuckets.getCount());
-        metric(stream, cluster, namespace, "pulsar_storage_write_latency_sum",
-                stats.storageWriteLatencyBuckets.getSum());
+        latencyMetric(stream, cluster, namespace, "pulsar_storage_write_latency", stats.storageWriteLatencyBuckets);
+        latencyMetric(stream, cluster, namespace, "pulsar_storage_write_queue_latency",
+                stats.addEntryQueueLatencyBuckets);
+        latencyMetric(stream, cluster, namespace, "pulsar_storage_write_bookie_latency",
+                stats.addEntryBookieLatencyBuckets);
+        latencyMetric(stream, cluster, namespace, "pulsar_storage_write_callback_latency",
+                stats.addEntryCallbackLatencyBuckets);
+        latencyMetric(stream, cluster, namespace, "pulsar_storage_read_queue_latency",
+                stats.readEntriesQueueLatencyBuckets);
+        latencyMetric(stream, cluster, namespace, "pulsar_storage_read_latency",
+                stats.readEntriesStorageLatencyBuckets);
+        latencyMetric(stream, cluster, namespace, "pulsar_storage_read_callback_latency",
+                stats.readEntriesCallbackLatencyBuckets);
 
         stats.entrySizeBuckets.refresh();
         long[] entrySizeBuckets = stats.entrySizeBuckets.getBuckets();
@@ -272,6 +285,24 @@ public class NamespaceStatsAggregator {
                 .write('\n');
     }
 
+    private static void latencyMetric(SimpleTextOutputStream stream, String cluster, String namespace, String name,
+                                      StatsBuckets latencyBuckets) {
+        latencyBuckets.refresh();
+        long[] buckets = latencyBuckets.getBuckets();
+        metric(stream, cluster, namespace, name + "_le_0_5", buckets[0]);
+        metric(stream, cluster, namespace, name + "_le_1", buckets[1]);
+        metric(stream, cluster, namespace, name + "_le_5", buckets[2]);
+        metric(stream, cluster, namespace, name + "_le_10", buckets[3]);
+        metric(stream, cluster, namespace, name + "_le_20", buckets[4]);
+        metric(stream, cluster, namespace, name + "_le_50", buckets[5]);
+        metric(stream, cluster, namespace, name + "_le_100", buckets[6]);
+        metric(stream, cluster, namespace, name + "_le_200", buckets[7]);
+        metric(stream, cluster, namespace, name + "_le_1000", buckets[8]);
+        metric(stream, cluster, namespace, name + "_overflow", buckets[9]);
+        metric(stream, cluster, namespace, name + "_count", latencyBuckets.getCount());
+        metric(stream, cluster, namespace, name + "_sum", latencyBuckets.getSum());
+    }
+
     private static void metric(SimpleTextOutputStream stream, String cluster, String namespace, String name,
                                long value) {
         TopicStats.metricType(stream, name);
@@ -47,6 +47,13 @@ class TopicStats {
 
     StatsBuckets storageWriteLatencyBuckets = new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
     StatsBuckets entrySizeBuckets = new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_SIZE_BUCKETS_BYTES);
+    StatsBuckets addEntryQueueLatencyBuckets = new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    StatsBuckets addEntryBookieLatencyBuckets = new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    StatsBuckets addEntryCallbackLatencyBuckets = new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    StatsBuckets readEntriesQueueLatencyBuckets = new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    StatsBuckets readEntriesStorageLatencyBuckets = new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
+    StatsBuckets readEntriesCallbackLatencyBuckets =
+            new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
     double storageWriteRate;
     double storageReadRate;
 
@@ -80,6 +87,12 @@ class TopicStats {
         subscriptionStats.clear();
         storageWriteLatencyBuckets.reset();
         entrySizeBuckets.reset();
+        addEntryQueueLatencyBuckets.reset();
+        addEntryBookieLatencyBuckets.reset();
+        addEntryCallbackLatencyBuckets.reset();
+        readEntriesQueueLatencyBuckets.reset();
+        readEntriesStorageLatencyBuckets.reset();
+        readEntriesCallbackLatencyBuckets.reset();
     }
 
     static void resetTypes() {
@@ -87,7 +100,7 @@ class TopicStats {
     }
 
     static void printTopicStats(SimpleTextOutputStream stream, String cluster, String namespace, String topic,
-                                TopicStats stats) {
+                                TopicStats stats, boolean includeStageLatencyMetrics) {
         metric(stream, cluster, namespace, topic, "pulsar_subscriptions_count", stats.subscriptionsCount);
         metric(stream, cluster, namespace, topic, "pulsar_producers_count", stats.producersCount);
         metric(stream, cluster, namespace, topic, "pulsar_consumers_count", stats.consumersCount);
@@ -103,21 +116,22 @@ class TopicStats {
         metric(stream, cluster, namespace, topic, "pulsar_storage_offloaded_size", stats.offloadedStorageUsed);
         metric(stream, cluster, namespace, topic, "pulsar_storage_backlog_quota_limit", stats.backlogQuotaLimit);
 
-        long[] latencyBuckets = stats.storageWriteLatencyBuckets.getBuckets();
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_le_0_5", latencyBuckets[0]);
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_le_1", latencyBuckets[1]);
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_le_5", latencyBuckets[2]);
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_le_10", latencyBuckets[3]);
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_le_20", latencyBuckets[4]);
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_le_50", latencyBuckets[5]);
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_le_100", latencyBuckets[6]);
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_le_200", latencyBuckets[7]);
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_le_1000", latencyBuckets[8]);
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_overflow", latencyBuckets[9]);
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_count",
-                stats.storageWriteLatencyBuckets.getCount());
-        metric(stream, cluster, namespace, topic, "pulsar_storage_write_latency_sum",
-                stats.storageWriteLatencyBuckets.getSum());
+        latencyMetric(stream, cluster, namespace, topic, "pulsar_storage_write_latency",
+                stats.storageWriteLatencyBuckets);
+        if (includeStageLatencyMetrics) {
+            latencyMetric(stream, cluster, namespace, topic, "pulsar_storage_write_queue_latency",
+                    stats.addEntryQueueLatencyBuckets);
+            latencyMetric(stream, cluster, namespace, topic, "pulsar_storage_write_bookie_latency",
+                    stats.addEntryBookieLatencyBuckets);
+            latencyMetric(stream, cluster, namespace, topic, "pulsar_storage_write_callback_latency",
+                    stats.addEntryCallbackLatencyBuckets);
+            latencyMetric(stream, cluster, namespace, topic, "pulsar_storage_read_queue_latency",
+                    stats.readEntriesQueueLatencyBuckets);
+            latencyMetric(stream, cluster, namespace, topic, "pulsar_storage_read_latency",
+                    stats.readEntriesStorageLatencyBuckets);
+            latencyMetric(stream, cluster, namespace, topic, "pulsar_storage_read_callback_latency",
+                    stats.readEntriesCallbackLatencyBuckets);
+        }
 
         long[] entrySizeBuckets = stats.entrySizeBuckets.getBuckets();
         metric(stream, cluster, namespace, topic, "pulsar_entry_size_le_128", entrySizeBuckets[0]);
@@ -180,6 +194,23 @@ class TopicStats {
 
     }
 
+    private static void latencyMetric(SimpleTextOutputStream stream, String cluster, String namespace,
+                                      String topic, String name, StatsBuckets latencyBuckets) {
+        long[] buckets = latencyBuckets.getBuckets();
+        metric(stream, cluster, namespace, topic, name + "_le_0_5", buckets[0]);
+        metric(stream, cluster, namespace, topic, name + "_le_1", buckets[1]);
+        metric(stream, cluster, namespace, topic, name + "_le_5", buckets[2]);
+        metric(stream, cluster, namespace, topic, name + "_le_10", buckets[3]);
+        metric(stream, cluster, namespace, topic, name + "_le_20", buckets[4]);
+        metric(stream, cluster, namespace, topic, name + "_le_50", buckets[5]);
+        metric(stream, cluster, namespace, topic, name + "_le_100", buckets[6]);
+        metric(stream, cluster, namespace, topic, name + "_le_200", buckets[7]);
+        metric(stream, cluster, namespace, topic, name + "_le_1000", buckets[8]);
+        metric(stream, cluster, namespace, topic, name + "_overflow", buckets[9]);
+        metric(stream, cluster, namespace, topic, name + "_count", latencyBuckets.getCount());
+        metric(stream, cluster, namespace, topic, name + "_sum", latencyBuckets.getSum());
+    }
+
     private static void metric(SimpleTextOutputStream stream, String cluster, String namespace, String topic,
                                String name, double value) {
         metricType(stream, name);
@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.delayed;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.Sets;
+
+import io.netty.util.Timer;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SnapshotEntry;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SnapshotMetadata;
+import org.apache.pulsar.broker.delayed.proto.DelayedMessageIndexBucketSnapshotFormat.SnapshotSegment;
+import org.apache.pulsar.broker.service.persistent.PersistentDispatcherMultipleConsumers;
+import org.testng.annotations.Test;
+
+public class BucketDelayedDeliveryTrackerTest {
+
+    /**
+     * Snapshot storage keeping the entries in a list, with the list index as entry id.
+     */
+    private static class MockBucketSnapshotStorage implements BucketSnapshotStorage {
+
+        private final List<SnapshotEntry> entries = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<Optional<SnapshotMetadata>> readLastMetadata() {
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                if (entries.get(i).hasMetadata()) {
+                    return CompletableFuture.completedFuture(Optional.of(entries.get(i).getMetadata()));
+                }
+            }
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        @Override
+        public CompletableFuture<PositionImpl> appendSegment(SnapshotSegment segment) {
+            entries.add(SnapshotEntry.newBuilder().setSegment(segment).build());
+            return CompletableFuture.completedFuture(PositionImpl.get(0, entries.size() - 1));
+        }
+
+        @Override
+        public CompletableFuture<Void> appendMetadata(SnapshotMetadata metadata) {
+            entries.add(SnapshotEntry.newBuilder().setMetadata(metadata).build());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<SnapshotSegment> readSegment(long ledgerId, long entryId) {
+            return CompletableFuture.completedFuture(entries.get((int) entryId).getSegment());
+        }
+
+        @Override
+        public CompletableFuture<Void> close() {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    @Test
+    public void testMessagesScheduledAcrossPersistedBuckets() throws Exception {
+        PersistentDispatcherMultipleConsumers dispatcher = mock(PersistentDispatcherMultipleConsumers.class);
+        Timer timer = mock(Timer.class);
+
+        AtomicLong clockTime = new AtomicLong();
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(x -> clockTime.get());
+
+        MockBucketSnapshotStorage storage = new MockBucketSnapshotStorage();
+        BucketDelayedDeliveryTracker tracker = new BucketDelayedDeliveryTracker(dispatcher, timer, 1, clock,
+                storage, 100, 3);
+
+        assertFalse(tracker.hasMessageAvailable());
+
+        // Due in the current time step, kept in memory
+        assertTrue(tracker.addMessage(1, 1, 50));
+        // Due in later buckets, persisted once there are 3 of them
+        assertTrue(tracker.addMessage(1, 2, 250));
+        assertTrue(tracker.addMessage(1, 3, 350));
+        assertTrue(tracker.addMessage(1, 4, 450));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 4);
+        // One segment per bucket, then the metadata
+        assertEquals(storage.entries.size(), 4);
+        assertEquals(storage.readLastMetadata().get().get().getBucketsCount(), 3);
+
+        assertFalse(tracker.hasMessageAvailable());
+        assertEquals(tracker.getScheduledMessages(10), Collections.emptySet());
+
+        clockTime.set(150);
+        assertTrue(tracker.hasMessageAvailable());
+        assertEquals(tracker.getScheduledMessages(10), Sets.newHashSet(new PositionImpl(1, 1)));
+        // The next bucket is loaded one time step before it starts
+        assertEquals(storage.readLastMetadata().get().get().getBucketsCount(), 2);
+
+        clockTime.set(260);
+        assertEquals(tracker.getScheduledMessages(10), Sets.newHashSet(new PositionImpl(1, 2)));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 2);
+
+        clockTime.set(1000);
+        assertEquals(tracker.getScheduledMessages(10),
+                Sets.newHashSet(new PositionImpl(1, 3), new PositionImpl(1, 4)));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 0);
+        assertFalse(tracker.hasMessageAvailable());
+        assertEquals(storage.readLastMetadata().get().get().getBucketsCount(), 0);
+
+        // Message is rejected by tracker since it's already ready to send
+        assertFalse(tracker.addMessage(1, 5, 1000));
+
+        tracker.close();
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        PersistentDispatcherMultipleConsumers dispatcher = mock(PersistentDispatcherMultipleConsumers.class);
+        Timer timer = mock(Timer.class);
+
+        AtomicLong clockTime = new AtomicLong();
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(x -> clockTime.get());
+
+        MockBucketSnapshotStorage storage = new MockBucketSnapshotStorage();
+        BucketDelayedDeliveryTracker tracker = new BucketDelayedDeliveryTracker(dispatcher, timer, 1, clock,
+                storage, 100, 2);
+        assertTrue(tracker.addMessage(1, 1, 350));
+        assertTrue(tracker.addMessage(1, 2, 450));
+        assertTrue(tracker.addMessage(1, 3, 550));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 3);
+        tracker.close();
+
+        // The persisted indexes are recovered, the other one is lost
+        tracker = new BucketDelayedDeliveryTracker(dispatcher, timer, 1, clock, storage, 100, 2);
+        assertEquals(tracker.getNumberOfDelayedMessages(), 2);
+
+        // The dispatcher reads the messages again, only the one that was not persisted gets tracked
+        assertTrue(tracker.addMessage(1, 1, 350));
+        assertTrue(tracker.addMessage(1, 2, 450));
+        assertTrue(tracker.addMessage(1, 3, 550));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 3);
+
+        clockTime.set(1000);
+        assertTrue(tracker.hasMessageAvailable());
+        assertEquals(tracker.getScheduledMessages(10),
+                Sets.newHashSet(new PositionImpl(1, 1), new PositionImpl(1, 2), new PositionImpl(1, 3)));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 0);
+        tracker.close();
+    }
+
+    @Test
+    public void testCloseWaitsForStorage() throws Exception {
+        PersistentDispatcherMultipleConsumers dispatcher = mock(PersistentDispatcherMultipleConsumers.class);
+        CompletableFuture<Void> storageCloseFuture = new CompletableFuture<>();
+        MockBucketSnapshotStorage storage = new MockBucketSnapshotStorage() {
+            @Override
+            public CompletableFuture<Void> close() {
+                return storageCloseFuture;
+            }
+        };
+        BucketDelayedDeliveryTracker tracker = new BucketDelayedDeliveryTracker(dispatcher, mock(Timer.class), 1,
+                Clock.systemUTC(), storage, 100, 2);
+
+        CompletableFuture<Void> closeFuture = tracker.closeAsync();
+        assertFalse(closeFuture.isDone());
+
+        // Failures to close the storage are logged, the tracker is closed anyway
+        storageCloseFuture.completeExceptionally(new Exception("close failed"));
+        assertTrue(closeFuture.isDone());
+        assertFalse(closeFuture.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.broker.service.BrokerServiceException.ConsumerAssignException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Slf4j
+public class ConsistentHashingStickyKeyConsumerSelectorTest {
+
+    private static final int KEYS = 100_000;
+
+    private static Consumer mockConsumer(String name) {
+        Consumer consumer = mock(Consumer.class);
+        when(consumer.consumerName()).thenReturn(name);
+        return consumer;
+    }
+
+    @Test
+    public void testConsumerSelect() throws ConsumerAssignException {
+        ConsistentHashingStickyKeyConsumerSelector selector = new ConsistentHashingStickyKeyConsumerSelector(10);
+        String key1 = "anyKey";
+        Assert.assertNull(selector.select(key1.getBytes()));
+
+        Consumer consumer1 = mockConsumer("c1");
+        selector.addConsumer(consumer1);
+        Assert.assertEquals(selector.select(key1.getBytes()), consumer1);
+        Assert.assertEquals(selector.getRangeConsumer().size(), 10);
+
+        Consumer consumer2 = mockConsumer("c2");
+        selector.addConsumer(consumer2);
+        Assert.assertEquals(selector.getRangeConsumer().size(), 20);
+
+        // Keys are served by the consumer of the next point, wrapping around the ring
+        NavigableMap<Integer, List<Consumer>> ring = new TreeMap<>(selector.getRangeConsumer());
+        for (int hash = 0; hash < Integer.MAX_VALUE - (1 << 20); hash += 1 << 20) {
+            Map.Entry<Integer, List<Consumer>> ceiling = ring.ceilingEntry(hash);
+            Consumer expected = ceiling != null ? ceiling.getValue().get(0) : ring.firstEntry().getValue().get(0);
+            Assert.assertEquals(selector.select(hash), expected);
+        }
+
+        selector.removeConsumer(consumer1);
+        Assert.assertEquals(selector.getRangeConsumer().size(), 10);
+        Assert.assertEquals(selector.select(key1.getBytes()), consumer2);
+
+        selector.removeConsumer(consumer2);
+        Assert.assertTrue(selector.getRangeConsumer().isEmpty());
+        Assert.assertNull(selector.select(key1.getBytes()));
+    }
+
+    @Test
+    public void testConsumersWithSameName() throws ConsumerAssignException {
+        ConsistentHashingStickyKeyConsumerSelector selector = new ConsistentHashingStickyKeyConsumerSelector();
+        Consumer consumer1 = mockConsumer("same");
+        Consumer consumer2 = mockConsumer("same");
+        selector.addConsumer(consumer1);
+        selector.addConsumer(consumer2);
+
+        // Both consumers get points of their own
+        Map<Consumer, Integer> selected = countSelected(selector);
+        Assert.assertTrue(selected.getOrDefault(consumer1, 0) > KEYS / 10);
+        Assert.assertTrue(selected.getOrDefault(consumer2, 0) > KEYS / 10);
+
+        selector.removeConsumer(consumer1);
+        Assert.assertEquals(countSelected(selector).get(consumer2).intValue(), KEYS);
+    }
+
+    @Test
+    public void testReconnectedConsumerGetsSameKeys() throws ConsumerAssignException {
+        ConsistentHashingStickyKeyConsumerSelector selector = new ConsistentHashingStickyKeyConsumerSelector();
+        for (int i = 0; i < 4; i++) {
+            selector.addConsumer(mockConsumer("c" + i));
+        }
+        Consumer consumer = mockConsumer("reconnecting");
+        selector.addConsumer(consumer);
+        List<Consumer> before = selectAll(selector);
+
+        selector.removeConsumer(consumer);
+        Consumer reconnected = mockConsumer("reconnecting");
+        selector.addConsumer(reconnected);
+        List<Consumer> after = selectAll(selector);
+
+        for (int i = 0; i < KEYS; i++) {
+            Assert.assertSame(after.get(i), before.get(i) == consumer ? reconnected : before.get(i));
+        }
+    }
+
+    /**
+     * Compares the lookup cost and the ratio of keys moved on consumer changes with the auto split selector.
+     */
+    @Test
+    public void testKeyMovementComparedToAutoSplit() throws ConsumerAssignException {
+        final int consumers = 10;
+
+        StickyKeyConsumerSelector consistentHashing = new ConsistentHashingStickyKeyConsumerSelector();
+        StickyKeyConsumerSelector autoSplit = new HashRangeAutoSplitStickyKeyConsumerSelector();
+        Map<String, StickyKeyConsumerSelector> selectors = new HashMap<>();
+        selectors.put("consistent-hashing", consistentHashing);
+        selectors.put("auto-split", autoSplit);
+
+        Map<String, Double> addMovedRatios = new HashMap<>();
+        for (Map.Entry<String, StickyKeyConsumerSelector> entry : selectors.entrySet()) {
+            StickyKeyConsumerSelector selector = entry.getValue();
+            List<Consumer> added = new ArrayList<>();
+            for (int i = 0; i < consumers; i++) {
+                Consumer consumer = mockConsumer("consumer-" + i);
+                selector.addConsumer(consumer);
+                added.add(consumer);
+            }
+
+            long start = System.nanoTime();
+            List<Consumer> before = selectAll(selector);
+            long lookupNanos = (System.nanoTime() - start) / KEYS;
+
+            selector.addConsumer(mockConsumer("consumer-" + consumers));
+            double addMovedRatio = movedRatio(before, selectAll(selector));
+            addMovedRatios.put(entry.getKey(), addMovedRatio);
+
+            List<Consumer> beforeRemove = selectAll(selector);
+            selector.removeConsumer(added.get(consumers / 2));
+            double removeMovedRatio = movedRatio(beforeRemove, selectAll(selector));
+
+            log.info("{} selector with {} consumers: {} ns per lookup, {} of the keys moved on add, {} on remove",
+                    entry.getKey(), consumers, lookupNanos, addMovedRatio, removeMovedRatio);
+        }
+
+        // Only the keys taken by the new consumer move, about 1/(N+1) of them
+        Assert.assertTrue(addMovedRatios.get("consistent-hashing") < 2.0 / (consumers + 1));
+    }
+
+    private static List<Consumer> selectAll(StickyKeyConsumerSelector selector) {
+        List<Consumer> selected = new ArrayList<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            selected.add(selector.select(("key-" + i).getBytes()));
+        }
+        return selected;
+    }
+
+    private static Map<Consumer, Integer> countSelected(StickyKeyConsumerSelector selector) {
+        Map<Consumer, Integer> selected = new HashMap<>();
+        for (Consumer consumer : selectAll(selector)) {
+            selected.merge(consumer, 1, Integer::sum);
+        }
+        return selected;
+    }
+
+    private static double movedRatio(List<Consumer> before, List<Consumer> after) {
+        int moved = 0;
+        for (int i = 0; i < before.size(); i++) {
+            if (before.get(i) != after.get(i)) {
+                moved++;
+            }
+        }
+        return (double) moved / before.size();
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class HashRangePointsTest {
+
+    @Test
+    public void testSameAsRangeMap() {
+        Assert.assertTrue(HashRangePoints.EMPTY.isEmpty());
+        Assert.assertNull(HashRangePoints.EMPTY.ceiling(10));
+        Assert.assertNull(HashRangePoints.EMPTY.floor(10));
+
+        Random random = new Random(0);
+        TreeMap<Integer, Consumer> rangeMap = new TreeMap<>();
+        for (int i = 0; i < 20; i++) {
+            rangeMap.put(random.nextInt(1000), mock(Consumer.class));
+        }
+        HashRangePoints points = HashRangePoints.of(rangeMap);
+        Assert.assertFalse(points.isEmpty());
+
+        for (int slot = -1; slot <= 1001; slot++) {
+            Map.Entry<Integer, Consumer> ceiling = rangeMap.ceilingEntry(slot);
+            Map.Entry<Integer, Consumer> floor = rangeMap.floorEntry(slot);
+            Assert.assertSame(points.ceiling(slot), ceiling != null ? ceiling.getValue() : null);
+            Assert.assertSame(points.floor(slot), floor != null ? floor.getValue() : null);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Collections;
+
+import org.apache.pulsar.common.api.proto.PulsarApi.KeyValue;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
+import org.testng.annotations.Test;
+
+public class MessageFilterTest {
+
+    private static MessageMetadata metadata(String key, String... properties) {
+        MessageMetadata.Builder builder = MessageMetadata.newBuilder()
+                .setProducerName("producer")
+                .setSequenceId(1)
+                .setPublishTime(1);
+        if (key != null) {
+            builder.setPartitionKey(key);
+        }
+        for (int i = 0; i < properties.length; i += 2) {
+            builder.addProperties(KeyValue.newBuilder().setKey(properties[i]).setValue(properties[i + 1]).build());
+        }
+        MessageMetadata metadata = builder.build();
+        builder.recycle();
+        return metadata;
+    }
+
+    @Test
+    public void testComparisons() {
+        MessageMetadata metadata = metadata("key-1", "region", "eu", "priority", "high");
+
+        assertTrue(MessageFilter.compile("region = 'eu'").matches(metadata));
+        assertFalse(MessageFilter.compile("region = 'us'").matches(metadata));
+        assertTrue(MessageFilter.compile("region != 'us'").matches(metadata));
+        assertFalse(MessageFilter.compile("region != 'eu'").matches(metadata));
+        // A missing property is neither equal nor different to a value
+        assertFalse(MessageFilter.compile("missing = 'eu'").matches(metadata));
+        assertFalse(MessageFilter.compile("missing != 'eu'").matches(metadata));
+
+        assertTrue(MessageFilter.compile("priority IN ('high', 'urgent')").matches(metadata));
+        assertFalse(MessageFilter.compile("priority in ('low')").matches(metadata));
+
+        assertTrue(MessageFilter.compile("EXISTS priority").matches(metadata));
+        assertFalse(MessageFilter.compile("exists missing").matches(metadata));
+
+        assertTrue(MessageFilter.compile("__key__ = 'key-1'").matches(metadata));
+        assertFalse(MessageFilter.compile("__key__ = 'key-1'").matches(metadata(null)));
+    }
+
+    @Test
+    public void testCombinations() {
+        MessageFilter filter = MessageFilter
+                .compile("region = 'eu' AND (priority IN ('high', 'urgent') OR NOT EXISTS priority)");
+
+        assertTrue(filter.matches(metadata(null, "region", "eu", "priority", "high")));
+        assertTrue(filter.matches(metadata(null, "region", "eu")));
+        assertFalse(filter.matches(metadata(null, "region", "eu", "priority", "low")));
+        assertFalse(filter.matches(metadata(null, "region", "us", "priority", "high")));
+
+        // AND binds tighter than OR
+        filter = MessageFilter.compile("a = '1' OR b = '1' AND c = '1'");
+        assertTrue(filter.matches(metadata(null, "a", "1")));
+        assertFalse(filter.matches(metadata(null, "b", "1")));
+        assertTrue(filter.matches(metadata(null, "b", "1", "c", "1")));
+
+        assertTrue(MessageFilter.compile("name = 'it''s'").matches(metadata(null, "name", "it's")));
+    }
+
+    @Test
+    public void testBatchesAlwaysMatch() {
+        MessageMetadata.Builder builder = MessageMetadata.newBuilder()
+                .setProducerName("producer")
+                .setSequenceId(1)
+                .setPublishTime(1)
+                .setNumMessagesInBatch(10);
+        MessageMetadata metadata = builder.build();
+        builder.recycle();
+
+        assertTrue(MessageFilter.compile("region = 'eu'").matches(metadata));
+    }
+
+    @Test
+    public void testInvalidExpressions() {
+        String[] expressions = {
+                "", "region", "region = eu", "region = 'eu", "region = 'eu' AND", "(region = 'eu'",
+                "region = 'eu')", "region IN ()", "region ~ 'eu'", "NOT"
+        };
+        for (String expression : expressions) {
+            try {
+                MessageFilter.compile(expression);
+                fail("Should have failed to compile: " + expression);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testNestingAndLengthLimits() {
+        int depth = MessageFilter.MAX_NESTING_DEPTH;
+        String nots = String.join("", Collections.nCopies(depth, "NOT ")) + "EXISTS a";
+        MessageFilter.compile(nots);
+        String parens = String.join("", Collections.nCopies(depth, "(")) + "EXISTS a"
+                + String.join("", Collections.nCopies(depth, ")"));
+        MessageFilter.compile(parens);
+
+        String[] expressions = {
+                "NOT " + nots,
+                "(" + parens + ")",
+                String.join("", Collections.nCopies(100000, "NOT ")) + "EXISTS a",
+                String.join("", Collections.nCopies(100000, "(")),
+                String.join(" OR ", Collections.nCopies(1000, "EXISTS a"))
+        };
+        for (String expression : expressions) {
+            try {
+                MessageFilter.compile(expression);
+                fail("Should have failed to compile an expression of length " + expression.length());
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testFromConsumerProperties() {
+        assertNull(MessageFilter.fromConsumerProperties(Collections.emptyMap()));
+
+        MessageFilter filter = MessageFilter.fromConsumerProperties(
+                Collections.singletonMap(MessageFilter.CONSUMER_PROPERTY, "region = 'eu'"));
+        assertEquals(filter.getExpression(), "region = 'eu'");
+        assertTrue(MessageFilter.isSameFilter(filter, MessageFilter.compile("region = 'eu'")));
+        assertFalse(MessageFilter.isSameFilter(filter, null));
+        assertTrue(MessageFilter.isSameFilter(null, null));
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service.persistent;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Cleanup;
+
+import org.apache.bookkeeper.mledger.ManagedLedgerException.MetadataNotFoundException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactory;
+import org.apache.pulsar.broker.delayed.BucketDelayedDeliveryTrackerFactory;
+import org.apache.pulsar.broker.delayed.ManagedLedgerBucketSnapshotStorage;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerConsumerBase;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.common.naming.TopicName;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class BucketDelayedDeliveryTest extends ProducerConsumerBase {
+
+    @Override
+    @BeforeClass
+    public void setup() throws Exception {
+        conf.setDelayedDeliveryTrackerFactoryClassName(BucketDelayedDeliveryTrackerFactory.class.getName());
+        conf.setDelayedDeliveryTickTimeMillis(100);
+        conf.setDelayedDeliveryBucketTimeStepMillis(1000);
+        // Persist the indexes as soon as they are added
+        conf.setDelayedDeliveryBucketMaxUnpersistedIndexes(1);
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @Override
+    @AfterClass
+    public void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    private boolean snapshotLedgerExists(String name) throws Exception {
+        ManagedLedgerFactory factory = pulsar.getManagedLedgerFactory();
+        try {
+            factory.getManagedLedgerInfo(name);
+            return true;
+        } catch (MetadataNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void testDeleteAndRecreateSubscription() throws Exception {
+        String topic = "testDeleteAndRecreateSubscription-" + System.nanoTime();
+        String snapshotLedgerName = ManagedLedgerBucketSnapshotStorage.snapshotLedgerName(TopicName.get(topic),
+                "shared-sub");
+
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("shared-sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .subscribe();
+
+        @Cleanup
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .create();
+
+        for (int i = 0; i < 10; i++) {
+            producer.newMessage()
+                    .value("old-" + i)
+                    .deliverAfter(5, TimeUnit.SECONDS)
+                    .send();
+        }
+
+        assertTrue(retryStrategically(test -> {
+            try {
+                return snapshotLedgerExists(snapshotLedgerName);
+            } catch (Exception e) {
+                return false;
+            }
+        }, 10, 200));
+
+        consumer.unsubscribe();
+        assertFalse(snapshotLedgerExists(snapshotLedgerName));
+
+        // The new subscription starts after the old messages and doesn't recover the indexes of the deleted one
+        @Cleanup
+        Consumer<String> newConsumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("shared-sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .subscribe();
+
+        producer.newMessage()
+                .value("new")
+                .deliverAfter(1, TimeUnit.SECONDS)
+                .send();
+
+        Message<String> msg = newConsumer.receive(10, TimeUnit.SECONDS);
+        assertEquals(msg.getValue(), "new");
+        newConsumer.acknowledge(msg);
+
+        // Past the delivery time of the old messages
+        assertNull(newConsumer.receive(8, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDeleteTopic() throws Exception {
+        String topic = "persistent://public/default/testDeleteTopic-" + System.nanoTime();
+        String snapshotLedgerName = ManagedLedgerBucketSnapshotStorage.snapshotLedgerName(TopicName.get(topic),
+                "shared-sub");
+
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("shared-sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .subscribe();
+
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .create();
+
+        producer.newMessage()
+                .value("msg")
+                .deliverAfter(1, TimeUnit.HOURS)
+                .send();
+
+        assertTrue(retryStrategically(test -> {
+            try {
+                return snapshotLedgerExists(snapshotLedgerName);
+            } catch (Exception e) {
+                return false;
+            }
+        }, 10, 200));
+
+        producer.close();
+        consumer.close();
+        admin.topics().delete(topic);
+
+        assertFalse(snapshotLedgerExists(snapshotLedgerName));
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service.persistent;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Cleanup;
+
+import org.apache.pulsar.broker.service.MessageFilter;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerConsumerBase;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.common.policies.data.SubscriptionStats;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class MessageFilterDispatchTest extends ProducerConsumerBase {
+
+    @Override
+    @BeforeClass
+    public void setup() throws Exception {
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @Override
+    @AfterClass
+    public void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @Test
+    public void testFilteredMessagesAreAcknowledged() throws Exception {
+        String topic = "persistent://my-property/my-ns/testFilteredMessagesAreAcknowledged";
+
+        @Cleanup
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("filtered-sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .property(MessageFilter.CONSUMER_PROPERTY, "region = 'eu'")
+                .subscribe();
+
+        @Cleanup
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .enableBatching(false)
+                .create();
+
+        for (int i = 0; i < 10; i++) {
+            producer.newMessage()
+                    .value("msg-" + i)
+                    .property("region", i % 2 == 0 ? "eu" : "us")
+                    .send();
+        }
+
+        // Only the matching messages are dispatched
+        for (int i = 0; i < 10; i += 2) {
+            Message<String> msg = consumer.receive(5, TimeUnit.SECONDS);
+            assertEquals(msg.getValue(), "msg-" + i);
+            assertEquals(msg.getProperty("region"), "eu");
+            consumer.acknowledge(msg);
+        }
+        assertNull(consumer.receive(1, TimeUnit.SECONDS));
+
+        // The broker acknowledged the others, so the backlog drains
+        assertTrue(retryStrategically(test -> {
+            try {
+                return admin.topics().getStats(topic).subscriptions.get("filtered-sub").msgBacklog == 0;
+            } catch (Exception e) {
+                return false;
+            }
+        }, 10, 200));
+
+        SubscriptionStats stats = admin.topics().getStats(topic).subscriptions.get("filtered-sub");
+        assertEquals(stats.msgOutCounter, 5);
+        assertEquals(stats.msgFilteredCounter, 5);
+    }
+
+    @Test
+    public void testInvalidFilterIsRejected() throws Exception {
+        String topic = "persistent://my-property/my-ns/testInvalidFilterIsRejected";
+        String[] expressions = {
+                "region = 'eu",
+                String.join("", Collections.nCopies(100000, "NOT ")) + "EXISTS region",
+                String.join("", Collections.nCopies(100000, "("))
+        };
+
+        for (String expression : expressions) {
+            try {
+                pulsarClient.newConsumer(Schema.STRING)
+                        .topic(topic)
+                        .subscriptionName("invalid-sub")
+                        .property(MessageFilter.CONSUMER_PROPERTY, expression)
+                        .subscribe();
+                fail("Should have rejected the filter");
+            } catch (PulsarClientException e) {
+                // Expected
+            }
+        }
+
+        // The broker is still serving the topic
+        @Cleanup
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("invalid-sub")
+                .property(MessageFilter.CONSUMER_PROPERTY, "EXISTS region")
+                .subscribe();
+        assertTrue(consumer.isConnected());
+    }
+}
@@ -113,6 +113,44 @@ public class PrometheusMetricsTest extends BrokerTestBase {
         p2.close();
     }
 
+    @Test
+    public void testPerTopicStageLatencyStats() throws Exception {
+        Producer<byte[]> p1 = pulsarClient.newProducer().topic("persistent://my-property/use/my-ns/my-topic1").create();
+        Producer<byte[]> p2 = pulsarClient.newProducer().topic("persistent://my-property/use/my-ns/my-topic2").create();
+        for (int i = 0; i < 10; i++) {
+            String message = "my-message-" + i;
+            p1.send(message.getBytes());
+            p2.send(message.getBytes());
+        }
+
+        // The stage latencies are only exported at namespace level by default
+        ByteArrayOutputStream statsOut = new ByteArrayOutputStream();
+        PrometheusMetricsGenerator.generate(pulsar, true, false, statsOut);
+        Multimap<String, Metric> metrics = parseMetrics(new String(statsOut.toByteArray()));
+        assertEquals(metrics.get("pulsar_storage_write_latency_le_1").size(), 2);
+        assertEquals(metrics.get("pulsar_storage_write_bookie_latency_le_1").size(), 0);
+        assertEquals(metrics.get("pulsar_storage_read_callback_latency_le_1").size(), 0);
+
+        statsOut = new ByteArrayOutputStream();
+        PrometheusMetricsGenerator.generate(pulsar, false, false, statsOut);
+        metrics = parseMetrics(new String(statsOut.toByteArray()));
+        assertEquals(metrics.get("pulsar_storage_write_bookie_latency_le_1").size(), 1);
+
+        pulsar.getConfiguration().setExposeTopicLevelStageLatencyMetricsInPrometheus(true);
+        try {
+            statsOut = new ByteArrayOutputStream();
+            PrometheusMetricsGenerator.generate(pulsar, true, false, statsOut);
+            metrics = parseMetrics(new String(statsOut.toByteArray()));
+            assertEquals(metrics.get("pulsar_storage_write_bookie_latency_le_1").size(), 2);
+            assertEquals(metrics.get("pulsar_storage_read_callback_latency_le_1").size(), 2);
+        } finally {
+            pulsar.getConfiguration().setExposeTopicLevelStageLatencyMetricsInPrometheus(false);
+        }
+
+        p1.close();
+        p2.close();
+    }
+
     @Test
     public void testPerNamespaceStats() throws Exception {
         Producer<byte[]> p1 = pulsarClient.newProducer().topic("persistent://my-property/use/my-ns/my-topic1").create();
@@ -532,6 +532,14 @@ public interface ConsumerBuilder<T> extends Cloneable {
      * </pre>
      * Details about auto split hash range policy, please see {@link KeySharedPolicy.KeySharedPolicyAutoSplit}.
      *
+     * <p>Or
+     * <pre>
+     * client.newConsumer()
+     *          .keySharedPolicy(KeySharedPolicy.consistentHashing())
+     *          .subscribe();
+     * </pre>
+     * Details about consistent hashing policy, please see {@link KeySharedPolicy.KeySharedPolicyConsistentHashing}.
+     *
      * @param keySharedPolicy The {@link KeySharedPolicy} want to specify
      */
     ConsumerBuilder<T> keySharedPolicy(KeySharedPolicy keySharedPolicy);
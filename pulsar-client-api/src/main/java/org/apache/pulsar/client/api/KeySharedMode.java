@@ -32,5 +32,11 @@ public enum KeySharedMode {
      * New consumer with fixed hash range to attach the topic, if new consumer use conflict hash range with
      * exits consumers, new consumer will be rejected.
      */
-    STICKY
+    STICKY,
+
+    /**
+     * Consumers are placed on a consistent hashing ring, a consumer connecting or disconnecting only moves the keys
+     * of about one consumer.
+     */
+    CONSISTENT_HASHING
 }
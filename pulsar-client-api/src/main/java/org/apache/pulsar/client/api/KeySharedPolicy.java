@@ -39,6 +39,10 @@ public abstract class KeySharedPolicy {
         return new KeySharedPolicySticky();
     }
 
+    public static KeySharedPolicyConsistentHashing consistentHashing() {
+        return new KeySharedPolicyConsistentHashing();
+    }
+
     public abstract void validate();
 
     public KeySharedMode getKeySharedMode() {
@@ -109,4 +113,23 @@ public abstract class KeySharedPolicy {
             // do nothing here
         }
     }
+
+    /**
+     * Consistent hashing key shared policy.
+     *
+     * <p>Each consumer takes a number of points on a hash ring, and serves the keys hashed before its points. When a
+     * consumer connects or disconnects, only the keys next to its points move to another consumer. Consumers keep the
+     * same points when they reconnect with the same consumer name.
+     */
+    public static class KeySharedPolicyConsistentHashing extends KeySharedPolicy {
+
+        KeySharedPolicyConsistentHashing() {
+            this.keySharedMode = KeySharedMode.CONSISTENT_HASHING;
+        }
+
+        @Override
+        public void validate() {
+            // do nothing here
+        }
+    }
 }
@@ -290,10 +290,12 @@ public final class PulsarApi {
       implements org.apache.pulsar.shaded.com.google.protobuf.v241.Internal.EnumLite {
     AUTO_SPLIT(0, 0),
     STICKY(1, 1),
+    CONSISTENT_HASHING(2, 2),
     ;
     
     public static final int AUTO_SPLIT_VALUE = 0;
     public static final int STICKY_VALUE = 1;
+    public static final int CONSISTENT_HASHING_VALUE = 2;
     
     
     public final int getNumber() { return value; }
@@ -302,6 +304,7 @@ public final class PulsarApi {
       switch (value) {
         case 0: return AUTO_SPLIT;
         case 1: return STICKY;
+        case 2: return CONSISTENT_HASHING;
         default: return null;
       }
     }
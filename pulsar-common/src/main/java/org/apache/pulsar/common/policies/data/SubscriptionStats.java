@@ -37,6 +37,13 @@ public class SubscriptionStats {
     /** Total rate of messages redelivered on this subscription (msg/s). */
     public double msgRateRedeliver;
 
+    /** Total number of messages dispatched to the consumers of this subscription. */
+    public long msgOutCounter;
+
+    /** Total number of messages acknowledged without being dispatched, because they did not match the message filter
+     * of this subscription. */
+    public long msgFilteredCounter;
+
     /** Number of messages in the subscription backlog. */
     public long msgBacklog;
 
@@ -75,6 +82,8 @@ public class SubscriptionStats {
         msgRateOut = 0;
         msgThroughputOut = 0;
         msgRateRedeliver = 0;
+        msgOutCounter = 0;
+        msgFilteredCounter = 0;
         msgBacklog = 0;
         unackedMessages = 0;
         msgRateExpired = 0;
@@ -89,6 +98,8 @@ public class SubscriptionStats {
         this.msgRateOut += stats.msgRateOut;
         this.msgThroughputOut += stats.msgThroughputOut;
         this.msgRateRedeliver += stats.msgRateRedeliver;
+        this.msgOutCounter += stats.msgOutCounter;
+        this.msgFilteredCounter += stats.msgFilteredCounter;
         this.msgBacklog += stats.msgBacklog;
         this.unackedMessages += stats.unackedMessages;
         this.msgRateExpired += stats.msgRateExpired;
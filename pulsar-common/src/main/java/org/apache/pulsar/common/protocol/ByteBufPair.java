@@ -21,6 +21,7 @@ package org.apache.pulsar.common.protocol;
 import com.google.common.annotations.VisibleForTesting;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
@@ -151,6 +152,14 @@ public final class ByteBufPair extends AbstractReferenceCounted {
                 } finally {
                     ReferenceCountUtil.safeRelease(b);
                 }
+            } else if (msg instanceof CompositeByteBuf) {
+                // Composite buffers are used to write several messages at once and wrap cached buffers as well
+                CompositeByteBuf b = (CompositeByteBuf) msg;
+                try {
+                    ctx.write(b.copy(), promise);
+                } finally {
+                    ReferenceCountUtil.safeRelease(b);
+                }
             } else {
                 ctx.write(msg, promise);
             }
@@ -115,6 +115,8 @@ import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.common.util.protobuf.ByteBufCodedInputStream;
 import org.apache.pulsar.common.util.protobuf.ByteBufCodedOutputStream;
 import org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString;
+import org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream;
+import org.apache.pulsar.shaded.com.google.protobuf.v241.WireFormat;
 
 @UtilityClass
 @Slf4j
@@ -440,6 +442,88 @@ public class Commands {
         return res;
     }
 
+    /**
+     * Upper bound of the size of the headers written by
+     * {@link #serializeMessageHeaders(ByteBuf, long, long, long, int, int, int)}.
+     */
+    public static final int MAX_MESSAGE_HEADERS_SIZE = getMessageHeadersSize(-1L, -1L, -1L, -1, Integer.MAX_VALUE);
+
+    private static int getMessageIdSize(long ledgerId, long entryId, int partition) {
+        return CodedOutputStream.computeUInt64Size(1, ledgerId)
+                + CodedOutputStream.computeUInt64Size(2, entryId)
+                + CodedOutputStream.computeInt32Size(3, partition);
+    }
+
+    private static int getCommandMessageSize(long consumerId, int messageIdSize, int redeliveryCount) {
+        int size = CodedOutputStream.computeUInt64Size(1, consumerId)
+                + CodedOutputStream.computeTagSize(2)
+                + CodedOutputStream.computeRawVarint32Size(messageIdSize) + messageIdSize;
+        if (redeliveryCount > 0) {
+            size += CodedOutputStream.computeUInt32Size(3, redeliveryCount);
+        }
+        return size;
+    }
+
+    private static int getBaseCommandSize(int commandMessageSize) {
+        return CodedOutputStream.computeEnumSize(1, Type.MESSAGE_VALUE)
+                + CodedOutputStream.computeTagSize(9)
+                + CodedOutputStream.computeRawVarint32Size(commandMessageSize) + commandMessageSize;
+    }
+
+    /**
+     * @return the size of the headers written by
+     *         {@link #serializeMessageHeaders(ByteBuf, long, long, long, int, int, int)}
+     */
+    public static int getMessageHeadersSize(long consumerId, long ledgerId, long entryId, int partition,
+            int redeliveryCount) {
+        int messageIdSize = getMessageIdSize(ledgerId, entryId, partition);
+        return 4 + 4 + getBaseCommandSize(getCommandMessageSize(consumerId, messageIdSize, redeliveryCount));
+    }
+
+    /**
+     * Writes the headers of a message command, [TOTAL_SIZE] [CMD_SIZE][CMD], to be followed by the metadata and
+     * payload of the message.
+     *
+     * <p/>The headers are the same as the ones of {@link #newMessage(long, MessageIdData, int, ByteBuf)}, but are
+     * encoded from the fields of the command, without building the protobuf objects.
+     */
+    public static void serializeMessageHeaders(ByteBuf headers, long consumerId, long ledgerId, long entryId,
+            int partition, int redeliveryCount, int metadataAndPayloadSize) {
+        int messageIdSize = getMessageIdSize(ledgerId, entryId, partition);
+        int commandMessageSize = getCommandMessageSize(consumerId, messageIdSize, redeliveryCount);
+        int cmdSize = getBaseCommandSize(commandMessageSize);
+
+        headers.writeInt(4 + cmdSize + metadataAndPayloadSize); // External frame
+        headers.writeInt(cmdSize);
+
+        ByteBufCodedOutputStream outStream = ByteBufCodedOutputStream.get(headers);
+        try {
+            // BaseCommand
+            outStream.writeEnum(1, Type.MESSAGE_VALUE);
+            outStream.writeTag(9, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            outStream.writeRawVarint32(commandMessageSize);
+
+            // CommandMessage
+            outStream.writeUInt64(1, consumerId);
+            outStream.writeTag(2, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            outStream.writeRawVarint32(messageIdSize);
+
+            // MessageIdData
+            outStream.writeUInt64(1, ledgerId);
+            outStream.writeUInt64(2, entryId);
+            outStream.writeInt32(3, partition);
+
+            if (redeliveryCount > 0) {
+                outStream.writeUInt32(3, redeliveryCount);
+            }
+        } catch (IOException e) {
+            // This is in-memory serialization, should not fail
+            throw new RuntimeException(e);
+        } finally {
+            outStream.recycle();
+        }
+    }
+
     public static ByteBufPair newSend(long producerId, long sequenceId, int numMessaegs, ChecksumType checksumType,
                                       MessageMetadata messageMetadata, ByteBuf payload) {
         return newSend(producerId, sequenceId, numMessaegs, 0, 0, checksumType, messageMetadata, payload);
@@ -543,6 +627,10 @@ public class Commands {
                     subscribeBuilder.setKeySharedMeta(PulsarApi.KeySharedMeta.newBuilder()
                             .setKeySharedMode(PulsarApi.KeySharedMode.AUTO_SPLIT));
                     break;
+                case CONSISTENT_HASHING:
+                    subscribeBuilder.setKeySharedMeta(PulsarApi.KeySharedMeta.newBuilder()
+                            .setKeySharedMode(PulsarApi.KeySharedMode.CONSISTENT_HASHING));
+                    break;
                 case STICKY:
                     PulsarApi.KeySharedMeta.Builder builder = PulsarApi.KeySharedMeta.newBuilder()
                             .setKeySharedMode(PulsarApi.KeySharedMode.STICKY);
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.protocol;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData;
+import org.testng.annotations.Test;
+
+public class CommandsTest {
+
+    @Test
+    public void testSerializeMessageHeaders() {
+        long[] ids = { 0, 1, 127, 128, 123456789L, Long.MAX_VALUE, -1L };
+        int[] partitions = { -1, 0, 5, 1000 };
+        int[] redeliveryCounts = { 0, 1, 300, Integer.MAX_VALUE };
+        ByteBuf payload = Unpooled.wrappedBuffer(new byte[100]);
+
+        for (long consumerId : ids) {
+            for (long ledgerId : ids) {
+                for (int partition : partitions) {
+                    for (int redeliveryCount : redeliveryCounts) {
+                        long entryId = ledgerId / 3;
+                        MessageIdData messageId = MessageIdData.newBuilder().setLedgerId(ledgerId).setEntryId(entryId)
+                                .setPartition(partition).build();
+                        ByteBufPair expected = Commands.newMessage(consumerId, messageId, redeliveryCount,
+                                payload.retain());
+
+                        int size = Commands.getMessageHeadersSize(consumerId, ledgerId, entryId, partition,
+                                redeliveryCount);
+                        assertTrue(size <= Commands.MAX_MESSAGE_HEADERS_SIZE);
+                        ByteBuf headers = Unpooled.buffer(size, size);
+                        Commands.serializeMessageHeaders(headers, consumerId, ledgerId, entryId, partition,
+                                redeliveryCount, payload.readableBytes());
+
+                        assertEquals(headers, expected.getFirst());
+                        headers.release();
+                        expected.release();
+                        messageId.recycle();
+                    }
+                }
+            }
+        }
+        assertEquals(payload.refCnt(), 1);
+    }
+}
@@ -43,6 +43,10 @@ public class FileSystemConfigurationData implements Serializable, Cloneable {
 
     private int managedLedgerOffloadMaxThreads = 2;
 
+    // Format of the offloaded ledgers, "mapfile" for Hadoop MapFiles or "segment" for a plain segment file and its
+    // entry index, read through memory-mapping (only supported on a local, or locally mounted, file system)
+    private String fileSystemOffloadFormat = "mapfile";
+
     /**
      * Create a tiered storage configuration from the provided <tt>properties</tt>.
      *
@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.offload.filesystem.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LastConfirmedAndEntry;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Read handle over a ledger offloaded in the segment format.
+ *
+ * <p/>The ledger is stored in a directory holding two files:
+ * <ul>
+ * <li><tt>segment</tt>, the payloads of all the entries of the ledger, appended one after the other</li>
+ * <li><tt>segment.index</tt>, a header followed by the serialized ledger metadata, the number of entries and the
+ * position of each entry in the segment, plus the length of the segment</li>
+ * </ul>
+ *
+ * <p/>Both files are memory-mapped when the handle is opened, and the entries are returned as buffers wrapping
+ * slices of the mapped segment, so reading them never copies the data out of the page cache.
+ */
+public class FileSegmentBackedReadHandleImpl implements ReadHandle {
+    private static final Logger log = LoggerFactory.getLogger(FileSegmentBackedReadHandleImpl.class);
+
+    static final String SEGMENT_FILE_NAME = "segment";
+    static final String INDEX_FILE_NAME = "segment.index";
+    static final int INDEX_MAGIC_WORD = 0x5053454D;
+    static final int INDEX_VERSION = 1;
+
+    // Largest region of the segment mapped at once, regions are cut on entry boundaries
+    private static final long MAX_REGION_SIZE = 1L << 30;
+
+    private final ExecutorService executor;
+    private final long ledgerId;
+    private final LedgerMetadata ledgerMetadata;
+    // Position of each entry in the segment, followed by the length of the segment
+    private final LongBuffer positions;
+    private final long[] regionStarts;
+    private final MappedByteBuffer[] regions;
+
+    private FileSegmentBackedReadHandleImpl(ExecutorService executor, File directory, long ledgerId)
+            throws IOException {
+        this.executor = executor;
+        this.ledgerId = ledgerId;
+
+        try (FileChannel index = FileChannel.open(new File(directory, INDEX_FILE_NAME).toPath(),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer indexBuffer = index.map(FileChannel.MapMode.READ_ONLY, 0, index.size());
+            int magic = indexBuffer.getInt();
+            int version = indexBuffer.getInt();
+            if (magic != INDEX_MAGIC_WORD || version != INDEX_VERSION) {
+                throw new IOException(String.format("Invalid segment index for ledger %d, magic %x version %d",
+                        ledgerId, magic, version));
+            }
+            byte[] metadata = new byte[indexBuffer.getInt()];
+            indexBuffer.get(metadata);
+            this.ledgerMetadata = FileStoreBackedReadHandleImpl.parseLedgerMetadata(metadata);
+
+            long entryCount = indexBuffer.getLong();
+            this.positions = indexBuffer.slice().asLongBuffer();
+            if (entryCount != ledgerMetadata.getLastEntryId() + 1 || positions.remaining() != entryCount + 1) {
+                throw new IOException(String.format("Segment index for ledger %d has %d positions for %d entries,"
+                        + " last entry id %d", ledgerId, positions.remaining(), entryCount,
+                        ledgerMetadata.getLastEntryId()));
+            }
+        }
+
+        try (FileChannel segment = FileChannel.open(new File(directory, SEGMENT_FILE_NAME).toPath(),
+                StandardOpenOption.READ)) {
+            long segmentLength = positions.get(positions.limit() - 1);
+            if (segment.size() < segmentLength) {
+                throw new IOException(String.format("Segment of ledger %d is truncated, size %d expected %d",
+                        ledgerId, segment.size(), segmentLength));
+            }
+
+            // The mappings stay valid once the channel is closed
+            this.regionStarts = splitRegions(positions, segmentLength);
+            this.regions = new MappedByteBuffer[regionStarts.length];
+            for (int i = 0; i < regionStarts.length; i++) {
+                long regionEnd = i + 1 < regionStarts.length ? regionStarts[i + 1] : segmentLength;
+                regions[i] = segment.map(FileChannel.MapMode.READ_ONLY, regionStarts[i], regionEnd - regionStarts[i]);
+            }
+        }
+    }
+
+    private static long[] splitRegions(LongBuffer positions, long segmentLength) {
+        if (segmentLength <= MAX_REGION_SIZE) {
+            return new long[] { 0 };
+        }
+
+        List<Long> starts = new ArrayList<>();
+        long regionStart = 0;
+        starts.add(regionStart);
+        for (int i = 1; i < positions.limit(); i++) {
+            // Entry i - 1 doesn't fit in the current region, start a new one with it
+            if (positions.get(i) - regionStart > MAX_REGION_SIZE && positions.get(i - 1) > regionStart) {
+                regionStart = positions.get(i - 1);
+                starts.add(regionStart);
+            }
+        }
+        return starts.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private ByteBuf entryBuffer(long entryId) {
+        long start = positions.get((int) entryId);
+        long end = positions.get((int) entryId + 1);
+        int region = Arrays.binarySearch(regionStarts, start);
+        if (region < 0) {
+            region = -region - 2;
+        }
+
+        ByteBuffer slice = regions[region].duplicate();
+        slice.limit((int) (end - regionStarts[region]));
+        slice.position((int) (start - regionStarts[region]));
+        return Unpooled.wrappedBuffer(slice.slice());
+    }
+
+    @Override
+    public long getId() {
+        return ledgerId;
+    }
+
+    @Override
+    public LedgerMetadata getLedgerMetadata() {
+        return ledgerMetadata;
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        // The mapped regions are unmapped once the last buffer referencing them is collected
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readAsync(long firstEntry, long lastEntry) {
+        if (log.isDebugEnabled()) {
+            log.debug("Ledger {}: reading {} - {}", getId(), firstEntry, lastEntry);
+        }
+        CompletableFuture<LedgerEntries> promise = new CompletableFuture<>();
+        executor.submit(() -> {
+            if (firstEntry > lastEntry
+                    || firstEntry < 0
+                    || lastEntry > getLastAddConfirmed()) {
+                promise.completeExceptionally(new BKException.BKIncorrectParameterException());
+                return;
+            }
+            List<LedgerEntry> entries = new ArrayList<>((int) (lastEntry - firstEntry + 1));
+            try {
+                for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+                    ByteBuf buf = entryBuffer(entryId);
+                    entries.add(LedgerEntryImpl.create(ledgerId, entryId, buf.readableBytes(), buf));
+                }
+                promise.complete(LedgerEntriesImpl.create(entries));
+            } catch (Throwable t) {
+                promise.completeExceptionally(t);
+                entries.forEach(LedgerEntry::close);
+            }
+        });
+        return promise;
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readUnconfirmedAsync(long firstEntry, long lastEntry) {
+        return readAsync(firstEntry, lastEntry);
+    }
+
+    @Override
+    public CompletableFuture<Long> readLastAddConfirmedAsync() {
+        return CompletableFuture.completedFuture(getLastAddConfirmed());
+    }
+
+    @Override
+    public CompletableFuture<Long> tryReadLastAddConfirmedAsync() {
+        return CompletableFuture.completedFuture(getLastAddConfirmed());
+    }
+
+    @Override
+    public long getLastAddConfirmed() {
+        return getLedgerMetadata().getLastEntryId();
+    }
+
+    @Override
+    public long getLength() {
+        return getLedgerMetadata().getLength();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return getLedgerMetadata().isClosed();
+    }
+
+    @Override
+    public CompletableFuture<LastConfirmedAndEntry> readLastAddConfirmedAndEntryAsync(long entryId,
+                                                                                      long timeOutInMillis,
+                                                                                      boolean parallel) {
+        CompletableFuture<LastConfirmedAndEntry> promise = new CompletableFuture<>();
+        promise.completeExceptionally(new UnsupportedOperationException());
+        return promise;
+    }
+
+    public static ReadHandle open(ExecutorService executor, File directory, long ledgerId) throws IOException {
+        return new FileSegmentBackedReadHandleImpl(executor, directory, ledgerId);
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.offload.filesystem.impl;
+
+import io.netty.buffer.ByteBuf;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Writes a ledger in the segment format read by {@link FileSegmentBackedReadHandleImpl}.
+ *
+ * <p/>Entries are read from BookKeeper in batches, the next batch being read while the current one is written, and
+ * their buffers are written to the segment with a single gathering write per batch, without copying them. The index
+ * is written last, under a temporary name renamed once complete, so a segment only becomes readable once all of its
+ * entries are on disk.
+ */
+class FileSegmentWriter {
+    private static final Logger log = LoggerFactory.getLogger(FileSegmentWriter.class);
+
+    private static final int INDEX_WRITE_BUFFER_SIZE = 64 * 1024;
+
+    static void write(ReadHandle readHandle, File directory, byte[] ledgerMetadata, long entriesPerRead)
+            throws IOException, InterruptedException, BKException {
+        long lastEntry = readHandle.getLastAddConfirmed();
+        long[] positions = new long[Math.toIntExact(lastEntry + 2)];
+        long position = 0;
+
+        Files.createDirectories(directory.toPath());
+        File segmentFile = new File(directory, FileSegmentBackedReadHandleImpl.SEGMENT_FILE_NAME);
+        CompletableFuture<LedgerEntries> nextEntries = readHandle.readAsync(0, Math.min(entriesPerRead - 1, lastEntry));
+        try (FileChannel segment = FileChannel.open(segmentFile.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long nextEntryId = 0;
+            while (nextEntryId <= lastEntry) {
+                long end = Math.min(nextEntryId + entriesPerRead - 1, lastEntry);
+                CompletableFuture<LedgerEntries> currentEntries = nextEntries;
+                nextEntries = end < lastEntry
+                        ? readHandle.readAsync(end + 1, Math.min(end + entriesPerRead, lastEntry))
+                        : null;
+
+                try (LedgerEntries entries = getEntries(currentEntries)) {
+                    List<ByteBuffer> buffers = new ArrayList<>();
+                    long batchLength = 0;
+                    for (LedgerEntry entry : entries) {
+                        if (entry.getEntryId() != nextEntryId) {
+                            log.error("Expected to read entry {} of ledger {}, but read {}",
+                                    nextEntryId, readHandle.getId(), entry.getEntryId());
+                            throw new BKException.BKUnexpectedConditionException();
+                        }
+                        ByteBuf buffer = entry.getEntryBuffer();
+                        Collections.addAll(buffers, buffer.nioBuffers(buffer.readerIndex(), buffer.readableBytes()));
+                        positions[(int) nextEntryId] = position + batchLength;
+                        batchLength += buffer.readableBytes();
+                        nextEntryId++;
+                    }
+
+                    ByteBuffer[] batch = buffers.toArray(new ByteBuffer[0]);
+                    long written = 0;
+                    while (written < batchLength) {
+                        written += segment.write(batch);
+                    }
+                    position += batchLength;
+                }
+            }
+            positions[positions.length - 1] = position;
+            segment.force(true);
+        } finally {
+            if (nextEntries != null) {
+                nextEntries.thenAccept(LedgerEntries::close);
+            }
+        }
+
+        writeIndex(directory, ledgerMetadata, positions);
+    }
+
+    private static LedgerEntries getEntries(CompletableFuture<LedgerEntries> entries)
+            throws IOException, InterruptedException, BKException {
+        try {
+            return entries.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BKException) {
+                throw (BKException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void writeIndex(File directory, byte[] ledgerMetadata, long[] positions) throws IOException {
+        File tmpIndex = new File(directory, FileSegmentBackedReadHandleImpl.INDEX_FILE_NAME + ".tmp");
+        try (FileChannel index = FileChannel.open(tmpIndex.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(INDEX_WRITE_BUFFER_SIZE, ledgerMetadata.length + 20));
+            buffer.putInt(FileSegmentBackedReadHandleImpl.INDEX_MAGIC_WORD)
+                    .putInt(FileSegmentBackedReadHandleImpl.INDEX_VERSION)
+                    .putInt(ledgerMetadata.length)
+                    .put(ledgerMetadata)
+                    .putLong(positions.length - 1);
+            for (long position : positions) {
+                if (buffer.remaining() < Long.BYTES) {
+                    flush(index, buffer);
+                }
+                buffer.putLong(position);
+            }
+            flush(index, buffer);
+            index.force(true);
+        }
+        Files.move(tmpIndex.toPath(), new File(directory, FileSegmentBackedReadHandleImpl.INDEX_FILE_NAME).toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -185,7 +185,7 @@ public class FileStoreBackedReadHandleImpl implements ReadHandle {
             return new FileStoreBackedReadHandleImpl(executor, reader, ledgerId);
     }
 
-    private static LedgerMetadata parseLedgerMetadata(byte[] bytes) throws IOException {
+    static LedgerMetadata parseLedgerMetadata(byte[] bytes) throws IOException {
         DataFormats.LedgerMetadataFormat ledgerMetadataFormat = DataFormats.LedgerMetadataFormat.newBuilder().mergeFrom(bytes).build();
         LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
                 .withLastEntryId(ledgerMetadataFormat.getLastEntryId())
@@ -34,6 +34,7 @@ import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.proto.DataFormats;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.IOUtils;
@@ -42,6 +43,7 @@ import org.apache.hadoop.io.MapFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
@@ -62,6 +64,8 @@ public class FileSystemManagedLedgerOffloader implements LedgerOffloader {
     private static final String DRIVER_NAMES = "filesystem";
     private static final String MANAGED_LEDGER_NAME = "ManagedLedgerName";
     static final long METADATA_KEY_INDEX = -1;
+    static final String FORMAT_MAPFILE = "mapfile";
+    static final String FORMAT_SEGMENT = "segment";
     private final Configuration configuration;
     private final String driverName;
     private final String storageBasePath;
@@ -69,6 +73,7 @@ public class FileSystemManagedLedgerOffloader implements LedgerOffloader {
     private OrderedScheduler scheduler;
     private static final long ENTRIES_PER_READ = 100;
     private OrderedScheduler assignmentScheduler;
+    private final boolean segmentFormat;
     public static boolean driverSupported(String driver) {
         return DRIVER_NAMES.equals(driver);
     }
@@ -108,6 +113,7 @@ public class FileSystemManagedLedgerOffloader implements LedgerOffloader {
         this.assignmentScheduler = OrderedScheduler.newSchedulerBuilder()
                 .numThreads(conf.getManagedLedgerOffloadMaxThreads())
                 .name("offload-assignment").build();
+        this.segmentFormat = isSegmentFormat(conf, fileSystem);
     }
     @VisibleForTesting
     public FileSystemManagedLedgerOffloader(FileSystemConfigurationData conf, OrderedScheduler scheduler, String testHDFSPath, String baseDir) throws IOException {
@@ -123,6 +129,22 @@ public class FileSystemManagedLedgerOffloader implements LedgerOffloader {
         this.assignmentScheduler = OrderedScheduler.newSchedulerBuilder()
                 .numThreads(conf.getManagedLedgerOffloadMaxThreads())
                 .name("offload-assignment").build();
+        this.segmentFormat = isSegmentFormat(conf, fileSystem);
+    }
+
+    private static boolean isSegmentFormat(FileSystemConfigurationData conf, FileSystem fileSystem) {
+        String format = conf.getFileSystemOffloadFormat();
+        if (FORMAT_SEGMENT.equals(format)) {
+            if (!(fileSystem instanceof LocalFileSystem)) {
+                throw new IllegalArgumentException("The " + FORMAT_SEGMENT + " offload format requires a local file"
+                        + " system, but " + fileSystem.getUri() + " is used");
+            }
+            return true;
+        } else if (format == null || FORMAT_MAPFILE.equals(format)) {
+            return false;
+        } else {
+            throw new IllegalArgumentException("Unknown file system offload format " + format);
+        }
     }
 
     @Override
@@ -139,6 +161,11 @@ public class FileSystemManagedLedgerOffloader implements LedgerOffloader {
     @Override
     public CompletableFuture<Void> offload(ReadHandle readHandle, UUID uuid, Map<String, String> extraMetadata) {
         CompletableFuture<Void> promise = new CompletableFuture<>();
+        if (segmentFormat) {
+            scheduler.chooseThread(readHandle.getId()).submit(new SegmentWriter(readHandle, uuid, extraMetadata,
+                    promise, storageBasePath, (LocalFileSystem) fileSystem));
+            return promise;
+        }
         scheduler.chooseThread(readHandle.getId()).submit(new LedgerReader(readHandle, uuid, extraMetadata, promise, storageBasePath, configuration, assignmentScheduler));
         return promise;
     }
@@ -216,6 +243,58 @@ public class FileSystemManagedLedgerOffloader implements LedgerOffloader {
         }
     }
 
+    /*
+    * Writes the ledger in the segment format, straight to the local file backing the file system
+    * */
+    private static class SegmentWriter implements Runnable {
+
+        private final ReadHandle readHandle;
+        private final UUID uuid;
+        private final Map<String, String> extraMetadata;
+        private final CompletableFuture<Void> promise;
+        private final String storageBasePath;
+        private final LocalFileSystem fileSystem;
+
+        private SegmentWriter(ReadHandle readHandle, UUID uuid, Map<String, String> extraMetadata,
+                              CompletableFuture<Void> promise, String storageBasePath, LocalFileSystem fileSystem) {
+            this.readHandle = readHandle;
+            this.uuid = uuid;
+            this.extraMetadata = extraMetadata;
+            this.promise = promise;
+            this.storageBasePath = storageBasePath;
+            this.fileSystem = fileSystem;
+        }
+
+        @Override
+        public void run() {
+            if (readHandle.getLength() == 0 || !readHandle.isClosed() || readHandle.getLastAddConfirmed() < 0) {
+                promise.completeExceptionally(
+                        new IllegalArgumentException("An empty or open ledger should never be offloaded"));
+                return;
+            }
+            long ledgerId = readHandle.getId();
+            String storagePath = getStoragePath(storageBasePath, extraMetadata.get(MANAGED_LEDGER_NAME));
+            Path dataFilePath = new Path(getDataFilePath(storagePath, ledgerId, uuid));
+            try {
+                FileSegmentWriter.write(readHandle, fileSystem.pathToFile(dataFilePath),
+                        buildLedgerMetadataFormat(readHandle.getLedgerMetadata()), ENTRIES_PER_READ);
+                promise.complete(null);
+            } catch (Exception e) {
+                log.error("Exception when writing segment : ManagerLedgerName: {}, " +
+                        "LedgerId: {}, UUID: {} ", extraMetadata.get(MANAGED_LEDGER_NAME), ledgerId, uuid, e);
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                try {
+                    fileSystem.delete(dataFilePath, true);
+                } catch (IOException deleteException) {
+                    log.warn("Failed to delete partially written segment {}", dataFilePath, deleteException);
+                }
+                promise.completeExceptionally(e);
+            }
+        }
+    }
+
     private static class FileSystemWriter implements Runnable {
 
         private final LedgerEntries ledgerEntriesOnce;
@@ -268,6 +347,15 @@ public class FileSystemManagedLedgerOffloader implements LedgerOffloader {
         String dataFilePath = getDataFilePath(storagePath, ledgerId, uuid);
         scheduler.chooseThread(ledgerId).submit(() -> {
             try {
+                // Ledgers are read in the format they were offloaded with, whatever the current one
+                if (fileSystem instanceof LocalFileSystem) {
+                    File directory = ((LocalFileSystem) fileSystem).pathToFile(new Path(dataFilePath));
+                    if (new File(directory, FileSegmentBackedReadHandleImpl.INDEX_FILE_NAME).exists()) {
+                        promise.complete(FileSegmentBackedReadHandleImpl.open(scheduler.chooseThread(ledgerId),
+                                directory, ledgerId));
+                        return;
+                    }
+                }
                 MapFile.Reader reader = new MapFile.Reader(new Path(dataFilePath),
                         configuration);
                 promise.complete(FileStoreBackedReadHandleImpl.open(scheduler.chooseThread(ledgerId), reader, ledgerId));
@@ -303,7 +391,7 @@ public class FileSystemManagedLedgerOffloader implements LedgerOffloader {
         return promise;
     }
 
-    private static byte[] buildLedgerMetadataFormat(LedgerMetadata metadata) {
+    static byte[] buildLedgerMetadataFormat(LedgerMetadata metadata) {
         DataFormats.LedgerMetadataFormat.Builder builder = DataFormats.LedgerMetadataFormat.newBuilder();
         builder.setQuorumSize(metadata.getWriteQuorumSize())
                 .setAckQuorumSize(metadata.getAckQuorumSize())
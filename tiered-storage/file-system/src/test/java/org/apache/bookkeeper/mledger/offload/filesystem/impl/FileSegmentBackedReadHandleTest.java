@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.offload.filesystem.impl;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.client.PulsarMockBookKeeper;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.mledger.LedgerOffloader;
+import org.apache.bookkeeper.mledger.offload.filesystem.FileSystemConfigurationData;
+import org.apache.bookkeeper.util.ZkUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.MockZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class FileSegmentBackedReadHandleTest {
+    private static final Logger log = LoggerFactory.getLogger(FileSegmentBackedReadHandleTest.class);
+
+    private final OrderedScheduler scheduler = OrderedScheduler.newSchedulerBuilder().numThreads(1).name("offloader").build();
+    private final String topic = "public/default/persistent/testSegmentOffload";
+    private PulsarMockBookKeeper bk;
+    private File baseDir;
+
+    @BeforeMethod
+    public void start() throws Exception {
+        bk = new PulsarMockBookKeeper(createMockZooKeeper(), scheduler.chooseThread(this));
+        baseDir = Files.createTempDirectory("pulsar-segment").toFile().getAbsoluteFile();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    private static MockZooKeeper createMockZooKeeper() throws Exception {
+        MockZooKeeper zk = MockZooKeeper.newInstance(MoreExecutors.newDirectExecutorService());
+        List<ACL> dummyAclList = new ArrayList<ACL>(0);
+
+        ZkUtils.createFullPathOptimistic(zk, "/ledgers/available/192.168.1.1:" + 5000,
+                "".getBytes(UTF_8), dummyAclList, CreateMode.PERSISTENT);
+
+        zk.create("/ledgers/LAYOUT", "1\nflat:1".getBytes(UTF_8), dummyAclList,
+                CreateMode.PERSISTENT);
+        return zk;
+    }
+
+    private ReadHandle buildReadHandle(int numberOfEntries, int maxEntrySize) throws Exception {
+        LedgerHandle lh = bk.createLedger(1, 1, 1, BookKeeper.DigestType.CRC32, "foobar".getBytes());
+        Random random = new Random(0);
+        for (int i = 0; i < numberOfEntries; i++) {
+            // Include empty entries
+            byte[] entry = new byte[random.nextInt(maxEntrySize + 1)];
+            random.nextBytes(entry);
+            lh.addEntry(entry);
+        }
+        lh.close();
+
+        return bk.newOpenLedgerOp().withLedgerId(lh.getId())
+                .withPassword("foobar".getBytes()).withDigestType(DigestType.CRC32).execute().get();
+    }
+
+    private static void assertSameEntries(ReadHandle expected, ReadHandle actual, long firstEntry, long lastEntry)
+            throws Exception {
+        try (LedgerEntries expectedEntries = expected.read(firstEntry, lastEntry);
+             LedgerEntries actualEntries = actual.read(firstEntry, lastEntry)) {
+            Iterator<LedgerEntry> expectedIter = expectedEntries.iterator();
+            Iterator<LedgerEntry> actualIter = actualEntries.iterator();
+            while (expectedIter.hasNext()) {
+                LedgerEntry expectedEntry = expectedIter.next();
+                LedgerEntry actualEntry = actualIter.next();
+                assertEquals(actualEntry.getLedgerId(), expectedEntry.getLedgerId());
+                assertEquals(actualEntry.getEntryId(), expectedEntry.getEntryId());
+                assertEquals(actualEntry.getLength(), expectedEntry.getLength());
+                assertEquals(actualEntry.getEntryBuffer(), expectedEntry.getEntryBuffer());
+            }
+            assertFalse(actualIter.hasNext());
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        ReadHandle toWrite = buildReadHandle(1001, 1024);
+        File directory = new File(baseDir, "ledger");
+        FileSegmentWriter.write(toWrite, directory, FileSystemManagedLedgerOffloader.buildLedgerMetadataFormat(
+                toWrite.getLedgerMetadata()), 100);
+        assertFalse(new File(directory, FileSegmentBackedReadHandleImpl.INDEX_FILE_NAME + ".tmp").exists());
+
+        ReadHandle toTest = FileSegmentBackedReadHandleImpl.open(scheduler.chooseThread(toWrite.getId()),
+                directory, toWrite.getId());
+        assertEquals(toTest.getLastAddConfirmed(), toWrite.getLastAddConfirmed());
+        assertEquals(toTest.getLength(), toWrite.getLength());
+        assertEquals(toTest.getLedgerMetadata().getDigestType(), toWrite.getLedgerMetadata().getDigestType());
+
+        assertSameEntries(toWrite, toTest, 0, 1000);
+        assertSameEntries(toWrite, toTest, 99, 101);
+        assertSameEntries(toWrite, toTest, 1000, 1000);
+
+        try {
+            toTest.read(0, 1001);
+            fail("Should not be able to read past the last entry");
+        } catch (BKException.BKIncorrectParameterException e) {
+            // expected
+        }
+        toTest.close();
+    }
+
+    @Test
+    public void testOpenIncompleteSegment() throws Exception {
+        ReadHandle toWrite = buildReadHandle(10, 100);
+        File directory = new File(baseDir, "ledger");
+        FileSegmentWriter.write(toWrite, directory, FileSystemManagedLedgerOffloader.buildLedgerMetadataFormat(
+                toWrite.getLedgerMetadata()), 3);
+
+        File segment = new File(directory, FileSegmentBackedReadHandleImpl.SEGMENT_FILE_NAME);
+        Files.write(segment.toPath(), new byte[(int) segment.length() - 1]);
+        try {
+            FileSegmentBackedReadHandleImpl.open(scheduler.chooseThread(toWrite.getId()), directory, toWrite.getId());
+            fail("Should not be able to open a truncated segment");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOffloadFormats() throws Exception {
+        ReadHandle toWrite = buildReadHandle(5000, 2048);
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("ManagedLedgerName", topic);
+
+        Properties properties = new Properties();
+        properties.setProperty("fileSystemOffloadFormat", FileSystemManagedLedgerOffloader.FORMAT_MAPFILE);
+        LedgerOffloader mapFileOffloader = new FileSystemManagedLedgerOffloader(
+                FileSystemConfigurationData.create(properties), scheduler, "file:///", baseDir.getPath());
+        properties.setProperty("fileSystemOffloadFormat", FileSystemManagedLedgerOffloader.FORMAT_SEGMENT);
+        LedgerOffloader segmentOffloader = new FileSystemManagedLedgerOffloader(
+                FileSystemConfigurationData.create(properties), scheduler, "file:///", baseDir.getPath());
+
+        UUID mapFileUuid = UUID.randomUUID();
+        long startNanos = System.nanoTime();
+        mapFileOffloader.offload(toWrite, mapFileUuid, metadata).get();
+        long mapFileOffloadNanos = System.nanoTime() - startNanos;
+
+        UUID segmentUuid = UUID.randomUUID();
+        startNanos = System.nanoTime();
+        segmentOffloader.offload(toWrite, segmentUuid, metadata).get();
+        long segmentOffloadNanos = System.nanoTime() - startNanos;
+
+        // Ledgers offloaded as MapFiles are still readable once the format is changed
+        ReadHandle mapFileRead = segmentOffloader.readOffloaded(toWrite.getId(), mapFileUuid, metadata).get();
+        assertTrue(mapFileRead instanceof FileStoreBackedReadHandleImpl);
+        startNanos = System.nanoTime();
+        assertSameEntries(toWrite, mapFileRead, 0, toWrite.getLastAddConfirmed());
+        long mapFileReadNanos = System.nanoTime() - startNanos;
+
+        ReadHandle segmentRead = segmentOffloader.readOffloaded(toWrite.getId(), segmentUuid, metadata).get();
+        assertTrue(segmentRead instanceof FileSegmentBackedReadHandleImpl);
+        startNanos = System.nanoTime();
+        assertSameEntries(toWrite, segmentRead, 0, toWrite.getLastAddConfirmed());
+        long segmentReadNanos = System.nanoTime() - startNanos;
+
+        log.info("Offloaded {} bytes, mapfile offload {} ms read {} ms, segment offload {} ms read {} ms",
+                toWrite.getLength(), mapFileOffloadNanos / 1_000_000, mapFileReadNanos / 1_000_000,
+                segmentOffloadNanos / 1_000_000, segmentReadNanos / 1_000_000);
+
+        segmentOffloader.deleteOffloaded(toWrite.getId(), segmentUuid, metadata).get();
+        try {
+            segmentOffloader.readOffloaded(toWrite.getId(), segmentUuid, metadata).get();
+            fail("Should not be able to read a deleted ledger");
+        } catch (ExecutionException e) {
+            // expected
+        }
+    }
+}
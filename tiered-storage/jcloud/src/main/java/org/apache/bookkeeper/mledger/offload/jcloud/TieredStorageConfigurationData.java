@@ -43,6 +43,22 @@ public class TieredStorageConfigurationData implements Serializable, Cloneable {
     // Maximum number of thread pool threads for ledger offloading
     private int managedLedgerOffloadMaxThreads = 2;
 
+    // Number of read buffers fetched ahead, in parallel, when reading offloaded ledgers (0 to disable prefetching)
+    private int managedLedgerOffloadReadPrefetchCount = 0;
+
+    // Number of threads fetching the read buffers ahead, shared by all the readers of offloaded ledgers
+    private int managedLedgerOffloadReadPrefetchThreads = 4;
+
+    // Size of the cache of offload index blocks, shared by the readers of offloaded ledgers (0 to disable)
+    private long managedLedgerOffloadIndexCacheSizeInBytes = 16 * 1024 * 1024; // 16MB
+
+    // Size of the cache of recently read offloaded data, shared by the readers of offloaded ledgers (0 to disable)
+    private long managedLedgerOffloadDataCacheSizeInBytes = 0;
+
+    // Number of data blocks uploaded concurrently while the next blocks are read from BookKeeper, shared by all the
+    // offloaded ledgers (0 to stream each block from BookKeeper to the blob store, one after another)
+    private int managedLedgerOffloadMaxConcurrentUploads = 0;
+
     // For Amazon S3 ledger offload, AWS region
     private String s3ManagedLedgerOffloadRegion = null;
 
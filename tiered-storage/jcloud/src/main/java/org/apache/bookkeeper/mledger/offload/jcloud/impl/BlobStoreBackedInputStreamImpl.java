@@ -40,6 +40,7 @@ public class BlobStoreBackedInputStreamImpl extends BackedInputStream {
     private final ByteBuf buffer;
     private final long objectLen;
     private final int bufferSize;
+    private final OffloadReadCache cache;
 
     private long cursor;
     private long bufferOffsetStart;
@@ -48,13 +49,23 @@ public class BlobStoreBackedInputStreamImpl extends BackedInputStream {
     public BlobStoreBackedInputStreamImpl(BlobStore blobStore, String bucket, String key,
                                           VersionCheck versionCheck,
                                           long objectLen, int bufferSize) {
+        this(blobStore, bucket, key, versionCheck, objectLen, bufferSize, null);
+    }
+
+    public BlobStoreBackedInputStreamImpl(BlobStore blobStore, String bucket, String key,
+                                          VersionCheck versionCheck,
+                                          long objectLen, int bufferSize,
+                                          OffloadReadCache cache) {
         this.blobStore = blobStore;
         this.bucket = bucket;
         this.key = key;
         this.versionCheck = versionCheck;
-        this.buffer = PulsarByteBufAllocator.DEFAULT.buffer(bufferSize, bufferSize);
+        // Ranges read through the cache have the size of the cache ranges
+        int capacity = cache != null ? cache.getRangeSize() : bufferSize;
+        this.buffer = PulsarByteBufAllocator.DEFAULT.buffer(capacity, capacity);
         this.objectLen = objectLen;
         this.bufferSize = bufferSize;
+        this.cache = cache;
         this.cursor = 0;
         this.bufferOffsetStart = this.bufferOffsetEnd = -1;
     }
@@ -73,6 +84,23 @@ public class BlobStoreBackedInputStreamImpl extends BackedInputStream {
                                      objectLen - 1);
 
             try {
+                if (cache != null) {
+                    // The cache reads whole aligned ranges, which may start before the cursor
+                    ByteBuf data = cache.getData(key, cursor, objectLen,
+                            (start, end) -> readRange(blobStore, bucket, key, versionCheck, start, end));
+                    try {
+                        buffer.clear();
+                        bufferOffsetStart = cache.rangeStart(cursor);
+                        bufferOffsetEnd = bufferOffsetStart + data.readableBytes() - 1;
+                        buffer.writeBytes(data);
+                        buffer.readerIndex((int) (cursor - bufferOffsetStart));
+                        cursor = bufferOffsetEnd + 1;
+                    } finally {
+                        data.release();
+                    }
+                    return true;
+                }
+
                 Blob blob = blobStore.getBlob(bucket, key, new GetOptions().range(startRange, endRange));
                 versionCheck.check(key, blob);
 
@@ -94,6 +122,30 @@ public class BlobStoreBackedInputStreamImpl extends BackedInputStream {
         return true;
     }
 
+    /**
+     * Read a range of an object in a new buffer.
+     */
+    static ByteBuf readRange(BlobStore blobStore, String bucket, String key, VersionCheck versionCheck,
+                             long startRange, long endRange) throws IOException {
+        int length = (int) (endRange - startRange + 1);
+        ByteBuf buffer = PulsarByteBufAllocator.DEFAULT.buffer(length, length);
+        try {
+            Blob blob = blobStore.getBlob(bucket, key, new GetOptions().range(startRange, endRange));
+            versionCheck.check(key, blob);
+
+            try (InputStream stream = blob.getPayload().openStream()) {
+                int bytesToCopy = length;
+                while (bytesToCopy > 0) {
+                    bytesToCopy -= buffer.writeBytes(stream, bytesToCopy);
+                }
+            }
+            return buffer;
+        } catch (Throwable t) {
+            buffer.release();
+            throw t;
+        }
+    }
+
     @Override
     public int read() throws IOException {
         if (refillBufferIfNeeded()) {
@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.offload.jcloud.impl;
+
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import org.apache.bookkeeper.mledger.offload.jcloud.BackedInputStream;
+import org.apache.bookkeeper.mledger.offload.jcloud.impl.BlobStoreManagedLedgerOffloader.VersionCheck;
+import org.jclouds.blobstore.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link BackedInputStream} that keeps ranged GETs for the data following the current position in flight.
+ *
+ * <p/>The object is read in ranges of <tt>bufferSize</tt> bytes. Up to <tt>prefetchCount</tt> ranges after the one
+ * being read are fetched concurrently on the given executor, so a sequential reader only waits for the blob store
+ * when it consumes data faster than it can be fetched. Seeking within the fetched ranges (e.g. skipping the padding
+ * at the end of a data block) keeps them, seeking anywhere else discards them and restarts the prefetching from the
+ * new position.
+ */
+public class BlobStoreBackedPrefetchingInputStreamImpl extends BackedInputStream {
+    private static final Logger log = LoggerFactory.getLogger(BlobStoreBackedPrefetchingInputStreamImpl.class);
+
+    private final BlobStore blobStore;
+    private final String bucket;
+    private final String key;
+    private final VersionCheck versionCheck;
+    private final long objectLen;
+    private final int bufferSize;
+    private final int prefetchCount;
+    private final Executor executor;
+    private final OffloadReadCache cache;
+
+    // Ranges fetched, or being fetched, after the current one, in order
+    private final ArrayDeque<Range> prefetched = new ArrayDeque<>();
+    private Range current;
+
+    // Position of the next byte to read
+    private long cursor;
+    // Start of the next range to fetch
+    private long nextFetchOffset;
+
+    private static class Range {
+        final long start;
+        final long end;
+        final CompletableFuture<ByteBuf> data;
+
+        Range(long start, long end, CompletableFuture<ByteBuf> data) {
+            this.start = start;
+            this.end = end;
+            this.data = data;
+        }
+
+        boolean contains(long position) {
+            return position >= start && position <= end;
+        }
+
+        void release() {
+            // The fetch may still be in progress, the buffer is released once it completes
+            data.thenAccept(ByteBuf::release);
+        }
+    }
+
+    public BlobStoreBackedPrefetchingInputStreamImpl(BlobStore blobStore, String bucket, String key,
+                                                     VersionCheck versionCheck,
+                                                     long objectLen, int bufferSize,
+                                                     int prefetchCount, Executor executor) {
+        this(blobStore, bucket, key, versionCheck, objectLen, bufferSize, prefetchCount, executor, null);
+    }
+
+    public BlobStoreBackedPrefetchingInputStreamImpl(BlobStore blobStore, String bucket, String key,
+                                                     VersionCheck versionCheck,
+                                                     long objectLen, int bufferSize,
+                                                     int prefetchCount, Executor executor,
+                                                     OffloadReadCache cache) {
+        this.blobStore = blobStore;
+        this.bucket = bucket;
+        this.key = key;
+        this.versionCheck = versionCheck;
+        this.objectLen = objectLen;
+        this.bufferSize = bufferSize;
+        this.prefetchCount = prefetchCount;
+        this.executor = executor;
+        this.cache = cache;
+        this.cursor = 0;
+        this.nextFetchOffset = 0;
+    }
+
+    private Range fetch(long position) {
+        // The cache reads whole aligned ranges, which may start before the position
+        long startRange = cache != null ? cache.rangeStart(position) : position;
+        int rangeSize = cache != null ? cache.getRangeSize() : bufferSize;
+        long endRange = Math.min(startRange + rangeSize - 1, objectLen - 1);
+        CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                ByteBuf buffer;
+                if (cache != null) {
+                    buffer = cache.getData(key, startRange, objectLen,
+                            (start, end) -> BlobStoreBackedInputStreamImpl.readRange(
+                                    blobStore, bucket, key, versionCheck, start, end));
+                } else {
+                    buffer = BlobStoreBackedInputStreamImpl.readRange(blobStore, bucket, key, versionCheck,
+                            startRange, endRange);
+                }
+                future.complete(buffer);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return new Range(startRange, endRange, future);
+    }
+
+    private void prefetch() {
+        while (prefetched.size() < prefetchCount && nextFetchOffset < objectLen) {
+            Range range = fetch(nextFetchOffset);
+            prefetched.add(range);
+            nextFetchOffset = range.end + 1;
+        }
+    }
+
+    private static ByteBuf getData(Range range) throws IOException {
+        try {
+            return range.data.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading from BlobStore", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error reading from BlobStore", e.getCause());
+        }
+    }
+
+    /**
+     * Move to the range containing the cursor if needed.
+     * @return the buffer to read from, positioned at the cursor, or null if the end of the object was reached
+     */
+    private ByteBuf refillBufferIfNeeded() throws IOException {
+        if (current != null && !current.contains(cursor)) {
+            releaseCurrent();
+        }
+
+        if (current == null) {
+            if (cursor >= objectLen) {
+                return null;
+            }
+
+            current = prefetched.isEmpty() ? fetch(cursor) : prefetched.poll();
+            nextFetchOffset = Math.max(nextFetchOffset, current.end + 1);
+            prefetch();
+        }
+
+        ByteBuf buffer = getData(current);
+        buffer.readerIndex((int) (cursor - current.start));
+        return buffer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuf buffer = refillBufferIfNeeded();
+        if (buffer != null) {
+            cursor++;
+            return buffer.readUnsignedByte();
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ByteBuf buffer = refillBufferIfNeeded();
+        if (buffer != null) {
+            int bytesToRead = Math.min(len, buffer.readableBytes());
+            buffer.readBytes(b, off, bytesToRead);
+            cursor += bytesToRead;
+            return bytesToRead;
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public void seek(long position) {
+        log.debug("Seeking to {} on {}/{}, current position {}", position, bucket, key, cursor);
+        cursor = position;
+
+        if (current != null && current.contains(position)) {
+            return;
+        }
+        releaseCurrent();
+
+        // Keep the prefetched ranges if the new position is one of them
+        Iterator<Range> iterator = prefetched.iterator();
+        while (iterator.hasNext()) {
+            Range range = iterator.next();
+            if (range.contains(position)) {
+                return;
+            }
+            iterator.remove();
+            range.release();
+        }
+        nextFetchOffset = position;
+    }
+
+    @Override
+    public void seekForward(long position) throws IOException {
+        if (position >= cursor) {
+            seek(position);
+        } else {
+            throw new IOException(String.format("Error seeking, new position %d < current position %d",
+                                                position, cursor));
+        }
+    }
+
+    private void releaseCurrent() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        releaseCurrent();
+        prefetched.forEach(Range::release);
+        prefetched.clear();
+    }
+}
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -55,12 +56,15 @@ public class BlobStoreBackedReadHandleImpl implements ReadHandle {
     private final BackedInputStream inputStream;
     private final DataInputStream dataStream;
     private final ExecutorService executor;
+    // whether the index is owned by this handle, or shared through the offloader read cache
+    private final boolean ownsIndex;
 
-    private BlobStoreBackedReadHandleImpl(long ledgerId, OffloadIndexBlock index,
+    private BlobStoreBackedReadHandleImpl(long ledgerId, OffloadIndexBlock index, boolean ownsIndex,
                                           BackedInputStream inputStream,
                                           ExecutorService executor) {
         this.ledgerId = ledgerId;
         this.index = index;
+        this.ownsIndex = ownsIndex;
         this.inputStream = inputStream;
         this.dataStream = new DataInputStream(inputStream);
         this.executor = executor;
@@ -81,7 +85,9 @@ public class BlobStoreBackedReadHandleImpl implements ReadHandle {
         CompletableFuture<Void> promise = new CompletableFuture<>();
         executor.submit(() -> {
                 try {
-                    index.close();
+                    if (ownsIndex) {
+                        index.close();
+                    }
                     inputStream.close();
                     promise.complete(null);
                 } catch (IOException t) {
@@ -193,15 +199,43 @@ public class BlobStoreBackedReadHandleImpl implements ReadHandle {
                                   VersionCheck versionCheck,
                                   long ledgerId, int readBufferSize)
             throws IOException {
+        return open(executor, blobStore, bucket, key, indexKey, versionCheck, ledgerId, readBufferSize, 0, null,
+                    null);
+    }
+
+    public static ReadHandle open(ScheduledExecutorService executor,
+                                  BlobStore blobStore, String bucket, String key, String indexKey,
+                                  VersionCheck versionCheck,
+                                  long ledgerId, int readBufferSize,
+                                  int readPrefetchCount, Executor prefetchExecutor,
+                                  OffloadReadCache cache)
+            throws IOException {
+        boolean sharedIndex = cache != null && cache.isIndexCacheEnabled();
+        OffloadIndexBlock index = sharedIndex
+            ? cache.getIndex(indexKey, () -> readIndex(blobStore, bucket, indexKey, versionCheck))
+            : readIndex(blobStore, bucket, indexKey, versionCheck);
+
+        BackedInputStream inputStream;
+        if (readPrefetchCount > 0) {
+            // Fetch the next ranges in the background, the read handle executor is blocked by the reads
+            inputStream = new BlobStoreBackedPrefetchingInputStreamImpl(blobStore, bucket, key,
+                versionCheck,
+                index.getDataObjectLength(),
+                readBufferSize, readPrefetchCount, prefetchExecutor, cache);
+        } else {
+            inputStream = new BlobStoreBackedInputStreamImpl(blobStore, bucket, key,
+                versionCheck,
+                index.getDataObjectLength(),
+                readBufferSize, cache);
+        }
+        return new BlobStoreBackedReadHandleImpl(ledgerId, index, !sharedIndex, inputStream, executor);
+    }
+
+    private static OffloadIndexBlock readIndex(BlobStore blobStore, String bucket, String indexKey,
+                                               VersionCheck versionCheck) throws IOException {
         Blob blob = blobStore.getBlob(bucket, indexKey);
         versionCheck.check(indexKey, blob);
         OffloadIndexBlockBuilder indexBuilder = OffloadIndexBlockBuilder.create();
-        OffloadIndexBlock index = indexBuilder.fromStream(blob.getPayload().openStream());
-
-        BackedInputStream inputStream = new BlobStoreBackedInputStreamImpl(blobStore, bucket, key,
-            versionCheck,
-            index.getDataObjectLength(),
-            readBufferSize);
-        return new BlobStoreBackedReadHandleImpl(ledgerId, index, inputStream, executor);
+        return indexBuilder.fromStream(blob.getPayload().openStream());
     }
 }
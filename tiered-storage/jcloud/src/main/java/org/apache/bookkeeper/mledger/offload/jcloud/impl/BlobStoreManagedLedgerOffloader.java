@@ -28,6 +28,9 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -37,8 +40,14 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import lombok.Data;
 import org.apache.bookkeeper.client.api.ReadHandle;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
@@ -48,6 +57,7 @@ import org.apache.bookkeeper.mledger.offload.jcloud.OffloadIndexBlock;
 import org.apache.bookkeeper.mledger.offload.jcloud.TieredStorageConfigurationData;
 import org.apache.bookkeeper.mledger.offload.jcloud.OffloadIndexBlockBuilder;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.pulsar.common.allocator.PulsarByteBufAllocator;
 import org.apache.pulsar.jcloud.shade.com.google.common.base.Supplier;
 import org.jclouds.Constants;
 import org.jclouds.ContextBuilder;
@@ -170,6 +180,23 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
     // max block size for each data block.
     private int maxBlockSize;
     private final int readBufferSize;
+    // number of read buffers fetched ahead in the background when reading offloaded ledgers, 0 if disabled
+    private final int readPrefetchCount;
+    private final ExecutorService readPrefetchExecutor;
+    // index blocks and data ranges shared by the read handles, null if disabled
+    private final OffloadReadCache readCache;
+    // number of data block parts uploaded concurrently while the next blocks are read, across all the ledgers being
+    // offloaded, 0 to stream each block
+    private final int maxConcurrentUploads;
+    private final ExecutorService uploadExecutor;
+    // bounds the blocks held in memory, read and waiting for their upload or being uploaded
+    private final Semaphore uploadPermits;
+
+    // bytes and time spent in each stage of the pipelined offload
+    private final LongAdder offloadReadBytes = new LongAdder();
+    private final LongAdder offloadReadTimeNanos = new LongAdder();
+    private final LongAdder offloadUploadBytes = new LongAdder();
+    private final LongAdder offloadUploadTimeNanos = new LongAdder();
 
     private final BlobStore writeBlobStore;
     private final Location writeLocation;
@@ -210,6 +237,11 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
         int readBufferSize = isS3Driver(driver) ?
             conf.getS3ManagedLedgerOffloadReadBufferSizeInBytes() :
             conf.getGcsManagedLedgerOffloadReadBufferSizeInBytes();
+        int readPrefetchCount = conf.getManagedLedgerOffloadReadPrefetchCount();
+        int readPrefetchThreads = conf.getManagedLedgerOffloadReadPrefetchThreads();
+        int maxConcurrentUploads = conf.getManagedLedgerOffloadMaxConcurrentUploads();
+        OffloadReadCache readCache = createReadCache(conf.getManagedLedgerOffloadIndexCacheSizeInBytes(),
+            conf.getManagedLedgerOffloadDataCacheSizeInBytes(), readBufferSize);
 
         if (isS3Driver(driver) && Strings.isNullOrEmpty(region) && Strings.isNullOrEmpty(endpoint)) {
             throw new IOException(
@@ -229,7 +261,8 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
         Supplier<Credentials> credentials = getCredentials(driver, conf);
 
         return new BlobStoreManagedLedgerOffloader(driver, bucket, scheduler,
-            maxBlockSize, readBufferSize, endpoint, region, credentials, userMetadata);
+            maxBlockSize, readBufferSize, readPrefetchCount, readPrefetchThreads, readCache, maxConcurrentUploads,
+            endpoint, region, credentials, userMetadata);
     }
 
     public static Supplier<Credentials> getCredentials(String driver, TieredStorageConfigurationData conf) throws IOException {
@@ -292,16 +325,24 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
     // build context for jclouds BlobStoreContext
     BlobStoreManagedLedgerOffloader(String driver, String container, OrderedScheduler scheduler,
                                     int maxBlockSize, int readBufferSize, String endpoint, String region, Supplier<Credentials> credentials) {
-        this(driver, container, scheduler, maxBlockSize, readBufferSize, endpoint, region, credentials, Maps.newHashMap());
+        this(driver, container, scheduler, maxBlockSize, readBufferSize, 0, 0, null, 0, endpoint, region, credentials,
+            Maps.newHashMap());
     }
 
     BlobStoreManagedLedgerOffloader(String driver, String container, OrderedScheduler scheduler,
-                                    int maxBlockSize, int readBufferSize,
+                                    int maxBlockSize, int readBufferSize, int readPrefetchCount,
+                                    int readPrefetchThreads, OffloadReadCache readCache, int maxConcurrentUploads,
                                     String endpoint, String region, Supplier<Credentials> credentials,
                                     Map<String, String> userMetadata) {
         this.offloadDriverName = driver;
         this.scheduler = scheduler;
         this.readBufferSize = readBufferSize;
+        this.readPrefetchCount = readPrefetchCount;
+        this.readPrefetchExecutor = createReadPrefetchExecutor(readPrefetchCount, readPrefetchThreads);
+        this.readCache = readCache;
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        this.uploadExecutor = createUploadExecutor(maxConcurrentUploads);
+        this.uploadPermits = new Semaphore(Math.max(0, maxConcurrentUploads));
         this.writeBucket = container;
         this.writeRegion = region;
         this.writeEndpoint = endpoint;
@@ -333,15 +374,28 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
     @VisibleForTesting
     BlobStoreManagedLedgerOffloader(BlobStore blobStore, String container, OrderedScheduler scheduler,
                                     int maxBlockSize, int readBufferSize) {
-        this(blobStore, container, scheduler, maxBlockSize, readBufferSize, Maps.newHashMap());
+        this(blobStore, container, scheduler, maxBlockSize, readBufferSize, 0, Maps.newHashMap());
+    }
+
+    @VisibleForTesting
+    BlobStoreManagedLedgerOffloader(BlobStore blobStore, String container, OrderedScheduler scheduler,
+                                    int maxBlockSize, int readBufferSize, int maxConcurrentUploads) {
+        this(blobStore, container, scheduler, maxBlockSize, readBufferSize, maxConcurrentUploads,
+            Maps.newHashMap());
     }
 
     BlobStoreManagedLedgerOffloader(BlobStore blobStore, String container, OrderedScheduler scheduler,
-                                    int maxBlockSize, int readBufferSize,
+                                    int maxBlockSize, int readBufferSize, int maxConcurrentUploads,
                                     Map<String, String> userMetadata) {
         this.offloadDriverName = "aws-s3";
         this.scheduler = scheduler;
         this.readBufferSize = readBufferSize;
+        this.readPrefetchCount = 0;
+        this.readPrefetchExecutor = null;
+        this.readCache = null;
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        this.uploadExecutor = createUploadExecutor(maxConcurrentUploads);
+        this.uploadPermits = new Semaphore(Math.max(0, maxConcurrentUploads));
         this.writeBucket = container;
         this.writeRegion = null;
         this.writeEndpoint = null;
@@ -357,6 +411,36 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
         );
     }
 
+    private static ExecutorService createReadPrefetchExecutor(int readPrefetchCount, int readPrefetchThreads) {
+        if (readPrefetchCount <= 0) {
+            return null;
+        }
+        // Shared by all the read handles, each of them queues at most its prefetch count of fetches
+        return Executors.newFixedThreadPool(Math.max(1, readPrefetchThreads), new ThreadFactoryBuilder()
+            .setNameFormat("offload-read-prefetch-%d")
+            .setDaemon(true)
+            .build());
+    }
+
+    private static ExecutorService createUploadExecutor(int maxConcurrentUploads) {
+        if (maxConcurrentUploads <= 0) {
+            return null;
+        }
+        // Shared by all the ledgers being offloaded, whose uploads in flight are bounded by the upload permits
+        return Executors.newFixedThreadPool(maxConcurrentUploads, new ThreadFactoryBuilder()
+            .setNameFormat("offload-upload-%d")
+            .setDaemon(true)
+            .build());
+    }
+
+    private static OffloadReadCache createReadCache(long maxIndexCacheSize, long maxDataCacheSize,
+                                                    int readBufferSize) {
+        if (maxIndexCacheSize <= 0 && maxDataCacheSize <= 0) {
+            return null;
+        }
+        return new OffloadReadCache(maxIndexCacheSize, maxDataCacheSize, readBufferSize);
+    }
+
     static String dataBlockOffloadKey(long ledgerId, UUID uuid) {
         return String.format("%s-ledger-%d", uuid.toString(), ledgerId);
     }
@@ -422,36 +506,40 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
             long dataObjectLength = 0;
             // start multi part upload for data block.
             try {
-                long startEntry = 0;
-                int partId = 1;
-                long entryBytesWritten = 0;
-                while (startEntry <= readHandle.getLastAddConfirmed()) {
-                    int blockSize = BlockAwareSegmentInputStreamImpl
-                        .calculateBlockSize(maxBlockSize, readHandle, startEntry, entryBytesWritten);
-
-                    try (BlockAwareSegmentInputStream blockStream = new BlockAwareSegmentInputStreamImpl(
-                        readHandle, startEntry, blockSize)) {
-
-                        Payload partPayload = Payloads.newInputStreamPayload(blockStream);
-                        partPayload.getContentMetadata().setContentLength((long)blockSize);
-                        partPayload.getContentMetadata().setContentType("application/octet-stream");
-                        parts.add(writeBlobStore.uploadMultipartPart(mpu, partId, partPayload));
-                        log.debug("UploadMultipartPart. container: {}, blobName: {}, partId: {}, mpu: {}",
-                            writeBucket, dataBlockKey, partId, mpu.id());
-
-                        indexBuilder.addBlock(startEntry, partId, blockSize);
-
-                        if (blockStream.getEndEntryId() != -1) {
-                            startEntry = blockStream.getEndEntryId() + 1;
-                        } else {
-                            // could not read entry from ledger.
-                            break;
+                if (maxConcurrentUploads > 0) {
+                    dataObjectLength = uploadDataBlocksPipelined(readHandle, mpu, parts, indexBuilder);
+                } else {
+                    long startEntry = 0;
+                    int partId = 1;
+                    long entryBytesWritten = 0;
+                    while (startEntry <= readHandle.getLastAddConfirmed()) {
+                        int blockSize = BlockAwareSegmentInputStreamImpl
+                            .calculateBlockSize(maxBlockSize, readHandle, startEntry, entryBytesWritten);
+
+                        try (BlockAwareSegmentInputStream blockStream = new BlockAwareSegmentInputStreamImpl(
+                            readHandle, startEntry, blockSize)) {
+
+                            Payload partPayload = Payloads.newInputStreamPayload(blockStream);
+                            partPayload.getContentMetadata().setContentLength((long)blockSize);
+                            partPayload.getContentMetadata().setContentType("application/octet-stream");
+                            parts.add(writeBlobStore.uploadMultipartPart(mpu, partId, partPayload));
+                            log.debug("UploadMultipartPart. container: {}, blobName: {}, partId: {}, mpu: {}",
+                                writeBucket, dataBlockKey, partId, mpu.id());
+
+                            indexBuilder.addBlock(startEntry, partId, blockSize);
+
+                            if (blockStream.getEndEntryId() != -1) {
+                                startEntry = blockStream.getEndEntryId() + 1;
+                            } else {
+                                // could not read entry from ledger.
+                                break;
+                            }
+                            entryBytesWritten += blockStream.getBlockEntryBytesCount();
+                            partId++;
                         }
-                        entryBytesWritten += blockStream.getBlockEntryBytesCount();
-                        partId++;
-                    }
 
-                    dataObjectLength += blockSize;
+                        dataObjectLength += blockSize;
+                    }
                 }
 
                 writeBlobStore.completeMultipartUpload(mpu, parts);
@@ -537,6 +625,148 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
         }
     }
 
+    /**
+     * Upload the data blocks of a ledger as the parts of a multipart upload, reading each block from BookKeeper while
+     * up to {@link #maxConcurrentUploads} of the previous ones are being uploaded.
+     *
+     * <p/>The blocks are read in memory. The upload permits are shared by all the ledgers being offloaded, so at most
+     * {@link #maxConcurrentUploads} blocks are held by the broker.
+     *
+     * @return the length of the data object
+     */
+    private long uploadDataBlocksPipelined(ReadHandle readHandle, MultipartUpload mpu, List<MultipartPart> parts,
+                                           OffloadIndexBlockBuilder indexBuilder) throws Exception {
+        List<CompletableFuture<MultipartPart>> uploads = Lists.newArrayList();
+        long readTimeNanos = 0;
+        long dataObjectLength = 0;
+
+        try {
+            long startEntry = 0;
+            int partId = 1;
+            long entryBytesWritten = 0;
+            while (startEntry <= readHandle.getLastAddConfirmed()) {
+                int blockSize = BlockAwareSegmentInputStreamImpl
+                    .calculateBlockSize(maxBlockSize, readHandle, startEntry, entryBytesWritten);
+
+                uploadPermits.acquire();
+                // stop reading as soon as an upload failed, the permits are shared with the other offloads
+                try {
+                    uploads.stream().filter(CompletableFuture::isCompletedExceptionally).findFirst()
+                        .ifPresent(CompletableFuture::join);
+                } catch (Throwable t) {
+                    uploadPermits.release();
+                    throw t;
+                }
+
+                long readStartTime = System.nanoTime();
+                ByteBuf block;
+                try {
+                    block = PulsarByteBufAllocator.DEFAULT.buffer(blockSize, blockSize);
+                } catch (Throwable t) {
+                    uploadPermits.release();
+                    throw t;
+                }
+                long endEntryId;
+                int blockEntryBytesCount;
+                try (BlockAwareSegmentInputStream blockStream = new BlockAwareSegmentInputStreamImpl(
+                    readHandle, startEntry, blockSize)) {
+                    // the block stream returns blockSize bytes, including the padding
+                    while (block.isWritable()) {
+                        if (block.writeBytes(blockStream, block.writableBytes()) < 0) {
+                            break;
+                        }
+                    }
+                    endEntryId = blockStream.getEndEntryId();
+                    blockEntryBytesCount = blockStream.getBlockEntryBytesCount();
+                } catch (Throwable t) {
+                    block.release();
+                    uploadPermits.release();
+                    throw t;
+                }
+                readTimeNanos += System.nanoTime() - readStartTime;
+                offloadReadBytes.add(blockSize);
+
+                final int blockPartId = partId;
+                uploads.add(CompletableFuture.supplyAsync(() -> {
+                    long uploadStartTime = System.nanoTime();
+                    try {
+                        Payload partPayload = Payloads.newInputStreamPayload(new ByteBufInputStream(block));
+                        partPayload.getContentMetadata().setContentLength((long) blockSize);
+                        partPayload.getContentMetadata().setContentType("application/octet-stream");
+                        MultipartPart part = writeBlobStore.uploadMultipartPart(mpu, blockPartId, partPayload);
+                        log.debug("UploadMultipartPart. container: {}, blobName: {}, partId: {}, mpu: {}",
+                            writeBucket, mpu.blobName(), blockPartId, mpu.id());
+
+                        offloadUploadBytes.add(blockSize);
+                        offloadUploadTimeNanos.add(System.nanoTime() - uploadStartTime);
+                        return part;
+                    } finally {
+                        block.release();
+                        uploadPermits.release();
+                    }
+                }, uploadExecutor));
+
+                indexBuilder.addBlock(startEntry, partId, blockSize);
+
+                if (endEntryId != -1) {
+                    startEntry = endEntryId + 1;
+                } else {
+                    // could not read entry from ledger.
+                    break;
+                }
+                entryBytesWritten += blockEntryBytesCount;
+                partId++;
+
+                dataObjectLength += blockSize;
+            }
+
+            // the parts are listed in order of their part id
+            for (CompletableFuture<MultipartPart> upload : uploads) {
+                parts.add(upload.join());
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            offloadReadTimeNanos.add(readTimeNanos);
+        }
+
+        log.info("Offloaded ledger {} in {} parts: read {} bytes from BookKeeper in {} ms",
+            readHandle.getId(), parts.size(), dataObjectLength, TimeUnit.NANOSECONDS.toMillis(readTimeNanos));
+        return dataObjectLength;
+    }
+
+    /**
+     * @return the number of bytes read from BookKeeper by the pipelined offload
+     */
+    public long getOffloadReadBytes() {
+        return offloadReadBytes.sum();
+    }
+
+    /**
+     * @return the read throughput from BookKeeper of the pipelined offload, in bytes per second
+     */
+    public double getOffloadReadThroughput() {
+        return throughput(offloadReadBytes.sum(), offloadReadTimeNanos.sum());
+    }
+
+    /**
+     * @return the number of bytes uploaded to the blob store by the pipelined offload
+     */
+    public long getOffloadUploadBytes() {
+        return offloadUploadBytes.sum();
+    }
+
+    /**
+     * @return the upload throughput of each part upload of the pipelined offload, in bytes per second
+     */
+    public double getOffloadUploadThroughput() {
+        return throughput(offloadUploadBytes.sum(), offloadUploadTimeNanos.sum());
+    }
+
+    private static double throughput(long bytes, long timeNanos) {
+        return timeNanos > 0 ? bytes * 1e9 / timeNanos : 0.0;
+    }
+
     @Override
     public CompletableFuture<ReadHandle> readOffloaded(long ledgerId, UUID uid,
                                                        Map<String, String> offloadDriverMetadata) {
@@ -552,7 +782,9 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
                                                                  readBlobstore,
                                                                  readBucket, key, indexKey,
                                                                  VERSION_CHECK,
-                                                                 ledgerId, readBufferSize));
+                                                                 ledgerId, readBufferSize,
+                                                                 readPrefetchCount, readPrefetchExecutor,
+                                                                 readCache));
                 } catch (Throwable t) {
                     log.error("Failed readOffloaded: ", t);
                     promise.completeExceptionally(t);
@@ -574,6 +806,9 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
             try {
                 readBlobstore.removeBlobs(readBucket,
                     ImmutableList.of(dataBlockOffloadKey(ledgerId, uid), indexBlockOffloadKey(ledgerId, uid)));
+                if (readCache != null) {
+                    readCache.invalidate(dataBlockOffloadKey(ledgerId, uid), indexBlockOffloadKey(ledgerId, uid));
+                }
                 promise.complete(null);
             } catch (Throwable t) {
                 log.error("Failed delete Blob", t);
@@ -584,6 +819,16 @@ public class BlobStoreManagedLedgerOffloader implements LedgerOffloader {
         return promise;
     }
 
+    @Override
+    public void close() {
+        if (readPrefetchExecutor != null) {
+            readPrefetchExecutor.shutdown();
+        }
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdown();
+        }
+    }
+
     public interface VersionCheck {
         void check(String key, Blob blob) throws IOException;
     }
@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 import org.apache.bookkeeper.client.api.LedgerEntries;
@@ -69,6 +70,9 @@ public class BlockAwareSegmentInputStreamImpl extends BlockAwareSegmentInputStre
     static final int ENTRY_HEADER_SIZE = 4 /* entry size */ + 8 /* entry id */;
     // Keep a list of all entries ByteBuf, each ByteBuf contains 2 buf: entry header and entry content.
     private List<ByteBuf> entriesByteBuf = null;
+    // The next batch of entries, read from the ledger while the current one is consumed
+    private CompletableFuture<LedgerEntries> nextEntries = null;
+    private long nextEntriesStartId = -1;
 
     public BlockAwareSegmentInputStreamImpl(ReadHandle ledger, long startEntryId, int blockSize) {
         this.ledger = ledger;
@@ -80,12 +84,9 @@ public class BlockAwareSegmentInputStreamImpl extends BlockAwareSegmentInputStre
         this.entriesByteBuf = Lists.newLinkedList();
     }
 
-    // read ledger entries.
-    private int readEntries() throws IOException {
-        checkState(bytesReadOffset >= DataBlockHeaderImpl.getDataStartOffset());
-        checkState(bytesReadOffset < blockSize);
-
-        // once reach the end of entry buffer, read more, if there is more
+    // once reach the end of entry buffer, read more, if there is more.
+    // return the entry to read from, or null if there is no space for a new entry or there are no more entries
+    private ByteBuf nextEntryToRead() throws IOException {
         if (bytesReadOffset < dataBlockFullOffset
             && entriesByteBuf.isEmpty()
             && startEntryId + blockEntryCount <= ledger.getLastAddConfirmed()) {
@@ -93,6 +94,18 @@ public class BlockAwareSegmentInputStreamImpl extends BlockAwareSegmentInputStre
         }
 
         if (!entriesByteBuf.isEmpty() && bytesReadOffset + entriesByteBuf.get(0).readableBytes() <= blockSize) {
+            return entriesByteBuf.get(0);
+        } else {
+            return null;
+        }
+    }
+
+    // read ledger entries.
+    private int readEntries() throws IOException {
+        checkState(bytesReadOffset >= DataBlockHeaderImpl.getDataStartOffset());
+        checkState(bytesReadOffset < blockSize);
+
+        if (nextEntryToRead() != null) {
             // always read from the first ByteBuf in the list, once read all of its content remove it.
             ByteBuf entryByteBuf = entriesByteBuf.get(0);
             int ret = entryByteBuf.readUnsignedByte();
@@ -117,7 +130,23 @@ public class BlockAwareSegmentInputStreamImpl extends BlockAwareSegmentInputStre
 
     private List<ByteBuf> readNextEntriesFromLedger(long start, long maxNumberEntries) throws IOException {
         long end = Math.min(start + maxNumberEntries - 1, ledger.getLastAddConfirmed());
-        try (LedgerEntries ledgerEntriesOnce = ledger.readAsync(start, end).get()) {
+        CompletableFuture<LedgerEntries> entriesFuture;
+        if (nextEntries != null && nextEntriesStartId == start) {
+            entriesFuture = nextEntries;
+        } else {
+            releaseNextEntries();
+            entriesFuture = ledger.readAsync(start, end);
+        }
+        nextEntries = null;
+
+        // read the next batch while this one is consumed
+        if (end < ledger.getLastAddConfirmed()) {
+            nextEntriesStartId = end + 1;
+            nextEntries = ledger.readAsync(nextEntriesStartId,
+                Math.min(nextEntriesStartId + maxNumberEntries - 1, ledger.getLastAddConfirmed()));
+        }
+
+        try (LedgerEntries ledgerEntriesOnce = entriesFuture.get()) {
             log.debug("read ledger entries. start: {}, end: {}", start, end);
 
             List<ByteBuf> entries = Lists.newLinkedList();
@@ -164,6 +193,47 @@ public class BlockAwareSegmentInputStreamImpl extends BlockAwareSegmentInputStre
         return -1;
     }
 
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        } else if (bytesReadOffset >= blockSize) {
+            return -1;
+        }
+
+        int bytesRead = 0;
+        while (bytesRead < len && bytesReadOffset < blockSize) {
+            ByteBuf entryByteBuf = dataBlockHeaderStream.available() > 0 ? null : nextEntryToRead();
+            if (entryByteBuf == null) {
+                // header or padding
+                b[off + bytesRead++] = (byte) read();
+                continue;
+            }
+
+            // copy as much of the entry as possible at once
+            int toCopy = Math.min(len - bytesRead, entryByteBuf.readableBytes());
+            entryByteBuf.readBytes(b, off + bytesRead, toCopy);
+            bytesRead += toCopy;
+            bytesReadOffset += toCopy;
+
+            if (entryByteBuf.readableBytes() == 0) {
+                entryByteBuf.release();
+                entriesByteBuf.remove(0);
+                blockEntryCount++;
+            }
+        }
+        return bytesRead;
+    }
+
+    private void releaseNextEntries() {
+        if (nextEntries != null) {
+            nextEntries.thenAccept(LedgerEntries::close);
+            nextEntries = null;
+        }
+    }
+
     @Override
     public void close() throws IOException {
         super.close();
@@ -172,6 +242,7 @@ public class BlockAwareSegmentInputStreamImpl extends BlockAwareSegmentInputStre
             entriesByteBuf.forEach(buf -> buf.release());
             entriesByteBuf.clear();
         }
+        releaseNextEntries();
     }
 
     @Override
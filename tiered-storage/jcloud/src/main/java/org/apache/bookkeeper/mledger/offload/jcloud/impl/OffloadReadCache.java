@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.offload.jcloud.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.mledger.offload.jcloud.OffloadIndexBlock;
+
+/**
+ * Cache shared by the read handles of an offloader, holding the index blocks and the recently read ranges of the
+ * offloaded ledgers.
+ *
+ * <p/>Both caches are bounded by their size in bytes. The objects keys contain the ledger id and the uuid of the
+ * offload, so the entries of a ledger offloaded several times never collide. Data is cached by ranges of a fixed
+ * size, aligned on that size, so readers starting at different positions of a range share the same copy.
+ *
+ * <p/>Index blocks returned by the cache are shared, and must not be closed by the read handles. Data buffers are
+ * returned retained, and must be released by the caller.
+ */
+public class OffloadReadCache {
+
+    // Approximate heap size of an index block, and of each of its entries once deserialized
+    private static final int INDEX_BLOCK_WEIGHT = 1024;
+    private static final int INDEX_ENTRY_WEIGHT = 128;
+
+    /**
+     * Loads a range of an object, from start to end inclusive.
+     */
+    public interface RangeLoader {
+        ByteBuf load(long start, long end) throws IOException;
+    }
+
+    /**
+     * A range held by the data cache.
+     *
+     * <p/>The buffers are pooled, and may be recycled as soon as they are released, so their reference count can't
+     * tell whether an evicted buffer is still valid. The holder counts the references instead: the cache owns one,
+     * and readers take one while duplicating the buffer. The buffer is released once the count drops to zero, and
+     * the count never goes back up from zero.
+     */
+    private static class CachedRange {
+        private final ByteBuf data;
+        private final AtomicInteger refCount = new AtomicInteger(1);
+
+        CachedRange(ByteBuf data) {
+            this.data = data;
+        }
+
+        /**
+         * @return a retained duplicate of the range, or null if it was evicted and released
+         */
+        ByteBuf tryRetainedDuplicate() {
+            int count;
+            do {
+                count = refCount.get();
+                if (count == 0) {
+                    return null;
+                }
+            } while (!refCount.compareAndSet(count, count + 1));
+
+            try {
+                return data.retainedDuplicate();
+            } finally {
+                release();
+            }
+        }
+
+        void release() {
+            if (refCount.decrementAndGet() == 0) {
+                data.release();
+            }
+        }
+    }
+
+    private final Cache<String, OffloadIndexBlock> indexCache;
+    private final Cache<String, CachedRange> dataCache;
+    private final int rangeSize;
+
+    public OffloadReadCache(long maxIndexCacheSize, long maxDataCacheSize, int rangeSize) {
+        checkArgument(rangeSize > 0, "rangeSize must be positive");
+        this.indexCache = maxIndexCacheSize > 0
+                ? CacheBuilder.newBuilder()
+                    .maximumWeight(maxIndexCacheSize)
+                    .<String, OffloadIndexBlock>weigher((key, index) -> (int) Math.min(Integer.MAX_VALUE,
+                            INDEX_BLOCK_WEIGHT + (long) index.getEntryCount() * INDEX_ENTRY_WEIGHT))
+                    .build()
+                : null;
+        this.dataCache = maxDataCacheSize > 0
+                ? CacheBuilder.newBuilder()
+                    .maximumWeight(maxDataCacheSize)
+                    .<String, CachedRange>weigher((key, range) -> range.data.readableBytes())
+                    .removalListener((RemovalNotification<String, CachedRange> notification) ->
+                            notification.getValue().release())
+                    .build()
+                : null;
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+     * Get the index block stored under the given key, loading it if it's not in the cache.
+     */
+    public OffloadIndexBlock getIndex(String indexKey, Callable<OffloadIndexBlock> loader) throws IOException {
+        if (indexCache == null) {
+            return call(loader);
+        }
+
+        try {
+            return indexCache.get(indexKey, loader);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    public boolean isIndexCacheEnabled() {
+        return indexCache != null;
+    }
+
+    /**
+     * Size of the ranges in which the objects are read and cached.
+     */
+    public int getRangeSize() {
+        return rangeSize;
+    }
+
+    /**
+     * Start of the range containing the given position of an object.
+     */
+    public long rangeStart(long position) {
+        return position - position % rangeSize;
+    }
+
+    /**
+     * Get the range of the given object containing the given position, loading it if it's not in the cache.
+     *
+     * @return a buffer with the content of the range starting at {@link #rangeStart(long)}, to be released by the
+     *         caller
+     */
+    public ByteBuf getData(String key, long position, long objectLen, RangeLoader loader) throws IOException {
+        long start = rangeStart(position);
+        long end = Math.min(start + rangeSize, objectLen) - 1;
+        if (dataCache == null) {
+            return loader.load(start, end);
+        }
+
+        try {
+            ByteBuf data = dataCache.get(key + "@" + start, () -> new CachedRange(loader.load(start, end)))
+                    .tryRetainedDuplicate();
+            // The range was evicted, and released, before we could retain it: read it without the cache
+            return data != null ? data : loader.load(start, end);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Remove the index and the data of an offloaded ledger from the cache, once it's deleted.
+     */
+    public void invalidate(String key, String indexKey) {
+        if (indexCache != null) {
+            indexCache.invalidate(indexKey);
+        }
+        if (dataCache != null) {
+            String prefix = key + "@";
+            dataCache.asMap().keySet().removeIf(cacheKey -> cacheKey.startsWith(prefix));
+        }
+    }
+
+    public long getIndexCacheCount() {
+        return indexCache != null ? indexCache.size() : 0;
+    }
+
+    public long getDataCacheCount() {
+        return dataCache != null ? dataCache.size() : 0;
+    }
+
+    private static <T> T call(Callable<T> loader) throws IOException {
+        try {
+            return loader.call();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        return e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    }
+}
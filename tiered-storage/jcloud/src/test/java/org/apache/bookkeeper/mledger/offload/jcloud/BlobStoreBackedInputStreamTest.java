@@ -24,15 +24,22 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.bookkeeper.mledger.offload.jcloud.impl.BlobStoreBackedInputStreamImpl;
+import org.apache.bookkeeper.mledger.offload.jcloud.impl.BlobStoreBackedPrefetchingInputStreamImpl;
+import org.apache.bookkeeper.mledger.offload.jcloud.impl.OffloadReadCache;
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.io.Payload;
@@ -263,4 +270,185 @@ class BlobStoreBackedInputStreamTest extends BlobStoreTestBase {
         toTest.seekForward(after);
         assertStreamsMatch(toTest, toCompare);
     }
+
+    @Test
+    public void testPrefetchingReadingFullObject() throws Exception {
+        String objectKey = "testPrefetchingReadingFull";
+        int objectSize = 12345;
+        RandomInputStream toWrite = new RandomInputStream(0, objectSize);
+        RandomInputStream toCompare = new RandomInputStream(0, objectSize);
+
+        Payload payload = Payloads.newInputStreamPayload(toWrite);
+        payload.getContentMetadata().setContentLength((long)objectSize);
+        Blob blob = blobStore.blobBuilder(objectKey)
+            .payload(payload)
+            .contentLength((long)objectSize)
+            .build();
+        blobStore.putBlob(BUCKET, blob);
+
+        BlobStore spiedBlobStore = mock(BlobStore.class, delegatesTo(blobStore));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BackedInputStream toTest = new BlobStoreBackedPrefetchingInputStreamImpl(spiedBlobStore, BUCKET,
+                                                                     objectKey, (key, md) -> {},
+                                                                     objectSize, 1000, 4, executor);
+            assertStreamsMatchByBytes(toTest, toCompare);
+            toTest.close();
+        } finally {
+            executor.shutdown();
+        }
+
+        // Each range is fetched exactly once
+        verify(spiedBlobStore, times(13))
+            .getBlob(Mockito.eq(BUCKET), Mockito.eq(objectKey), any());
+    }
+
+    @Test
+    public void testPrefetchingSeek() throws Exception {
+        String objectKey = "testPrefetchingSeek";
+        int objectSize = 12345;
+        RandomInputStream toWrite = new RandomInputStream(0, objectSize);
+
+        Payload payload = Payloads.newInputStreamPayload(toWrite);
+        payload.getContentMetadata().setContentLength((long)objectSize);
+        Blob blob = blobStore.blobBuilder(objectKey)
+            .payload(payload)
+            .contentLength((long)objectSize)
+            .build();
+        blobStore.putBlob(BUCKET, blob);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BackedInputStream toTest = new BlobStoreBackedPrefetchingInputStreamImpl(blobStore, BUCKET, objectKey,
+                                                                     (key, md) -> {},
+                                                                     objectSize, 1000, 2, executor);
+            Random r = new Random(12345);
+            for (int i = 0; i < 20; i++) {
+                // mix short seeks, within the prefetched ranges, and random ones
+                int seek = (i % 2 == 0) ? r.nextInt(objectSize + 1) : Math.min(objectSize, 1500 * i);
+                RandomInputStream toCompare = new RandomInputStream(0, objectSize);
+                toCompare.skip(seek);
+
+                toTest.seek(seek);
+                for (int j = 0; j < 1500; j++) {
+                    Assert.assertEquals(toTest.read(), toCompare.read());
+                }
+            }
+            toTest.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testPrefetchingErrorOnRead() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BackedInputStream toTest = new BlobStoreBackedPrefetchingInputStreamImpl(blobStore, BUCKET,
+                                                                     "doesn't exist", (key, md) -> {},
+                                                                     1234, 1000, 2, executor);
+            toTest.read();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSharedReadCache() throws Exception {
+        String objectKey = "testSharedReadCache";
+        int objectSize = 12345;
+        RandomInputStream toWrite = new RandomInputStream(0, objectSize);
+
+        Payload payload = Payloads.newInputStreamPayload(toWrite);
+        payload.getContentMetadata().setContentLength((long)objectSize);
+        Blob blob = blobStore.blobBuilder(objectKey)
+            .payload(payload)
+            .contentLength((long)objectSize)
+            .build();
+        blobStore.putBlob(BUCKET, blob);
+
+        BlobStore spiedBlobStore = mock(BlobStore.class, delegatesTo(blobStore));
+        OffloadReadCache cache = new OffloadReadCache(1024 * 1024, 1024 * 1024, 1000);
+
+        // Two readers of the same object only fetch each range once
+        for (int i = 0; i < 2; i++) {
+            BackedInputStream toTest = new BlobStoreBackedInputStreamImpl(spiedBlobStore, BUCKET, objectKey,
+                                                                     (key, md) -> {},
+                                                                     objectSize, 1000, cache);
+            assertStreamsMatchByBytes(toTest, new RandomInputStream(0, objectSize));
+            toTest.close();
+        }
+        verify(spiedBlobStore, times(13))
+            .getBlob(Mockito.eq(BUCKET), Mockito.eq(objectKey), any());
+        Assert.assertEquals(cache.getDataCacheCount(), 13);
+
+        // Same for the index, which is shared instead of being loaded by each reader
+        OffloadIndexBlock index = mock(OffloadIndexBlock.class);
+        AtomicInteger indexLoads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            Assert.assertSame(cache.getIndex("index-key", () -> {
+                indexLoads.incrementAndGet();
+                return index;
+            }), index);
+        }
+        Assert.assertEquals(indexLoads.get(), 1);
+
+        cache.invalidate(objectKey, "index-key");
+        Assert.assertEquals(cache.getDataCacheCount(), 0);
+        Assert.assertEquals(cache.getIndexCacheCount(), 0);
+    }
+
+    @Test
+    public void testReadCacheAlignsRanges() throws Exception {
+        String objectKey = "testReadCacheAlignsRanges";
+        int objectSize = 12345;
+        RandomInputStream toWrite = new RandomInputStream(0, objectSize);
+
+        Payload payload = Payloads.newInputStreamPayload(toWrite);
+        payload.getContentMetadata().setContentLength((long)objectSize);
+        Blob blob = blobStore.blobBuilder(objectKey)
+            .payload(payload)
+            .contentLength((long)objectSize)
+            .build();
+        blobStore.putBlob(BUCKET, blob);
+
+        BlobStore spiedBlobStore = mock(BlobStore.class, delegatesTo(blobStore));
+        OffloadReadCache cache = new OffloadReadCache(1024 * 1024, 1024 * 1024, 1000);
+
+        // Readers starting in the middle of a range share the cached copy of the whole range
+        for (int seek : new int[] { 1500, 1999, 1000, 12000 }) {
+            BackedInputStream toTest = new BlobStoreBackedInputStreamImpl(spiedBlobStore, BUCKET, objectKey,
+                                                                     (key, md) -> {},
+                                                                     objectSize, 1000, cache);
+            toTest.seek(seek);
+            InputStream expected = new RandomInputStream(0, objectSize);
+            expected.skip(seek);
+            assertStreamsMatchByBytes(toTest, expected);
+            toTest.close();
+        }
+        Assert.assertEquals(cache.getDataCacheCount(), 12);
+        verify(spiedBlobStore, times(12))
+            .getBlob(Mockito.eq(BUCKET), Mockito.eq(objectKey), any());
+    }
+
+    @Test
+    public void testReadCacheEvictionKeepsRetainedData() throws Exception {
+        OffloadReadCache cache = new OffloadReadCache(1024 * 1024, 1024 * 1024, 1000);
+        ByteBuf loaded = Unpooled.buffer(1000).writeZero(1000);
+
+        ByteBuf data = cache.getData("key", 1500, 12345, (start, end) -> {
+            Assert.assertEquals(start, 1000);
+            Assert.assertEquals(end, 1999);
+            return loaded;
+        });
+        Assert.assertEquals(loaded.refCnt(), 2);
+
+        // Evicting the range only drops the reference of the cache
+        cache.invalidate("key", "index-key");
+        Assert.assertEquals(loaded.refCnt(), 1);
+        Assert.assertEquals(data.readableBytes(), 1000);
+
+        data.release();
+        Assert.assertEquals(loaded.refCnt(), 0);
+    }
 }
@@ -19,6 +19,7 @@
 package org.apache.bookkeeper.mledger.offload.jcloud.impl;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 import static org.testng.internal.junit.ArrayAsserts.assertArrayEquals;
 
@@ -532,4 +533,45 @@ public class BlockAwareSegmentInputStreamTest {
         }
     }
 
+
+    @Test
+    public void testReadBytesMatchesReadByte() throws Exception {
+        int ledgerId = 1;
+        int entrySize = 1000;
+        int lac = 300;
+
+        Random r1 = new Random(0);
+        Random r2 = new Random(0);
+        ReadHandle readHandle1 = new MockReadHandle(ledgerId, entrySize, lac, () -> (byte)r1.nextInt());
+        ReadHandle readHandle2 = new MockReadHandle(ledgerId, entrySize, lac, () -> (byte)r2.nextInt());
+
+        // the block spans several batches of entries, and ends with padding
+        int blockSize = DataBlockHeaderImpl.getDataStartOffset() + (entrySize + 12) * 250 + 100;
+        BlockAwareSegmentInputStreamImpl byteStream = new BlockAwareSegmentInputStreamImpl(readHandle1, 0, blockSize);
+        BlockAwareSegmentInputStreamImpl bulkStream = new BlockAwareSegmentInputStreamImpl(readHandle2, 0, blockSize);
+
+        byte[] expected = new byte[blockSize];
+        for (int i = 0; i < blockSize; i++) {
+            expected[i] = (byte) byteStream.read();
+        }
+        assertEquals(byteStream.read(), -1);
+
+        byte[] actual = new byte[blockSize];
+        int bytesRead = 0;
+        while (bytesRead < blockSize) {
+            // read with a length that doesn't match the entry size
+            int ret = bulkStream.read(actual, bytesRead, Math.min(777, blockSize - bytesRead));
+            assertTrue(ret > 0);
+            bytesRead += ret;
+        }
+        assertEquals(bulkStream.read(actual, 0, 10), -1);
+
+        assertArrayEquals(expected, actual);
+        assertEquals(bulkStream.getEndEntryId(), byteStream.getEndEntryId());
+        assertEquals(bulkStream.getBlockEntryCount(), 250);
+        assertEquals(bulkStream.getBlockEntryBytesCount(), byteStream.getBlockEntryBytesCount());
+
+        byteStream.close();
+        bulkStream.close();
+    }
 }